@@ -0,0 +1,152 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of {@link DoubleFFT_1D}: plan construction and forward
+ * transforms, over sizes covering the three plans and 1, 2 or 4 threads.
+ *
+ * The sizes are power-of-two ones (split-radix), products of 2, 3 and 5
+ * (mixed-radix) and ones with a large prime factor (Bluestein). Threads are
+ * only used above the size thresholds of {@link ConcurrencyUtils}, which can
+ * be overridden with <code>-p twoThreadsBeginN=...</code> and
+ * <code>-p fourThreadsBeginN=...</code>. The benchmark JVM is given a 4
+ * thread pool, so that the 4 thread runs are not throttled on machines with
+ * fewer cores.
+ *
+ * @author Neonunux
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dcalao.parallelism=4")
+public class DoubleFFT_1DBenchmark {
+
+	/** The transform size. */
+	@Param({ "1024", "4096", "16384", "65536", "262144", // split-radix
+			"3000", "48000", // mixed-radix
+			"1031", "4106", "44111" }) // Bluestein
+	public int size;
+
+	/** The number of threads. */
+	@Param({ "1", "2", "4" })
+	public int threads;
+
+	/** The smallest size transformed with two threads. */
+	@Param({ "8192" })
+	public int twoThreadsBeginN;
+
+	/** The smallest size transformed with four threads. */
+	@Param({ "65536" })
+	public int fourThreadsBeginN;
+
+	/** The plan. */
+	private DoubleFFT_1D fft;
+
+	/** The complex input, interleaved. */
+	private double[] complexInput;
+
+	/** The real input. */
+	private double[] realInput;
+
+	/** The work buffer, sized for the complex data. */
+	private double[] data;
+
+	/**
+	 * Sets the threads up and builds the plan and the input.
+	 */
+	@Setup
+	public void setUp() {
+		ConcurrencyUtils.setNumberOfThreads(threads);
+		ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(twoThreadsBeginN);
+		ConcurrencyUtils.setThreadsBeginN_1D_FFT_4Threads(fourThreadsBeginN);
+
+		fft = new DoubleFFT_1D(size);
+		Random random = new Random(42);
+		complexInput = new double[2 * size];
+		for (int i = 0; i < complexInput.length; i++) {
+			complexInput[i] = random.nextDouble() - 0.5;
+		}
+		realInput = new double[size];
+		System.arraycopy(complexInput, 0, realInput, 0, size);
+		data = new double[2 * size];
+	}
+
+	/**
+	 * Restores the default threading.
+	 */
+	@TearDown
+	public void tearDown() {
+		ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.getParallelism());
+		ConcurrencyUtils.resetThreadsBeginN_FFT();
+	}
+
+	/**
+	 * Measures the plan construction, twiddle factors included.
+	 *
+	 * @return the plan
+	 */
+	@Benchmark
+	public DoubleFFT_1D construction() {
+		return new DoubleFFT_1D(size);
+	}
+
+	/**
+	 * Measures a complex forward transform. The input is copied first so
+	 * that every call transforms the same data.
+	 *
+	 * @return the transformed data
+	 */
+	@Benchmark
+	public double[] complexForward() {
+		System.arraycopy(complexInput, 0, data, 0, data.length);
+		fft.complexForward(data);
+		return data;
+	}
+
+	/**
+	 * Measures a real forward transform, the one used by the pitch
+	 * estimators.
+	 *
+	 * @return the transformed data
+	 */
+	@Benchmark
+	public double[] realForward() {
+		System.arraycopy(realInput, 0, data, 0, size);
+		fft.realForward(data);
+		return data;
+	}
+}
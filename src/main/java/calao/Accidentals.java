@@ -19,7 +19,6 @@
 package calao;
 
 import java.awt.Color;
-import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -174,8 +173,8 @@ public class Accidentals {
 	 *
 	 * @param g
 	 *            the g
-	 * @param f
-	 *            the f
+	 * @param glyphs
+	 *            the glyphs of the score font
 	 * @param x
 	 *            the x
 	 * @param y
@@ -183,15 +182,14 @@ public class Accidentals {
 	 * @param altType
 	 *            the alt type
 	 */
-	private void drawAlteration(Graphics g, Font f, int x, int y, String altType) {
+	private void drawAlteration(Graphics g, GlyphCache glyphs, int x, int y, String altType) {
 		((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 				RenderingHints.VALUE_ANTIALIAS_ON);
 		g.setColor(Color.black);
-		g.setFont(f.deriveFont(54f));
 		if (altType == "B") {
-			g.drawString(altType, x + 2, y + 21);
+			glyphs.drawString(g, altType, 54f, x + 2, y + 21);
 		} else {
-			g.drawString(altType, x + 2, y + 22);
+			glyphs.drawString(g, altType, 54f, x + 2, y + 22);
 		}
 	}
 
@@ -200,8 +198,8 @@ public class Accidentals {
 	 *
 	 * @param g
 	 *            the g
-	 * @param f
-	 *            the f
+	 * @param glyphs
+	 *            the glyphs of the score font
 	 * @param xPos
 	 *            the x pos
 	 * @param yPos
@@ -209,7 +207,7 @@ public class Accidentals {
 	 * @param clefMask
 	 *            the clef mask
 	 */
-	public void paint(Graphics g, Font f, int xPos, int yPos, int clefMask) {
+	public void paint(Graphics g, GlyphCache glyphs, int xPos, int yPos, int clefMask) {
 		String sharp = "B"; // # alteration
 		String flat = "b"; // b alteration
 		
@@ -233,7 +231,7 @@ public class Accidentals {
 		for (int i = 0; i < amount; i++) {
 			xPos2 = xPos + getXYAlterations(clefMask).get(2 * i);
 			yPos2 = yPos + getXYAlterations(clefMask).get(2 * i + 1) + clefOffset;
-			drawAlteration(g, f, xPos2, yPos2, alteration);
+			drawAlteration(g, glyphs, xPos2, yPos2, alteration);
 		}
 	}
 
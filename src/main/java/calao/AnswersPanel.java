@@ -110,6 +110,7 @@ public class AnswersPanel extends JPanel
 		g2d.dispose();
 		cursorXpos = -1;
 		cursorYpos = -1;
+		repaint();
 	}
 
     /**
@@ -141,7 +142,7 @@ public class AnswersPanel extends JPanel
     		g2d.setColor(Color.white);
     	g2d.fillRect(0, y, x, 3);
     	g2d.dispose();
-    	this.repaint();
+    	this.repaint(0, y, x, 3);
     }
 
     /**
@@ -158,7 +159,7 @@ public class AnswersPanel extends JPanel
 		g2d.setColor(Color.black);
 		g2d.fillRect(x + 2, y - 8, 5, 8);
 		g2d.dispose();
-    	this.repaint();
+    	this.repaint(x + 2, y - 8, 5, 8);
     }
     
     /**
@@ -171,14 +172,18 @@ public class AnswersPanel extends JPanel
     public void drawAnswer(int type, int x, int y)
     {
     	Graphics2D g2d = bImage.createGraphics();
+    	Image img = null;
     	if (type == 0)
-    		g2d.drawImage(wrongImg, x, y, null);
+    		img = wrongImg;
     	else if (type == 1)
-    		g2d.drawImage(rightImg, x, y, null);
+    		img = rightImg;
     	else if (type == 2)
-    		g2d.drawImage(warnImg, x, y, null);
+    		img = warnImg;
+    	if (img != null)
+    		g2d.drawImage(img, x, y, null);
     	g2d.dispose();
-    	this.repaint();
+    	if (img != null)
+    		this.repaint(x, y, img.getWidth(null), img.getHeight(null));
     }
 
 	/* (non-Javadoc)
@@ -0,0 +1,210 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Consumes the samples of a {@link SampleRingBuffer} as fixed-size
+ * overlapping frames.
+ *
+ * A new frame is emitted every hop size samples, so the frame size sets the
+ * frequency resolution and the hop size sets the detection latency, whatever
+ * buffer size the audio driver delivers. Each frame is given both raw and
+ * multiplied by a Hann window.
+ *
+ * @author Neonunux
+ */
+public class AudioAnalysisThread extends Thread {
+
+	private static final Logger logger = LogManager
+			.getLogger(AudioAnalysisThread.class.getName());
+
+	/**
+	 * Receives the frames, on the analysis thread.
+	 */
+	public interface FrameListener {
+
+		/**
+		 * Called for each new frame. Both arrays are reused for the next
+		 * frame and must not be modified.
+		 *
+		 * @param frame
+		 *            the raw samples, oldest first
+		 * @param windowedFrame
+		 *            the samples multiplied by the Hann window
+		 */
+		void frameReady(double[] frame, double[] windowedFrame);
+	}
+
+	/** The longest wait for new samples before polling the ring again. */
+	private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(10);
+
+	/** The ring. */
+	private final SampleRingBuffer ring;
+
+	/** The frame size. */
+	private final int frameSize;
+
+	/** The hop size. */
+	private final int hopSize;
+
+	/** The window. */
+	private final double[] window;
+
+	/** The frame. */
+	private final double[] frame;
+
+	/** The windowed frame. */
+	private final double[] windowedFrame;
+
+	/** The listener. */
+	private final FrameListener listener;
+
+	/** The number of valid samples in frame. */
+	private int filled = 0;
+
+	/** The running. */
+	private volatile boolean running = true;
+
+	/**
+	 * Instantiates a new audio analysis thread.
+	 *
+	 * @param ring
+	 *            the ring to read samples from
+	 * @param frameSize
+	 *            the frame size in samples
+	 * @param hopSize
+	 *            the number of samples between two frames, from 1 to
+	 *            frameSize
+	 * @param listener
+	 *            the listener
+	 */
+	public AudioAnalysisThread(SampleRingBuffer ring, int frameSize,
+			int hopSize, FrameListener listener) {
+		super("Audio analysis");
+		if (frameSize < 1 || frameSize > ring.getCapacity()) {
+			throw new IllegalArgumentException("Frame size must be between 1 and the ring capacity");
+		}
+		if (hopSize < 1 || hopSize > frameSize) {
+			throw new IllegalArgumentException("Hop size must be between 1 and the frame size");
+		}
+		this.ring = ring;
+		this.frameSize = frameSize;
+		this.hopSize = hopSize;
+		this.listener = listener;
+		window = hannWindow(frameSize);
+		frame = new double[frameSize];
+		windowedFrame = new double[frameSize];
+		setDaemon(true);
+		setPriority(Thread.MAX_PRIORITY - 1);
+	}
+
+	/**
+	 * Computes a periodic Hann window, the one suited to spectral analysis.
+	 *
+	 * @param size
+	 *            the size
+	 * @return the window
+	 */
+	public static double[] hannWindow(int size) {
+		double[] w = new double[size];
+		for (int i = 0; i < size; i++) {
+			w[i] = 0.5 * (1 - Math.cos(2 * Math.PI * i / size));
+		}
+		return w;
+	}
+
+	/**
+	 * Gets the frame size.
+	 *
+	 * @return the frame size
+	 */
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	/**
+	 * Gets the hop size.
+	 *
+	 * @return the hop size
+	 */
+	public int getHopSize() {
+		return hopSize;
+	}
+
+	/**
+	 * Emits the next frame if enough samples are available.
+	 *
+	 * @return true, if a frame was emitted
+	 */
+	boolean processFrame() {
+		int needed = (filled < frameSize) ? frameSize - filled : hopSize;
+		if (ring.available() < needed) {
+			return false;
+		}
+		if (filled == frameSize) {
+			System.arraycopy(frame, hopSize, frame, 0, frameSize - hopSize);
+			filled = frameSize - hopSize;
+		}
+		ring.read(frame, filled, needed);
+		filled = frameSize;
+
+		for (int i = 0; i < frameSize; i++) {
+			windowedFrame[i] = frame[i] * window[i];
+		}
+		listener.frameReady(frame, windowedFrame);
+		return true;
+	}
+
+	/**
+	 * Wakes the thread up when new samples have been written. Meant to be
+	 * called by the producer after each write.
+	 */
+	public void wakeUp() {
+		LockSupport.unpark(this);
+	}
+
+	/**
+	 * Stops the thread after the frame in progress.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 */
+	public void run() {
+		logger.debug("[AudioAnalysisThread] started, frame = " + frameSize
+				+ ", hop = " + hopSize);
+		while (running) {
+			if (!processFrame()) {
+				LockSupport.parkNanos(this, MAX_WAIT_NANOS);
+			}
+		}
+		logger.debug("[AudioAnalysisThread] stopped, overruns = "
+				+ ring.getOverruns());
+	}
+}
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.util.Vector;
 
@@ -50,11 +51,6 @@ public class AudioInputController {
 
 	Preferences appPrefs;
 
-	/** 
-	 * 		Vector holding the generated frequencies lookup table
-	 */
-	Vector<Double> freqList = new Vector<Double>(); 
-	 
 	/** 
 	 * The audio device list of available device (Java + ASIO) 
 	 */
@@ -64,6 +60,12 @@ public class AudioInputController {
 	 */
 	Device paInputDev = null;
 
+	/** The index of the input device among the input devices, from the preferences. */
+	private int paInputIndex = -1;
+
+	/** Starts the capture once the input device is listed, null if not waiting. */
+	private DeviceRegistry.Listener pendingCapture = null;
+
 	/** The pa stream. */
 	Stream paStream = null;
 	// private float[] PortAudioFFTBuffer; // buffer on which FFT is performed.
@@ -78,8 +80,8 @@ public class AudioInputController {
 	/** The sample rate. */
 	float sampleRate = 44100;
 
-	/** The sample size in bits. */
-	int sampleSizeInBits = 16;
+	/** The format of the captured samples. */
+	SampleFormat sampleFormat = SampleFormat.SIGNED_INTEGER_16;
 
 	/** The buffer size. */
 	int bufferSize = 4096;
@@ -108,6 +110,34 @@ public class AudioInputController {
 	/** The current volume. */
 	int currentVolume = 0;
 
+	/** The names of the available pitch estimators, by index. */
+	public static final String[] PITCH_ESTIMATORS = { "FFT peak",
+			"Harmonic product spectrum", "YIN" };
+
+	/** The pitch estimator, reused across analysis frames. */
+	volatile PitchEstimator pitchEstimator = new FFTPeakEstimator();
+
+	/** The index of the pitch estimator in PITCH_ESTIMATORS. */
+	int pitchEstimatorIndex = 0;
+
+	/** Whether the spectrum is computed with the single precision FFT. */
+	boolean singlePrecisionFFT = false;
+
+	/** The analysis frame size, in samples. */
+	int analysisFrameSize = 4096;
+
+	/** The number of samples between two analysis frames. */
+	int analysisHopSize = 1024;
+
+	/** The ring carrying samples from the PortAudio callback to the analysis thread. */
+	SampleRingBuffer sampleRing;
+
+	/** The analysis thread. */
+	AudioAnalysisThread analysisThread;
+
+	/** The decoder of the PortAudio input buffers. */
+	SampleDecoder sampleDecoder;
+
 	// private AudioCaptureThread captureThread = null;
 	/** The capture started. */
 	boolean captureStarted = false;
@@ -129,8 +159,6 @@ public class AudioInputController {
 	 * @return true, if successful
 	 */
 	public boolean initialize() {
-		initFrequenciesList();
-
 		String userAudioDev = appPrefs.getProperty("inputDevice");
 		if (userAudioDev == "-1" || userAudioDev.split(",")[0].equals("MIDI")) {
 			return false;
@@ -138,40 +166,30 @@ public class AudioInputController {
 
 		int audioDevIndex = Integer.parseInt(userAudioDev.split(",")[1]);
 
-		audioDevList = getDevicesList(audioDevIndex);
+		int frameSize = Integer.parseInt(appPrefs.getProperty("audioFrameSize"));
+		if (frameSize > 0) {
+			analysisFrameSize = frameSize;
+		}
+		int hopSize = Integer.parseInt(appPrefs.getProperty("audioHopSize"));
+		if (hopSize > 0) {
+			analysisHopSize = Math.min(hopSize, analysisFrameSize);
+		}
 
-		return true;
-	}
+		singlePrecisionFFT = Integer.parseInt(appPrefs.getProperty("audioSinglePrecision")) == 1;
+		int estimatorIndex = Integer.parseInt(appPrefs.getProperty("pitchEstimator"));
+		setPitchEstimator(Math.max(estimatorIndex, 0));
 
-	/**
-	 * Inits the frequencies list.
-	 */
-	public void initFrequenciesList() {
-		double freqFactor = Math.pow(2, 1.0 / 12.0); // calculate the factor
-														// between frequencies
-		double aFreq = 27.50;
-		double currFreq = 16.35; // frequency of C0
-
-		freqList.clear();
-
-		for (int oct = 0; oct < 7; oct++) {
-			for (int i = 0; i < 12; i++) // 12 notes. Includes semitones
-			{
-				if (i == 9) // back on track when encounter an A
-				{
-					currFreq = aFreq;
-					aFreq *= 2;
-				}
-				freqList.add(currFreq);
-				// logger.debug(" | " + currFreq);
-				currFreq *= freqFactor;
-			}
-			// logger.debug("\n");
-		}
+		// the device is looked up when the capture starts
+		paInputIndex = audioDevIndex;
+		paInputDev = null;
+		DeviceRegistry.getDefault().refreshAudio();
+
+		return true;
 	}
 
 	/**
-	 * Gets the devices list.
+	 * Gets the devices list, as last scanned by the device registry. Empty
+	 * until the first audio scan is done.
 	 *
 	 * @param devIdx
 	 *            the dev idx
@@ -181,24 +199,17 @@ public class AudioInputController {
 		int tmpIdx = 0;
 		Vector<String> devList = new Vector<String>();
 
-		try {
-			PortAudio.initialize();
-			for (Device device : PortAudio.getDevices()) {
-				if (device.getMaxInputChannels() > 0) {
-					logger.debug(device);
-					devList.add(device.getName());
-					if (tmpIdx == devIdx) {
-						paInputDev = device;
-					}
-					tmpIdx++;
-				} else {
-					logger.debug("No device detected");
+		for (DeviceRegistry.AudioDevice audioDevice : DeviceRegistry.getDefault().getAudioDevices()) {
+			Device device = audioDevice.getDevice();
+			if (device.getMaxInputChannels() > 0) {
+				logger.debug(device);
+				devList.add(device.getName());
+				if (tmpIdx == devIdx) {
+					paInputDev = device;
 				}
+				tmpIdx++;
 			}
-		} catch (PortAudioException e) {
-			e.printStackTrace();
 		}
-		;
 		return devList;
 	}
 
@@ -214,66 +225,134 @@ public class AudioInputController {
 	}
 
 	/**
-	 * Frequency lookup.
+	 * Sets the sensitivity.
 	 *
-	 * @param freq
-	 *            the freq
-	 * @return the int
+	 * @param s
+	 *            the new sensitivity
 	 */
-	public int frequencyLookup(double freq) {
-		int startIdx = 0;
-		if (freq > freqList.get(freqList.size() / 2)) {
-			startIdx = freqList.size() / 2;
+	public void setSensitivity(int s) {
+		logger.debug("Set new sensitivity: " + s);
+		this.sensitivity = 100 - s;
+	}
+
+	/**
+	 * Sets the pitch estimator. Can be changed while capturing.
+	 *
+	 * @param index
+	 *            the index of the estimator in {@link #PITCH_ESTIMATORS}
+	 */
+	public void setPitchEstimator(int index) {
+		switch (index) {
+		case 1:
+			pitchEstimator = new HarmonicProductEstimator(5, singlePrecisionFFT);
+			break;
+		case 2:
+			pitchEstimator = new YinEstimator();
+			break;
+		default:
+			pitchEstimator = new FFTPeakEstimator(singlePrecisionFFT);
+			break;
 		}
-		for (int i = startIdx; i < freqList.size(); i++) {
-			if (freq < freqList.get(i)) {
-				return i + 23;
-			}
+		pitchEstimatorIndex = index;
+		logger.debug("Set pitch estimator: " + index + (singlePrecisionFFT ? ", single precision" : ""));
+	}
+
+	/**
+	 * Gets the pitch estimator index.
+	 *
+	 * @return the index of the estimator in {@link #PITCH_ESTIMATORS}
+	 */
+	public int getPitchEstimator() {
+		return pitchEstimatorIndex;
+	}
+
+	/**
+	 * Sets the precision of the FFT used by the spectral pitch estimators.
+	 * Single precision halves the memory traffic, which helps on slow
+	 * machines. Can be changed while capturing.
+	 *
+	 * @param singlePrecision
+	 *            true to use {@link FloatFFT_1D}
+	 */
+	public void setSinglePrecisionFFT(boolean singlePrecision) {
+		singlePrecisionFFT = singlePrecision;
+		setPitchEstimator(pitchEstimatorIndex);
+	}
+
+	/**
+	 * Sets the analysis frame and hop sizes. Takes effect at the next capture
+	 * start.
+	 *
+	 * @param frameSize
+	 *            the frame size in samples
+	 * @param hopSize
+	 *            the number of samples between two frames
+	 */
+	public void setAnalysisSizes(int frameSize, int hopSize) {
+		if (frameSize < 1 || hopSize < 1 || hopSize > frameSize) {
+			throw new IllegalArgumentException("Hop size must be between 1 and the frame size");
 		}
-		return 0;
+		analysisFrameSize = frameSize;
+		analysisHopSize = hopSize;
 	}
 
 	/**
-	 * Sets the sensitivity.
+	 * Sets the format of the captured samples. Takes effect at the next
+	 * capture start.
 	 *
-	 * @param s
-	 *            the new sensitivity
+	 * @param format
+	 *            8, 16, 24 or 32 bit integer, or 32 bit float
 	 */
-	public void setSensitivity(int s) {
-		logger.debug("Set new sensitivity: " + s);
-		this.sensitivity = 100 - s;
+	public void setSampleFormat(SampleFormat format) {
+		// throws on unsupported formats
+		SampleDecoder.getBytesPerSample(format);
+		sampleFormat = format;
 	}
 
 	/**
-	 * Start capture.
+	 * Start capture. If the input device is not listed yet, the capture
+	 * starts once the device registry finds it.
 	 */
-	public void startCapture() {
+	public synchronized void startCapture() {
 		if (captureStarted == true) {
-			try {
-				paStream.stop();
-			} catch (PortAudioException ex) {
-			}
-			paStream = null;
+			stopCapture();
+		}
+		cancelPendingCapture();
+		if (paInputDev == null) {
+			audioDevList = getDevicesList(paInputIndex);
+		}
+		if (paInputDev == null) {
+			logger.info("Audio input device not listed yet, waiting for it: " + paInputIndex);
+			awaitInputDevice();
+			return;
 		}
 		StreamConfiguration InputStream = new StreamConfiguration();
 		InputStream.setMode(StreamConfiguration.Mode.INPUT_ONLY);
 		InputStream.setInputDevice(paInputDev);
-		if (sampleSizeInBits == 16) {
-			InputStream.setInputFormat(SampleFormat.SIGNED_INTEGER_16);
-		} else {
-			InputStream.setInputFormat(SampleFormat.SIGNED_INTEGER_8);
-		}
+		InputStream.setInputFormat(sampleFormat);
 		// InputStream.setSampleRate(paInputDev.getDefaultSampleRate());
 		InputStream.setSampleRate(sampleRate);
 		InputStream.setInputLatency(paInputDev.getDefaultLowInputLatency());
 		InputStream.setInputChannels(1);
+
+		// PortAudio hands samples in the native byte order
+		sampleDecoder = new SampleDecoder(sampleFormat, ByteOrder.nativeOrder());
+		sampleRing = new SampleRingBuffer(analysisFrameSize * 4);
+		analysisThread = new AudioAnalysisThread(sampleRing,
+				analysisFrameSize, analysisHopSize,
+				new AudioAnalysisThread.FrameListener() {
+					public void frameReady(double[] frame,
+							double[] windowedFrame) {
+						performPeakDetection(frame, windowedFrame);
+					}
+				});
+		analysisThread.start();
 		try {
+			// terminated by the stream hook
+			PortAudio.initialize();
 			paStream = PortAudio.createStream(InputStream, new Callback() {
 				public State callback(ByteBuffer input, ByteBuffer output) {
-					logger.debug("Input buffer received ! Size: "
-							+ input.capacity());
-					performPeakDetection(input); // <------- perform magic here
-													// :)
+					queueSamples(input);
 					return State.RUNNING;
 				}
 			}, new Runnable() {
@@ -292,10 +371,50 @@ public class AudioInputController {
 		captureStarted = true;
 	}
 
+	/**
+	 * Starts the capture from the device registry once the input device is
+	 * listed, rather than waiting for the scan.
+	 */
+	private void awaitInputDevice() {
+		DeviceRegistry registry = DeviceRegistry.getDefault();
+		pendingCapture = new DeviceRegistry.Listener() {
+			public void devicesChanged(DeviceRegistry r) {
+				synchronized (AudioInputController.this) {
+					if (pendingCapture != this) {
+						return;
+					}
+					audioDevList = getDevicesList(paInputIndex);
+					if (paInputDev != null) {
+						startCapture();
+					}
+				}
+			}
+		};
+		registry.addListener(pendingCapture);
+		// the scan may have ended before the listener was added
+		audioDevList = getDevicesList(paInputIndex);
+		if (paInputDev != null) {
+			startCapture();
+			return;
+		}
+		registry.refreshAudio();
+	}
+
+	/**
+	 * Stops waiting for the input device.
+	 */
+	private void cancelPendingCapture() {
+		if (pendingCapture != null) {
+			DeviceRegistry.getDefault().removeListener(pendingCapture);
+			pendingCapture = null;
+		}
+	}
+
 	/**
 	 * Stop capture.
 	 */
-	public void stopCapture() {
+	public synchronized void stopCapture() {
+		cancelPendingCapture();
 		try {
 			if (paStream != null) {
 				paStream.stop();
@@ -303,6 +422,10 @@ public class AudioInputController {
 		} catch (PortAudioException ex) {
 		}
 		paStream = null;
+		if (analysisThread != null) {
+			analysisThread.shutdown();
+			analysisThread = null;
+		}
 		captureStarted = false;
 	}
 
@@ -336,85 +459,55 @@ public class AudioInputController {
 	}
 
 	/**
-	 * Perform peak detection.
+	 * Decodes a PortAudio input buffer into the analysis ring. Runs on the
+	 * PortAudio callback thread.
 	 *
-	 * @param tmpBuf
-	 *            the tmp buf
+	 * @param input
+	 *            the input buffer
 	 */
-	private void performPeakDetection(ByteBuffer tmpBuf) {
-		int bufLength = tmpBuf.capacity();
-		// saveToFile(tmpBuf); // Just for debug: this call prevents the FFT to
-		// work
-		logger.debug("Performing FFT on " + bufLength + " bytes");
-		DoubleFFT_1D fft = new DoubleFFT_1D(bufLength);
-		double[] audioDataDoubles = new double[bufLength * 2];
-
-		currentVolume = 0;
-
-		if (sampleSizeInBits == 8) {
-			for (int i = 0, j = 0; i < bufLength; i++, j += 2) {
-				byte tmpByte = tmpBuf.get();
-				if (infoEnabled == true && tmpByte > currentVolume) {
-					currentVolume = (int) tmpByte;
-				}
-				if (tmpByte < -5 || tmpByte > 5) {
-					audioDataDoubles[j] = (double) tmpByte; // real part
-				} else {
-					audioDataDoubles[j] = 0;
-				}
-				audioDataDoubles[j + 1] = 0; // imaginary part
-			}
-		} else if (sampleSizeInBits == 16) {
-			for (int j = 0; j < bufLength; j += 2) // convert audio data to
-													// double[] real, imaginary
-			{
-				byte tmpByteMSB = tmpBuf.get();
-				byte tmpByteLSB = tmpBuf.get();
-				int sampleInt = tmpByteMSB << 8 + tmpByteLSB;
-				if (infoEnabled == true && sampleInt > currentVolume) {
-					currentVolume = sampleInt;
-				}
+	void queueSamples(ByteBuffer input) {
+		sampleRing.write(sampleDecoder, input);
+		analysisThread.wakeUp();
+	}
 
-				audioDataDoubles[j] = (double) sampleInt; // real part
-				audioDataDoubles[j + 1] = 0; // imaginary part
+	/**
+	 * Perform pitch detection on an analysis frame. Runs on the analysis
+	 * thread.
+	 *
+	 * @param frame
+	 *            the raw frame
+	 * @param windowedFrame
+	 *            the Hann windowed frame
+	 */
+	private void performPeakDetection(double[] frame, double[] windowedFrame) {
+		double maxSample = 0;
+		for (int i = 0; i < frame.length; i++) {
+			double v = Math.abs(frame[i]);
+			if (v > maxSample) {
+				maxSample = v;
 			}
 		}
+		currentVolume = (int) (maxSample * 127);
+
+		PitchEstimator estimator = pitchEstimator;
+		double frequency = estimator.estimate(frame, windowedFrame,
+				sampleRate);
 
 		if (infoEnabled == true) {
 			audioMon.showVolume(currentVolume);
 		}
-
-		fft.complexForward(audioDataDoubles);
-
-		// calculate vector magnitude and extract highest peak
-		double[] magnitude = new double[bufLength];
-		double peak = 0;
-		int peakIdx = 0;
-		for (int j = 0, i = 0; j < bufLength * 2; j += 2, i++) {
-			magnitude[i] = Math.sqrt(audioDataDoubles[j] * audioDataDoubles[j]
-					+ audioDataDoubles[j + 1] * audioDataDoubles[j + 1]);
-			if (magnitude[i] > peak) {
-				peak = magnitude[i];
-				peakIdx = i;
-			}
-		}
-
-		double frequency = (sampleRate * peakIdx) / (bufLength * 2);
-		if (frequency > 2000) {
+		if (frequency <= 0 || frequency > 2000) {
 			return;
 		}
-		if (infoEnabled == true) {
-			audioMon.showSpectrum(magnitude);
+		double[] spectrum = estimator.getSpectrum();
+		if (infoEnabled == true && spectrum != null) {
+			audioMon.showSpectrum(spectrum, sampleRate);
 		}
-		// logger.debug("[AudioCaptureThread] FFT took " +
-		// (System.currentTimeMillis() - time) + "ms");
-		logger.debug("[AudioCaptureThread] Peak at: " + frequency
-				+ "Hz (value: " + peak + ")");
 
 		if (currentVolume - previousVolume > sensitivity) {
-			int pitch = frequencyLookup(frequency);
-			if (infoEnabled == true) {
-				audioMon.showPitch(pitch);
+			int pitch = PitchMapping.nearestNote(frequency);
+			if (infoEnabled == true && pitch >= 0) {
+				audioMon.showPitch(pitch, PitchMapping.cents(frequency, pitch));
 			}
 		}
 		previousVolume = currentVolume;
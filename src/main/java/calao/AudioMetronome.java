@@ -0,0 +1,359 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Metronome playing its clicks straight to an audio line, without any MIDI
+ * synthesizer.
+ *
+ * The accent and normal clicks are rendered once into PCM, then mixed into
+ * the output stream at their exact sample frame. Only the start of a
+ * metronome is mapped from the {@link System#nanoTime()} timeline to a frame
+ * of the line; every following click is placed by counting frames, so it
+ * does not depend on thread wake-ups the way a MIDI note sent by a
+ * sequencer does.
+ *
+ * The clicks are given as ticks, like the events of a metronome sequence,
+ * and converted with the tempo of that sequence.
+ *
+ * @author Neonunux
+ */
+public class AudioMetronome {
+
+	private static final Logger logger = LogManager
+			.getLogger(AudioMetronome.class.getName());
+
+	/** The sample rate. */
+	public static final float SAMPLE_RATE = 44100f;
+
+	/** The number of frames mixed and written at once. */
+	static final int BLOCK_FRAMES = 128;
+
+	/** The size of the line buffer, in frames. */
+	private static final int LINE_BUFFER_FRAMES = 1024;
+
+	/** The frequency of the accented click. */
+	private static final double ACCENT_HZ = 1760;
+
+	/** The frequency of the normal click. */
+	private static final double CLICK_HZ = 1320;
+
+	/** The duration of a click. */
+	private static final double CLICK_SECONDS = 0.03;
+
+	/** The accented click. */
+	private final float[] accentClick;
+
+	/** The normal click. */
+	private final float[] normalClick;
+
+	/** The ticks of the clicks of the current metronome. */
+	private long[] ticks = new long[64];
+
+	/** The accents of the clicks of the current metronome. */
+	private boolean[] accents = new boolean[64];
+
+	/** The number of clicks of the current metronome. */
+	private int clickCount = 0;
+
+	/** The duration of a tick. */
+	private double nanosPerTick = 0;
+
+	/** The start of the scheduled clicks, on the nanoTime timeline, or -1 if not started. */
+	private long origin = -1;
+
+	/** Whether the clicks changed since the audio thread last took them. */
+	private boolean scheduleChanged = false;
+
+	/** The start frames of the scheduled clicks, used by the audio thread only. */
+	private long[] frames = new long[0];
+
+	/** The sounds of the scheduled clicks, used by the audio thread only. */
+	private float[][] sounds = new float[0][];
+
+	/** The first scheduled click still sounding, used by the audio thread only. */
+	private int nextClick = 0;
+
+	/** The line. */
+	private SourceDataLine line = null;
+
+	/** The audio thread. */
+	private Thread thread = null;
+
+	/** The running. */
+	private volatile boolean running = false;
+
+	/**
+	 * Instantiates a new audio metronome. Nothing is played before
+	 * {@link #open()}.
+	 */
+	public AudioMetronome() {
+		accentClick = renderClick(ACCENT_HZ, SAMPLE_RATE);
+		normalClick = renderClick(CLICK_HZ, SAMPLE_RATE);
+	}
+
+	/**
+	 * Renders a click: a sine burst with a sharp attack and an exponential
+	 * decay.
+	 *
+	 * @param frequency
+	 *            the frequency
+	 * @param sampleRate
+	 *            the sample rate
+	 * @return the samples, between -1 and 1
+	 */
+	static float[] renderClick(double frequency, float sampleRate) {
+		int length = (int) (CLICK_SECONDS * sampleRate);
+		int attack = (int) (0.001 * sampleRate);
+		float[] click = new float[length];
+		for (int i = 0; i < length; i++) {
+			double envelope = Math.exp(-6.0 * i / length);
+			if (i < attack) {
+				envelope *= (double) i / attack;
+			}
+			click[i] = (float) (0.8 * envelope * Math.sin(2 * Math.PI
+					* frequency * i / sampleRate));
+		}
+		return click;
+	}
+
+	/**
+	 * Opens the audio line and starts the audio thread.
+	 *
+	 * @throws LineUnavailableException
+	 *             if no line can be opened
+	 */
+	public void open() throws LineUnavailableException {
+		AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+		line = AudioSystem.getSourceDataLine(format);
+		line.open(format, LINE_BUFFER_FRAMES * format.getFrameSize());
+		line.start();
+		running = true;
+		thread = new Thread(new Runnable() {
+			public void run() {
+				play();
+			}
+		}, "Audio metronome");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Drops the clicks of the previous metronome, and stops it like
+	 * {@link #stop()}.
+	 */
+	public synchronized void clear() {
+		clickCount = 0;
+		origin = -1;
+		scheduleChanged = true;
+	}
+
+	/**
+	 * Adds a click to the metronome.
+	 *
+	 * @param tick
+	 *            the tick of the click
+	 * @param accent
+	 *            true for an accented click
+	 */
+	public synchronized void addClick(long tick, boolean accent) {
+		if (clickCount == ticks.length) {
+			long[] newTicks = new long[clickCount * 2];
+			boolean[] newAccents = new boolean[clickCount * 2];
+			System.arraycopy(ticks, 0, newTicks, 0, clickCount);
+			System.arraycopy(accents, 0, newAccents, 0, clickCount);
+			ticks = newTicks;
+			accents = newAccents;
+		}
+		ticks[clickCount] = tick;
+		accents[clickCount] = accent;
+		clickCount++;
+	}
+
+	/**
+	 * Sets the tempo of the metronome.
+	 *
+	 * @param bpm
+	 *            the beats per minute
+	 * @param ppq
+	 *            the ticks per beat
+	 */
+	public synchronized void setTempo(float bpm, int ppq) {
+		nanosPerTick = 60e9 / (bpm * ppq);
+	}
+
+	/**
+	 * Starts the clicks.
+	 *
+	 * @param time
+	 *            the time of tick 0, on the System.nanoTime() timeline
+	 */
+	public synchronized void start(long time) {
+		origin = time;
+		scheduleChanged = true;
+	}
+
+	/**
+	 * Stops the clicks. A click already sounding ends normally.
+	 */
+	public synchronized void stop() {
+		origin = -1;
+		scheduleChanged = true;
+	}
+
+	/**
+	 * Stops the audio thread and closes the line.
+	 */
+	public void close() {
+		running = false;
+		if (thread != null) {
+			try {
+				thread.join(TimeUnit.SECONDS.toMillis(1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (line != null) {
+			line.close();
+		}
+		thread = null;
+		line = null;
+	}
+
+	/**
+	 * Takes the scheduled clicks, if they changed, and places them on the
+	 * frames of the line. The clicks already sounding are kept until they
+	 * end.
+	 *
+	 * @param time
+	 *            the current time
+	 * @param playedFrame
+	 *            the frame being played at that time
+	 * @param writeFrame
+	 *            the next frame to be written, no click can start earlier
+	 */
+	synchronized void takeSchedule(long time, long playedFrame,
+			long writeFrame) {
+		if (!scheduleChanged) {
+			return;
+		}
+		scheduleChanged = false;
+		int sounding = 0;
+		for (int i = nextClick; i < frames.length && frames[i] < writeFrame; i++) {
+			if (frames[i] + sounds[i].length > writeFrame) {
+				sounding++;
+			}
+		}
+		int count = (origin == -1) ? 0 : clickCount;
+		long[] newFrames = new long[sounding + count];
+		float[][] newSounds = new float[sounding + count][];
+		// started before any new click, so the frames stay in order
+		int n = 0;
+		for (int i = nextClick; i < frames.length && frames[i] < writeFrame; i++) {
+			if (frames[i] + sounds[i].length > writeFrame) {
+				newFrames[n] = frames[i];
+				newSounds[n] = sounds[i];
+				n++;
+			}
+		}
+		if (origin != -1) {
+			long originFrame = playedFrame
+					+ Math.round((origin - time) * (SAMPLE_RATE / 1e9));
+			for (int i = 0; i < clickCount; i++) {
+				newFrames[n + i] = Math.max(writeFrame, originFrame
+						+ Math.round(ticks[i] * nanosPerTick * (SAMPLE_RATE / 1e9)));
+				newSounds[n + i] = accents[i] ? accentClick : normalClick;
+			}
+		}
+		frames = newFrames;
+		sounds = newSounds;
+		nextClick = 0;
+	}
+
+	/**
+	 * Mixes the scheduled clicks sounding in a block of frames.
+	 *
+	 * @param block
+	 *            the block, mixed into
+	 * @param length
+	 *            the number of frames of the block
+	 * @param blockFrame
+	 *            the frame of the first sample of the block
+	 */
+	void mix(float[] block, int length, long blockFrame) {
+		long blockEnd = blockFrame + length;
+		for (int i = nextClick; i < frames.length; i++) {
+			long start = frames[i];
+			if (start >= blockEnd) {
+				break;
+			}
+			float[] sound = sounds[i];
+			if (start + sound.length <= blockFrame) {
+				// over: skip it from now on if every earlier click is over too
+				if (i == nextClick) {
+					nextClick++;
+				}
+				continue;
+			}
+			int from = (int) Math.max(0, blockFrame - start);
+			int to = (int) Math.min(sound.length, blockEnd - start);
+			int offset = (int) (start - blockFrame);
+			for (int j = from; j < to; j++) {
+				block[offset + j] += sound[j];
+			}
+		}
+	}
+
+	/**
+	 * Writes blocks to the line until closed. Writing blocks while the line
+	 * buffer is full, which paces the thread.
+	 */
+	private void play() {
+		float[] block = new float[BLOCK_FRAMES];
+		byte[] bytes = new byte[BLOCK_FRAMES * 2];
+		long written = 0;
+		logger.debug("[AudioMetronome] started");
+		while (running) {
+			takeSchedule(System.nanoTime(), line.getLongFramePosition(), written);
+			for (int i = 0; i < BLOCK_FRAMES; i++) {
+				block[i] = 0;
+			}
+			mix(block, BLOCK_FRAMES, written);
+			for (int i = 0; i < BLOCK_FRAMES; i++) {
+				float sample = Math.max(-1f, Math.min(1f, block[i]));
+				int value = (int) (sample * 32767);
+				bytes[2 * i] = (byte) value;
+				bytes[2 * i + 1] = (byte) (value >> 8);
+			}
+			line.write(bytes, 0, bytes.length);
+			written += BLOCK_FRAMES;
+		}
+		logger.debug("[AudioMetronome] stopped");
+	}
+}
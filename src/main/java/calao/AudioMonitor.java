@@ -20,9 +20,12 @@ package calao;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ResourceBundle;
 
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -31,6 +34,10 @@ import org.apache.logging.log4j.Logger;
 /**
  * The Class AudioMonitor.
  *
+ * The show methods are called from the audio analysis thread and only store
+ * what they are given; a Swing timer repaints the monitor at most
+ * {@link #MAX_FPS} times per second, and only when something changed.
+ *
  * @author Neonunux
  */
 public class AudioMonitor extends JPanel
@@ -43,17 +50,32 @@ public class AudioMonitor extends JPanel
 	/** The app bundle. */
 	ResourceBundle appBundle;
 
-	/** The input fft. */
-	double[] inputFFT;
-	
+	/** The highest repaint rate. */
+	static final int MAX_FPS = 30;
+
+	/** The number of spectrum bars. */
+	static final int SPECTRUM_BANDS = 16;
+
+	/** The spectrum handed over by the audio thread, from A1 to A6. */
+	final SpectrumSnapshot spectrum = new SpectrumSnapshot(SPECTRUM_BANDS, 55, 1760);
+
 	/** The volume. */
-	int volume = 0;
+	volatile int volume = 0;
 	
-	/** The spectrum bars. */
-	int[] spectrumBars = null;
+	/** The spectrum bars levels, from 0 to 1, owned by the EDT. */
+	double[] spectrumLevels = new double[SPECTRUM_BANDS];
 	
 	/** The current note. */
-	String currentNote = "";
+	volatile String currentNote = "";
+
+	/** The volume last painted. */
+	private int paintedVolume = -1;
+
+	/** The note last painted. */
+	private String paintedNote = null;
+
+	/** The repaint timer. */
+	private final Timer repaintTimer;
 	
 	/** The piano. */
 	Piano piano;
@@ -70,9 +92,53 @@ public class AudioMonitor extends JPanel
 	{
 		appBundle = b;
 
-		spectrumBars = new int[16];	
 		piano = new Piano(73);
 		this.setFont(new Font("Arial", Font.BOLD, 40));
+
+		repaintTimer = new Timer(1000 / MAX_FPS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				refresh();
+			}
+		});
+		repaintTimer.setCoalesce(true);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.JComponent#addNotify()
+	 */
+	public void addNotify() {
+		super.addNotify();
+		repaintTimer.start();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.JComponent#removeNotify()
+	 */
+	public void removeNotify() {
+		repaintTimer.stop();
+		super.removeNotify();
+	}
+
+	/**
+	 * Takes the latest spectrum and repaints if anything changed since the
+	 * last paint. Runs on the EDT.
+	 *
+	 * @return true, if a repaint was requested
+	 */
+	boolean refresh() {
+		boolean changed = false;
+		double[] levels = spectrum.poll();
+		if (levels != null) {
+			spectrumLevels = levels;
+			changed = true;
+		}
+		if (volume != paintedVolume || currentNote != paintedNote) {
+			changed = true;
+		}
+		if (changed) {
+			repaint();
+		}
+		return changed;
 	}
 
 	/**
@@ -86,31 +152,14 @@ public class AudioMonitor extends JPanel
 	}
 
 	/**
-	 * Show spectrum.
+	 * Show spectrum. Can be called from any single producer thread.
 	 *
-	 * @param spec the spec
+	 * @param spec the magnitude of bins 0 to fftSize / 2
+	 * @param sampleRate the sample rate
 	 */
-	public void showSpectrum(double[] spec)
+	public void showSpectrum(double[] spec, float sampleRate)
 	{
-		long[][] spectrumSums = new long[2][16];
-		inputFFT = spec;
-		for (int i = 0; i < 16; i++)
-			spectrumBars[i] = 0;
-		for (int i = 0; i < inputFFT.length; i++)
-		{
-	    	double value = Math.log10(inputFFT[i]);
-	    	double frequency = (8000 * i) / inputFFT.length;
-	    	if (value <= 1)
-	    		continue;
-	    	if (frequency > 2000)
-	    		break;
-	    	int specIdx = (int)(frequency / 125) - 1;
-	    	if (specIdx < 0) specIdx = 0;
-	    	spectrumSums[0][specIdx] += (long)value;
-	    	spectrumSums[1][specIdx]++;
-	    	spectrumBars[specIdx] = (int)(spectrumSums[0][specIdx] / spectrumSums[1][specIdx]);
-		}
-		repaint();
+		spectrum.publish(spec, sampleRate);
 	}
 
 	/**
@@ -139,12 +188,13 @@ public class AudioMonitor extends JPanel
 	/**
 	 * Show pitch.
 	 *
-	 * @param p the p
+	 * @param p the MIDI pitch, -1 to clear
+	 * @param cents the deviation from the pitch, in cents
 	 */
-	public void showPitch(int p)
+	public void showPitch(int p, double cents)
 	{
-		//logger.debug("[audioMon] got pitch " + p);
-		if (p == 23)
+		//logger.debug("[audioMon] got pitch " + p + ", " + cents + " cents");
+		if (p < 0)
 		{
 			currentNote = "";
 			return;
@@ -158,10 +208,15 @@ public class AudioMonitor extends JPanel
 			alt = 1;
 			noteIdx-=100;
 		}
-		currentNote = getLabelFromIndex(noteIdx);
-		currentNote += Integer.toString(octave);
+		// built aside, the EDT may paint at any time
+		String note = getLabelFromIndex(noteIdx);
+		note += Integer.toString(octave);
 		if (alt == 1)
-			currentNote += "#";
+			note += "#";
+		long roundedCents = Math.round(cents);
+		if (roundedCents != 0)
+			note += (roundedCents > 0 ? " +" : " ") + roundedCents;
+		currentNote = note;
 	}
 
 	/* (non-Javadoc)
@@ -172,22 +227,23 @@ public class AudioMonitor extends JPanel
 		g.setColor(this.getBackground());
 		g.fillRect(0, 0, getWidth(), getHeight());
 		
-		int volHeight = volume * (getHeight() / 127);
+		paintedVolume = volume;
+		paintedNote = currentNote;
+
+		int volHeight = paintedVolume * getHeight() / 127;
 		g.setColor(Color.blue);
 		g.fillRect(0, getHeight() - volHeight, 10, volHeight);
 		
 		g.setColor(Color.gray);
-		if (spectrumBars != null)
+		int xPos = 20;
+		for (int i = 0; i < spectrumLevels.length; i++)
 		{
-			int xPos = 20;
-			for (int i = 0; i < spectrumBars.length; i++)
-			{
-				g.drawRect(xPos, getHeight() - spectrumBars[i], 15, spectrumBars[i] - 1);
-				xPos += 15;
-			}
+			int barHeight = (int)(spectrumLevels[i] * getHeight());
+			g.drawRect(xPos, getHeight() - barHeight, 15, barHeight - 1);
+			xPos += 15;
 		}
 		g.setColor(Color.black);
-		g.drawString(currentNote, 280, 90);
+		g.drawString(paintedNote, 280, 90);
 	}
 }
 
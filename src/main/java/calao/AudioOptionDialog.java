@@ -21,10 +21,13 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.ResourceBundle;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -66,6 +69,12 @@ public class AudioOptionDialog extends JDialog implements ActionListener, Change
 	/** The sensitivity slider. */
 	private JSlider sensitivitySlider;
 	
+	/** The pitch estimator combo box. */
+	private JComboBox<String> pitchEstimatorComboBox;
+
+	/** The pitch estimator in use when the dialog was opened. */
+	private int previousEstimator;
+	
 	/** The test btn. */
 	private RoundedButton testBtn;
 	
@@ -96,10 +105,18 @@ public class AudioOptionDialog extends JDialog implements ActionListener, Change
 		appBundle = b;
 		appPrefs = p;
 		audioControl = ac;
+		previousEstimator = ac.getPitchEstimator();
 		
 		setTitle(appBundle.getString("_menuAudio"));
+		addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent e)
+			{
+				// closing the window cancels too
+				audioControl.setPitchEstimator(previousEstimator);
+			}
+		});
 		setAlwaysOnTop(true);
-        setSize(600, 290);
+        setSize(600, 345);
         setResizable(false);
         setLocationRelativeTo(null); // Center the window on the display
         setLayout(null);
@@ -110,7 +127,7 @@ public class AudioOptionDialog extends JDialog implements ActionListener, Change
 		backPanel = new JPanel();
         backPanel.setLayout(null);
         backPanel.setBackground(Color.white);
-        backPanel.setBounds(0, 0, 600, 290);
+        backPanel.setBounds(0, 0, 600, 345);
         
         int tmpYpos = 5;
         
@@ -158,6 +175,27 @@ public class AudioOptionDialog extends JDialog implements ActionListener, Change
         audioSensitivityPanel.add(sensitivitySlider);
         tmpYpos+=55;
         
+        // ******************************* pitch estimator panel *****************************
+        RoundPanel pitchEstimatorPanel = new RoundPanel();
+        pitchEstimatorPanel.setLayout(null);
+        pitchEstimatorPanel.setBackground(Color.white);
+        pitchEstimatorPanel.setBounds(5, tmpYpos, 583, 50);
+        
+        JLabel pitchEstimatorLabel = new JLabel(appBundle.getString("_audioPitch"));
+        pitchEstimatorLabel.setFont(titleFont);
+        pitchEstimatorLabel.setBounds(10, 5, 300, 40);
+        pitchEstimatorPanel.add(pitchEstimatorLabel);
+        
+        pitchEstimatorComboBox = new JComboBox<String>(AudioInputController.PITCH_ESTIMATORS);
+        pitchEstimatorComboBox.setBounds(365, 10, 200, 30);
+        int estimatorIndex = Integer.parseInt(appPrefs.getProperty("pitchEstimator"));
+        if (estimatorIndex >= 0 && estimatorIndex < AudioInputController.PITCH_ESTIMATORS.length)
+        	pitchEstimatorComboBox.setSelectedIndex(estimatorIndex);
+        pitchEstimatorComboBox.addActionListener(this);
+        
+        pitchEstimatorPanel.add(pitchEstimatorComboBox);
+        tmpYpos+=55;
+        
         // ******************************* buttons panel *****************************
     	JPanel buttonPanel = new JPanel();
         buttonPanel.setBackground(Color.white);
@@ -175,6 +213,7 @@ public class AudioOptionDialog extends JDialog implements ActionListener, Change
         buttonPanel.add(cancelButton);
 
         backPanel.add(audioSensitivityPanel);
+        backPanel.add(pitchEstimatorPanel);
         backPanel.add(audioTestPanel);
         backPanel.add(buttonPanel);
         
@@ -188,10 +227,18 @@ public class AudioOptionDialog extends JDialog implements ActionListener, Change
     {
 		if (ae.getSource() == okButton)
 		{
+			appPrefs.setProperty("pitchEstimator", Integer.toString(pitchEstimatorComboBox.getSelectedIndex()));
+			appPrefs.storeProperties();
 			this.dispose();
 		}
+		else if (ae.getSource() == pitchEstimatorComboBox)
+		{
+			audioControl.setPitchEstimator(pitchEstimatorComboBox.getSelectedIndex());
+		}
 		else if (ae.getSource() == cancelButton)
 		{
+			// the estimator is tried live, put the previous one back
+			audioControl.setPitchEstimator(previousEstimator);
 			this.dispose();
 		}
 		else if (ae.getSource() == testBtn)
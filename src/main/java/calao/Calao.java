@@ -30,12 +30,15 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.List;
 import java.util.Locale;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 import javax.sound.midi.MidiDevice;
@@ -47,6 +50,7 @@ import javax.sound.midi.Transmitter;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UIManager.LookAndFeelInfo;
 
@@ -117,6 +121,15 @@ public class Calao extends JFrame implements ActionListener {
 	/** The midi dev. */
 	private MidiDevice midiDev = null;
 
+	/** The note events of the MIDI input device, waiting for the game logic. */
+	private final NoteEventQueue noteEvents = new NoteEventQueue(256);
+
+	/** The game logic thread, consuming the note events. */
+	private NoteEventThread noteEventThread;
+
+	/** The latency calibration in progress, taking the note events. */
+	private volatile LatencyCalibrator calibrator = null;
+
 	// Audio Resources
 	/** The audio control. */
 	AudioInputController audioControl;
@@ -208,7 +221,11 @@ public class Calao extends JFrame implements ActionListener {
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // exit when frame
 														// closed
 
+		// scan the devices while the rest is set up
+		DeviceRegistry.getDefault().setPreferences(prefs);
+		DeviceRegistry.getDefault().addListener(new DevicesWatcher());
 		midiControl = new MidiController(prefs);
+		midiControl.setSoundFontListener(new SoundFontProgress());
 		int midiError = midiControl.checkError();
 		if (midiError == 2) {
 			Object[] options = { bundle.getString("_yes"),
@@ -225,24 +242,17 @@ public class Calao extends JFrame implements ActionListener {
 				SoundbankDownloader sbDown = new SoundbankDownloader();
 				sbDown.startDownload(); // blocked here until download is
 										// finished
+				midiControl.close();
 				midiControl = new MidiController(prefs); // reload the just
 															// downloaded bank
+				midiControl.setSoundFontListener(new SoundFontProgress());
 			}
 		}
 
-		midiDev = midiControl.openInputDevice();
+		noteEventThread = new NoteEventThread(noteEvents, new GameLogic());
+		noteEventThread.start();
 
-		if (midiDev != null) {
-			Receiver r = new MidiReceiver();
-			try {
-				Transmitter t = midiDev.getTransmitter();
-				t.setReceiver(r);
-			} catch (MidiUnavailableException e) {
-				logger.error("Unable to connect the device's Transmitter to the Receiver:");
-				logger.error(e);
-				midiDev.close();
-			}
-		}
+		connectInputDevice();
 
 		try {
 			InputStream fInput = getClass().getResourceAsStream(
@@ -295,6 +305,7 @@ public class Calao extends JFrame implements ActionListener {
 		addWindowListener(new WindowAdapter() {
 			public void windowClosing(WindowEvent e) {
 				logger.info("Calao is going to be closed !");
+				storeDeviceCache();
 				if (midiDev != null)
 					midiDev.close();
 				midiDev = null;
@@ -534,6 +545,7 @@ public class Calao extends JFrame implements ActionListener {
 						}
 						midiDev = null;
 						midiControl = new MidiController(prefs);
+						midiControl.setSoundFontListener(new SoundFontProgress());
 						if (midiControl.checkError() != 0) {
 							JOptionPane.showMessageDialog(null, "<html><b>"
 									+ bundle.getString("_alertRestart")
@@ -542,25 +554,16 @@ public class Calao extends JFrame implements ActionListener {
 									JOptionPane.WARNING_MESSAGE);
 							return;
 						}
-						midiDev = midiControl.openInputDevice();
-
-						if (midiDev != null) {
-							Receiver r = new MidiReceiver();
-							try {
-								Transmitter t = midiDev.getTransmitter();
-								t.setReceiver(r);
-							} catch (MidiUnavailableException e) {
-								logger.error("Unable to connect the device's Transmitter to the Receiver:");
-								logger.error(e);
-								e.printStackTrace();
-								midiDev.close();
-							}
-						}
+						connectInputDevice();
 						// midiOptions.reloadDriversList(midiControl.getFluidDrivers());
 						midiOptions.reloadDevicesList(midiControl
 								.getFluidDevices());
-						midiOptions.reloadInstruments(midiControl
-								.getInstruments());
+						List<String> instruments = midiControl.getInstruments();
+						if (midiControl.isSoundFontLoading()
+								&& instruments.size() == 0)
+							midiOptions.showSoundFontProgress(0);
+						else
+							midiOptions.reloadInstruments(instruments);
 					} else if (evt.getPropertyName() == "newMidiInstrument") {
 						logger.debug("Set new MIDI instrument...");
 						midiControl.setNewInstrument();
@@ -570,12 +573,15 @@ public class Calao extends JFrame implements ActionListener {
 						logger.debug("Set new transposition...");
 						transposition = Integer.parseInt(prefs
 								.getProperty("transposition"));
+					} else if (evt.getPropertyName() == "calibrateLatency") {
+						startLatencyCalibration();
 					}
 				}
 			};
 			midiOptions.addPropertyChangeListener(propListener);
 		} else if (s == "exitProgram") {
 			// dispose(); // why this doesn't work ??
+			storeDeviceCache();
 			System.exit(0);
 		}
 
@@ -651,16 +657,42 @@ public class Calao extends JFrame implements ActionListener {
 	}
 
 	/**
-	 * The Class MidiReceiver.
+	 * Receiver of the MIDI input device, running on the driver thread. It
+	 * only timestamps the notes and queues them for the {@link GameLogic}.
 	 */
 	private class MidiReceiver implements Receiver {
 
+		/**
+		 * The smallest arrival time minus device time seen so far, in
+		 * nanoseconds: the best estimate of the device clock offset.
+		 */
+		private long clockOffset = Long.MAX_VALUE;
+
 		/**
 		 * Instantiates a new midi receiver.
 		 */
 		public MidiReceiver() {
 		}
 
+		/**
+		 * Converts a device timestamp to the {@link System#nanoTime()}
+		 * timeline.
+		 *
+		 * @param deviceTime
+		 *            the device time in microseconds, -1 if not supported
+		 * @param arrival
+		 *            the arrival time
+		 * @return the event time
+		 */
+		private long eventTime(long deviceTime, long arrival) {
+			if (deviceTime == -1)
+				return arrival;
+			long deviceNanos = deviceTime * 1000;
+			clockOffset = Math.min(clockOffset, arrival - deviceNanos);
+			// never later than the event actually arrived
+			return Math.min(deviceNanos + clockOffset, arrival);
+		}
+
 		/*
 		 * (non-Javadoc)
 		 * 
@@ -668,51 +700,13 @@ public class Calao extends JFrame implements ActionListener {
 		 * long)
 		 */
 		public void send(MidiMessage event, long time) {
-			if (event instanceof ShortMessage) {
-				switch (event.getStatus() & 0xf0) {
-				case 0x90:
-					int pitch = ((ShortMessage) event).getData1();
-					int vel = ((ShortMessage) event).getData2();
-					pitch += transposition;
-					if (vel == 0)
-						logger.debug("   Key released - Pitch: " + pitch);
-					else
-						logger.debug("   Key pressed - Pitch: " + pitch
-								+ " Velocity: " + vel);
-
-					if (inlinePanel != null && inlinePanel.isVisible() == true)
-						inlinePanel.noteEvent(pitch, vel, false);
-					else if (rhythmPanel != null
-							&& rhythmPanel.isVisible() == true)
-						rhythmPanel.noteEvent(pitch, vel);
-					else if (scorePanel != null
-							&& scorePanel.isVisible() == true)
-						scorePanel.noteEvent(pitch, vel);
-					else if (earPanel != null && earPanel.isVisible() == true)
-						earPanel.noteEvent(pitch, vel, false);
-					break;
-				/*
-				 * case 0x80: logger.debug("   Note Off  Pitch: "+((ShortMessage
-				 * )event).getData1()+
-				 * " Velocity: "+((ShortMessage)event).getData2()); break; case
-				 * 0xb0: if (((ShortMessage)event).getData1() < 120) {
-				 * logger.debug("   Controller No.: " +
-				 * ((ShortMessage)event).getData1()+
-				 * " Value: "+((ShortMessage)event).getData2()); } else {
-				 * logger.debug("   ChannelMode Message No.: "+
-				 * ((ShortMessage)event).getData1() + " Value: " +
-				 * ((ShortMessage)event).getData2()); } break; case 0xe0:
-				 * System.
-				 * out.println("   Pitch lsb: "+((ShortMessage)event).getData1
-				 * ()+ " msb: "+((ShortMessage)event).getData2()); break; case
-				 * 0xc0: logger.debug("   Program Change No: " +
-				 * ((ShortMessage)event).getData1()+ " Just for Test: " +
-				 * ((ShortMessage)event).getData2()); break; case 0xd0:
-				 * logger.debug("   Channel Aftertouch Pressure: " +
-				 * ((ShortMessage)event).getData1() + " Just for Test: " +
-				 * ((ShortMessage)event).getData2()); break;
-				 */
-				}
+			if (event instanceof ShortMessage
+					&& (event.getStatus() & 0xf0) == 0x90) {
+				long arrival = System.nanoTime();
+				ShortMessage note = (ShortMessage) event;
+				noteEvents.offer(note.getData1() + transposition,
+						note.getData2(), eventTime(time, arrival));
+				noteEventThread.wakeUp();
 			}
 		}
 
@@ -725,6 +719,233 @@ public class Calao extends JFrame implements ActionListener {
 		}
 	}
 
+	/**
+	 * Starts the latency calibration. The user plays a key of the MIDI input
+	 * device on each click, then the measured latency is stored in the
+	 * preferences.
+	 */
+	private void startLatencyCalibration() {
+		if (calibrator != null) {
+			return;
+		}
+		if (midiDev == null) {
+			JOptionPane.showMessageDialog(null,
+					bundle.getString("_nomidiin"),
+					bundle.getString("_latency"), JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+		logger.debug("Starting latency calibration...");
+		long origin = midiControl
+				.startCalibration(new PlaybackEvent.Listener() {
+					public void playbackEvent(int type, int argument) {
+						if (type == PlaybackEvent.END) {
+							SwingUtilities.invokeLater(new Runnable() {
+								public void run() {
+									finishLatencyCalibration();
+								}
+							});
+						}
+					}
+				});
+		calibrator = new LatencyCalibrator(origin, TimeUnit.MINUTES.toNanos(1)
+				/ LatencyCalibrator.BPM, LatencyCalibrator.CLICKS);
+	}
+
+	/**
+	 * Stores the latency measured by the calibration in progress.
+	 */
+	private void finishLatencyCalibration() {
+		LatencyCalibrator c = calibrator;
+		calibrator = null;
+		if (c == null) {
+			return;
+		}
+		long latency = Math.min(c.getLatencyMillis(), 500);
+		logger.debug("Latency calibration: " + c.getTapCount()
+				+ " notes, latency = " + latency + " ms");
+		if (latency < 0) {
+			JOptionPane.showMessageDialog(null,
+					bundle.getString("_latencyCalibrationFailed"),
+					bundle.getString("_latency"), JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+		prefs.setProperty("latency", String.valueOf(latency));
+		prefs.storeProperties();
+		if (midiOptions != null) {
+			midiOptions.setLatency((int) latency);
+		}
+	}
+
+	/**
+	 * Opens the MIDI input device of the preferences and connects it to the
+	 * note event queue.
+	 */
+	private void connectInputDevice() {
+		midiDev = midiControl.openInputDevice();
+
+		if (midiDev != null) {
+			Receiver r = new MidiReceiver();
+			try {
+				Transmitter t = midiDev.getTransmitter();
+				t.setReceiver(r);
+			} catch (MidiUnavailableException e) {
+				logger.error("Unable to connect the device's Transmitter to the Receiver:");
+				logger.error(e);
+				midiDev.close();
+				midiDev = null;
+			}
+		}
+	}
+
+	/**
+	 * Closes the MIDI input device when it is unplugged, and connects it
+	 * again when it comes back.
+	 *
+	 * @param registry
+	 *            the device registry
+	 */
+	private void inputDevicesChanged(DeviceRegistry registry) {
+		storeDeviceCache();
+		String deviceId = prefs.getProperty("inputDeviceId");
+		if (deviceId == "-1" || midiControl == null
+				|| prefs.getProperty("inputDevice").split(",")[0]
+						.equals("MIDI") == false)
+			return;
+
+		boolean plugged = registry.indexOf(deviceId) != -1;
+		if (plugged == false && midiDev != null) {
+			logger.info("MIDI input device unplugged");
+			midiDev.close();
+			midiDev = null;
+		} else if (plugged == true && midiDev == null) {
+			logger.info("MIDI input device plugged, connecting...");
+			connectInputDevice();
+		}
+	}
+
+	/**
+	 * Saves the preferences if the registry asked new devices, so it knows
+	 * them at the next start.
+	 */
+	private void storeDeviceCache() {
+		if (DeviceRegistry.getDefault().checkCacheChanged() == true)
+			prefs.storeProperties();
+	}
+
+	/**
+	 * Follows the MIDI input devices plugged and unplugged.
+	 */
+	private class DevicesWatcher implements DeviceRegistry.Listener {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * calao.DeviceRegistry.Listener#devicesChanged(calao.DeviceRegistry)
+		 */
+		public void devicesChanged(final DeviceRegistry registry) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					inputDevicesChanged(registry);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Shows the soundfont loading in the MIDI options dialog, if open.
+	 */
+	private class SoundFontProgress implements SoundFontLoader.Listener {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see calao.SoundFontLoader.Listener#soundFontProgress(java.io.File,
+		 * int)
+		 */
+		public void soundFontProgress(File bank, final int percent) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					if (midiOptions != null && midiOptions.isDisplayable())
+						midiOptions.showSoundFontProgress(percent);
+				}
+			});
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see calao.SoundFontLoader.Listener#soundFontLoaded(java.io.File,
+		 * java.util.List)
+		 */
+		public void soundFontLoaded(File bank, final List<String> programs) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					if (midiOptions != null && midiOptions.isDisplayable())
+						midiOptions.reloadInstruments(programs);
+				}
+			});
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see calao.SoundFontLoader.Listener#soundFontFailed(java.io.File,
+		 * java.io.IOException)
+		 */
+		public void soundFontFailed(final File bank, IOException e) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					if (midiOptions != null && midiOptions.isDisplayable())
+						midiOptions.reloadInstruments(null);
+					JOptionPane.showMessageDialog(null,
+							bundle.getString("_soundfontLoadFailed") + ": "
+									+ bank.getName(),
+							bundle.getString("_midiLibrary"),
+							JOptionPane.WARNING_MESSAGE);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Game logic fed by the MIDI input device: hands each note to the
+	 * visible game, on the game logic thread.
+	 */
+	private class GameLogic implements NoteEventQueue.Handler {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see calao.NoteEventQueue.Handler#noteEvent(int, int, long)
+		 */
+		public void noteEvent(int pitch, int vel, long time) {
+			if (logger.isDebugEnabled()) {
+				if (vel == 0)
+					logger.debug("   Key released - Pitch: " + pitch);
+				else
+					logger.debug("   Key pressed - Pitch: " + pitch
+							+ " Velocity: " + vel);
+			}
+
+			LatencyCalibrator c = calibrator;
+			if (c != null) {
+				if (vel != 0)
+					c.addTap(time);
+				return;
+			}
+
+			if (inlinePanel != null && inlinePanel.isVisible() == true)
+				inlinePanel.noteEvent(pitch, vel, false);
+			else if (rhythmPanel != null && rhythmPanel.isVisible() == true)
+				rhythmPanel.noteEvent(pitch, vel, time);
+			else if (scorePanel != null && scorePanel.isVisible() == true)
+				scorePanel.noteEvent(pitch, vel, time);
+			else if (earPanel != null && earPanel.isVisible() == true)
+				earPanel.noteEvent(pitch, vel, false);
+		}
+	}
+
 	/**
 	 * Displays splash.png during the loading
 	 * @return 
@@ -85,6 +85,9 @@ public class ClefSelector extends JPanel implements MouseListener
 	/** The key iter. */
 	private ListIterator<String> keyIter;
 
+	/** The pre-rendered symbols, for the current font. */
+	private GlyphCache glyphs;
+
 	/**
 	 * Instantiates a new clef selector.
 	 *
@@ -340,46 +343,41 @@ public class ClefSelector extends JPanel implements MouseListener
 		g.fillRoundRect(5, 5, getWidth()-10, getHeight()-10, 20, 20);
 		g.setColor(fc);
 
+		if (glyphs == null || glyphs.getFont() != getFont())
+			glyphs = new GlyphCache(getFont());
+
 		if (clefSymbol == "C1")
 		{
-			g.setFont(getFont().deriveFont(73f));
-			g.drawString("" + (char)0xBF, 15, 159);
+			glyphs.drawString(g, "" + (char)0xBF, 73f, 15, 159);
 		}
 		else if (clefSymbol == "C2")
 		{
-			g.setFont(getFont().deriveFont(73f));
-			g.drawString("" + (char)0xBF, 15, 145);
+			glyphs.drawString(g, "" + (char)0xBF, 73f, 15, 145);
 		}
 		else if (clefSymbol == "C3")
 		{
-			g.setFont(getFont().deriveFont(73f));
-			g.drawString("" + (char)0xBF, 15, 132);
+			glyphs.drawString(g, "" + (char)0xBF, 73f, 15, 132);
 		}
 		else if (clefSymbol == "C4")
 		{
-			g.setFont(getFont().deriveFont(73f));
-			g.drawString("" + (char)0xBF, 15, 118);
+			glyphs.drawString(g, "" + (char)0xBF, 73f, 15, 118);
 		}
 		else if (clefSymbol == "C5")
 		{
-			g.setFont(getFont().deriveFont(73f));
-			g.drawString("" + (char)0xBF, 15, 104);
+			glyphs.drawString(g, "" + (char)0xBF, 73f, 15, 104);
 		}
 		if (clefSymbol == "G2")
 		{
-			g.setFont(getFont().deriveFont(80f));
-			g.drawString("G", 15, 130);
+			glyphs.drawString(g, "G", 80f, 15, 130);
 		}
 		if (clefSymbol == "F4")
 		{
-			g.setFont(getFont().deriveFont(80f));
-			g.drawString("?", 15, 130);			
+			glyphs.drawString(g, "?", 80f, 15, 130);			
 		}
 		if (enabled == true)
 		{
-			g.setFont(getFont().deriveFont(68f));
 			String ss = "" + (char)0xA9 + (char)0xA9 + (char)0xA9 + (char)0xA9; // staff symbol
-			g.drawString(ss, 15, 128);
+			glyphs.drawString(g, ss, 68f, 15, 128);
 
 			int ypos = 143;
 			for (int i = 0; i < 4; i++, ypos+=14) // draw 3 additional lines below
@@ -388,8 +386,8 @@ public class ClefSelector extends JPanel implements MouseListener
 			for (int i = 0; i < 4; i++, ypos-=14) // draw 3 additional lines above
 				g.fillRect(100, ypos, 32, 2);
 
-			g.drawString("w", 75, 25 + (lowerLevel * 7));
-			g.drawString("w", 105, 25 + (higherLevel * 7));
+			glyphs.drawString(g, "w", 68f, 75, 25 + (lowerLevel * 7));
+			glyphs.drawString(g, "w", 68f, 105, 25 + (higherLevel * 7));
 		}
 	}
 }
@@ -33,11 +33,13 @@
  * ***** END LICENSE BLOCK ***** */
 package calao;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -46,16 +48,27 @@ import org.apache.logging.log4j.Logger;
 /**
  * Concurrency utilities.
  * 
+ * Background computations share a single fork/join pool of named daemon
+ * threads. Its parallelism is read from the <code>calao.parallelism</code>
+ * system property and defaults to the number of processors minus one, so that
+ * the Swing and audio threads always keep a core for themselves.
+ * 
  * @author Piotr Wendykier (piotr.wendykier@gmail.com)
  */
 public class ConcurrencyUtils {
+	private static final Logger logger =  LogManager.getLogger(ConcurrencyUtils.class.getName());
+
+    /**
+     * The system property setting the parallelism of the thread pool.
+     */
+    public static final String PARALLELISM_PROPERTY = "calao.parallelism";
+
     /**
      * Thread pool.
      */
-    private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool(new CustomThreadFactory(new CustomExceptionHandler()));
+    private static final ForkJoinPool THREAD_POOL = new ForkJoinPool(getDefaultParallelism(),
+            new CustomThreadFactory(), new CustomExceptionHandler(), true);
 	
-	
-	private static final Logger logger =  LogManager.getLogger(ConcurrencyUtils.class.getName());
 
     /** The THREAD s_ begi n_ n_1 d_ ff t_2 threads. */
     private static int THREADS_BEGIN_N_1D_FFT_2THREADS = 8192;
@@ -70,7 +83,7 @@ public class ConcurrencyUtils {
     private static int THREADS_BEGIN_N_3D = 65536;
 
     /** The nthreads. */
-    private static int NTHREADS = prevPow2(getNumberOfProcessors());
+    private static int NTHREADS = prevPow2(THREAD_POOL.getParallelism());
 
     /**
      * Instantiates a new concurrency utils.
@@ -94,35 +107,45 @@ public class ConcurrencyUtils {
     }
 
     /**
-     * A factory for creating CustomThread objects.
+     * A factory for creating the named daemon threads of the pool.
      */
-    private static class CustomThreadFactory implements ThreadFactory {
-        
-        /** The Constant defaultFactory. */
-        private static final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+    private static class CustomThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
 
-        /** The handler. */
-        private final Thread.UncaughtExceptionHandler handler;
-
-        /**
-         * Instantiates a new custom thread factory.
-         *
-         * @param handler the handler
-         */
-        CustomThreadFactory(Thread.UncaughtExceptionHandler handler) {
-            this.handler = handler;
-        }
+        /** The number of threads created so far. */
+        private final AtomicInteger threadCount = new AtomicInteger();
 
         /* (non-Javadoc)
-         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         * @see java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory#newThread(java.util.concurrent.ForkJoinPool)
          */
-        public Thread newThread(Runnable r) {
-            Thread t = defaultFactory.newThread(r);
-            t.setUncaughtExceptionHandler(handler);
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {
+            };
+            t.setName("Calao worker " + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
             return t;
         }
     };
 
+    /**
+     * Reads the parallelism of the thread pool from the system property,
+     * falling back to the number of processors minus one.
+     *
+     * @return the parallelism, at least 1
+     */
+    private static int getDefaultParallelism() {
+        int parallelism = getNumberOfProcessors() - 1;
+        String property = System.getProperty(PARALLELISM_PROPERTY);
+        if (property != null) {
+            try {
+                parallelism = Integer.parseInt(property.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid " + PARALLELISM_PROPERTY + ": " + property);
+            }
+        }
+        return Math.max(1, parallelism);
+    }
+
     /**
      * Returns the number of available processors.
      * 
@@ -144,11 +167,13 @@ public class ConcurrencyUtils {
     /**
      * Sets the number of threads. If n is not a power-of-two number, then the
      * number of threads is set to the closest power-of-two number less than n.
+     * The number of threads is capped to the parallelism of the thread pool,
+     * as more would only queue up.
      *
      * @param n the new number of threads
      */
     public static void setNumberOfThreads(int n) {
-        NTHREADS = prevPow2(n);
+        NTHREADS = prevPow2(Math.min(n, THREAD_POOL.getParallelism()));
     }
 
     /**
@@ -306,9 +331,9 @@ public class ConcurrencyUtils {
      */
     public static void sleep(long millis) {
         try {
-            Thread.sleep(5000);
+            Thread.sleep(millis);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -323,6 +348,57 @@ public class ConcurrencyUtils {
         return THREAD_POOL.submit(task);
     }
 
+    /**
+     * Submits a value-returning task for execution and returns a Future
+     * representing the pending result of the task.
+     *
+     * @param <T> the type of the result
+     * @param task a Callable task for execution
+     * @return a Future representing the task
+     */
+    public static <T> Future<T> submit(Callable<T> task) {
+        return THREAD_POOL.submit(task);
+    }
+
+    /**
+     * Returns the shared thread pool, for the computations that need more
+     * than {@link #submit(Runnable)}. It must not be shut down.
+     *
+     * @return the shared thread pool
+     */
+    public static ExecutorService getExecutor() {
+        return THREAD_POOL;
+    }
+
+    /**
+     * Returns the parallelism of the shared thread pool.
+     *
+     * @return the maximum number of threads running tasks at once
+     */
+    public static int getParallelism() {
+        return THREAD_POOL.getParallelism();
+    }
+
+    /**
+     * Returns an estimate of the number of threads of the shared thread pool
+     * currently running a task.
+     *
+     * @return the number of active tasks
+     */
+    public static int getActiveTaskCount() {
+        return THREAD_POOL.getActiveThreadCount();
+    }
+
+    /**
+     * Returns an estimate of the number of tasks waiting in the queues of the
+     * shared thread pool.
+     *
+     * @return the queue depth
+     */
+    public static long getQueuedTaskCount() {
+        return THREAD_POOL.getQueuedSubmissionCount() + THREAD_POOL.getQueuedTaskCount();
+    }
+
     /**
      * Waits for all threads to complete computation.
      *
@@ -0,0 +1,568 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jpab.Device;
+import org.jpab.PortAudio;
+import org.jpab.PortAudioException;
+
+/**
+ * Keeps the list of the MIDI input devices up to date, in the background.
+ *
+ * Finding out whether a device is an input means asking its driver, which
+ * can be slow, so it is done once per device on the registry thread and
+ * remembered, in the preferences too once they are set. The list is then
+ * polled for devices plugged or unplugged, and listeners are told when it
+ * changes.
+ *
+ * Each device gets an id made of its name, vendor and description, which
+ * stays the same across runs and replugs, unlike its position in the list.
+ * Identical devices are told apart by their order.
+ *
+ * The PortAudio devices are listed on the registry thread too, but only on
+ * request: PortAudio sees the devices present when it is first initialized
+ * only, and loading it is not needed when the audio input is not used.
+ *
+ * @author Neonunux
+ */
+public class DeviceRegistry extends Thread {
+
+	private static final Logger logger = LogManager
+			.getLogger(DeviceRegistry.class.getName());
+
+	/**
+	 * Receives the device list changes, on the registry thread.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when devices were plugged or unplugged.
+		 *
+		 * @param registry
+		 *            the registry
+		 */
+		void devicesChanged(DeviceRegistry registry);
+	}
+
+	/**
+	 * A MIDI input device.
+	 */
+	public static class MidiInput {
+
+		/** The device info. */
+		private final MidiDevice.Info info;
+
+		/** The id. */
+		private final String id;
+
+		/**
+		 * Instantiates a new MIDI input.
+		 *
+		 * @param info
+		 *            the device info
+		 * @param id
+		 *            the id
+		 */
+		MidiInput(MidiDevice.Info info, String id) {
+			this.info = info;
+			this.id = id;
+		}
+
+		/**
+		 * Gets the device info.
+		 *
+		 * @return the info
+		 */
+		public MidiDevice.Info getInfo() {
+			return info;
+		}
+
+		/**
+		 * Gets the id, stable across runs.
+		 *
+		 * @return the id
+		 */
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * Gets the name to display.
+		 *
+		 * @return the name
+		 */
+		public String getName() {
+			return info.getName();
+		}
+	}
+
+	/**
+	 * A PortAudio device.
+	 */
+	public static class AudioDevice {
+
+		/** The device. */
+		private final Device device;
+
+		/** The name. */
+		private final String name;
+
+		/**
+		 * Instantiates a new audio device.
+		 *
+		 * @param device
+		 *            the device
+		 * @param name
+		 *            the name, with the host API
+		 */
+		AudioDevice(Device device, String name) {
+			this.device = device;
+			this.name = name;
+		}
+
+		/**
+		 * Gets the PortAudio device.
+		 *
+		 * @return the device
+		 */
+		public Device getDevice() {
+			return device;
+		}
+
+		/**
+		 * Gets the name to display, with the host API.
+		 *
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+	}
+
+	/** The preference remembering which devices are inputs, across runs. */
+	static final String CACHE_PREFERENCE = "midiDeviceCache";
+
+	/** The time between two polls of the device list. */
+	static final long POLL_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	/** The registry shared by the application. */
+	private static DeviceRegistry defaultRegistry = null;
+
+	/** The MIDI inputs found by the last scan. */
+	private volatile List<MidiInput> midiInputs = Collections.emptyList();
+
+	/** Whether each device seen is an input, by id. */
+	private final HashMap<String, Boolean> inputDevices = new HashMap<String, Boolean>();
+
+	/** The preferences storing the input devices, or null. */
+	private Preferences prefs = null;
+
+	/** Whether devices were asked since the preferences were last updated. */
+	private boolean cacheChanged = false;
+
+	/** Whether the preferences were updated since {@link #checkCacheChanged()}. */
+	private final AtomicBoolean cacheUnsaved = new AtomicBoolean(false);
+
+	/** The PortAudio devices found by the last audio scan, in the PortAudio order. */
+	private volatile List<AudioDevice> audioDevices = Collections.emptyList();
+
+	/** Whether an audio scan is requested. */
+	private final AtomicBoolean audioScanRequested = new AtomicBoolean(false);
+
+	/** The listeners. */
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	/** Released once the first scan is done. */
+	private final CountDownLatch firstScan = new CountDownLatch(1);
+
+	/** The running. */
+	private volatile boolean running = true;
+
+	/**
+	 * Instantiates a new device registry. Call {@link #start()} to scan.
+	 */
+	public DeviceRegistry() {
+		super("Device registry");
+		setDaemon(true);
+		setPriority(Thread.MIN_PRIORITY);
+	}
+
+	/**
+	 * Gets the registry shared by the application, started on first use.
+	 *
+	 * @return the registry
+	 */
+	public static synchronized DeviceRegistry getDefault() {
+		if (defaultRegistry == null) {
+			defaultRegistry = new DeviceRegistry();
+			defaultRegistry.start();
+		}
+		return defaultRegistry;
+	}
+
+	/**
+	 * Computes the ids of devices. The second of two identical devices gets
+	 * "#2" appended, and so on.
+	 *
+	 * @param infos
+	 *            the device infos
+	 * @return the ids, in the same order
+	 */
+	static String[] deviceIds(MidiDevice.Info[] infos) {
+		String[] ids = new String[infos.length];
+		HashMap<String, Integer> seen = new HashMap<String, Integer>();
+		for (int i = 0; i < infos.length; i++) {
+			String id = infos[i].getName() + "|" + infos[i].getVendor() + "|"
+					+ infos[i].getDescription();
+			Integer count = seen.get(id);
+			count = (count == null) ? 1 : count + 1;
+			seen.put(id, count);
+			ids[i] = (count == 1) ? id : id + "#" + count;
+		}
+		return ids;
+	}
+
+	/**
+	 * Sets the preferences remembering the input devices across runs, and
+	 * reads the devices remembered.
+	 *
+	 * @param prefs
+	 *            the preferences
+	 */
+	public synchronized void setPreferences(Preferences prefs) {
+		this.prefs = prefs;
+		String cache = prefs.getProperty(CACHE_PREFERENCE);
+		if (cache != "-1") {
+			loadCache(cache);
+		}
+	}
+
+	/**
+	 * Reads the devices remembered, one per line: 1 for an input or 0,
+	 * followed by the id. Devices already known are kept.
+	 *
+	 * @param cache
+	 *            the devices remembered
+	 */
+	synchronized void loadCache(String cache) {
+		for (String entry : cache.split("\n")) {
+			String id = entry.substring(Math.min(1, entry.length()));
+			if (id.length() > 0 && inputDevices.containsKey(id) == false) {
+				inputDevices.put(id, entry.charAt(0) == '1');
+			}
+		}
+	}
+
+	/**
+	 * Gets the devices to remember, in the format of
+	 * {@link #loadCache(String)}.
+	 *
+	 * @return the devices to remember
+	 */
+	synchronized String getCache() {
+		StringBuilder cache = new StringBuilder();
+		for (String id : inputDevices.keySet()) {
+			cache.append(inputDevices.get(id) ? '1' : '0').append(id).append('\n');
+		}
+		return cache.toString();
+	}
+
+	/**
+	 * Checks whether the devices remembered changed since the last call, in
+	 * which case the preferences need saving.
+	 *
+	 * @return true, if the preferences need saving
+	 */
+	public boolean checkCacheChanged() {
+		return cacheUnsaved.getAndSet(false);
+	}
+
+	/**
+	 * Checks if a device is an input, asking its driver the first time only.
+	 *
+	 * @param info
+	 *            the device info
+	 * @param id
+	 *            the id
+	 * @return true, if the device has transmitters
+	 */
+	synchronized boolean isInput(MidiDevice.Info info, String id) {
+		Boolean input = inputDevices.get(id);
+		if (input == null) {
+			try {
+				input = MidiSystem.getMidiDevice(info).getMaxTransmitters() != 0;
+			} catch (MidiUnavailableException e) {
+				input = false;
+			}
+			inputDevices.put(id, input);
+			cacheChanged = true;
+		}
+		return input;
+	}
+
+	/**
+	 * Scans the MIDI devices.
+	 *
+	 * @return true, if the inputs changed since the last scan
+	 */
+	synchronized boolean scan() {
+		MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
+		String[] ids = deviceIds(infos);
+		List<MidiInput> inputs = new ArrayList<MidiInput>();
+		for (int i = 0; i < infos.length; i++) {
+			if (isInput(infos[i], ids[i])) {
+				inputs.add(new MidiInput(infos[i], ids[i]));
+			}
+		}
+
+		// stored along with the other preferences
+		if (cacheChanged && prefs != null) {
+			prefs.setProperty(CACHE_PREFERENCE, getCache());
+			cacheChanged = false;
+			cacheUnsaved.set(true);
+		}
+
+		List<MidiInput> previous = midiInputs;
+		boolean changed = previous.size() != inputs.size();
+		for (int i = 0; !changed && i < inputs.size(); i++) {
+			changed = !previous.get(i).getId().equals(inputs.get(i).getId());
+		}
+		if (changed) {
+			midiInputs = Collections.unmodifiableList(inputs);
+		}
+		return changed;
+	}
+
+	/**
+	 * Scans the PortAudio devices.
+	 *
+	 * @return true, if the devices changed since the last scan
+	 */
+	boolean scanAudio() {
+		List<AudioDevice> devices = new ArrayList<AudioDevice>();
+		try {
+			PortAudio.initialize();
+			try {
+				for (Device device : PortAudio.getDevices()) {
+					devices.add(new AudioDevice(device, device.getName() + " ["
+							+ device.getHostAPI().getType() + "]"));
+				}
+			} finally {
+				PortAudio.terminate();
+			}
+		} catch (PortAudioException e) {
+			logger.error("Audio device scan failed: " + e);
+			return false;
+		} catch (LinkageError e) {
+			logger.error("PortAudio is not available: " + e);
+			return false;
+		}
+
+		List<AudioDevice> previous = audioDevices;
+		boolean changed = previous.size() != devices.size();
+		for (int i = 0; !changed && i < devices.size(); i++) {
+			changed = !previous.get(i).getName().equals(devices.get(i).getName());
+		}
+		if (changed) {
+			audioDevices = Collections.unmodifiableList(devices);
+		}
+		return changed;
+	}
+
+	/**
+	 * Gets the MIDI inputs, in the order of the system. Empty until the
+	 * first scan is done.
+	 *
+	 * @return the inputs
+	 */
+	public List<MidiInput> getMidiInputs() {
+		return midiInputs;
+	}
+
+	/**
+	 * Gets the PortAudio devices, in the order of PortAudio. Empty until an
+	 * audio scan is done, see {@link #refreshAudio()}.
+	 *
+	 * @return the devices
+	 */
+	public List<AudioDevice> getAudioDevices() {
+		return audioDevices;
+	}
+
+	/**
+	 * Waits for the first scan.
+	 *
+	 * @param timeout
+	 *            the timeout
+	 * @param unit
+	 *            the timeout unit
+	 * @return true, if the first scan is done
+	 */
+	public boolean awaitFirstScan(long timeout, TimeUnit unit) {
+		try {
+			return firstScan.await(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Finds a MIDI input by id. A device that was selected before is found
+	 * without waiting for the scan, since it is known to be an input.
+	 *
+	 * @param id
+	 *            the id
+	 * @return the input, or null if not plugged
+	 */
+	public MidiInput findMidiInput(String id) {
+		for (MidiInput input : midiInputs) {
+			if (input.getId().equals(id)) {
+				return input;
+			}
+		}
+		MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
+		String[] ids = deviceIds(infos);
+		for (int i = 0; i < infos.length; i++) {
+			if (ids[i].equals(id)) {
+				return new MidiInput(infos[i], id);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds a MIDI input by its position in the list, as selected by older
+	 * versions. Waits for the first scan.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the input, or null if there is none at this index
+	 */
+	public MidiInput getMidiInput(int index) {
+		awaitFirstScan(10, TimeUnit.SECONDS);
+		List<MidiInput> inputs = midiInputs;
+		if (index < 0 || index >= inputs.size()) {
+			return null;
+		}
+		return inputs.get(index);
+	}
+
+	/**
+	 * Gets the position of a MIDI input in the list.
+	 *
+	 * @param id
+	 *            the id
+	 * @return the index, or -1 if not found
+	 */
+	public int indexOf(String id) {
+		List<MidiInput> inputs = midiInputs;
+		for (int i = 0; i < inputs.size(); i++) {
+			if (inputs.get(i).getId().equals(id)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a listener.
+	 *
+	 * @param listener
+	 *            the listener
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener.
+	 *
+	 * @param listener
+	 *            the listener
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Scans again now rather than at the next poll.
+	 */
+	public void refresh() {
+		LockSupport.unpark(this);
+	}
+
+	/**
+	 * Scans the PortAudio devices again, at once but without waiting. The
+	 * listeners are told if the devices changed.
+	 */
+	public void refreshAudio() {
+		audioScanRequested.set(true);
+		LockSupport.unpark(this);
+	}
+
+	/**
+	 * Stops the thread after the scan in progress.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 */
+	public void run() {
+		while (running) {
+			boolean scanAudio = audioScanRequested.getAndSet(false);
+			try {
+				boolean changed = scan();
+				if (scanAudio && scanAudio()) {
+					logger.debug("[DeviceRegistry] " + audioDevices.size() + " audio devices");
+					changed = true;
+				}
+				if (changed) {
+					logger.debug("[DeviceRegistry] " + midiInputs.size() + " MIDI inputs");
+					for (Listener listener : listeners) {
+						listener.devicesChanged(this);
+					}
+				}
+			} catch (RuntimeException e) {
+				logger.error("Device scan failed: " + e);
+			}
+			firstScan.countDown();
+			LockSupport.parkNanos(this, POLL_INTERVAL_NANOS);
+		}
+	}
+}
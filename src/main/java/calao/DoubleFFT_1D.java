@@ -33,6 +33,7 @@
  * ***** END LICENSE BLOCK ***** */
 package calao;
 
+import java.util.Arrays;
 import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
@@ -46,7 +47,11 @@ import org.apache.logging.log4j.Logger;
  * <br>
  * This code is derived from General Purpose FFT Package written by Takuya Ooura
  * (http://www.kurims.kyoto-u.ac.jp/~ooura/fft.html) and from JFFTPack written
- * by Baoshe Zhang (http://jfftpack.sourceforge.net/)
+ * by Baoshe Zhang (http://jfftpack.sourceforge.net/) <br>
+ * <br>
+ * Work buffers are allocated once by the constructor and reused by every
+ * transform, so an instance must not be shared between threads calling it
+ * concurrently.
  * 
  * @author Piotr Wendykier (piotr.wendykier@gmail.com)
  * 
@@ -102,6 +107,24 @@ public class DoubleFFT_1D {
 	/** The plan. */
 	private Plans plan;
 
+	/** The bluestein work buffer. */
+	private double[] ak;
+
+	/** The mixed radix work buffer. */
+	private double[] ch;
+
+	/** The mixed radix passfg flag. */
+	private int[] nac;
+
+	/** The half size plan used by the real transforms of even sizes. */
+	private DoubleFFT_1D fftHalf;
+
+	/** The twiddle factors of the real transforms of even sizes. */
+	private double[] wtable_rf;
+
+	/** The complex work buffer of the real transforms of odd sizes. */
+	private double[] ar;
+
 	/** The Constant factors. */
 	private static final int[] factors = { 4, 2, 3, 5 };
 
@@ -129,6 +152,7 @@ public class DoubleFFT_1D {
 				nBluestein = ConcurrencyUtils.nextPow2(n * 2 - 1);
 				bk1 = new double[2 * nBluestein];
 				bk2 = new double[2 * nBluestein];
+				ak = new double[2 * nBluestein];
 				this.ip = new int[2 + (int) Math.ceil(2 + (1 << (int) (Math
 						.log(nBluestein + 0.5) / Math.log(2)) / 2))];
 				this.w = new double[nBluestein];
@@ -148,6 +172,8 @@ public class DoubleFFT_1D {
 				plan = Plans.MIXED_RADIX;
 				wtable = new double[4 * n + 15];
 				wtable_r = new double[2 * n + 15];
+				ch = new double[2 * n];
+				nac = new int[1];
 				cffti();
 				rffti();
 			}
@@ -222,6 +248,140 @@ public class DoubleFFT_1D {
 		}
 	}
 
+	/**
+	 * Computes 1D forward DFT of real data leaving the result in <code>a</code>
+	 * . The physical layout of the output data is as follows:<br>
+	 * 
+	 * if n is even then
+	 * 
+	 * <pre>
+	 * a[2*k] = Re[k], 0&lt;=k&lt;n/2
+	 * a[2*k+1] = Im[k], 0&lt;k&lt;n/2
+	 * a[1] = Re[n/2]
+	 * </pre>
+	 * 
+	 * if n is odd then
+	 * 
+	 * <pre>
+	 * a[2*k] = Re[k], 0&lt;=k&lt;(n+1)/2
+	 * a[2*k+1] = Im[k], 0&lt;k&lt;(n-1)/2
+	 * a[1] = Im[(n-1)/2]
+	 * </pre>
+	 * 
+	 * This method computes only half of the elements of the real transform.
+	 * The other half satisfies the symmetry condition. If you want the full
+	 * real forward transform, use <code>realForwardFull</code>.
+	 * 
+	 * @param a
+	 *            data to transform
+	 */
+	public void realForward(double[] a) {
+		realForward(a, 0);
+	}
+
+	/**
+	 * Computes 1D forward DFT of real data leaving the result in <code>a</code>
+	 * . The physical layout of the output data is as follows:<br>
+	 * 
+	 * if n is even then
+	 * 
+	 * <pre>
+	 * a[offa+2*k] = Re[k], 0&lt;=k&lt;n/2
+	 * a[offa+2*k+1] = Im[k], 0&lt;k&lt;n/2
+	 * a[offa+1] = Re[n/2]
+	 * </pre>
+	 * 
+	 * if n is odd then
+	 * 
+	 * <pre>
+	 * a[offa+2*k] = Re[k], 0&lt;=k&lt;(n+1)/2
+	 * a[offa+2*k+1] = Im[k], 0&lt;k&lt;(n-1)/2
+	 * a[offa+1] = Im[(n-1)/2]
+	 * </pre>
+	 * 
+	 * Even sizes are computed with a complex transform of size n/2 whatever
+	 * the plan, odd sizes go through the complex transform of size n.
+	 * 
+	 * @param a
+	 *            data to transform
+	 * @param offa
+	 *            index of the first element in array <code>a</code>
+	 */
+	public void realForward(double[] a, int offa) {
+		if (n == 1)
+			return;
+		if (n % 2 == 0) {
+			if (fftHalf == null) {
+				rfftevi();
+			}
+			rfftevf(a, offa);
+		} else {
+			if (ar == null) {
+				ar = new double[2 * n];
+			}
+			rfftodf(a, offa);
+			a[offa] = ar[0];
+			a[offa + 1] = ar[n];
+			for (int k = 2; k < n; k++) {
+				a[offa + k] = ar[k];
+			}
+		}
+	}
+
+	/**
+	 * Computes 1D forward DFT of real data leaving the result in <code>a</code>
+	 * . This method computes the full real forward transform, i.e. you will get
+	 * the same result as from <code>complexForward</code> called with all
+	 * imaginary parts equal 0. Because the result is stored in <code>a</code>,
+	 * the size of the input array must greater or equal 2*n, with only the
+	 * first n elements filled with real data.
+	 * 
+	 * @param a
+	 *            data to transform
+	 */
+	public void realForwardFull(double[] a) {
+		realForwardFull(a, 0);
+	}
+
+	/**
+	 * Computes 1D forward DFT of real data leaving the result in <code>a</code>
+	 * . This method computes the full real forward transform, i.e. you will get
+	 * the same result as from <code>complexForward</code> called with all
+	 * imaginary part equal 0. Because the result is stored in <code>a</code>,
+	 * the size of the input array must greater or equal 2*n, with only the
+	 * first n elements filled with real data.
+	 * 
+	 * @param a
+	 *            data to transform
+	 * @param offa
+	 *            index of the first element in array <code>a</code>
+	 */
+	public void realForwardFull(double[] a, int offa) {
+		if (n == 1) {
+			a[offa + 1] = 0;
+			return;
+		}
+		if (n % 2 == 0) {
+			realForward(a, offa);
+			// Re[k] and Im[k] are already in place for 0<k<n/2
+			for (int k = 1; k < n / 2; k++) {
+				int idx1 = offa + 2 * k;
+				int idx2 = offa + 2 * (n - k);
+				a[idx2] = a[idx1];
+				a[idx2 + 1] = -a[idx1 + 1];
+			}
+			a[offa + n] = a[offa + 1];
+			a[offa + n + 1] = 0;
+			a[offa + 1] = 0;
+		} else {
+			if (ar == null) {
+				ar = new double[2 * n];
+			}
+			rfftodf(a, offa);
+			System.arraycopy(ar, 0, a, offa, 2 * n);
+		}
+	}
+
 	/**
 	 * Gets the reminder.
 	 *
@@ -541,6 +701,89 @@ public class DoubleFFT_1D {
 		cftbsub(2 * nBluestein, bk2, 0, ip, nw, w);
 	}
 
+	/**
+	 * Initialization of the real transform of even size: half size complex
+	 * plan and twiddle factors exp(-2*PI*i*k/n), 0&lt;=k&lt;=n/4.
+	 */
+	private void rfftevi() {
+		int m = n / 2;
+		int nt = m / 2 + 1;
+		wtable_rf = new double[2 * nt];
+		double delta = TWO_PI / n;
+		for (int k = 0; k < nt; k++) {
+			wtable_rf[2 * k] = Math.cos(delta * k);
+			wtable_rf[2 * k + 1] = -Math.sin(delta * k);
+		}
+		fftHalf = new DoubleFFT_1D(m);
+	}
+
+	/**
+	 * Real forward transform of even size. The n real values are seen as n/2
+	 * complex values z[k] = x[2k] + i*x[2k+1] and transformed in place; the
+	 * spectrum of x is then split out of Z:
+	 * 
+	 * <pre>
+	 * X[k] = (Z[k] + conj(Z[n/2-k])) / 2 + w^k * (Z[k] - conj(Z[n/2-k])) / 2i
+	 * X[n/2-k] = conj((Z[k] + conj(Z[n/2-k])) / 2 - w^k * (Z[k] - conj(Z[n/2-k])) / 2i)
+	 * </pre>
+	 *
+	 * @param a
+	 *            the a
+	 * @param offa
+	 *            the offa
+	 */
+	private void rfftevf(double[] a, int offa) {
+		int m = n / 2;
+		fftHalf.complexForward(a, offa);
+
+		double z0r = a[offa];
+		double z0i = a[offa + 1];
+		a[offa] = z0r + z0i;
+		a[offa + 1] = z0r - z0i;
+
+		for (int k = 1, j = m - 1; k <= j; k++, j--) {
+			int idx1 = offa + 2 * k;
+			int idx2 = offa + 2 * j;
+			double zkr = a[idx1];
+			double zki = a[idx1 + 1];
+			double zjr = a[idx2];
+			double zji = a[idx2 + 1];
+			// even part
+			double er = 0.5 * (zkr + zjr);
+			double ei = 0.5 * (zki - zji);
+			// odd part
+			double or = 0.5 * (zki + zji);
+			double oi = -0.5 * (zkr - zjr);
+			double wr = wtable_rf[2 * k];
+			double wi = wtable_rf[2 * k + 1];
+			double tr = wr * or - wi * oi;
+			double ti = wr * oi + wi * or;
+			a[idx1] = er + tr;
+			a[idx1 + 1] = ei + ti;
+			if (j != k) {
+				a[idx2] = er - tr;
+				a[idx2 + 1] = ti - ei;
+			}
+		}
+	}
+
+	/**
+	 * Real forward transform of odd size, computed as a complex transform in
+	 * the <code>ar</code> work buffer.
+	 *
+	 * @param a
+	 *            the a
+	 * @param offa
+	 *            the offa
+	 */
+	private void rfftodf(double[] a, int offa) {
+		for (int k = 0; k < n; k++) {
+			ar[2 * k] = a[offa + k];
+			ar[2 * k + 1] = 0;
+		}
+		complexForward(ar, 0);
+	}
+
 	/**
 	 * Makewt.
 	 *
@@ -675,7 +918,8 @@ public class DoubleFFT_1D {
 	 */
 	private void bluestein_complex(final double[] a, final int offa,
 			final int isign) {
-		final double[] ak = new double[2 * nBluestein];
+		final double[] ak = this.ak;
+		Arrays.fill(ak, 2 * n, 2 * nBluestein, 0);
 		int nthreads = 1;
 		int threads = ConcurrencyUtils.getNumberOfThreads();
 		if ((threads > 1)
@@ -871,11 +1115,9 @@ public class DoubleFFT_1D {
 		int idot;
 		int l1, l2;
 		int na, nf, ip, iw, ido, idl1;
-		int[] nac = new int[1];
 		final int twon = 2 * n;
 
 		int iw1, iw2;
-		double[] ch = new double[twon];
 
 		iw1 = twon;
 		iw2 = 4 * n;
@@ -29,12 +29,14 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ResourceBundle;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -118,11 +120,14 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 	/** The current speed. */
 	private int currentSpeed = 6;
 	
-	/** The game thread. */
-	private EarTrainingGameThread gameThread = null;
+	/** The duration of a step of the game loop. */
+	private static final long GAME_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/** The game loop. */
+	private GameLoop gameLoop = null;
 	
-	/** The game started. */
-	private boolean gameStarted = false; 
+	/** The game. */
+	private EarTrainingGame game = null;
 	
 	/** The game type. */
 	private int gameType = -1;
@@ -351,9 +356,10 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 		gameBar.precisionCnt.setText("");
 		gameBar.scoreCnt.setText("");
 		gameBar.progress.setValue(20);
-		gameThread = new EarTrainingGameThread();
-		gameStarted = true;
-		gameThread.start();
+		game = new EarTrainingGame();
+		// nothing moves, a frame per step is enough
+		gameLoop = new GameLoop("Ear training game", game, GAME_STEP_NANOS, GAME_STEP_NANOS);
+		gameLoop.start();
 		sBar.playBtn.setButtonImage(new ImageIcon(getClass().getResource("stop.png")).getImage());
 		sBar.playBtn.repaint();
 	}
@@ -365,13 +371,12 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 	{
 		if (gameType == appPrefs.GAME_STOPPED)
 			return;
-		if (gameThread != null && gameThread.isAlive() == true)
+		if (gameLoop != null && gameLoop.isRunning() == true)
 		{
 			/* ************** STOP CURRENT GAME ***************** */
-			gameStarted = false;
+			gameLoop.shutdown();
 			sBar.playBtn.setButtonImage(new ImageIcon(getClass().getResource("playback.png")).getImage());
-			for (int i = 0; i < gameNotes.size(); i++)
-				appMidi.stopNote(gameNotes.get(i).pitch, 0);
+			appMidi.stopNotes(gameNotes);
 			gameNotes.clear();
 			gameType = appPrefs.GAME_STOPPED;
 		}
@@ -446,8 +451,8 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 			gameFinished(true);
 		else if (gameBar.progress.getValue() == 0)
 			gameFinished(false);
-		else if (gameThread != null)
-			gameThread.resetTimer();
+		else if (game != null)
+			game.resetTimer();
 	}
 	
 	/**
@@ -500,13 +505,24 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 	 */
 	private void showQuestion()
 	{
-		if (gameNotes.size() > 0)
+		showQuestionLabel(gameNotes.size() > 0 ? gameNotes.get(0) : null);
+		appMidi.stopNotes(gameNotes);
+	}
+	
+	/**
+	 * Shows the note asked in the question label.
+	 *
+	 * @param note the note asked, or null
+	 */
+	private void showQuestionLabel(Note note)
+	{
+		if (note != null)
 		{
 			int alt = 0;
-			int noteIdx = piano.getNoteIndexFromPitch(gameNotes.get(0).pitch);
+			int noteIdx = piano.getNoteIndexFromPitch(note.pitch);
 			int octave = -1;
 			if (gameSubType == 2 || gameSubType == 3)
-				octave = piano.getOctaveFromPitch(gameNotes.get(0).pitch);
+				octave = piano.getOctaveFromPitch(note.pitch);
 			if (noteIdx >= 100)
 			{
 				alt = 1;
@@ -515,8 +531,25 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 			setLabelInfo(questionLabel, noteIdx, octave, alt);
 		}
 		questionLabel.setIcon(null);
-		for (int i = 0; i < gameNotes.size(); i++)
-			appMidi.stopNote(gameNotes.get(i).pitch, 0);
+	}
+	
+	/**
+	 * Updates the components on the event dispatch thread, unless the game
+	 * the update comes from is over by then.
+	 *
+	 * @param update the update
+	 */
+	private void postGameUpdate(final Runnable update)
+	{
+		final EarTrainingGame current = game;
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				if (game == current && gameLoop != null && gameLoop.isRunning() == true)
+					update.run();
+			}
+		});
 	}
 	
 	/**
@@ -526,15 +559,11 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 	 */
 	private void gameFinished(boolean win)
 	{
-		gameStarted = false;
+		if (gameLoop != null)
+			gameLoop.shutdown();
 		sBar.playBtn.setButtonImage(new ImageIcon(getClass().getResource("playback.png")).getImage());
 		refreshPanel();
-		for (int i = 0; i < gameNotes.size(); i++)
-		{
-			appMidi.stopNote(gameNotes.get(i).pitch, 0);
-			//if (gameType == appPrefs.INLINE_LEARN_NOTES)
-			//	setLearningInfo(gameNotes.get(i).pitch, false);
-		}
+		appMidi.stopNotes(gameNotes);
 		gameNotes.clear();
 		gameType = appPrefs.GAME_STOPPED;
 
@@ -598,7 +627,7 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 	{
 		if (ae.getSource() == sBar.playBtn)
 		{
-			if (gameThread != null && gameThread.isAlive() == true)
+			if (gameLoop != null && gameLoop.isRunning() == true)
 			{
 				/* ************** STOP CURRENT GAME ***************** */
 				stopGame();
@@ -644,18 +673,19 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 	}
 	
 	/**
-	 * The Class EarTrainingGameThread.
+	 * The ear training game, run by the game loop: plays a note, then waits
+	 * for the answer until the timeout.
 	 */
-	private class EarTrainingGameThread extends Thread 
+	private class EarTrainingGame implements GameLoop.Game
 	{
 		
 		/** The need new note. */
 		boolean needNewNote = true;
 		
-		/** The pause between notes. */
+		/** The pause between notes, in steps. */
 		int pauseBetweenNotes = 20;
 		
-		/** The note timeout. */
+		/** The note timeout, in steps. */
 		int noteTimeout = (currentSpeed * 10) + pauseBetweenNotes;
 		
 		/** The timeout counter. */
@@ -666,50 +696,66 @@ public class EarTrainingPanel extends JPanel implements ActionListener
 		 */
 		public void resetTimer()
 		{
-			timeoutCounter = 0;
-			needNewNote = true;
+			synchronized (gameNotes)
+			{
+				timeoutCounter = 0;
+				needNewNote = true;
+			}
 		}
 
 		/* (non-Javadoc)
-		 * @see java.lang.Thread#run()
+		 * @see calao.GameLoop.Game#step(long)
 		 */
-		public void run() 
+		public void step(long stepNanos)
 		{
-			while (gameStarted) 
+			synchronized (gameNotes)
 			{
-				try
+				if (needNewNote == true && timeoutCounter > pauseBetweenNotes)
 				{
-					if (needNewNote == true && timeoutCounter > pauseBetweenNotes)
-					{
-						Note newNote = null;
-						if (gameSubType == 2) newNote = earNG.getRandomNote(0, true, -1); // alterations only on advanced game
-						else newNote = earNG.getRandomNote(0, false, -1);
-						
-						gameNotes.add(newNote);
-						appMidi.playNote(newNote.pitch, 90);
-						needNewNote = false;
-						questionLabel.setText("");
-						answerLabel.setText("");
-						commentLabel.setText("");
-						questionLabel.setIcon(listenIcon);
-						questionLabel.setVisible(true);
-					}
+					Note newNote = null;
+					if (gameSubType == 2) newNote = earNG.getRandomNote(0, true, -1); // alterations only on advanced game
+					else newNote = earNG.getRandomNote(0, false, -1);
 					
-					if (timeoutCounter == noteTimeout) // timed out without an answer
+					gameNotes.add(newNote);
+					appMidi.playNote(newNote.pitch, 90);
+					needNewNote = false;
+					postGameUpdate(new Runnable()
 					{
-						for (int i = 0; i < gameNotes.size(); i++) {
-							appMidi.stopNote(gameNotes.get(i).pitch, 0);
+						public void run()
+						{
+							questionLabel.setText("");
+							answerLabel.setText("");
+							commentLabel.setText("");
+							questionLabel.setIcon(listenIcon);
+							questionLabel.setVisible(true);
 						}
-						needNewNote = true;
-						timeoutCounter = 0;
-						showQuestion();
-						gameNotes.clear();
-					}
-					timeoutCounter++;
-					sleep(100);
+					});
 				}
-				catch (Exception e) {  }
+				
+				if (timeoutCounter == noteTimeout) // timed out without an answer
+				{
+					final Note question = gameNotes.size() > 0 ? gameNotes.get(0) : null;
+					appMidi.stopNotes(gameNotes);
+					needNewNote = true;
+					timeoutCounter = 0;
+					gameNotes.clear();
+					postGameUpdate(new Runnable()
+					{
+						public void run()
+						{
+							showQuestionLabel(question);
+						}
+					});
+				}
+				timeoutCounter++;
 			}
 		}
+
+		/* (non-Javadoc)
+		 * @see calao.GameLoop.Game#render(double)
+		 */
+		public void render(double alpha)
+		{
+		}
 	}
 }
@@ -27,9 +27,6 @@ import java.beans.PropertyChangeListener;
 import java.util.ResourceBundle;
 import java.util.Vector;
 
-import javax.sound.midi.MetaEventListener;
-import javax.sound.midi.MetaMessage;
-import javax.sound.midi.Sequencer;
 import javax.swing.ImageIcon;
 import javax.swing.JDialog;
 import javax.swing.JLayeredPane;
@@ -99,9 +96,6 @@ public class ExerciseScoreEditor extends JDialog implements ActionListener, Prop
 	/** The exercise ng. */
 	private NoteGenerator exerciseNG;
 	
-	/** The playback. */
-	private Sequencer playback;
-
 	/** The remove note button. */
 	RoundedButton removeNoteButton;
 	
@@ -749,13 +743,11 @@ public class ExerciseScoreEditor extends JDialog implements ActionListener, Prop
 				Vector<Note> tmpSequence = new Vector<Note>(); 
 				tmpSequence.addAll(currExercise.notes);
 				tmpSequence.addAll(currExercise.notes2);
-				playback = appMidi.createPlayback(appPrefs, currExercise.speed, tmpSequence, timeDenominator / 4, true, 0);
-				playback.addMetaEventListener(new MetaEventListener() {
-			          public void meta(MetaMessage meta) 
+				appMidi.createPlayback(appPrefs, currExercise.speed, tmpSequence, timeDenominator / 4, true, 0);
+				appMidi.addPlaybackListener(new PlaybackEvent.Listener() {
+			          public void playbackEvent(int type, int argument) 
 			          {
-			        	  byte[] metaData = meta.getData();
-			              String strData = new String(metaData);
-			        	  if ("end".equals(strData))
+			        	  if (type == PlaybackEvent.END)
 			              {
 			        		appMidi.stopPlayback();
 			  				playBtn.setButtonImage(new ImageIcon(getClass().getResource("playback.png")).getImage());
@@ -765,7 +757,7 @@ public class ExerciseScoreEditor extends JDialog implements ActionListener, Prop
 			          }
 					});
 				playBtn.setButtonImage(new ImageIcon(getClass().getResource("stop.png")).getImage());
-				playback.start();
+				appMidi.startPlayback(false);
 				isPlaying = true;
 			}
 			else
@@ -29,9 +29,6 @@ import java.io.File;
 import java.util.ResourceBundle;
 import java.util.Vector;
 
-import javax.sound.midi.MetaEventListener;
-import javax.sound.midi.MetaMessage;
-import javax.sound.midi.Sequencer;
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
@@ -149,9 +146,6 @@ public class ExercisesPanel extends JPanel implements TreeSelectionListener, Act
 	/** The is playing. */
 	private boolean isPlaying = false;
 	
-	/** The playback. */
-	private Sequencer playback;
-	
 	/**
 	 * Instantiates a new exercises panel.
 	 *
@@ -475,13 +469,11 @@ public void actionPerformed(ActionEvent ae)
 				Vector<Note> tmpSequence = new Vector<Note>(); 
 				tmpSequence.addAll(selectedExercise.notes);
 				tmpSequence.addAll(selectedExercise.notes2);
-				playback = appMidi.createPlayback(appPrefs, selectedExercise.speed, tmpSequence, timeDenominator / 4, true, 0);
-				playback.addMetaEventListener(new MetaEventListener() {
-			          public void meta(MetaMessage meta) 
+				appMidi.createPlayback(appPrefs, selectedExercise.speed, tmpSequence, timeDenominator / 4, true, 0);
+				appMidi.addPlaybackListener(new PlaybackEvent.Listener() {
+			          public void playbackEvent(int type, int argument) 
 			          {
-			        	  byte[] metaData = meta.getData();
-			              String strData = new String(metaData);
-			        	  if ("end".equals(strData))
+			        	  if (type == PlaybackEvent.END)
 			              {
 			        		appMidi.stopPlayback();
 			  				listenBtn.setButtonImage(new ImageIcon(getClass().getResource("playback.png")).getImage());
@@ -491,7 +483,7 @@ public void actionPerformed(ActionEvent ae)
 			          }
 					});
 				listenBtn.setButtonImage(new ImageIcon(getClass().getResource("stop.png")).getImage());
-				playback.start();
+				appMidi.startPlayback(false);
 				isPlaying = true;
 			}
 			else
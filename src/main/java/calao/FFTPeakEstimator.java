@@ -0,0 +1,258 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.HashMap;
+
+/**
+ * Pitch estimator picking the highest peak of the windowed frame spectrum.
+ * The peak position is refined by parabolic interpolation between bins.
+ *
+ * Cheap and fine for pure tones, but on piano or guitar notes the highest
+ * peak is often a harmonic rather than the fundamental.
+ *
+ * FFT plans are cached by frame size and the work buffers are reused, so once
+ * a frame size has been seen, estimating does not allocate anything. The
+ * spectrum can be computed in single precision with {@link FloatFFT_1D},
+ * which halves the memory traffic and is accurate enough for 16 bit audio.
+ *
+ * @author Neonunux
+ */
+public class FFTPeakEstimator implements PitchEstimator {
+
+	/** Whether the spectrum is computed in single precision. */
+	private final boolean singlePrecision;
+
+	/** The FFT plans, by FFT size. */
+	private final HashMap<Integer, DoubleFFT_1D> fftPlans = new HashMap<Integer, DoubleFFT_1D>();
+
+	/** The single precision FFT plans, by FFT size. */
+	private final HashMap<Integer, FloatFFT_1D> floatFftPlans = new HashMap<Integer, FloatFFT_1D>();
+
+	/** The current FFT plan. */
+	private DoubleFFT_1D fft;
+
+	/** The current single precision FFT plan. */
+	private FloatFFT_1D floatFft;
+
+	/** The current FFT size. */
+	private int fftSize = 0;
+
+	/** The real FFT buffer, holding the packed spectrum after transform. */
+	private double[] fftBuffer;
+
+	/** The single precision real FFT buffer. */
+	private float[] floatFftBuffer;
+
+	/** The magnitude of each FFT bin. */
+	protected double[] magnitude;
+
+	/** The magnitude of the highest peak. */
+	protected double peak = 0;
+
+	/** The FFT bin of the highest peak. */
+	protected int peakIdx = 0;
+
+	/**
+	 * Instantiates a new FFT peak estimator working in double precision.
+	 */
+	public FFTPeakEstimator() {
+		this(false);
+	}
+
+	/**
+	 * Instantiates a new FFT peak estimator.
+	 *
+	 * @param singlePrecision
+	 *            true to compute the spectrum with {@link FloatFFT_1D}
+	 */
+	public FFTPeakEstimator(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+	}
+
+	/**
+	 * Checks if the spectrum is computed in single precision.
+	 *
+	 * @return true, if single precision
+	 */
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	/**
+	 * Makes the FFT plan and the work buffers ready for the given size. Plans
+	 * are kept for later use, buffers are reallocated only when the size
+	 * changes.
+	 *
+	 * @param size
+	 *            the FFT size
+	 */
+	private void prepare(int size) {
+		if (size == fftSize) {
+			return;
+		}
+		if (singlePrecision) {
+			floatFft = floatFftPlans.get(size);
+			if (floatFft == null) {
+				floatFft = new FloatFFT_1D(size);
+				floatFftPlans.put(size, floatFft);
+			}
+			floatFftBuffer = new float[size];
+		} else {
+			fft = fftPlans.get(size);
+			if (fft == null) {
+				fft = new DoubleFFT_1D(size);
+				fftPlans.put(size, fft);
+			}
+			fftBuffer = new double[size];
+		}
+		magnitude = new double[size / 2 + 1];
+		fftSize = size;
+	}
+
+	/**
+	 * Computes the magnitude spectrum of a frame into {@link #magnitude}.
+	 *
+	 * @param frame
+	 *            the frame, not modified
+	 */
+	protected void computeSpectrum(double[] frame) {
+		int size = frame.length;
+		prepare(size);
+		if (singlePrecision) {
+			computeFloatSpectrum(frame);
+			return;
+		}
+
+		double[] data = fftBuffer;
+		System.arraycopy(frame, 0, data, 0, size);
+
+		fft.realForward(data);
+
+		// calculate bins magnitude out of the packed spectrum
+		magnitude[0] = Math.abs(data[0]);
+		for (int k = 1; k < (size + 1) / 2; k++) {
+			double re = data[2 * k];
+			double im = (2 * k + 1 < size) ? data[2 * k + 1] : data[1];
+			magnitude[k] = Math.sqrt(re * re + im * im);
+		}
+		if (size % 2 == 0) {
+			magnitude[size / 2] = Math.abs(data[1]);
+		}
+	}
+
+	/**
+	 * Computes the magnitude spectrum of a frame into {@link #magnitude},
+	 * with the single precision FFT.
+	 *
+	 * @param frame
+	 *            the frame, not modified
+	 */
+	private void computeFloatSpectrum(double[] frame) {
+		int size = frame.length;
+		float[] data = floatFftBuffer;
+		for (int i = 0; i < size; i++) {
+			data[i] = (float) frame[i];
+		}
+
+		floatFft.realForward(data);
+
+		magnitude[0] = Math.abs(data[0]);
+		for (int k = 1; k < (size + 1) / 2; k++) {
+			float re = data[2 * k];
+			float im = (2 * k + 1 < size) ? data[2 * k + 1] : data[1];
+			magnitude[k] = Math.sqrt(re * re + im * im);
+		}
+		if (size % 2 == 0) {
+			magnitude[size / 2] = Math.abs(data[1]);
+		}
+	}
+
+	/**
+	 * Refines the position of a spectrum peak by fitting a parabola through
+	 * the peak bin and its two neighbours.
+	 *
+	 * @param spectrum
+	 *            the spectrum
+	 * @param k
+	 *            the peak bin
+	 * @return the fractional bin of the peak
+	 */
+	protected static double interpolatePeak(double[] spectrum, int k) {
+		if (k <= 0 || k >= spectrum.length - 1) {
+			return k;
+		}
+		double a = spectrum[k - 1];
+		double b = spectrum[k];
+		double c = spectrum[k + 1];
+		double d = a - 2 * b + c;
+		if (d == 0) {
+			return k;
+		}
+		return k + 0.5 * (a - c) / d;
+	}
+
+	/* (non-Javadoc)
+	 * @see calao.PitchEstimator#estimate(double[], double[], float)
+	 */
+	public double estimate(double[] frame, double[] windowedFrame,
+			float sampleRate) {
+		computeSpectrum(windowedFrame);
+
+		// extract highest peak, DC excluded
+		peak = 0;
+		peakIdx = 0;
+		for (int i = 1; i < magnitude.length; i++) {
+			if (magnitude[i] > peak) {
+				peak = magnitude[i];
+				peakIdx = i;
+			}
+		}
+		if (peakIdx == 0) {
+			return 0;
+		}
+
+		return sampleRate * interpolatePeak(magnitude, peakIdx)
+				/ windowedFrame.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see calao.PitchEstimator#getSpectrum()
+	 */
+	public double[] getSpectrum() {
+		return magnitude;
+	}
+
+	/**
+	 * Gets the magnitude of the highest peak.
+	 *
+	 * @return the peak
+	 */
+	public double getPeak() {
+		return peak;
+	}
+
+	/**
+	 * Gets the FFT bin of the highest peak.
+	 *
+	 * @return the peak index
+	 */
+	public int getPeakIndex() {
+		return peakIdx;
+	}
+}
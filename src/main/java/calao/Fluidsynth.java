@@ -230,6 +230,38 @@ public class Fluidsynth {
 		}
 	}
 
+	/**
+	 * Sends several events in a single native call, so that the notes of a
+	 * chord start together and the JNI transition is paid only once.
+	 *
+	 * @param events the events, packed by {@link #pack(int, int, int, int)}
+	 * @param count the number of events to send, from the start of the array
+	 */
+	public void send(int[] events, int count) {
+		if (count < 0 || count > events.length) {
+			throw new IllegalArgumentException("Event count out of range: " + count);
+		}
+		if (count > 0) {
+			sendEvents(context, events, count);
+		}
+	}
+
+	/**
+	 * Packs an event for {@link #send(int[], int)}, the MIDI bytes in the
+	 * order of a short message: status in the low byte, then the two data
+	 * bytes.
+	 *
+	 * @param channel the channel
+	 * @param command the command, as in {@link #send(int, int, int, int)}
+	 * @param data1 the data1
+	 * @param data2 the data2
+	 * @return the packed event
+	 */
+	public static int pack(int channel, int command, int data1, int data2) {
+		return (command & 0xF0) | (channel & 0x0F) | ((data1 & 0x7F) << 8)
+				| ((data2 & 0x7F) << 16);
+	}
+
 	/**
 	 * Destroy.
 	 */
@@ -309,6 +341,15 @@ public class Fluidsynth {
 	 */
 	private static native void noteOff(ByteBuffer context, int channel, int key);
 
+	/**
+	 * Sends packed events.
+	 *
+	 * @param context the context
+	 * @param events the packed events
+	 * @param count the number of events
+	 */
+	private static native void sendEvents(ByteBuffer context, int[] events, int count);
+
 	/**
 	 * Control change.
 	 *
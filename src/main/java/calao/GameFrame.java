@@ -0,0 +1,86 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.List;
+
+/**
+ * Picture of the notes of a running game, taken by the game loop and drawn
+ * by {@link NotesPanel}. The notes are copies, so the game can go on
+ * changing its own while the frame is painted; they must not be modified.
+ *
+ * @author Neonunux
+ */
+public class GameFrame {
+
+	/** The copies of the notes. */
+	private final Note[] notes;
+
+	/** The horizontal positions of the notes. */
+	private final double[] x;
+
+	/**
+	 * Instantiates a new game frame.
+	 *
+	 * @param source
+	 *            the notes of the game
+	 * @param x
+	 *            the horizontal position to draw each note at
+	 */
+	public GameFrame(List<Note> source, double[] x) {
+		int size = source.size();
+		notes = new Note[size];
+		this.x = new double[size];
+		for (int i = 0; i < size; i++) {
+			notes[i] = new Note(source.get(i));
+			notes[i].xpos = (int) Math.round(x[i]);
+			this.x[i] = x[i];
+		}
+	}
+
+	/**
+	 * Gets the number of notes.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return notes.length;
+	}
+
+	/**
+	 * Gets a note, with the position it is drawn at rounded in xpos.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the note
+	 */
+	public Note getNote(int index) {
+		return notes[index];
+	}
+
+	/**
+	 * Gets the exact horizontal position of a note.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the x position
+	 */
+	public double getX(int index) {
+		return x[index];
+	}
+}
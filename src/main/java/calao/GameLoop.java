@@ -0,0 +1,243 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Game loop with a fixed timestep, clocked by {@link System#nanoTime()}.
+ *
+ * Each frame, the time elapsed since the previous frame is added to an
+ * accumulator, the game is advanced by as many fixed steps as it holds, and
+ * then asked to render with the fraction of a step left over, to draw its
+ * moving parts between their last two positions. The game speed thus depends
+ * on the clock only, not on how long the thread sleeps. Between frames the
+ * thread is parked, and a paused loop does not wake up at all.
+ *
+ * @author Neonunux
+ */
+public class GameLoop extends Thread {
+
+	private static final Logger logger = LogManager
+			.getLogger(GameLoop.class.getName());
+
+	/**
+	 * The game driven by the loop. Both methods are called on the loop
+	 * thread.
+	 */
+	public interface Game {
+
+		/**
+		 * Advances the game by one step.
+		 *
+		 * @param stepNanos
+		 *            the duration of a step
+		 */
+		void step(long stepNanos);
+
+		/**
+		 * Publishes the state of the game to draw.
+		 *
+		 * @param alpha
+		 *            the time elapsed since the last step, as a fraction of
+		 *            a step from 0 to 1
+		 */
+		void render(double alpha);
+	}
+
+	/** The frame period of a 60 Hz display. */
+	public static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+	/**
+	 * Gets the frame period of the default screen, to render a frame per
+	 * display refresh.
+	 *
+	 * @return the frame period, {@link #FRAME_NANOS} if unknown
+	 */
+	public static long getDisplayFrameNanos() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return FRAME_NANOS;
+		}
+		int rate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+				.getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+		if (rate == DisplayMode.REFRESH_RATE_UNKNOWN) {
+			return FRAME_NANOS;
+		}
+		return TimeUnit.SECONDS.toNanos(1) / rate;
+	}
+
+	/**
+	 * The most time stepped in one frame, the time beyond is dropped. Bounded
+	 * by time rather than steps, so a long frame loses no time whatever the
+	 * step duration.
+	 */
+	static final long MAX_CATCH_UP_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+	/** The game. */
+	private final Game game;
+
+	/** The duration of a step. */
+	private final long stepNanos;
+
+	/** The frame period. */
+	private final long frameNanos;
+
+	/** The time of the previous frame, or -1 before the first one. */
+	private long previous = -1;
+
+	/** The time elapsed and not yet stepped. */
+	private long accumulated = 0;
+
+	/** The running. */
+	private volatile boolean running = true;
+
+	/** The paused. */
+	private volatile boolean paused = false;
+
+	/**
+	 * Instantiates a new game loop. It runs once started.
+	 *
+	 * @param name
+	 *            the thread name
+	 * @param game
+	 *            the game
+	 * @param stepNanos
+	 *            the duration of a step
+	 * @param frameNanos
+	 *            the frame period
+	 */
+	public GameLoop(String name, Game game, long stepNanos, long frameNanos) {
+		super(name);
+		if (stepNanos <= 0 || frameNanos <= 0) {
+			throw new IllegalArgumentException("Step and frame durations must be positive");
+		}
+		this.game = game;
+		this.stepNanos = stepNanos;
+		this.frameNanos = frameNanos;
+		setDaemon(true);
+		setPriority(Thread.MAX_PRIORITY - 1);
+	}
+
+	/**
+	 * Gets the duration of a step.
+	 *
+	 * @return the step duration in nanoseconds
+	 */
+	public long getStepNanos() {
+		return stepNanos;
+	}
+
+	/**
+	 * Checks if the loop has not been shut down.
+	 *
+	 * @return true, if running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Checks if the loop is paused.
+	 *
+	 * @return true, if paused
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * Pauses the game after the frame in progress, or resumes it. The time
+	 * spent paused is not stepped.
+	 *
+	 * @param pause
+	 *            true to pause, false to resume
+	 */
+	public void setPaused(boolean pause) {
+		paused = pause;
+		LockSupport.unpark(this);
+	}
+
+	/**
+	 * Stops the loop after the frame in progress. No step or render follows
+	 * once this returns on the loop thread itself.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+	/**
+	 * Runs the steps due at the given time.
+	 *
+	 * @param now
+	 *            the time of the frame
+	 * @return the fraction of a step elapsed since the last step
+	 */
+	double advance(long now) {
+		if (previous == -1) {
+			previous = now;
+		}
+		accumulated += now - previous;
+		previous = now;
+		if (accumulated > MAX_CATCH_UP_NANOS) {
+			// after a stall, catch up with a bounded time rather than freeze
+			accumulated = MAX_CATCH_UP_NANOS;
+		}
+		while (accumulated >= stepNanos && running) {
+			game.step(stepNanos);
+			accumulated -= stepNanos;
+		}
+		return (double) accumulated / stepNanos;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 */
+	public void run() {
+		logger.debug("[GameLoop] " + getName() + " started, step = "
+				+ stepNanos + " ns");
+		while (running) {
+			if (paused) {
+				previous = -1;
+				LockSupport.park(this);
+				continue;
+			}
+			long frameStart = System.nanoTime();
+			try {
+				double alpha = advance(frameStart);
+				if (running) {
+					game.render(alpha);
+				}
+			} catch (RuntimeException e) {
+				// keep the game going
+				logger.error("[GameLoop] " + getName() + " frame failed: " + e);
+			}
+			long wait = frameStart + frameNanos - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(this, wait);
+			}
+		}
+		logger.debug("[GameLoop] " + getName() + " stopped");
+	}
+}
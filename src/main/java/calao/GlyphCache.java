@@ -0,0 +1,306 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Cache of pre-rendered font symbols, to draw the scores without deriving
+ * fonts and rasterizing glyphs on each paint.
+ *
+ * Each symbol is rendered once for a given size and color, into an atlas
+ * page shared with other symbols. It is rendered at the scale of the
+ * graphics it is drawn on, which includes the scale of the display on HiDPI
+ * outputs, so the atlas pixels match the device pixels. Drawing it is then
+ * a single image copy. Changing the scale of the panel drops every page.
+ *
+ * Meant to be used from the event dispatch thread only.
+ *
+ * @author Neonunux
+ */
+public class GlyphCache {
+
+	/** The width and height of an atlas page. */
+	static final int PAGE_SIZE = 512;
+
+	/**
+	 * A symbol rendered in an atlas page.
+	 */
+	private static class Glyph {
+
+		/** The page. */
+		BufferedImage page;
+
+		/** The position of the symbol in the page. */
+		int x, y;
+
+		/** The size of the symbol in the page. */
+		int width, height;
+
+		/** The position of the text origin, relative to the symbol. */
+		int originX, originY;
+	}
+
+	/** The font. */
+	private final Font font;
+
+	/** The scale the symbols are rendered at. */
+	private double scale = 1.0;
+
+	/** The symbols, by size, raster scale, color and text. */
+	private final HashMap<String, Glyph> glyphs = new HashMap<String, Glyph>();
+
+	/** The derived fonts, by size. */
+	private final HashMap<Float, Font> fonts = new HashMap<Float, Font>();
+
+	/** The atlas pages. */
+	private final Vector<BufferedImage> pages = new Vector<BufferedImage>();
+
+	/** The position of the next symbol on the current shelf. */
+	private int shelfX = 0;
+
+	/** The top of the current shelf. */
+	private int shelfY = 0;
+
+	/** The height of the current shelf. */
+	private int shelfHeight = 0;
+
+	/**
+	 * Instantiates a new glyph cache.
+	 *
+	 * @param font
+	 *            the font, at any size
+	 */
+	public GlyphCache(Font font) {
+		this.font = font;
+	}
+
+	/**
+	 * Gets the font.
+	 *
+	 * @return the font
+	 */
+	public Font getFont() {
+		return font;
+	}
+
+	/**
+	 * Gets the scale.
+	 *
+	 * @return the scale
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * Sets the scale the graphics are scaled by when drawing. Symbols rendered
+	 * at another scale are dropped.
+	 *
+	 * @param factor
+	 *            the new scale
+	 */
+	public void setScale(double factor) {
+		if (factor == scale) {
+			return;
+		}
+		scale = factor;
+		invalidate();
+	}
+
+	/**
+	 * Drops every rendered symbol.
+	 */
+	public void invalidate() {
+		glyphs.clear();
+		fonts.clear();
+		pages.clear();
+		shelfX = shelfY = shelfHeight = 0;
+	}
+
+	/**
+	 * Gets the number of rendered symbols.
+	 *
+	 * @return the glyph count
+	 */
+	int getGlyphCount() {
+		return glyphs.size();
+	}
+
+	/**
+	 * Gets the number of atlas pages.
+	 *
+	 * @return the page count
+	 */
+	int getPageCount() {
+		return pages.size();
+	}
+
+	/**
+	 * Gets the font derived at a size, derived only once.
+	 *
+	 * @param size
+	 *            the size
+	 * @return the font
+	 */
+	public Font deriveFont(float size) {
+		Font f = fonts.get(size);
+		if (f == null) {
+			f = font.deriveFont(size);
+			fonts.put(size, f);
+		}
+		return f;
+	}
+
+	/**
+	 * Draws a text like {@link Graphics#drawString(String, int, int)} would
+	 * with the font at the given size, in the current color of the graphics.
+	 *
+	 * @param g
+	 *            the graphics, scaled by the cache scale and by the device
+	 *            scale, if any
+	 * @param str
+	 *            the text
+	 * @param size
+	 *            the font size
+	 * @param x
+	 *            the x position of the text origin
+	 * @param y
+	 *            the y position of the text baseline
+	 */
+	public void drawString(Graphics g, String str, float size, int x, int y) {
+		if (str.length() == 0) {
+			return;
+		}
+		Graphics2D g2d = (Graphics2D) g;
+		AffineTransform at = g2d.getTransform();
+		double rasterScale = getRasterScale(at);
+		Color color = g.getColor();
+		String key = size + "/" + rasterScale + "/"
+				+ Integer.toHexString(color.getRGB()) + "/" + str;
+		Glyph glyph = glyphs.get(key);
+		if (glyph == null) {
+			glyph = render(str, (float) (size * rasterScale), color);
+			glyphs.put(key, glyph);
+		}
+		if (glyph.page == null) {
+			return;
+		}
+
+		g2d.translate(x, y);
+		if (rasterScale != 1.0) {
+			g2d.scale(1 / rasterScale, 1 / rasterScale);
+		}
+		int dx = -glyph.originX;
+		int dy = -glyph.originY;
+		g2d.drawImage(glyph.page, dx, dy, dx + glyph.width, dy + glyph.height,
+				glyph.x, glyph.y, glyph.x + glyph.width, glyph.y + glyph.height, null);
+		g2d.setTransform(at);
+	}
+
+	/**
+	 * Gets the scale symbols are rasterized at for a transform, one atlas
+	 * pixel per device pixel.
+	 *
+	 * @param at
+	 *            the transform of the graphics
+	 * @return the scale
+	 */
+	static double getRasterScale(AffineTransform at) {
+		double s = Math.max(Math.abs(at.getScaleX()), Math.abs(at.getScaleY()));
+		return (s > 0) ? s : 1.0;
+	}
+
+	/**
+	 * Renders a text into the atlas.
+	 *
+	 * @param str
+	 *            the text
+	 * @param size
+	 *            the font size, in atlas pixels
+	 * @param color
+	 *            the color
+	 * @return the glyph, without page if nothing is visible
+	 */
+	private Glyph render(String str, float size, Color color) {
+		Font f = deriveFont(size);
+		FontRenderContext frc = new FontRenderContext(null, true, true);
+		GlyphVector gv = f.createGlyphVector(frc, str);
+		Rectangle bounds = gv.getPixelBounds(frc, 0, 0);
+
+		Glyph glyph = new Glyph();
+		if (bounds.isEmpty()) {
+			return glyph;
+		}
+		// one pixel around, for antialiasing
+		glyph.width = bounds.width + 2;
+		glyph.height = bounds.height + 2;
+		glyph.originX = 1 - bounds.x;
+		glyph.originY = 1 - bounds.y;
+		allocate(glyph);
+
+		Graphics2D g2d = glyph.page.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		g2d.setColor(color);
+		g2d.drawGlyphVector(gv, glyph.x + glyph.originX, glyph.y + glyph.originY);
+		g2d.dispose();
+		return glyph;
+	}
+
+	/**
+	 * Finds room for a glyph in the atlas, on the current shelf, on a new
+	 * shelf or on a new page.
+	 *
+	 * @param glyph
+	 *            the glyph, with its size set
+	 */
+	private void allocate(Glyph glyph) {
+		if (glyph.width > PAGE_SIZE || glyph.height > PAGE_SIZE) {
+			// too big to share a page
+			glyph.page = new BufferedImage(glyph.width, glyph.height, BufferedImage.TYPE_INT_ARGB);
+			return;
+		}
+		if (pages.size() > 0 && shelfX + glyph.width > PAGE_SIZE) {
+			shelfX = 0;
+			shelfY += shelfHeight;
+			shelfHeight = 0;
+		}
+		if (pages.size() == 0 || shelfY + glyph.height > PAGE_SIZE) {
+			pages.add(new BufferedImage(PAGE_SIZE, PAGE_SIZE, BufferedImage.TYPE_INT_ARGB));
+			shelfX = shelfY = shelfHeight = 0;
+		}
+		glyph.page = pages.lastElement();
+		glyph.x = shelfX;
+		glyph.y = shelfY;
+		shelfX += glyph.width;
+		shelfHeight = Math.max(shelfHeight, glyph.height);
+	}
+}
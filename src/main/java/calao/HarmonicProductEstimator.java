@@ -0,0 +1,121 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+/**
+ * Pitch estimator based on the harmonic product spectrum: the spectrum is
+ * multiplied by copies of itself compressed by 2, 3, ... so that the
+ * harmonics of a note all add up on its fundamental bin.
+ *
+ * Much less prone than {@link FFTPeakEstimator} to lock onto a harmonic, for
+ * the price of a few more passes on the spectrum. Missing harmonics are
+ * floored to a fraction of the highest peak, so that pure tones, whose upper
+ * harmonics are nothing but noise, are still found.
+ *
+ * @author Neonunux
+ */
+public class HarmonicProductEstimator extends FFTPeakEstimator {
+
+	/** The lowest fundamental searched, in Hz. */
+	private static final double MIN_FREQUENCY = 40;
+
+	/** The floor of each harmonic, relative to the highest peak. */
+	private static final double HARMONIC_FLOOR = 0.01;
+
+	/** The number of harmonics multiplied together. */
+	private final int harmonics;
+
+	/**
+	 * Instantiates a new harmonic product estimator using 5 harmonics.
+	 */
+	public HarmonicProductEstimator() {
+		this(5);
+	}
+
+	/**
+	 * Instantiates a new harmonic product estimator.
+	 *
+	 * @param harmonics
+	 *            the number of harmonics, at least 1
+	 */
+	public HarmonicProductEstimator(int harmonics) {
+		this(harmonics, false);
+	}
+
+	/**
+	 * Instantiates a new harmonic product estimator.
+	 *
+	 * @param harmonics
+	 *            the number of harmonics, at least 1
+	 * @param singlePrecision
+	 *            true to compute the spectrum with {@link FloatFFT_1D}
+	 */
+	public HarmonicProductEstimator(int harmonics, boolean singlePrecision) {
+		super(singlePrecision);
+		if (harmonics < 1) {
+			throw new IllegalArgumentException("At least one harmonic is needed");
+		}
+		this.harmonics = harmonics;
+	}
+
+	/* (non-Javadoc)
+	 * @see calao.FFTPeakEstimator#estimate(double[], double[], float)
+	 */
+	public double estimate(double[] frame, double[] windowedFrame,
+			float sampleRate) {
+		computeSpectrum(windowedFrame);
+
+		int size = windowedFrame.length;
+		int maxBin = (magnitude.length - 1) / harmonics;
+		int minBin = Math.max(1, (int) (MIN_FREQUENCY * size / sampleRate));
+
+		double highest = 0;
+		for (int k = minBin; k < magnitude.length; k++) {
+			highest = Math.max(highest, magnitude[k]);
+		}
+		double floor = highest * HARMONIC_FLOOR;
+
+		peak = 0;
+		peakIdx = 0;
+		for (int k = minBin; k <= maxBin; k++) {
+			// the fundamental itself is not floored, it has to be there
+			if (magnitude[k] < floor) {
+				continue;
+			}
+			double product = magnitude[k];
+			for (int h = 2; h <= harmonics; h++) {
+				// the harmonic may fall between two bins
+				int idx = h * k;
+				double m = Math.max(magnitude[idx - 1], magnitude[idx]);
+				if (idx + 1 < magnitude.length) {
+					m = Math.max(m, magnitude[idx + 1]);
+				}
+				product *= Math.max(m, floor);
+			}
+			if (product > peak) {
+				peak = product;
+				peakIdx = k;
+			}
+		}
+		if (peakIdx == 0) {
+			return 0;
+		}
+
+		return sampleRate * interpolatePeak(magnitude, peakIdx) / size;
+	}
+}
@@ -27,13 +27,16 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.IdentityHashMap;
 import java.util.ResourceBundle;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLayeredPane;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -71,11 +74,22 @@ public class InlinePanel extends JPanel implements ActionListener {
 	/** The stats. */
 	private Statistics stats;
 
-	/** The game thread. */
-	private InlineGameThread gameThread = null;
+	/** The distance the notes move during a beat, in pixels. */
+	static final double PIXELS_PER_BEAT = 50;
 
-	/** The game started. */
-	private boolean gameStarted = false;
+	/** The duration of a step of the game loop. */
+	private static final long GAME_STEP_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(2);
+
+	/** The wait before a new note is shown, but in the more notes game. */
+	private static final long NEW_NOTE_DELAY_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(100);
+
+	/** The game loop. */
+	private GameLoop gameLoop = null;
+
+	/** The game. */
+	private InlineGame game = null;
 
 	// GUI elements
 	/** The s bar. */
@@ -382,34 +396,48 @@ public class InlinePanel extends JPanel implements ActionListener {
 	 *            the chord type
 	 */
 	public void setLearningInfo(boolean enable, int chordType) {
-		if (gameNotes.size() == 0)
+		setLearningInfo(gameNotes, enable, chordType);
+	}
+
+	/**
+	 * Shows the learning info of the notes asked.
+	 *
+	 * @param notes
+	 *            the notes asked
+	 * @param enable
+	 *            the enable
+	 * @param chordType
+	 *            the chord type
+	 */
+	private void setLearningInfo(Vector<Note> notes, boolean enable, int chordType) {
+		if (notes.size() == 0)
 			return;
-		int noteIdx = piano.highlightKey(gameNotes.get(0).pitch, enable);
+		int noteIdx = piano.highlightKey(notes.get(0).pitch, enable);
 		String noteInfo = "";
 		String altInfo = "";
 		String chord = "";
 
-		if (gameNotes.size() > 1)
-			for (int i = 1; i < gameNotes.size(); i++)
-				piano.highlightKey(gameNotes.get(i).pitch, enable);
+		if (notes.size() > 1)
+			for (int i = 1; i < notes.size(); i++)
+				piano.highlightKey(notes.get(i).pitch, enable);
 
 		if (enable == true) {
 			// find out if there are accidentals first
 			int altType = 0;
 			if (gameSubType == appPrefs.NOTE_ACCIDENTALS) {
-				altType = gameNotes.get(0).altType;
+				altType = notes.get(0).altType;
 				if (altType == 0) // maybe the alteration is on the clef. Check
 									// it out
-					altType = inlineNG.getAlteration(gameNotes.get(0).pitch);
+					altType = inlineNG.getAlteration(notes.get(0).pitch);
 			} else
-				altType = inlineNG.getAlteration(gameNotes.get(0).pitch);
+				altType = inlineNG.getAlteration(notes.get(0).pitch);
 
 			if (altType == 1) {
 				if (noteIdx != 2 && noteIdx != 6
 						&& piano.isSelectedBlack() == true) // E and B are
 															// already OK
 					altInfo = "#";
-			} else if (gameNotes.get(0).altType == -1) {
+			} else if (notes.get(0).altType == -1) {
 				altInfo = "b";
 				noteIdx++;
 				if (noteIdx == 7)
@@ -527,9 +555,10 @@ public class InlinePanel extends JPanel implements ActionListener {
 		notesLayer.setStaffWidth(inlineStaff.getStaffWidth());
 		stats.reset();
 		stats.setGameSpeed(currentSpeed);
-		gameThread = new InlineGameThread();
-		gameStarted = true;
-		gameThread.start();
+		game = new InlineGame();
+		gameLoop = new GameLoop("Inline game", game, GAME_STEP_NANOS,
+				GameLoop.getDisplayFrameNanos());
+		gameLoop.start();
 		sBar.playBtn.setButtonImage(new ImageIcon(getClass().getResource(
 				"stop.png")).getImage());
 		sBar.playBtn.repaint();
@@ -542,18 +571,40 @@ public class InlinePanel extends JPanel implements ActionListener {
 		if (gameType == appPrefs.GAME_STOPPED)
 			return;
 
-		if (gameThread != null && gameThread.isAlive() == true) {
+		if (isGameRunning()) {
 			/* ************** STOP CURRENT GAME ***************** */
-			gameStarted = false;
+			stopGameLoop();
 			sBar.playBtn.setButtonImage(new ImageIcon(getClass().getResource(
 					"playback.png")).getImage());
-			for (int i = 0; i < gameNotes.size(); i++)
-				appMidi.stopNote(gameNotes.get(i).pitch, 0);
-			gameNotes.clear();
 			gameType = appPrefs.GAME_STOPPED;
 		}
 	}
 
+	/**
+	 * Checks if a game loop is running.
+	 *
+	 * @return true, if running
+	 */
+	private boolean isGameRunning() {
+		return gameLoop != null && gameLoop.isRunning();
+	}
+
+	/**
+	 * Stops the game loop, the game notes and goes back to drawing the notes
+	 * rather than the game frames.
+	 */
+	private void stopGameLoop() {
+		if (gameLoop != null)
+			gameLoop.shutdown();
+		synchronized (gameNotes) {
+			if (game != null)
+				game.stopped = true;
+			notesLayer.setGameFrame(null);
+			appMidi.stopNotes(gameNotes);
+			gameNotes.clear();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -562,7 +613,7 @@ public class InlinePanel extends JPanel implements ActionListener {
 	 */
 	public void actionPerformed(ActionEvent ae) {
 		if (ae.getSource() == sBar.playBtn) {
-			if (gameThread != null && gameThread.isAlive() == true) {
+			if (isGameRunning()) {
 				/* ************** STOP CURRENT GAME ***************** */
 				stopGame();
 				refreshPanel();
@@ -643,30 +694,32 @@ public class InlinePanel extends JPanel implements ActionListener {
 			if (pitch == 60 && gameType == appPrefs.GAME_STOPPED)
 				startGame();
 		} else {
-			if (gameType != appPrefs.GAME_STOPPED) {
-				userNotes.add(pitch);
-				boolean match = checkGameStatus(gameNotes, userNotes);
-				if (match == true) {
-					updateGameStats(1);
-					if (gameType != appPrefs.INLINE_MORE_NOTES) {
-						for (int i = 0; i < gameNotes.size(); i++) {
-							appMidi.stopNote(gameNotes.get(i).pitch, 0);
-							if (gameType == appPrefs.INLINE_LEARN_NOTES)
-								setLearningInfo(false, -1);
-						}
-						gameNotes.clear();
-						userNotes.clear();
-					} else
-						gameNotes.remove(0);
-
-					gameThread.needNewNote = true;
-				} else {
-					appMidi.playNote(pitch, 90);
-					if ((gameSubType == appPrefs.NOTE_CHORDS && userNotes
-							.size() == 3)
-							|| gameSubType != appPrefs.NOTE_CHORDS)
-						updateGameStats(0);
-					piano.keyPressed(pitch, true);
+			if (gameType != appPrefs.GAME_STOPPED && game != null) {
+				// the game loop moves the same notes
+				synchronized (gameNotes) {
+					userNotes.add(pitch);
+					boolean match = checkGameStatus(gameNotes, userNotes);
+					if (match == true) {
+						updateGameStats(1);
+						if (gameType != appPrefs.INLINE_MORE_NOTES) {
+							appMidi.stopNotes(gameNotes);
+							if (gameType == appPrefs.INLINE_LEARN_NOTES
+									&& gameNotes.size() > 0)
+								showLearningInfo(false, -1);
+							gameNotes.clear();
+							userNotes.clear();
+						} else if (gameNotes.size() > 0)
+							gameNotes.remove(0);
+
+						game.needNewNote = true;
+					} else {
+						appMidi.playNote(pitch, 90);
+						if ((gameSubType == appPrefs.NOTE_CHORDS && userNotes
+								.size() == 3)
+								|| gameSubType != appPrefs.NOTE_CHORDS)
+							updateGameStats(0);
+						piano.keyPressed(pitch, true);
+					}
 				}
 			} else {
 				appMidi.playNote(pitch, 90);
@@ -719,7 +772,7 @@ public class InlinePanel extends JPanel implements ActionListener {
 	 * @param answType
 	 *            the answ type
 	 */
-	private void updateGameStats(int answType) {
+	private void updateGameStats(final int answType) {
 		if (gameNotes.size() == 0) {
 			return;
 		}
@@ -742,6 +795,21 @@ public class InlinePanel extends JPanel implements ActionListener {
 		}
 
 		stats.notePlayed(answType, score);
+		postGameUpdate(new Runnable() {
+			public void run() {
+				showGameStats(answType);
+			}
+		});
+	}
+
+	/**
+	 * Shows the game statistics, and ends the game once the progress bar is
+	 * full or empty. Runs on the event dispatch thread.
+	 *
+	 * @param answType
+	 *            the answ type
+	 */
+	private void showGameStats(int answType) {
 		gameBar.precisionCnt.setText(Integer.toString(stats
 				.getAveragePrecision()) + "%");
 		gameBar.scoreCnt.setText(Integer.toString(stats.getTotalScore()));
@@ -760,6 +828,47 @@ public class InlinePanel extends JPanel implements ActionListener {
 		}
 	}
 
+	/**
+	 * Shows the learning info of the current notes, from any thread. The
+	 * notes are taken now, the components are updated on the event dispatch
+	 * thread.
+	 *
+	 * @param enable
+	 *            the enable
+	 * @param chordType
+	 *            the chord type
+	 */
+	private void showLearningInfo(final boolean enable, final int chordType) {
+		final Vector<Note> notes = new Vector<Note>(gameNotes);
+		postGameUpdate(new Runnable() {
+			public void run() {
+				setLearningInfo(notes, enable, chordType);
+			}
+		});
+	}
+
+	/**
+	 * Updates the components on the event dispatch thread, unless the game
+	 * the update comes from is over by then. The game loop and the MIDI input
+	 * run on their own threads.
+	 *
+	 * @param update
+	 *            the update
+	 */
+	private void postGameUpdate(final Runnable update) {
+		final InlineGame current = game;
+		if (SwingUtilities.isEventDispatchThread()) {
+			update.run();
+			return;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (game == current && isGameRunning())
+					update.run();
+			}
+		});
+	}
+
 	/**
 	 * Game finished.
 	 *
@@ -767,16 +876,10 @@ public class InlinePanel extends JPanel implements ActionListener {
 	 *            the win
 	 */
 	private void gameFinished(boolean win) {
-		gameStarted = false;
+		stopGameLoop();
 		sBar.playBtn.setButtonImage(new ImageIcon(getClass().getResource(
 				"playback.png")).getImage());
 		refreshPanel();
-		for (int i = 0; i < gameNotes.size(); i++) {
-			appMidi.stopNote(gameNotes.get(i).pitch, 0);
-			// if (gameType == appPrefs.INLINE_LEARN_NOTES)
-			// setLearningInfo(gameNotes.get(i).pitch, false);
-		}
-		gameNotes.clear();
 		gameType = appPrefs.GAME_STOPPED;
 
 		String title = "";
@@ -790,16 +893,25 @@ public class InlinePanel extends JPanel implements ActionListener {
 			type = JOptionPane.ERROR_MESSAGE;
 		}
 
-		JOptionPane.showMessageDialog(
-				this.getParent(),
-				"  " + stats.getCorrectNumber() + " "
-						+ appBundle.getString("_correct") + " / "
-						+ stats.getWrongNumber() + " "
-						+ appBundle.getString("_wrong") + "  ", title, type);
+		final String message = "  " + stats.getCorrectNumber() + " "
+				+ appBundle.getString("_correct") + " / "
+				+ stats.getWrongNumber() + " "
+				+ appBundle.getString("_wrong") + "  ";
+		final String dialogTitle = title;
+		final int dialogType = type;
 
 		if (Integer.parseInt(appPrefs.getProperty("saveStats")) == 1) {
 			stats.storeData(0);
 		}
+
+		// the game may finish on the game loop, which must not wait for the
+		// dialog
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				JOptionPane.showMessageDialog(getParent(), message,
+						dialogTitle, dialogType);
+			}
+		});
 	}
 
 	/*
@@ -823,142 +935,201 @@ public class InlinePanel extends JPanel implements ActionListener {
 	}
 
 	/**
-	 * The Class InlineGameThread.
+	 * Gets the speed of the notes.
+	 *
+	 * @param bpm
+	 *            the tempo
+	 * @param moreNotes
+	 *            true for the more notes game, where notes go left at half
+	 *            speed
+	 * @return the speed, in pixels per nanosecond
 	 */
-	private class InlineGameThread extends Thread {
+	static double getNoteSpeed(int bpm, boolean moreNotes) {
+		double speed = bpm * PIXELS_PER_BEAT / 60e9;
+		if (moreNotes)
+			speed *= -0.5;
+		return speed;
+	}
+
+	/**
+	 * The inline game, run by the game loop. Notes move at a speed set by
+	 * the tempo, from the time elapsed; frames draw them between their last
+	 * two positions, with sub-pixel precision.
+	 */
+	private class InlineGame implements GameLoop.Game {
 
 		/** The need new note. */
 		boolean needNewNote = true;
 
-		/** The note xincrement. */
-		int noteXincrement = (currentSpeed < 121) ? 1 : 2; // above 120 the
-															// increment is of 2
-															// pixels
+		/** Set once the game is stopped, guarded by gameNotes. */
+		boolean stopped = false;
 
-		/** The sleep val. */
-		int sleepVal = 0;
+		/** The note speed, in pixels per nanosecond. */
+		final double noteSpeed;
 
 		/** The margin x. */
 		int marginX = inlineStaff.getStaffWidth();
 
+		/** The time waited before showing a new note. */
+		long newNoteWait = 0;
+
+		/** The exact positions of the notes, before and after the last step. */
+		final IdentityHashMap<Note, double[]> positions = new IdentityHashMap<Note, double[]>();
+
+		/** The note positions of the frame. */
+		double[] frameX = new double[16];
+
 		/**
-		 * Instantiates a new inline game thread.
+		 * Instantiates a new inline game.
 		 */
-		private InlineGameThread() {
-			if (currentSpeed <= 120) {
-				sleepVal = ((120 - currentSpeed) * 10 / 80);
-			} else {
-				sleepVal = ((200 - currentSpeed) * 10 / 80);
-			}
+		private InlineGame() {
+			noteSpeed = getNoteSpeed(currentSpeed,
+					gameType == appPrefs.INLINE_MORE_NOTES);
 			if (gameType == appPrefs.INLINE_MORE_NOTES) {
-				noteXincrement = noteXincrement - (noteXincrement * 2); // change
-																		// sign
-																		// here
 				noteXStartPos = marginX;
 				marginX = inlineStaff.getFirstNoteXPosition();
-				sleepVal *= 2; // slow down baby !
 			}
-			logger.debug("Thread increment: " + noteXincrement + ", sleep: "
-					+ sleepVal);
+			logger.debug("Game speed: " + (noteSpeed * 1e9) + " pixels/s");
+		}
+
+		/**
+		 * Gets the exact positions of a note.
+		 *
+		 * @param note
+		 *            the note
+		 * @return the positions before and after the last step
+		 */
+		private double[] positionOf(Note note) {
+			double[] position = positions.get(note);
+			if (position == null) {
+				position = new double[] { note.xpos, note.xpos };
+				positions.put(note, position);
+			}
+			return position;
+		}
+
+		/**
+		 * Shows a new note, or chord.
+		 */
+		private void newNote() {
+			if (gameSubType == appPrefs.NOTE_CHORDS) {
+				int chordType = inlineNG.getRandomChordOrInterval(gameNotes,
+						noteXStartPos, true, -1);
+				if (gameType == appPrefs.INLINE_LEARN_NOTES) {
+					showLearningInfo(true, chordType);
+				}
+				if (gameType != appPrefs.INLINE_MORE_NOTES) {
+					appMidi.playNotes(gameNotes, 90);
+				}
+			} else if (gameSubType == appPrefs.NOTE_INTERVALS) {
+				int intervalType = inlineNG.getRandomChordOrInterval(
+						gameNotes, noteXStartPos, false, gameInterval);
+				if (gameType == appPrefs.INLINE_LEARN_NOTES) {
+					showLearningInfo(true, intervalType);
+				}
+				if (gameType != appPrefs.INLINE_MORE_NOTES) {
+					appMidi.playNotes(gameNotes, 90);
+				}
+			} else {
+				Note newNote;
+				if (gameSubType == appPrefs.NOTE_ACCIDENTALS) {
+					newNote = inlineNG.getRandomNote(0, true, -1);
+				} else {
+					newNote = inlineNG.getRandomNote(0, false, -1);
+				}
+				newNote.duration = 0; // set duration to 0 not to
+										// mess up X position
+				newNote.xpos = noteXStartPos;
+				gameNotes.add(newNote);
+				if (gameType == appPrefs.INLINE_LEARN_NOTES) {
+					showLearningInfo(true, -1);
+				}
+				logger.trace("Got note with pitch: " + newNote.pitch
+						+ " (level:" + newNote.level + ")");
+				if (gameType != appPrefs.INLINE_MORE_NOTES) {
+					appMidi.playNote(newNote.pitch, 90);
+				}
+			}
+			notesLayer.setNotesPositions();
 		}
 
 		/*
 		 * (non-Javadoc)
 		 * 
-		 * @see java.lang.Thread#run()
+		 * @see calao.GameLoop.Game#step(long)
 		 */
-		public void run() {
-			while (gameStarted) {
-				try {
-					// logger.debug("Thread is running");
-					if (needNewNote == true) {
+		public void step(long stepNanos) {
+			synchronized (gameNotes) {
+				if (stopped == true)
+					return;
+				if (positions.size() > gameNotes.size())
+					positions.keySet().retainAll(gameNotes);
+				if (needNewNote == true) {
+					if (gameType != appPrefs.INLINE_MORE_NOTES
+							&& newNoteWait < NEW_NOTE_DELAY_NANOS) {
+						newNoteWait += stepNanos;
+						return;
+					}
+					newNoteWait = 0;
+					needNewNote = false;
+					newNote();
+					return;
+				}
+				for (int i = 0; i < gameNotes.size(); i++) {
+					if (gameType != appPrefs.INLINE_NORMAL_MODE) {
+						double[] position = positionOf(gameNotes.get(i));
+						position[0] = position[1];
+						position[1] += noteSpeed * stepNanos;
+						gameNotes.get(i).xpos = (int) Math.round(position[1]);
+					}
+
+					if ((gameType != appPrefs.INLINE_MORE_NOTES && gameNotes
+							.get(i).xpos > marginX)
+							|| (gameType == appPrefs.INLINE_MORE_NOTES && i == 0 && gameNotes
+									.get(i).xpos < marginX)) {
 						if (gameType != appPrefs.INLINE_MORE_NOTES) {
-							sleep(100);
-						}
-						needNewNote = false;
-						if (gameSubType == appPrefs.NOTE_CHORDS) {
-							int chordType = inlineNG.getRandomChordOrInterval(
-									gameNotes, noteXStartPos, true, -1);
-							if (gameType == appPrefs.INLINE_LEARN_NOTES) {
-								setLearningInfo(true, chordType);
-							}
-							if (gameType != appPrefs.INLINE_MORE_NOTES) {
-								for (int j = 0; j < gameNotes.size(); j++) {
-									appMidi.playNote(gameNotes.get(j).pitch, 90);
-								}
-							}
-						} else if (gameSubType == appPrefs.NOTE_INTERVALS) {
-							int intervalType = inlineNG
-									.getRandomChordOrInterval(gameNotes,
-											noteXStartPos, false, gameInterval);
-							if (gameType == appPrefs.INLINE_LEARN_NOTES) {
-								setLearningInfo(true, intervalType);
-							}
-							if (gameType != appPrefs.INLINE_MORE_NOTES) {
-								for (int j = 0; j < gameNotes.size(); j++) {
-									appMidi.playNote(gameNotes.get(j).pitch, 90);
-								}
-							}
-						} else {
-							Note newNote;
-							if (gameSubType == appPrefs.NOTE_ACCIDENTALS) {
-								newNote = inlineNG.getRandomNote(0, true, -1);
-							} else {
-								newNote = inlineNG.getRandomNote(0, false, -1);
-							}
-							newNote.duration = 0; // set duration to 0 not to
-													// mess up X position
-							newNote.xpos = noteXStartPos;
-							gameNotes.add(newNote);
-							if (gameType == appPrefs.INLINE_LEARN_NOTES) {
-								setLearningInfo(true, -1);
-							}
-							logger.trace("Got note with pitch: "
-									+ newNote.pitch + " (level:"
-									+ newNote.level + ")");
-							if (gameType != appPrefs.INLINE_MORE_NOTES) {
-								appMidi.playNote(newNote.pitch, 90);
-							}
-						}
-						notesLayer.setNotesPositions();
-					} else {
-						for (int i = 0; i < gameNotes.size(); i++) {
-							if (gameType != appPrefs.INLINE_NORMAL_MODE) {
-								gameNotes.get(i).xpos += noteXincrement;
-							}
-
-							if ((gameType != appPrefs.INLINE_MORE_NOTES && gameNotes
-									.get(i).xpos > marginX)
-									|| (gameType == appPrefs.INLINE_MORE_NOTES
-											&& i == 0 && gameNotes.get(i).xpos < marginX)) {
-								if (gameType != appPrefs.INLINE_MORE_NOTES) {
-									appMidi.stopNote(gameNotes.get(i).pitch, 0);
-								}
-								updateGameStats(0);
-								if (gameType == appPrefs.INLINE_LEARN_NOTES) {
-									setLearningInfo(false, -1);
-								}
-								if (gameType == appPrefs.INLINE_NORMAL_MODE) {
-									setLearningInfo(false, -1);
-								}
-								gameNotes.removeElementAt(i);
-							}
+							appMidi.stopNote(gameNotes.get(i).pitch, 0);
 						}
-						if (gameNotes.size() == 0) {
-							needNewNote = true;
+						updateGameStats(0);
+						if (gameType == appPrefs.INLINE_LEARN_NOTES) {
+							showLearningInfo(false, -1);
 						}
-
-						if (gameType == appPrefs.INLINE_MORE_NOTES
-								&& gameNotes.lastElement().xpos < noteXStartPos - 50) {
-							needNewNote = true;
+						if (gameType == appPrefs.INLINE_NORMAL_MODE) {
+							showLearningInfo(false, -1);
 						}
+						gameNotes.removeElementAt(i);
 					}
-					// sleep(260 - currentSpeed);
-					notesLayer.repaint();
-					sleep(10 + sleepVal);
-				} catch (Exception e) {
-					e.printStackTrace();
 				}
+				if (gameNotes.size() == 0) {
+					needNewNote = true;
+				} else if (gameType == appPrefs.INLINE_MORE_NOTES
+						&& gameNotes.lastElement().xpos < noteXStartPos - 50) {
+					needNewNote = true;
+				}
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see calao.GameLoop.Game#render(double)
+		 */
+		public void render(double alpha) {
+			synchronized (gameNotes) {
+				if (stopped == true)
+					return;
+				int size = gameNotes.size();
+				if (frameX.length < size)
+					frameX = new double[size * 2];
+				for (int i = 0; i < size; i++) {
+					Note note = gameNotes.get(i);
+					double[] position = positions.get(note);
+					if (position == null)
+						frameX[i] = note.xpos;
+					else
+						frameX[i] = position[0] + (position[1] - position[0]) * alpha;
+				}
+				notesLayer.setGameFrame(new GameFrame(gameNotes, frameX));
 			}
 		}
 	}
@@ -0,0 +1,129 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round-trip latency between a click played through the MIDI
+ * output and the note the player answers with on the MIDI input.
+ *
+ * The player plays a key on each click. Each input time is compared to the
+ * scheduled time of the nearest click. The median offset covers the output
+ * latency, the input latency and the player's own habit, which is exactly
+ * what scoring has to compensate.
+ *
+ * @author Neonunux
+ */
+public class LatencyCalibrator {
+
+	/** The calibration tempo, slow enough for half a second of latency. */
+	public static final int BPM = 60;
+
+	/** The number of clicks played. */
+	public static final int CLICKS = 16;
+
+	/** The first clicks, not measured, to let the player lock on. */
+	public static final int LEAD_IN_CLICKS = 4;
+
+	/** The fewest measured notes to give a result. */
+	public static final int MIN_TAPS = 4;
+
+	/** The time of the first click, on the {@link System#nanoTime()} timeline. */
+	private final long origin;
+
+	/** The time between two clicks. */
+	private final long beatNanos;
+
+	/** The number of clicks. */
+	private final int clicks;
+
+	/** The offsets measured so far, in nanoseconds. */
+	private final long[] offsets;
+
+	/** The click each offset was measured against. */
+	private final int[] measuredClicks;
+
+	/** The number of offsets. */
+	private int count = 0;
+
+	/**
+	 * Instantiates a new latency calibrator.
+	 *
+	 * @param origin
+	 *            the time of the first click
+	 * @param beatNanos
+	 *            the time between two clicks
+	 * @param clicks
+	 *            the number of clicks
+	 */
+	public LatencyCalibrator(long origin, long beatNanos, int clicks) {
+		this.origin = origin;
+		this.beatNanos = beatNanos;
+		this.clicks = clicks;
+		offsets = new long[clicks];
+		measuredClicks = new int[clicks];
+	}
+
+	/**
+	 * Records a note played by the user. Only the first note per click is
+	 * kept.
+	 *
+	 * @param time
+	 *            the note time, on the {@link System#nanoTime()} timeline
+	 */
+	public synchronized void addTap(long time) {
+		int click = (int) Math.round((time - origin) / (double) beatNanos);
+		if (click < LEAD_IN_CLICKS || click >= clicks) {
+			return;
+		}
+		if (count > 0 && measuredClicks[count - 1] == click) {
+			return;
+		}
+		measuredClicks[count] = click;
+		offsets[count] = time - (origin + click * beatNanos);
+		count++;
+	}
+
+	/**
+	 * Gets the number of notes measured.
+	 *
+	 * @return the tap count
+	 */
+	public synchronized int getTapCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the measured latency.
+	 *
+	 * @return the latency in milliseconds, not negative, or -1 if fewer than
+	 *         {@link #MIN_TAPS} notes were measured
+	 */
+	public synchronized long getLatencyMillis() {
+		if (count < MIN_TAPS) {
+			return -1;
+		}
+		long[] sorted = Arrays.copyOf(offsets, count);
+		Arrays.sort(sorted);
+		long median = (count % 2 == 1) ? sorted[count / 2]
+				: (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(median));
+	}
+}
@@ -25,21 +25,17 @@ import java.util.Vector;
 
 import javax.sound.midi.Instrument;
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MetaEventListener;
-import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiChannel;
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
-import javax.sound.midi.Receiver;
 import javax.sound.midi.Sequence;
-import javax.sound.midi.Sequencer;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Soundbank;
 import javax.sound.midi.Synthesizer;
 import javax.sound.midi.Track;
-import javax.sound.midi.Transmitter;
+import javax.sound.sampled.LineUnavailableException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -71,8 +67,14 @@ public class MidiController
 	/** The j instruments. */
 	private Instrument[] jInstruments; // this is used only by the Java MIDI system
 	
-	/** The instruments list. */
-	private List<String> instrumentsList;
+	/** The instruments list, replaced when a soundfont is loaded. */
+	private volatile List<String> instrumentsList;
+
+	/** The loader of the user soundfont. */
+	private SoundFontLoader soundFontLoader = null;
+
+	/** The listener of the soundfont loading. */
+	private volatile SoundFontLoader.Listener soundFontListener = null;
 	
 	/** The fluid devices list. */
 	private List<String> fluidDevicesList;
@@ -86,6 +88,12 @@ public class MidiController
     /** The midi out channel. */
     public MidiChannel midiOutChannel = null;
     
+    /** The notes held on each channel. */
+    private final VoiceManager voices;
+    
+    /** The events of the voice manager, guarded by voices. */
+    private int[] voiceEvents = new int[64];
+    
     /** The Constant ppq. */
     private static final int ppq=1000;
 
@@ -96,17 +104,28 @@ public class MidiController
     /** The sequences. */
     private Sequence[] sequences = { null, null };
     
-    /** The sequencers. */
-    private Sequencer[] sequencers = { null, null };
+    /** The playback session, owning the playback and metronome sequencers. */
+    private PlaybackSession session = null;
+    
+    /** The metronome playing audio clicks, null to click through MIDI. */
+    private AudioMetronome audioMetronome = null;
+    
+    /** The time offset of the playback notes, in note timestamp units. */
+    private int playbackOffset = 0;
+    
+    /** The listener playing the playback events through Fluidsynth. */
+    private final PlaybackEvent.Listener fluidsynthListener = new PlaybackEvent.Listener() {
+        public void playbackEvent(int type, int argument) 
+        {
+        	fluidsynthAsyncMIDIevent(type, argument);
+        }
+    };
     
     /** The error code. */
     int errorCode = 0;
     
     /** The use fluidsynth. */
     private boolean useFluidsynth = false;
-    
-    /** The last note. */
-    int lastNote = -1;
 	
 	/**
 	 * Instantiates a new midi controller.
@@ -118,12 +137,18 @@ public class MidiController
 		errorCode = 0;
 		appPrefs = p;
 		instrumentsList = new ArrayList<String>();
+		int polyphony = Integer.parseInt(appPrefs.getProperty("polyphony"));
+		if (polyphony < 1)
+			polyphony = VoiceManager.DEFAULT_POLYPHONY;
+		voices = new VoiceManager(polyphony);
 		String outDevice = appPrefs.getProperty("outputDevice");
 		logger.debug("----------> Selected driver = " + outDevice);
 		if (outDevice == "-1" || outDevice.equals("Java"))
 			initJavaSynth();
 		else if (outDevice.split(",")[0].equals("Fluidsynth"))
 			initFluidsynth(Integer.parseInt(outDevice.split(",")[1]));
+		// open the sequencers now rather than when the first game starts
+		openSession();
 	}
 	
 	/**
@@ -131,13 +156,22 @@ public class MidiController
 	 */
 	public void close()
 	{
+		if (session != null)
+			session.close();
+		session = null;
+		if (audioMetronome != null)
+			audioMetronome.close();
+		audioMetronome = null;
 		if (useFluidsynth == false)
 		{
 			if (inputDevice != null && inputDevice.isOpen())
 			   inputDevice.close();
+			if (midiSynth != null && midiSynth.isOpen())
+			   midiSynth.close();
 		}
 		else
 		{
+			cancelSoundFontLoading();
 			if (fluidSynth != null)
 				fluidSynth.destroy();
 			fluidSynth = null;
@@ -241,7 +275,8 @@ public class MidiController
 	}
 	 
 	/**
-	 * Open input device.
+	 * Open input device. The device is found by the id stored in the
+	 * preferences, or by its position in the list for older preferences.
 	 *
 	 * @return the midi device
 	 */
@@ -254,52 +289,40 @@ public class MidiController
 
 		if (inputDevice != null && inputDevice.isOpen())
 			inputDevice.close();
-		 
-		//logger.debug("[TEST] selectedDeviceIdx: " + selectedDeviceIdx);
 
 		if (selectedDeviceIdx > 0) // 0 means there are no available MIDI devices 
 		{
-			MidiDevice.Info[] aInfos = MidiSystem.getMidiDeviceInfo();
-			MidiDevice tmpDevice = null;
-			String deviceName = "";
-			int tmpIdx = 0;
-		    for (int i = 0; i < aInfos.length; i++) 
-		    {
-	            try 
-	            {
-	                tmpDevice = MidiSystem.getMidiDevice(aInfos[i]);
-	                boolean bAllowsInput = (tmpDevice.getMaxTransmitters() != 0);
-	                //boolean bAllowsOutput = (tmpDevice.getMaxReceivers() != 0);
-
-	                if (bAllowsInput == false) // non-input devices are excluded from the list !!
-	                	continue;
-
-	                logger.debug("[TEST] device #" + i + " bAllowsInput: " + bAllowsInput + ", name: " + aInfos[i].getName() + " (tmpIdx = " + tmpIdx + ")");
-
-	                if (bAllowsInput == true && tmpIdx == selectedDeviceIdx - 1) 
-	                {
-	                	logger.debug("[openDevice] Found selected device. Name: " + aInfos[i].getName());
-	                	deviceName = aInfos[i].getName();
-	                	try 
-	                    {
-	                		inputDevice = MidiSystem.getMidiDevice(aInfos[i]);
-		       	            inputDevice.open();
-		       	        }
-		       	        catch (MidiUnavailableException e) 
-		       	        {
-		       	            logger.debug("Unable to open MIDI device (" + deviceName + ")");
-		       	            return null;
-	       	            }
-		                    
-	                    setNewInstrument();
-	                    return inputDevice;
-	                }
-	            }
-	            catch (MidiUnavailableException e) { e.printStackTrace(); }
-	            tmpIdx++;
-	         }
-	     }
-		 return null;
+			DeviceRegistry registry = DeviceRegistry.getDefault();
+			String deviceId = appPrefs.getProperty("inputDeviceId");
+			DeviceRegistry.MidiInput input;
+			if (deviceId != "-1")
+				input = registry.findMidiInput(deviceId);
+			else
+				input = registry.getMidiInput(selectedDeviceIdx - 1);
+			if (input == null)
+			{
+				logger.debug("[openDevice] Selected device not plugged: " + deviceId);
+				return null;
+			}
+
+			logger.debug("[openDevice] Found selected device. Name: " + input.getName());
+			try 
+			{
+				inputDevice = MidiSystem.getMidiDevice(input.getInfo());
+				inputDevice.open();
+			}
+			catch (MidiUnavailableException e) 
+			{
+				logger.debug("Unable to open MIDI device (" + input.getName() + ")");
+				return null;
+			}
+			// from now on, find the device by id
+			appPrefs.setProperty("inputDeviceId", input.getId());
+
+			setNewInstrument();
+			return inputDevice;
+		}
+		return null;
 	 }
 	
 	 /**
@@ -339,6 +362,7 @@ public class MidiController
 
 		 if (fluidSynth != null)
 		 {
+			cancelSoundFontLoading();
 			fluidSynth.destroy();
 		    fluidSynth = null;
 		 }
@@ -382,8 +406,6 @@ public class MidiController
 		String bankPath = appPrefs.getProperty("soundfontPath");
 		try {
 			fluidSynth.soundFontLoad(new File("metronome.sf2"));
-			if (bankPath != "-1")
-				fluidSynth.soundFontLoad(new File(bankPath));
 		} catch (IOException expected) {
 			logger.debug("Cannot load Fluidsynth soundfont !!");
 			fluidSynth.destroy();
@@ -391,31 +413,98 @@ public class MidiController
 			return false;
 		}
 		useFluidsynth = true;
-		instrumentsList.clear();
+		instrumentsList = new ArrayList<String>();
 		if (bankPath != "-1")
-		{
-			List<String> programs = fluidSynth.getSoundfontPrograms();
-			//int i = 0;
-			for (String program : programs)
-			{
-				//logger.debug("Program #" + i + ": " + program);
-				instrumentsList.add(program);
-				//i++;
-			}
-			setNewInstrument();
-		}
+			loadSoundFont(new File(bankPath));
 		 return true;
 	 }
+
+	 /**
+ 	 * Loads the user soundfont in the background. Fluidsynth plays with the
+ 	 * default bank until it is ready. The instruments of a bank loaded before
+ 	 * are available at once.
+ 	 *
+ 	 * @param bank the bank
+ 	 */
+ 	private void loadSoundFont(File bank)
+	 {
+		 List<String> cached = SoundFontLoader.getCachedPrograms(bank);
+		 if (cached != null)
+			 instrumentsList = cached;
+
+		 soundFontLoader = new SoundFontLoader(fluidSynth, bank, new SoundFontLoader.Listener() {
+			 public void soundFontProgress(File bank, int percent)
+			 {
+				 SoundFontLoader.Listener l = soundFontListener;
+				 if (l != null)
+					 l.soundFontProgress(bank, percent);
+			 }
+
+			 public void soundFontLoaded(File bank, List<String> programs)
+			 {
+				 instrumentsList = programs;
+				 // select the instrument again, now from the new bank
+				 setFluidsynthInstrument();
+				 SoundFontLoader.Listener l = soundFontListener;
+				 if (l != null)
+					 l.soundFontLoaded(bank, programs);
+			 }
+
+			 public void soundFontFailed(File bank, IOException e)
+			 {
+				 logger.debug("Cannot load Fluidsynth soundfont !!");
+				 SoundFontLoader.Listener l = soundFontListener;
+				 if (l != null)
+					 l.soundFontFailed(bank, e);
+			 }
+		 });
+		 soundFontLoader.start();
+	 }
+
+	 /**
+ 	 * Sets the listener of the soundfont loading, called on the loader thread.
+ 	 *
+ 	 * @param listener the listener, null for none
+ 	 */
+ 	public void setSoundFontListener(SoundFontLoader.Listener listener)
+	 {
+		 soundFontListener = listener;
+	 }
+
+	 /**
+ 	 * Checks if the user soundfont is still loading.
+ 	 *
+ 	 * @return true, if loading
+ 	 */
+ 	public boolean isSoundFontLoading()
+	 {
+		 return soundFontLoader != null && soundFontLoader.isAlive();
+	 }
+
+	 /**
+ 	 * Stops the soundfont loading, before the synth is destroyed.
+ 	 */
+ 	private void cancelSoundFontLoading()
+	 {
+		 if (soundFontLoader != null)
+			 soundFontLoader.cancel();
+		 soundFontLoader = null;
+	 }
 	 
 	 /**
- 	 * Sets the fluidsynth instrument.
+ 	 * Sets the fluidsynth instrument, and the click sound of the metronome
+ 	 * channel in the same native call.
  	 */
  	public void setFluidsynthInstrument()
 	 {
 		 int midiSound = Integer.parseInt(appPrefs.getProperty("instrument"));
  		 if (midiSound == -1) midiSound = 0;
 
-		 fluidSynth.send(0, ShortMessage.PROGRAM_CHANGE, midiSound, 0);
+		 int[] events = {
+			 Fluidsynth.pack(0, ShortMessage.PROGRAM_CHANGE, midiSound, 0),
+			 Fluidsynth.pack(9, ShortMessage.PROGRAM_CHANGE, 0, 0)
+		 };
+		 fluidSynth.send(events, events.length);
 	 }
 	 
 	 /**
@@ -436,12 +525,9 @@ public class MidiController
  	 */
  	public void playNote(int pitch, int volume)
 	 {
-		 if (useFluidsynth == false)
-			 midiOutChannel.noteOn(pitch, volume);
-		 else
+		 synchronized (voices)
 		 {
-			 //fluidSynth.send(0, ShortMessage.CONTROL_CHANGE , 0, 0);
-			 fluidSynth.send(0, ShortMessage.NOTE_ON, pitch, volume);
+			 sendEvents(voices.noteOn(0, pitch, volume, voiceEvents, 0));
 		 }
 	 }
 	 
@@ -453,61 +539,169 @@ public class MidiController
  	 */
  	public void stopNote(int pitch, int volume)
 	 {
-		 if (useFluidsynth == false)
-			 midiOutChannel.noteOff(pitch, volume);
-		 else
-			 fluidSynth.send(0, ShortMessage.NOTE_OFF, pitch, volume);
+		 synchronized (voices)
+		 {
+			 sendEvents(voices.noteOff(0, pitch, voiceEvents, 0));
+		 }
 	 }
 	 
 	 /**
- 	 * Fluidsynth async mid ievent.
+ 	 * Plays notes together, as a chord. Fluidsynth gets them all in a
+ 	 * single native call.
  	 *
- 	 * @param msg the msg
- 	 */
- 	private void fluidsynthAsyncMIDIevent(MetaMessage msg)
-	 {
-		byte[] metaData = msg.getData();
-        String strData = new String(metaData);
-       
-        //logger.debug("*FS* META message: text= " + strData);
-
-        if ("fsbOnLow".equals(strData))
-        	fluidSynth.send(9, ShortMessage.NOTE_ON, 77, 100);
-        else if ("fsbOnHi".equals(strData))
-        	fluidSynth.send(9, ShortMessage.NOTE_ON, 76, 100);
-        else if ("fsbOff".equals(strData))
-        	fluidSynth.send(9, ShortMessage.NOTE_OFF, 77, 0);
-        else if ("fsnOn".equals(strData.substring(0, 5)))
-        {
-        	lastNote = Integer.parseInt(strData.substring(5));
-        	fluidSynth.send(0, ShortMessage.NOTE_ON, lastNote, 100);
-        }
-        else if ("fsnOff".equals(strData.substring(0, 6)))
+ 	 * @param notes the notes
+ 	 * @param volume the volume
+ 	 */
+ 	public void playNotes(List<Note> notes, int volume)
+	 {
+		 synchronized (voices)
+		 {
+			 int[] events = reserveEvents(notes.size() * 2);
+			 int count = 0;
+			 for (int i = 0; i < notes.size(); i++)
+				 count = voices.noteOn(0, notes.get(i).pitch, volume, events, count);
+			 sendEvents(count);
+		 }
+	 }
+
+	 /**
+ 	 * Stops notes together. Fluidsynth gets them all in a single native
+ 	 * call.
+ 	 *
+ 	 * @param notes the notes
+ 	 */
+ 	public void stopNotes(List<Note> notes)
+	 {
+		 synchronized (voices)
+		 {
+			 int[] events = reserveEvents(notes.size());
+			 int count = 0;
+			 for (int i = 0; i < notes.size(); i++)
+				 count = voices.noteOff(0, notes.get(i).pitch, events, count);
+			 sendEvents(count);
+		 }
+	 }
+
+	 /**
+ 	 * Stops every note of the playback and metronome channels.
+ 	 */
+ 	public void allNotesOff()
+	 {
+		 synchronized (voices)
+		 {
+			 int[] events = reserveEvents(voices.getVoiceCount() + 2);
+			 int count = voices.allNotesOff(0, events, 0);
+			 count = voices.allNotesOff(9, events, count);
+			 sendEvents(count);
+		 }
+	 }
+
+	 /**
+ 	 * Changes the maximum number of notes held at once. The oldest notes
+ 	 * are stopped if there are more.
+ 	 *
+ 	 * @param polyphony the polyphony
+ 	 */
+ 	public void setPolyphony(int polyphony)
+	 {
+		 synchronized (voices)
+		 {
+			 int[] events = reserveEvents(voices.getVoiceCount());
+			 sendEvents(voices.setPolyphony(polyphony, events, 0));
+		 }
+	 }
+
+	 /**
+ 	 * Gets the voice event buffer, grown if needed.
+ 	 *
+ 	 * @param size the number of events to hold
+ 	 * @return the buffer
+ 	 */
+ 	private int[] reserveEvents(int size)
+	 {
+		 if (voiceEvents.length < size)
+			 voiceEvents = new int[size];
+		 return voiceEvents;
+	 }
+
+	 /**
+ 	 * Sends the voice events to the synthesizer in use. Fluidsynth gets them
+ 	 * in a single native call.
+ 	 *
+ 	 * @param count the number of events
+ 	 */
+ 	private void sendEvents(int count)
+	 {
+		 if (count == 0)
+			 return;
+		 if (useFluidsynth == true)
+		 {
+			 if (fluidSynth != null)
+				 fluidSynth.send(voiceEvents, count);
+			 return;
+		 }
+		 if (allMC == null)
+			 return;
+		 for (int i = 0; i < count; i++)
+		 {
+			 int event = voiceEvents[i];
+			 MidiChannel channel = allMC[event & 0x0F];
+			 int data1 = (event >> 8) & 0x7F;
+			 int data2 = (event >> 16) & 0x7F;
+			 switch (event & 0xF0)
+			 {
+				 case ShortMessage.NOTE_ON:
+					 channel.noteOn(data1, data2);
+					 break;
+				 case ShortMessage.NOTE_OFF:
+					 channel.noteOff(data1, data2);
+					 break;
+				 case ShortMessage.CONTROL_CHANGE:
+					 channel.controlChange(data1, data2);
+					 break;
+			 }
+		 }
+	 }
+
+	 /**
+ 	 * Fluidsynth async MIDI event.
+ 	 *
+ 	 * @param type the playback event type
+ 	 * @param argument the playback event argument
+ 	 */
+ 	private void fluidsynthAsyncMIDIevent(int type, int argument)
+	 {
+        switch (type)
         {
-        	fluidSynth.send(0, ShortMessage.NOTE_OFF, Integer.parseInt(strData.substring(6)), 0);
-        	lastNote = -1;
+        	case PlaybackEvent.CLICK_LOW_ON:
+        		fluidSynth.send(9, ShortMessage.NOTE_ON, 77, 100);
+        		break;
+        	case PlaybackEvent.CLICK_HIGH_ON:
+        		fluidSynth.send(9, ShortMessage.NOTE_ON, 76, 100);
+        		break;
+        	case PlaybackEvent.CLICK_OFF:
+        		fluidSynth.send(9, ShortMessage.NOTE_OFF, 77, 0);
+        		break;
+        	case PlaybackEvent.SYNTH_NOTE_ON:
+        		playNote(argument, 100);
+        		break;
+        	case PlaybackEvent.SYNTH_NOTE_OFF:
+        		stopNote(argument, 0);
+        		break;
         }
 	 }
 	 
 	 /**
- 	 * Adds the midi event.
+ 	 * Adds a playback event.
  	 *
  	 * @param track the track
- 	 * @param type the type
- 	 * @param data the data
+ 	 * @param type the playback event type
+ 	 * @param argument the playback event argument
  	 * @param tick the tick
  	 */
- 	private void addMidiEvent(Track track, int type, byte[] data, long tick) 
+ 	private void addMidiEvent(Track track, int type, int argument, long tick) 
 	 {
-        MetaMessage message=new MetaMessage();
-        try {
-            message.setMessage(type, data, data.length);
-            MidiEvent event=new MidiEvent(message, tick);
-            track.add(event);
-        }
-        catch (InvalidMidiDataException e) {
-            e.printStackTrace();
-        }
+        track.add(new MidiEvent(new PlaybackEvent(type, argument), tick));
 	 }
 
      /**
@@ -562,14 +756,38 @@ public class MidiController
 	 }
 	 
 	 /**
- 	 * Creates the sequencer.
+ 	 * Opens the playback session. Note messages go to the Java synthesizer,
+ 	 * Fluidsynth plays the playback events instead.
+ 	 *
+ 	 * @return true, if successful
+ 	 */
+ 	private boolean openSession()
+	 {
+		 Synthesizer synthesizer = null;
+		 if (useFluidsynth == false && midiSynth != null && midiSynth.isOpen())
+			 synthesizer = midiSynth;
+		 try
+		 {
+			 session = new PlaybackSession(synthesizer);
+		 }
+		 catch (MidiUnavailableException e) {
+			 logger.debug("Cannot open the playback sequencers: " + e);
+			 return false;
+		 }
+		 return true;
+	 }
+
+	 /**
+ 	 * Creates the sequence and track of a playback session role.
  	 *
- 	 * @param index the index
+ 	 * @param index the role
  	 */
- 	private void createSequencer(int index)
+ 	private void createSequence(int index)
 	 {
-		 if (sequencers[index] != null)
-			 sequencers[index].close();
+		 if (session == null && openSession() == false)
+			 System.exit(1);
+		 if (index == PlaybackSession.METRONOME && openAudioMetronome() == true)
+			 audioMetronome.clear();
 
          try 
          {
@@ -581,48 +799,81 @@ public class MidiController
          }
 
 		 tracks[index] = sequences[index].createTrack();
-		 
-         try 
-         {
-        	 sequencers[index] = MidiSystem.getSequencer();
-         }
-         catch (MidiUnavailableException e) {
-            e.printStackTrace();
-            System.exit(1);
-         }
+	 }
 
-         try {
-        	 sequencers[index].open();
-         }
-         catch (MidiUnavailableException e) {
-             e.printStackTrace();
-             System.exit(1);
-         }
+	 /**
+ 	 * Loads the sequence of a role into the playback session.
+ 	 *
+ 	 * @param index the role
+ 	 * @param BPM the tempo
+ 	 */
+ 	private void loadSequence(int index, float BPM)
+	 {
+         session.load(index, sequences[index], BPM);
+         if (index == PlaybackSession.METRONOME && audioMetronome != null)
+        	 audioMetronome.setTempo(BPM, ppq);
+         if (useFluidsynth == true)
+        	 session.addListener(index, fluidsynthListener);
+	 }
 
-         try {
-        	 sequencers[index].setSequence(sequences[index]);
-         }
-         catch (InvalidMidiDataException e) {
-             e.printStackTrace();
-             System.exit(1);
-         }
+	 /**
+ 	 * Opens or closes the audio metronome, as set in the preferences.
+ 	 *
+ 	 * @return true, if the clicks are played by the audio metronome
+ 	 */
+ 	private boolean openAudioMetronome()
+	 {
+		 boolean audioClicks = appPrefs.getProperty("audioClicks").equals("1");
+		 if (audioClicks == true && audioMetronome == null)
+		 {
+			 AudioMetronome metronome = new AudioMetronome();
+			 try
+			 {
+				 metronome.open();
+				 audioMetronome = metronome;
+			 }
+			 catch (LineUnavailableException e)
+			 {
+				 logger.debug("Cannot open the audio metronome line, clicking through MIDI: " + e);
+			 }
+		 }
+		 else if (audioClicks == false && audioMetronome != null)
+		 {
+			 audioMetronome.close();
+			 audioMetronome = null;
+		 }
+		 return audioMetronome != null;
+	 }
 
-         if (!(sequencers[index] instanceof Synthesizer)) 
-         {
-             try 
-             {
-                 Synthesizer synthesizer = MidiSystem.getSynthesizer();
-                 synthesizer.open();
-                 Receiver synthReceiver = synthesizer.getReceiver();
-                 Transmitter seqTransmitter = sequencers[index].getTransmitter();
-                 seqTransmitter.setReceiver(synthReceiver);
-                 //long latency = sm_synthesizer.getLatency()/1000;  
-                 //logger.debug("MIDI latency " + latency);
-             }
-             catch (MidiUnavailableException e) {
-                 e.printStackTrace();
-             }
-         }
+	 /**
+ 	 * Adds a metronome click to a track, or to the audio metronome if used.
+ 	 *
+ 	 * @param track the track
+ 	 * @param pitch the click pitch, 76 for an accent and 77 otherwise
+ 	 * @param tick the tick
+ 	 * @throws InvalidMidiDataException the invalid midi data exception
+ 	 */
+ 	private void addClick(Track track, int pitch, long tick) throws InvalidMidiDataException
+	 {
+		 if (audioMetronome != null)
+			 audioMetronome.addClick(tick, pitch == 76);
+		 else if (useFluidsynth == false)
+		 {
+			 ShortMessage mess = new ShortMessage();
+			 ShortMessage mess2 = new ShortMessage();
+			 mess.setMessage(ShortMessage.NOTE_ON, 9, pitch, 90);
+			 track.add(new MidiEvent(mess, tick));
+			 mess2.setMessage(ShortMessage.NOTE_OFF, 9, pitch, 0);
+			 track.add(new MidiEvent(mess2, tick + 1));
+		 }
+		 else
+		 {
+			 int click = PlaybackEvent.CLICK_LOW_ON;
+			 if (pitch == 76)
+				 click = PlaybackEvent.CLICK_HIGH_ON;
+			 addMidiEvent(track, click, 0, tick);
+			 addMidiEvent(track, PlaybackEvent.CLICK_OFF, 0, tick + 1);
+		 }
 	 }
 
 	 /**
@@ -633,12 +884,11 @@ public class MidiController
  	 * @param measures the measures
  	 * @param timeSignNumerator the time sign numerator
  	 * @param timeDivision the time division
- 	 * @return the sequencer
  	 */
- 	public Sequencer createMetronome(Preferences p, int BPM, int measures, int timeSignNumerator, int timeDivision)
+ 	public void createMetronome(Preferences p, int BPM, int measures, int timeSignNumerator, int timeDivision)
 	 {
-		 // create metronome sequence, sequencer and track
-         createSequencer(1);
+		 // create metronome sequence and track
+         createSequence(PlaybackSession.METRONOME);
          
          Track metronomeTrack = tracks[1];
          boolean accents = false;
@@ -646,18 +896,17 @@ public class MidiController
         	 accents = true;
 
          try {
-             final int metaType = 0x01;
              int beatsNumber;
 
          	 //logger.debug("[createMetronome] timeSignNumerator = " + timeSignNumerator);
              if (useFluidsynth == true)
-             	 fluidSynth.send(9, ShortMessage.PROGRAM_CHANGE, 0, 0);
+            	 setFluidsynthInstrument();
 
-             String textd="gameOn"; // first note beat
-             addMidiEvent(metronomeTrack, metaType, textd.getBytes(), 0);
+             // first note beat
+             addMidiEvent(metronomeTrack, PlaybackEvent.GAME_ON, 0, 0);
              
-             String textdt="cursorOn"; //one beat before first note
-             addMidiEvent(metronomeTrack, metaType, textdt.getBytes(), (int)((timeSignNumerator/timeDivision)-1)*ppq);
+             //one beat before first note
+             addMidiEvent(metronomeTrack, PlaybackEvent.CURSOR_ON, 0, (int)((timeSignNumerator/timeDivision)-1)*ppq);
              
              
              if (Integer.parseInt(p.getProperty("metronome")) == 1)
@@ -667,34 +916,16 @@ public class MidiController
 
              for (int i = 0; i < beatsNumber; i++) 
              {
-           		ShortMessage mess = new ShortMessage();
-        		ShortMessage mess2 = new ShortMessage();
       		    int pitch = 77;
       		    if (accents == true && i%(timeSignNumerator/timeDivision) == 0)
       		    	pitch = 76;
 
-        		if (useFluidsynth == false)
-        		{
-        			mess.setMessage(ShortMessage.NOTE_ON, 9, pitch, 90);
-        			metronomeTrack.add(new MidiEvent(mess, i*ppq));
-        			mess2.setMessage(ShortMessage.NOTE_OFF, 9, pitch, 0);
-            		metronomeTrack.add(new MidiEvent(mess2, (i*ppq)+1));
-        		}
-        		else
-        		{
-        			String textb="fsbOnLow";
-        			if (pitch == 76)
-        				textb="fsbOnHi";
-     				addMidiEvent(metronomeTrack, metaType, textb.getBytes(), (int)i*ppq);
-        			textb="fsbOff";
-     				addMidiEvent(metronomeTrack, metaType, textb.getBytes(), (int)(i*ppq)+1);     				
-        		}
+        		addClick(metronomeTrack, pitch, i*ppq);
 
         		if (i > ((timeSignNumerator / timeDivision) - 1)) 
         		{
          			//logger.debug("adding metronome beat : "+i);
-         			String textb="beat";
-         			addMidiEvent(metronomeTrack, metaType, textb.getBytes(), (int)i*ppq);
+         			addMidiEvent(metronomeTrack, PlaybackEvent.BEAT, 0, (int)i*ppq);
         		}
              }
          }
@@ -703,19 +934,7 @@ public class MidiController
              System.exit(1);
          }
 
-         sequencers[1].setTempoInBPM(BPM );
-         
-         if (useFluidsynth == true)
-         {
-           sequencers[1].addMetaEventListener(new MetaEventListener() {
-             public void meta(MetaMessage meta) 
-             {
-             	fluidsynthAsyncMIDIevent(meta);
-             }
- 		   });
-         }
-         
-         return sequencers[1];
+         loadSequence(PlaybackSession.METRONOME, BPM);
 	 }
 	 
 	 /**
@@ -723,8 +942,10 @@ public class MidiController
  	 */
  	public void stopMetronome()
 	 {
-		 sequencers[1].stop();
-		 sequencers[1].close();
+		 if (session != null)
+			 session.stop(PlaybackSession.METRONOME);
+		 if (audioMetronome != null)
+			 audioMetronome.stop();
 	 }
 	 
 	 /**
@@ -736,14 +957,12 @@ public class MidiController
  	 * @param timeDivision the time division
  	 * @param playOnly the play only
  	 * @param timeOffset the time offset
- 	 * @return the sequencer
  	 */
- 	public Sequencer createPlayback(Preferences p, int BPM, Vector<Note> notes, int timeDivision, boolean playOnly, int timeOffset)
+ 	public void createPlayback(Preferences p, int BPM, Vector<Note> notes, int timeDivision, boolean playOnly, int timeOffset)
 	 {
-		 final int metaType = 0x01;
 		 int tick = 0;
 		 int endtick = 0;
-		 createSequencer(0);
+		 createSequence(PlaybackSession.PLAYBACK);
 
 		 int midiSound = Integer.parseInt(appPrefs.getProperty("instrument"));
 		 if (midiSound == -1) midiSound = 0;
@@ -758,10 +977,11 @@ public class MidiController
 			 tracks[0].add(new MidiEvent(mess, 0));
 		 }
 		 else
-			 fluidSynth.send(0, ShortMessage.PROGRAM_CHANGE, midiSound, 0);
+			 setFluidsynthInstrument();
 
 		 if (timeOffset > 0)
 			 timeOffset /= timeDivision;
+		 playbackOffset = timeOffset;
 
 		 for (int i = 0; i < notes.size(); i++)
 		 {
@@ -774,15 +994,14 @@ public class MidiController
 					 tracks[0].add(createNoteOnEvent(cNote.pitch, 90, tick));
 				 else
 				 {
-					 String textb = "fsnOn" + cNote.pitch;
-					 addMidiEvent(tracks[0], metaType, textb.getBytes(), tick);
+					 addMidiEvent(tracks[0], PlaybackEvent.SYNTH_NOTE_ON, cNote.pitch, tick);
 				 }
 			 }
 
-			 String textb = "nOn";
+			 int noteEvent = PlaybackEvent.NOTE_ON;
 			 if (cNote.secondRow == true)
-				 textb = "n2On";
-			 addMidiEvent(tracks[0], metaType, textb.getBytes(), tick);
+				 noteEvent = PlaybackEvent.NOTE2_ON;
+			 addMidiEvent(tracks[0], noteEvent, 0, tick);
 			 tick+=(int)((cNote.duration)*ppq);
 			 
 			 if (playOnly == true && cNote.type != 5) // do not play silence !
@@ -791,34 +1010,87 @@ public class MidiController
 					 tracks[0].add(createNoteOffEvent(cNote.pitch, tick));
 				 else
 				 {
-					 textb = "fsnOff" + cNote.pitch;
-		  			 addMidiEvent(tracks[0], metaType, textb.getBytes(), tick);
+		  			 addMidiEvent(tracks[0], PlaybackEvent.SYNTH_NOTE_OFF, cNote.pitch, tick);
 				 }
 			 }
 
-			 textb = "nOff";
+			 noteEvent = PlaybackEvent.NOTE_OFF;
 			 if (cNote.secondRow == true)
-				 textb = "n2Off";
-  			 addMidiEvent(tracks[0], metaType, textb.getBytes(), tick);
+				 noteEvent = PlaybackEvent.NOTE2_OFF;
+  			 addMidiEvent(tracks[0], noteEvent, 0, tick);
   			 if (tick > endtick)
   				endtick = tick;
 		 }
-		 String textend = "end";
-		 addMidiEvent(tracks[0], metaType, textend.getBytes(), endtick);
+		 addMidiEvent(tracks[0], PlaybackEvent.END, 0, endtick);
 
-		 sequencers[0].setTempoInBPM(BPM/timeDivision);
+		 loadSequence(PlaybackSession.PLAYBACK, BPM/timeDivision);
+	 }
 
-		 if (useFluidsynth == true)
-         {
-           sequencers[0].addMetaEventListener(new MetaEventListener() {
-             public void meta(MetaMessage meta) 
-             {
-            	 fluidsynthAsyncMIDIevent(meta);
-             }
- 		   });
-         }
+	 /**
+ 	 * Starts the created playback, and the metronome on the same timeline.
+ 	 *
+ 	 * @param withMetronome true to start the metronome too
+ 	 */
+ 	public void startPlayback(boolean withMetronome)
+	 {
+		 if (withMetronome == true)
+		 {
+			 long origin = session.start(PlaybackSession.PLAYBACK, PlaybackSession.METRONOME);
+			 if (audioMetronome != null)
+				 audioMetronome.start(origin);
+		 }
+		 else
+			 session.start(PlaybackSession.PLAYBACK);
+	 }
+
+	 /**
+ 	 * Gets the playback position at a given time, on the timeline of the
+ 	 * started playback.
+ 	 *
+ 	 * @param time the time, on the System.nanoTime() timeline
+ 	 * @return the position in note timestamp units, the first note being at 0,
+ 	 *         or NaN if no playback was started
+ 	 */
+ 	public double getPlaybackPosition(long time)
+	 {
+		 if (session == null)
+			 return Double.NaN;
+		 return session.getTickPosition(PlaybackSession.PLAYBACK, time) / ppq - playbackOffset;
+	 }
+
+	 /**
+ 	 * Starts the latency calibration clicks, on the metronome sequence. A
+ 	 * BEAT event comes with each click and an END event after the last one.
+ 	 *
+ 	 * @param listener the listener of the calibration events
+ 	 * @return the time of the first click, on the System.nanoTime() timeline
+ 	 */
+ 	public long startCalibration(PlaybackEvent.Listener listener)
+	 {
+		 createSequence(PlaybackSession.METRONOME);
+		 Track track = tracks[PlaybackSession.METRONOME];
+		 try
+		 {
+			 if (useFluidsynth == true)
+				 setFluidsynthInstrument();
+			 for (int i = 0; i < LatencyCalibrator.CLICKS; i++)
+			 {
+				 addClick(track, 77, i*ppq);
+				 addMidiEvent(track, PlaybackEvent.BEAT, i, i*ppq);
+			 }
+			 addMidiEvent(track, PlaybackEvent.END, 0, LatencyCalibrator.CLICKS*ppq);
+		 }
+		 catch (InvalidMidiDataException e) {
+			 e.printStackTrace();
+			 System.exit(1);
+		 }
 
-		 return sequencers[0];
+		 loadSequence(PlaybackSession.METRONOME, LatencyCalibrator.BPM);
+		 session.addListener(PlaybackSession.METRONOME, listener);
+		 long origin = session.start(PlaybackSession.METRONOME);
+		 if (audioMetronome != null)
+			 audioMetronome.start(origin);
+		 return origin;
 	 }
 
 	 /**
@@ -826,10 +1098,31 @@ public class MidiController
  	 */
  	public void stopPlayback()
 	 {
-		 sequencers[0].stop();
-		 sequencers[0].close();
-		 // stop last note in case there's one suspended...
-		 if (lastNote != -1 && useFluidsynth == true)
-			 fluidSynth.send(0, ShortMessage.NOTE_OFF, lastNote, 0);
+		 if (session != null)
+			 session.stop(PlaybackSession.PLAYBACK);
+		 // stop the notes left playing, the events stopping them will not come
+		 allNotesOff();
+	 }
+
+	 /**
+ 	 * Adds a listener of the playback events of the current playback
+ 	 * sequence. It is dropped when the next playback is created.
+ 	 *
+ 	 * @param listener the listener
+ 	 */
+ 	public void addPlaybackListener(PlaybackEvent.Listener listener)
+	 {
+		 session.addListener(PlaybackSession.PLAYBACK, listener);
+	 }
+
+	 /**
+ 	 * Adds a listener of the playback events of the current metronome
+ 	 * sequence. It is dropped when the next metronome is created.
+ 	 *
+ 	 * @param listener the listener
+ 	 */
+ 	public void addMetronomeListener(PlaybackEvent.Listener listener)
+	 {
+		 session.addListener(PlaybackSession.METRONOME, listener);
 	 }
 }
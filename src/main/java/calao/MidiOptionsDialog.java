@@ -26,9 +26,6 @@ import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Vector;
 
-import javax.sound.midi.MidiDevice;
-import javax.sound.midi.MidiSystem;
-import javax.sound.midi.MidiUnavailableException;
 import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -37,6 +34,7 @@ import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JSlider;
@@ -44,13 +42,12 @@ import javax.swing.JSpinner;
 import javax.swing.JTextField;
 import javax.swing.SpinnerModel;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileFilter;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jpab.Device;
-import org.jpab.PortAudio;
-import org.jpab.PortAudioException;
 
 
 /**
@@ -92,6 +89,9 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
     //private JCheckBox soundOnCheckBox;
 	/** The instruments combo box. */
     private JComboBox instrumentsComboBox;
+
+    /** Whether the instruments are not known yet, while the soundfont loads. */
+    private boolean instrumentsLoading = false;
 	
 	/** The keyboard length combo box. */
 	private JComboBox keyboardLengthComboBox; // virtual keyboard keys number
@@ -102,6 +102,9 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
     /** The latency slider. */
     private JSlider latencySlider;
 
+    /** The latency calibration button. */
+    private JButton calibrateButton;
+
     /** The keyboardsound check box. */
     private JCheckBox keyboardsoundCheckBox;
     
@@ -111,6 +114,9 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
     /** The show beats check box. */
     private JCheckBox showBeatsCheckBox;
     
+    /** The audio clicks check box. */
+    private JCheckBox audioClicksCheckBox;
+    
     /** The java synth radio. */
     private JRadioButton javaSynthRadio;
     
@@ -147,6 +153,41 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
     /** The app audio controller. */
     AudioInputController appAudioController;
 
+    /** The device registry. */
+    private final DeviceRegistry deviceRegistry = DeviceRegistry.getDefault();
+
+    /** The MIDI inputs listed, after the "no MIDI input" item. */
+    private List<DeviceRegistry.MidiInput> midiInputs = new Vector<DeviceRegistry.MidiInput>();
+
+    /** True while the MIDI input of the preferences is not listed, kept unless another one is selected. */
+    private boolean keepStoredInput = false;
+
+    /** The PortAudio devices listed. */
+    private List<DeviceRegistry.AudioDevice> audioDevices = new Vector<DeviceRegistry.AudioDevice>();
+
+    /** Updates the MIDI inputs when devices are plugged or unplugged. */
+    private final DeviceRegistry.Listener devicesListener = new DeviceRegistry.Listener() {
+    	public void devicesChanged(DeviceRegistry registry)
+    	{
+    		SwingUtilities.invokeLater(new Runnable() {
+    			public void run()
+    			{
+    				if (isDisplayable() == false)
+    					return;
+    				if (midiInputRadio.isSelected() == true)
+    				{
+    					if (keepStoredInput == true && inputDeviceComboBox.getSelectedIndex() < 1)
+    						reloadInputList();
+    					else
+    						showMidiInputs(deviceRegistry.indexOf(getSelectedInputId()) + 1);
+    				}
+    				if (NativeUtils.isWindows() == true && deviceRegistry.getAudioDevices() != audioDevices)
+    					reloadDevicesList(null);
+    			}
+    		});
+    	}
+    };
+
 	/**
 	 * Instantiates a new midi options dialog.
 	 *
@@ -302,12 +343,9 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 		{
             instrumentsComboBox.addItem("No instrument available");
         }
-		if (instrumentsComboBox.getItemCount() > 0)
-		{
-			int instIdx = Integer.parseInt(appPrefs.getProperty("instrument"));
-			if (instIdx == -1) instIdx = 0;
-			instrumentsComboBox.setSelectedIndex(instIdx);
-		}
+		selectInstrument();
+		if (midiCtrl.isSoundFontLoading() && (iList == null || iList.size() == 0))
+			showSoundFontProgress(0);
 		instrumentsComboBox.addActionListener(this);
 
         keyboardLengthComboBox = new JComboBox();
@@ -361,21 +399,27 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
         
         JLabel clickLabel = new JLabel(appBundle.getString("_menuMetronom"));
         clickLabel.setFont(titleFont);
-        clickLabel.setBounds(10, 5, 260, 40);
+        clickLabel.setBounds(10, 5, 135, 40);
         
         accentsCheckBox = new JCheckBox(appBundle.getString("_beatAccents"));
-        accentsCheckBox.setBounds(220, 12, 100, 25);
+        accentsCheckBox.setBounds(150, 12, 95, 25);
         if (Integer.parseInt(appPrefs.getProperty("clickAccents")) == 1)
         	accentsCheckBox.setSelected(true);
         
         showBeatsCheckBox = new JCheckBox(appBundle.getString("_menuShowMetronom"));
-        showBeatsCheckBox.setBounds(330, 12, 150, 25);
+        showBeatsCheckBox.setBounds(250, 12, 125, 25);
         if (Integer.parseInt(appPrefs.getProperty("showBeats")) == 1)
         	showBeatsCheckBox.setSelected(true);
         
+        audioClicksCheckBox = new JCheckBox(appBundle.getString("_audioClicks"));
+        audioClicksCheckBox.setBounds(380, 12, 115, 25);
+        if (Integer.parseInt(appPrefs.getProperty("audioClicks")) == 1)
+        	audioClicksCheckBox.setSelected(true);
+        
         metronomePanel.add(clickLabel);
         metronomePanel.add(accentsCheckBox);
         metronomePanel.add(showBeatsCheckBox);
+        metronomePanel.add(audioClicksCheckBox);
         tmpYpos+=55;
         
         // ******************************* latency panel *****************************
@@ -389,14 +433,19 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
         latLabel.setBounds(10, 5, 200, 60);
 
         latencySlider = new JSlider(JSlider.HORIZONTAL, 0, 500, 0);
-        latencySlider.setBounds(130, 3, 350, 60);
-        latencySlider.setMajorTickSpacing(50);
+        latencySlider.setBounds(130, 3, 250, 60);
+        latencySlider.setMajorTickSpacing(100);
         latencySlider.setMinorTickSpacing(10);
         latencySlider.setPaintTicks(true);
         latencySlider.setPaintLabels(true);
 
+        calibrateButton = new JButton(appBundle.getString("_latencyCalibrate"));
+        calibrateButton.setBounds(390, 20, 100, 27);
+        calibrateButton.addActionListener(this);
+
         latencyPanel.add(latLabel);
         latencyPanel.add(latencySlider);
+        latencyPanel.add(calibrateButton);
         tmpYpos+=75;
        
     	try
@@ -434,6 +483,10 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
         add(backPanel);
         
         reloadInputList();
+        deviceRegistry.addListener(devicesListener);
+        // PortAudio sees new devices only when scanned again
+        if (NativeUtils.isWindows() == true)
+        	deviceRegistry.refreshAudio();
 
         if (fluidsynthRadio.isSelected() == true)
         {
@@ -455,22 +508,30 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 		int devIndex = -1;
 		if (inputDev != "-1")
 			devIndex = Integer.parseInt(inputDev.split(",")[1]);
+		String deviceId = appPrefs.getProperty("inputDeviceId");
+		if (deviceId != "-1" && inputDev.split(",")[0].equals("MIDI"))
+			devIndex = deviceRegistry.indexOf(deviceId) + 1; // 0 if unplugged or not scanned yet
 		
+		showMidiInputs(devIndex);
+		// an unplugged input, or the registry not done with its first scan, shows as no MIDI input
+		keepStoredInput = inputDev != "-1" && inputDev.split(",")[0].equals("MIDI") &&
+				Integer.parseInt(inputDev.split(",")[1]) > 0 && inputDeviceComboBox.getSelectedIndex() < 1;
+	}
+
+	/**
+	 * Lists the MIDI inputs of the device registry.
+	 *
+	 * @param devIndex the item to select, 0 for no MIDI input
+	 */
+	private void showMidiInputs(int devIndex)
+	{
 		inputDeviceComboBox.removeAllItems();
 		if (midiInputRadio.isSelected() == true)
 		{
+			midiInputs = deviceRegistry.getMidiInputs();
 			inputDeviceComboBox.addItem(appBundle.getString("_nomidiin"));
-			MidiDevice.Info[] aInfos = MidiSystem.getMidiDeviceInfo();
-			for (int i = 0; i < aInfos.length; i++) 
-			{
-				try 
-				{
-					MidiDevice device=MidiSystem.getMidiDevice(aInfos[i]);
-					boolean bAllowsInput = (device.getMaxTransmitters() != 0);
-					if (bAllowsInput) 
-						inputDeviceComboBox.addItem(aInfos[i].getName());
-				} catch (MidiUnavailableException e) {  }
-			}
+			for (int i = 0; i < midiInputs.size(); i++)
+				inputDeviceComboBox.addItem(midiInputs.get(i).getName());
         
 			if (devIndex < 0 || devIndex >= inputDeviceComboBox.getItemCount())
 				inputDeviceComboBox.setSelectedIndex(0);
@@ -478,7 +539,39 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 				inputDeviceComboBox.setSelectedIndex(devIndex);
 		}
 	}
+
+	/**
+	 * Gets the id of the selected MIDI input.
+	 *
+	 * @return the id, or null if no MIDI input is selected
+	 */
+	private String getSelectedInputId()
+	{
+		int idx = inputDeviceComboBox.getSelectedIndex();
+		if (midiInputRadio.isSelected() == false || idx < 1 || idx > midiInputs.size())
+			return null;
+		return midiInputs.get(idx - 1).getId();
+	}
 	
+	/* (non-Javadoc)
+	 * @see java.awt.Window#dispose()
+	 */
+	public void dispose()
+	{
+		deviceRegistry.removeListener(devicesListener);
+		super.dispose();
+	}
+
+	/**
+	 * Sets the latency shown by the slider, after a calibration.
+	 *
+	 * @param latency the latency in milliseconds
+	 */
+	public void setLatency(int latency)
+	{
+		latencySlider.setValue(latency);
+	}
+
 	/**
 	 * Reload instruments.
 	 *
@@ -486,6 +579,8 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 	 */
 	public void reloadInstruments(List<String> iList)
 	{
+		instrumentsLoading = false;
+		instrumentsComboBox.setEnabled(true);
 		instrumentsComboBox.removeAllItems();
 		if (iList != null)
 			logger.debug("Number of instruments: " +  iList.size());
@@ -498,8 +593,66 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 		{
             instrumentsComboBox.addItem("No instrument available");
         }
+		selectInstrument();
+	}
+
+	/**
+	 * Selects the instrument of the preferences, if the list has it.
+	 */
+	private void selectInstrument()
+	{
+		int instIdx = Integer.parseInt(appPrefs.getProperty("instrument"));
+		if (instIdx == -1) instIdx = 0;
+		if (instIdx < instrumentsComboBox.getItemCount())
+			instrumentsComboBox.setSelectedIndex(instIdx);
+	}
+
+	/**
+	 * Shows the soundfont loading progress in place of the instruments,
+	 * until {@link #reloadInstruments(List)} is called.
+	 *
+	 * @param percent the progress, from 0 to 100
+	 */
+	public void showSoundFontProgress(int percent)
+	{
+		instrumentsLoading = true;
+		instrumentsComboBox.removeAllItems();
+		instrumentsComboBox.addItem(appBundle.getString("_soundfontLoading") + " " + percent + "%");
+		instrumentsComboBox.setEnabled(false);
 	}
 	
+	/**
+	 * Gets the PortAudio index of the device selected in a list.
+	 *
+	 * @param indexes the PortAudio indexes of the devices listed
+	 * @param comboBox the list
+	 * @param storedIndex the index to keep while the devices are not listed yet
+	 * @return the index
+	 */
+	private int getPortaudioIndex(Vector<Integer> indexes, JComboBox comboBox, int storedIndex)
+	{
+		int selected = comboBox.getSelectedIndex();
+		if (selected < 0 || selected >= indexes.size())
+			return storedIndex;
+		return indexes.get(selected);
+	}
+
+	/**
+	 * Gets the index of the device stored in the preferences.
+	 *
+	 * @param property the preference, "system,index"
+	 * @param system the system the index is wanted for
+	 * @param defaultIndex the index if another system or none is stored
+	 * @return the index
+	 */
+	private int getStoredIndex(String property, String system, int defaultIndex)
+	{
+		String device = appPrefs.getProperty(property);
+		if (device == "-1" || device.split(",")[0].equals(system) == false)
+			return defaultIndex;
+		return Integer.parseInt(device.split(",")[1]);
+	}
+
 	/**
 	 * Reload devices list.
 	 *
@@ -525,33 +678,32 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 		
 		if (NativeUtils.isWindows()) 
 		{
-			// since we use only PortAudio on Windows, retrieve the list directly from PortAudio
-			try {
-				PortAudio.initialize();
-				for (Device device : PortAudio.getDevices()) 
+			// since we use only PortAudio on Windows, retrieve the list from the PortAudio devices.
+			// Empty until scanned, devicesListener reloads it then
+			audioDevices = deviceRegistry.getAudioDevices();
+			for (DeviceRegistry.AudioDevice audioDevice : audioDevices) 
+			{
+				Device device = audioDevice.getDevice();
+				String devName = audioDevice.getName();
+				if (device.getMaxOutputChannels() >= 2 && fluidsynthRadio.isSelected() == true)
 				{
-					String devName = device.getName() + " [" + device.getHostAPI().getType() + "]";
-					if (device.getMaxOutputChannels() >= 2 && fluidsynthRadio.isSelected() == true)
-					{
-						fluidDevComboBox.addItem(devName);
-						portaudioOutputIndexes.add(idx);
-						if (outputDevIndex == idx)
-							fluidDevComboBox.setSelectedIndex(fluidDevComboBox.getItemCount() - 1);
-					}
-					else if (device.getMaxInputChannels() > 0 &&  audioInputRadio.isSelected() == true)
-					{
-						inputDeviceComboBox.addItem(devName);
-						portaudioInputIndexes.add(idx);
-						if (inputDevIndex == idx)
-							inputDeviceComboBox.setSelectedIndex(inputDeviceComboBox.getItemCount() - 1);
-					}
-					//logger.debug(device);
-					logger.debug("Dev #" + idx + ": " + devName);
-					//logger.debug("Host API ID: " + device.getHostAPI().toString());
-					idx++;
+					fluidDevComboBox.addItem(devName);
+					portaudioOutputIndexes.add(idx);
+					if (outputDevIndex == idx)
+						fluidDevComboBox.setSelectedIndex(fluidDevComboBox.getItemCount() - 1);
 				}
-				PortAudio.terminate();
-			} catch (PortAudioException ex) {  }
+				else if (device.getMaxInputChannels() > 0 &&  audioInputRadio.isSelected() == true)
+				{
+					inputDeviceComboBox.addItem(devName);
+					portaudioInputIndexes.add(idx);
+					if (inputDevIndex == idx)
+						inputDeviceComboBox.setSelectedIndex(inputDeviceComboBox.getItemCount() - 1);
+				}
+				//logger.debug(device);
+				logger.debug("Dev #" + idx + ": " + devName);
+				//logger.debug("Host API ID: " + device.getHostAPI().toString());
+				idx++;
+			}
 
 			if (outputDevIndex == -1 && fluidDevComboBox.getItemCount() > 0)
 				fluidDevComboBox.setSelectedIndex(0);
@@ -595,9 +747,14 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 			int inputDevIdx = -1;
 			if (inDev != "-1")
 				inputDevIdx = Integer.parseInt(inDev.split(",")[1]);
-			if (inDev == "-1" ||  
+			int audioInputIdx = getPortaudioIndex(portaudioInputIndexes, inputDeviceComboBox, getStoredIndex("inputDevice", "Audio", 0));
+			boolean keepInput = keepStoredInput == true && midiInputRadio.isSelected() == true &&
+					inputDeviceComboBox.getSelectedIndex() < 1;
+			if (keepInput == true)
+				logger.debug("MIDI input not listed, keeping " + inDev);
+			else if (inDev == "-1" ||  
 				(midiInputRadio.isSelected() == true && inputDevIdx != inputDeviceComboBox.getSelectedIndex()) ||
-				(audioInputRadio.isSelected() == true && inputDevIdx != portaudioInputIndexes.get(inputDeviceComboBox.getSelectedIndex())))
+				(audioInputRadio.isSelected() == true && inputDevIdx != audioInputIdx))
 	    			newMidiDev = true;
 			else if (inDev != "-1")
 			{
@@ -606,16 +763,24 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 					inSys.equals("Audio") && midiInputRadio.isSelected() == true)
 						newMidiDev = true;
 			}
-	    	if (midiInputRadio.isSelected() == true)
+			String inputId = getSelectedInputId();
+			if (inputId != null && inputId.equals(appPrefs.getProperty("inputDeviceId")) == false)
+				newMidiDev = true;
+	    	// a kept input is opened once plugged
+	    	if (midiInputRadio.isSelected() == true && keepInput == false)
+	    	{
 	    		appPrefs.setProperty("inputDevice", "MIDI," + String.valueOf(inputDeviceComboBox.getSelectedIndex()));
-	    	else
-	    		appPrefs.setProperty("inputDevice", "Audio," + String.valueOf(portaudioInputIndexes.get(inputDeviceComboBox.getSelectedIndex())));
+	    		if (inputId != null)
+	    			appPrefs.setProperty("inputDeviceId", inputId);
+	    	}
+	    	else if (audioInputRadio.isSelected() == true)
+	    		appPrefs.setProperty("inputDevice", "Audio," + String.valueOf(audioInputIdx));
 
 	    	int outIdx = 0;
 	    	if (NativeUtils.isWindows())
 	    	{
 	    		if (fluidsynthRadio.isSelected() == true)
-	    			outIdx = portaudioOutputIndexes.get(fluidDevComboBox.getSelectedIndex());
+	    			outIdx = getPortaudioIndex(portaudioOutputIndexes, fluidDevComboBox, getStoredIndex("outputDevice", "Fluidsynth", -1));
 	    	}
             else
             	outIdx = fluidDevComboBox.getSelectedIndex();
@@ -651,6 +816,11 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 	    		appPrefs.setProperty("showBeats", "1");
 	    	else
 	    		appPrefs.setProperty("showBeats", "0");
+	    	
+	    	if (audioClicksCheckBox.isSelected() == true)
+	    		appPrefs.setProperty("audioClicks", "1");
+	    	else
+	    		appPrefs.setProperty("audioClicks", "0");
 
 	    	SpinnerNumberModel model = (SpinnerNumberModel)transpositionSpinner.getModel();
 	    	if (Integer.parseInt(appPrefs.getProperty("transposition")) != model.getNumber().intValue())
@@ -662,9 +832,12 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 	    	else 
 	    		appPrefs.setProperty("keyboardlength","73");
 
-	    	if (Integer.parseInt(appPrefs.getProperty("instrument")) != instrumentsComboBox.getSelectedIndex())
-	    		newInstrument = true;
-	    	appPrefs.setProperty("instrument",String.valueOf(instrumentsComboBox.getSelectedIndex())); 
+	    	if (instrumentsLoading == false)
+	    	{
+	    		if (Integer.parseInt(appPrefs.getProperty("instrument")) != instrumentsComboBox.getSelectedIndex())
+	    			newInstrument = true;
+	    		appPrefs.setProperty("instrument",String.valueOf(instrumentsComboBox.getSelectedIndex()));
+	    	}
 	    	appPrefs.setProperty("latency",String.valueOf(latencySlider.getValue()));
 	    	appPrefs.storeProperties();
 
@@ -691,6 +864,12 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 			reloadDevicesList(null);
 			audioTestButton.setVisible(true);
 		}
+		else if (ae.getSource() == calibrateButton)
+		{
+			JOptionPane.showMessageDialog(this, appBundle.getString("_latencyCalibrationHelp"),
+					appBundle.getString("_latency"), JOptionPane.INFORMATION_MESSAGE);
+			this.firePropertyChange("calibrateLatency", false, true);
+		}
 		else if (ae.getSource() == audioTestButton)
 		{
 			audioOptions = new AudioOptionDialog(appBundle, appPrefs, appAudioController);
@@ -738,7 +917,7 @@ public class MidiOptionsDialog extends JDialog implements ActionListener
 	            sbankPath.setText(file.getAbsolutePath());
 	            appPrefs.setProperty("soundfontPath", file.getAbsolutePath());
 	            if (NativeUtils.isWindows())
-	            	idx = portaudioOutputIndexes.get(fluidDevComboBox.getSelectedIndex());
+	            	idx = getPortaudioIndex(portaudioOutputIndexes, fluidDevComboBox, getStoredIndex("outputDevice", "Fluidsynth", -1));
 	            else
 	            	idx = fluidDevComboBox.getSelectedIndex();
 				appPrefs.setProperty("outputDevice", "Fluidsynth," + idx);
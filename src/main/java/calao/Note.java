@@ -113,6 +113,29 @@ public class Note
 		
 		ypos = 0; // y positions are calculated by the NotesPanel
 	}
+
+	/**
+	 * Instantiates a copy of a note.
+	 *
+	 * @param n the note to copy
+	 */
+	public Note(Note n)
+	{
+		xpos = n.xpos;
+		ypos = n.ypos;
+		type = n.type;
+		duration = n.duration;
+		timestamp = n.timestamp;
+		clef = n.clef;
+		altType = n.altType;
+		secondRow = n.secondRow;
+		level = n.level;
+		addLinesNumber = n.addLinesNumber;
+		addLinesYpos = n.addLinesYpos;
+		pitch = n.pitch;
+		tripletValue = n.tripletValue;
+		highlight = n.highlight;
+	}
 	
 	/**
 	 * Gets the duration.
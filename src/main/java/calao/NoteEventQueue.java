@@ -0,0 +1,163 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free queue of timestamped note events, written by exactly one thread
+ * (the MIDI driver) and read by exactly one other thread (the game logic).
+ *
+ * Events are stored in preallocated parallel arrays, so neither side
+ * allocates. Like {@link SampleRingBuffer}, each side publishes its own
+ * position with an ordered write; when the queue is full the newest events
+ * are dropped and counted as overruns.
+ *
+ * @author Neonunux
+ */
+public class NoteEventQueue {
+
+	/**
+	 * Receives the events taken from the queue.
+	 */
+	public interface Handler {
+
+		/**
+		 * Called for each event, in arrival order.
+		 *
+		 * @param pitch
+		 *            the pitch
+		 * @param velocity
+		 *            the velocity, 0 when the key is released
+		 * @param time
+		 *            the time the note was played, on the
+		 *            {@link System#nanoTime()} timeline
+		 */
+		void noteEvent(int pitch, int velocity, long time);
+	}
+
+	/** The pitches. */
+	private final int[] pitches;
+
+	/** The velocities. */
+	private final int[] velocities;
+
+	/** The times. */
+	private final long[] times;
+
+	/** The index mask, capacity - 1. */
+	private final int mask;
+
+	/** The number of events written so far. */
+	private final AtomicLong writePos = new AtomicLong();
+
+	/** The number of events read so far. */
+	private final AtomicLong readPos = new AtomicLong();
+
+	/** The number of events dropped because the queue was full. */
+	private final AtomicLong overruns = new AtomicLong();
+
+	/**
+	 * Instantiates a new note event queue.
+	 *
+	 * @param capacity
+	 *            the minimum capacity, rounded up to a power of two
+	 */
+	public NoteEventQueue(int capacity) {
+		int size = ConcurrencyUtils.nextPow2(capacity);
+		pitches = new int[size];
+		velocities = new int[size];
+		times = new long[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Gets the capacity.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return times.length;
+	}
+
+	/**
+	 * Gets the number of events ready to be read.
+	 *
+	 * @return the available events
+	 */
+	public int available() {
+		return (int) (writePos.get() - readPos.get());
+	}
+
+	/**
+	 * Gets the number of events dropped so far because the reader was late.
+	 *
+	 * @return the overruns
+	 */
+	public long getOverruns() {
+		return overruns.get();
+	}
+
+	/**
+	 * Adds an event. Must only be called by the producer thread.
+	 *
+	 * @param pitch
+	 *            the pitch
+	 * @param velocity
+	 *            the velocity
+	 * @param time
+	 *            the event time, on the {@link System#nanoTime()} timeline
+	 * @return true, if the event was queued
+	 */
+	public boolean offer(int pitch, int velocity, long time) {
+		long wp = writePos.get();
+		if (wp - readPos.get() >= times.length) {
+			overruns.incrementAndGet();
+			return false;
+		}
+		int i = (int) wp & mask;
+		pitches[i] = pitch;
+		velocities[i] = velocity;
+		times[i] = time;
+		writePos.lazySet(wp + 1);
+		return true;
+	}
+
+	/**
+	 * Passes every available event to a handler. Must only be called by the
+	 * consumer thread.
+	 *
+	 * @param handler
+	 *            the handler
+	 * @return the number of events handled
+	 */
+	public int drain(Handler handler) {
+		long rp = readPos.get();
+		int count = (int) (writePos.get() - rp);
+		for (int n = 0; n < count; n++) {
+			int i = (int) (rp + n) & mask;
+			int pitch = pitches[i];
+			int velocity = velocities[i];
+			long time = times[i];
+			// free the slot first, a failing handler must not see it twice
+			readPos.lazySet(rp + n + 1);
+			handler.noteEvent(pitch, velocity, time);
+		}
+		return count;
+	}
+}
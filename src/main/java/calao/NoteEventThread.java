@@ -0,0 +1,100 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Game logic thread: takes the note events of a {@link NoteEventQueue} and
+ * hands them to a handler, off the MIDI driver thread.
+ *
+ * @author Neonunux
+ */
+public class NoteEventThread extends Thread {
+
+	private static final Logger logger = LogManager
+			.getLogger(NoteEventThread.class.getName());
+
+	/** The longest wait for new events before polling the queue again. */
+	private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(10);
+
+	/** The queue. */
+	private final NoteEventQueue queue;
+
+	/** The handler. */
+	private final NoteEventQueue.Handler handler;
+
+	/** The running. */
+	private volatile boolean running = true;
+
+	/**
+	 * Instantiates a new note event thread.
+	 *
+	 * @param queue
+	 *            the queue to read events from
+	 * @param handler
+	 *            the handler
+	 */
+	public NoteEventThread(NoteEventQueue queue, NoteEventQueue.Handler handler) {
+		super("Game logic");
+		this.queue = queue;
+		this.handler = handler;
+		setDaemon(true);
+		setPriority(Thread.MAX_PRIORITY - 1);
+	}
+
+	/**
+	 * Wakes the thread up when new events have been queued. Meant to be
+	 * called by the producer after each offer.
+	 */
+	public void wakeUp() {
+		LockSupport.unpark(this);
+	}
+
+	/**
+	 * Stops the thread after the events in progress.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 */
+	public void run() {
+		logger.debug("[NoteEventThread] started");
+		while (running) {
+			try {
+				if (queue.drain(handler) == 0) {
+					LockSupport.parkNanos(this, MAX_WAIT_NANOS);
+				}
+			} catch (RuntimeException e) {
+				// keep serving the next notes
+				logger.error("[NoteEventThread] note event failed: " + e);
+			}
+		}
+		logger.debug("[NoteEventThread] stopped, overruns = "
+				+ queue.getOverruns());
+	}
+}
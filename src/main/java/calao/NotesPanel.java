@@ -22,7 +22,9 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Toolkit;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.Vector;
@@ -87,11 +89,11 @@ public class NotesPanel extends JPanel implements MouseListener
 	/** The inline mode. */
 	private boolean inlineMode = false;
 	
-	/** The single note index. */
-	private int singleNoteIndex = -1; // force the painting of a single note (first clef)
-	
-	/** The single note2 index. */
-	private int singleNote2Index = -1; // force the painting of a single note (second clef)
+	/** Whether the notes positions match the current size, clefs and sequence. */
+	private boolean layoutValid = false;
+
+	/** The bounds of the note being painted, reused on each paint. */
+	private final Rectangle paintBounds = new Rectangle();
 	
 	/** The selected clef. */
 	private int selectedClef = 1; 
@@ -118,6 +120,12 @@ public class NotesPanel extends JPanel implements MouseListener
 	/** The global scale. */
 	private double globalScale = 1.0;
 
+	/** The pre-rendered note symbols. */
+	private final GlyphCache glyphs;
+
+	/** The frame of the running game, drawn instead of the notes, or null. */
+	private volatile GameFrame gameFrame = null;
+
 	/**
 	 * Instantiates a new notes panel.
 	 *
@@ -135,6 +143,7 @@ public class NotesPanel extends JPanel implements MouseListener
 		notes2 = n2;
 		inlineMode = inline;
 		globalScale = 1.0;
+		glyphs = new GlyphCache(f);
 		
 		learningText = new JLabel("", null, JLabel.CENTER);
 		learningText.setForeground(Color.decode("0x869EBA"));
@@ -155,6 +164,8 @@ public class NotesPanel extends JPanel implements MouseListener
      */
     public void setRowsDistance(int dist)
     {
+    	if (dist != rowsDistance)
+    		layoutValid = false;
     	this.rowsDistance = dist;
     }
     
@@ -189,6 +200,7 @@ public class NotesPanel extends JPanel implements MouseListener
 		learningText.setText("");
 		learningText.setFont(ltf);
 		
+		layoutValid = false;
     	repaint();
     }
     
@@ -212,6 +224,8 @@ public class NotesPanel extends JPanel implements MouseListener
      */
     public void setFirstNoteXPosition(int xpos)
     {
+    	if (xpos != firstNoteXPos)
+    		layoutValid = false;
     	this.firstNoteXPos = xpos;
     }
     
@@ -222,8 +236,11 @@ public class NotesPanel extends JPanel implements MouseListener
      */
     public void setStaffWidth(int w)
     {
+    	if (w == staffWidth)
+    		return;
     	logger.debug("[NP] staff width: " + w);
     	this.staffWidth = w;
+    	layoutValid = false;
     }
     
     /**
@@ -234,6 +251,7 @@ public class NotesPanel extends JPanel implements MouseListener
     public void setScale(double factor)
     {
     	this.globalScale = factor;
+    	glyphs.setScale(factor);
     }
     
     /**
@@ -323,6 +341,7 @@ public class NotesPanel extends JPanel implements MouseListener
     		if (minLev < 9) row2H += (9 - minLev) * 5;
     	}
     	rowsDistance = row1H + row2H;
+    	layoutValid = false;
     	logger.debug("[setNotesSequence] rowsDistance set to: " + rowsDistance);
     }
 
@@ -333,6 +352,7 @@ public class NotesPanel extends JPanel implements MouseListener
     {
     	tmpX = firstNoteXPos;
     	tmpY = 0;
+    	layoutValid = true;
 
     	if (notes == null)
     		return;
@@ -356,6 +376,17 @@ public class NotesPanel extends JPanel implements MouseListener
     	}
     }
 
+    /**
+     * Sets the notes positions only if the staff width, the rows distance,
+     * the clefs or the sequence changed since they were last set. Cheap
+     * enough to be called on each paint.
+     */
+    public void updateNotesPositions()
+    {
+    	if (layoutValid == false)
+    		setNotesPositions();
+    }
+
     /**
      * Sets the single note position.
      *
@@ -445,6 +476,81 @@ public class NotesPanel extends JPanel implements MouseListener
    		learningText.setVisible(enable); 	
     }
 
+    /**
+     * Sets the frame of the running game to draw instead of the notes.
+     *
+     * @param frame the frame, null to draw the notes again
+     */
+    public void setGameFrame(GameFrame frame)
+    {
+    	GameFrame previous = gameFrame;
+    	gameFrame = frame;
+    	if (frame == null)
+    	{
+    		repaint();
+    		return;
+    	}
+    	// only the places the notes left and reached need painting again
+    	Rectangle bounds = new Rectangle();
+    	if (previous != null)
+    	{
+    		for (int i = 0; i < previous.size(); i++)
+    			repaintNote(previous.getNote(i), previous.getX(i), bounds);
+    	}
+    	for (int i = 0; i < frame.size(); i++)
+    		repaintNote(frame.getNote(i), frame.getX(i), bounds);
+    }
+
+    /**
+     * Gets the bounds of everything drawn for a note, in unscaled
+     * coordinates. Generous rather than exact, as it is only used to find the
+     * parts of the panel that need painting.
+     *
+     * @param note the note
+     * @param bounds the rectangle to fill
+     * @return the bounds
+     */
+    Rectangle getNoteBounds(Note note, Rectangle bounds)
+    {
+    	// glyphs, accidentals and dots
+    	bounds.setBounds(note.xpos - 25, note.ypos - 70, 65, 85);
+    	if (note.altType != 0 && note.level < 12)
+    		bounds.add(note.xpos - 25, note.ypos - 105);
+    	if (note.type == 5 && note.duration == 4)
+    		bounds.add(note.xpos + (int)(noteDistance * 1.55) + 20, note.ypos);
+    	if (note.addLinesNumber > 0)
+    	{
+    		bounds.add(note.xpos - 10, note.addLinesYpos - 5);
+    		bounds.add(note.xpos + 30, note.addLinesYpos + (note.addLinesNumber * 10) + 5);
+    	}
+    	if (note.tripletValue != 0)
+    	{
+    		int tripletBarYPos;
+    		if (note.tripletValue < 0)
+    			tripletBarYPos = note.ypos + (((Math.abs(note.tripletValue) % 1000) - note.level) * 5) - 15;
+    		else
+    			tripletBarYPos = note.ypos - ((note.level - (note.tripletValue % 1000)) * 5) - 40;
+    		bounds.add(note.xpos + 65, tripletBarYPos - 20);
+    		bounds.add(note.xpos + 65, tripletBarYPos + 10);
+    	}
+    	return bounds;
+    }
+
+    /**
+     * Repaints the part of the panel covered by a note.
+     *
+     * @param note the note
+     * @param x the x position the note is drawn at
+     * @param bounds a rectangle to work with
+     */
+    private void repaintNote(Note note, double x, Rectangle bounds)
+    {
+    	getNoteBounds(note, bounds);
+    	bounds.x += (int)Math.floor(x) - note.xpos;
+    	repaint((int)Math.floor(bounds.x * globalScale), (int)Math.floor(bounds.y * globalScale),
+    			(int)Math.ceil((bounds.width + 1) * globalScale) + 1, (int)Math.ceil(bounds.height * globalScale) + 1);
+    }
+
     /**
      * Highlight note.
      *
@@ -457,18 +563,14 @@ public class NotesPanel extends JPanel implements MouseListener
     	if (clef == 1)
     	{
     		if (notes.size() == 0) return;
-    		singleNoteIndex = index;
     		notes.get(index).highlight = enable;
-    		repaint();
-    		singleNoteIndex = -1;
+    		repaintNote(notes.get(index), notes.get(index).xpos, new Rectangle());
     	}
     	else if (clef == 2)
     	{
     		if (notes2.size() == 0) return;
-    		singleNote2Index = index;
     		notes2.get(index).highlight = enable;
-    		repaint();
-    		singleNote2Index = -1;
+    		repaintNote(notes2.get(index), notes2.get(index).xpos, new Rectangle());
     	}
     }
 
@@ -635,6 +737,26 @@ public class NotesPanel extends JPanel implements MouseListener
     	//logger.debug("Mouse exited");
     }
 
+    /**
+     * Checks if a note needs painting, that is if it lies inside the clip.
+     * In edit mode the selection is drawn along with the notes, so they are
+     * always painted.
+     *
+     * @param clip the clip, null for the whole panel
+     * @param note the note
+     * @param dx the horizontal offset the note is drawn at
+     * @return true, if the note must be drawn
+     */
+    private boolean needsPainting(Rectangle clip, Note note, double dx)
+    {
+    	if (clip == null || editMode == true)
+    		return true;
+    	getNoteBounds(note, paintBounds);
+    	paintBounds.x += (int)Math.floor(dx);
+    	paintBounds.width += 1;
+    	return clip.intersects(paintBounds);
+    }
+
     /**
      * Draw note.
      *
@@ -644,11 +766,25 @@ public class NotesPanel extends JPanel implements MouseListener
      */
     private void drawNote(Graphics g, int index, int clef) 
     {
-		((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    	String symbol = "";
 		Note note = null;
 		if (clef == 1) note = notes.get(index);
 		else if (clef == 2) note = notes2.get(index);
+		drawNote(g, note, index, clef);
+    }
+
+    /**
+     * Draw note.
+     *
+     * @param g the g
+     * @param note the note
+     * @param index the index
+     * @param clef the clef
+     */
+    private void drawNote(Graphics g, Note note, int index, int clef) 
+    {
+		((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    	String symbol = "";
+    	float symbolSize = 57f;
 		int type = note.type;
 
 		if (editMode == true && clef == selectedClef && index == editNoteIndex)
@@ -696,7 +832,6 @@ public class NotesPanel extends JPanel implements MouseListener
 				g.drawLine(note.xpos - 5, note.addLinesYpos + (j * 10), note.xpos + addLineWidth, note.addLinesYpos + (j * 10));
 		}
 
-    	g.setFont(appFont.deriveFont(57f));
 		if (type == 0) symbol = "w"; // whole note
 		else if (type == 1 || type == 6)
 		{
@@ -737,18 +872,17 @@ public class NotesPanel extends JPanel implements MouseListener
 				symbol = "Q";
 			else if (note.duration == 0.5)
 			{
-				g.setFont(appFont.deriveFont(50f));
+				symbolSize = 50f;
 				symbol = "E";
 			}
 		}
 
-		g.drawString(symbol, note.xpos, note.ypos);
+		glyphs.drawString(g, symbol, symbolSize, note.xpos, note.ypos);
 
 		// draw alteration symbol if required
 		if (note.altType != 0)
 		{
 			int altYOff = 0;
-			g.setFont(appFont.deriveFont(50f));
 			if (note.level < 12)
 			{
 				if (note.type == 2 || note.type == 7) 
@@ -758,15 +892,15 @@ public class NotesPanel extends JPanel implements MouseListener
 			}
 			if (note.altType == -2)
 			{
-				g.drawString("b", note.xpos - 19, note.ypos + altYOff);
-				g.drawString("b", note.xpos - 12, note.ypos + altYOff);
+				glyphs.drawString(g, "b", 50f, note.xpos - 19, note.ypos + altYOff);
+				glyphs.drawString(g, "b", 50f, note.xpos - 12, note.ypos + altYOff);
 			}
 			else if (note.altType == -1)
-				g.drawString("b", note.xpos - 12, note.ypos + altYOff);
+				glyphs.drawString(g, "b", 50f, note.xpos - 12, note.ypos + altYOff);
 			else if (note.altType == 1)
-				g.drawString("B", note.xpos - 12, note.ypos + altYOff);
+				glyphs.drawString(g, "B", 50f, note.xpos - 12, note.ypos + altYOff);
 			else if (note.altType == 2)
-				g.drawString("" + (char)0xBD, note.xpos - 14, note.ypos + altYOff);
+				glyphs.drawString(g, "" + (char)0xBD, 50f, note.xpos - 14, note.ypos + altYOff);
 		}
 
 		// draw triplets special graphics
@@ -810,34 +944,55 @@ public class NotesPanel extends JPanel implements MouseListener
 		if (globalScale != 1.0)
 			((Graphics2D) g).scale(globalScale, globalScale);
 
-    	if (singleNoteIndex == -1 && singleNote2Index == -1)
+		GameFrame frame = gameFrame;
+		if (frame != null)
+		{
+			// moving notes are drawn at their exact position, between pixels
+			Graphics2D g2d = (Graphics2D) g;
+			g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+			g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+			// the pre-rendered symbols too
+			g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setColor(Color.black);
+			Rectangle clip = g.getClipBounds();
+			for (int i = 0; i < frame.size(); i++)
+			{
+				Note note = frame.getNote(i);
+				double dx = frame.getX(i) - note.xpos;
+				if (needsPainting(clip, note, dx) == false)
+					continue;
+				g2d.translate(dx, 0);
+				drawNote(g, note, i, 1);
+				g2d.translate(-dx, 0);
+			}
+			// do not let the window system hold the frame back
+			Toolkit.getDefaultToolkit().sync();
+			return;
+		}
+
+		// only the notes inside the dirty region are drawn again
+		Rectangle clip = g.getClipBounds();
+    	g.setColor(Color.black);
+    	if (notes != null)
     	{
-        	g.setColor(Color.black);
-        	if (notes != null)
-        	{
-        		for (int i = 0; i < notes.size(); i++)
-        			drawNote(g, i, 1);
-        	}
-        	if (notes2 != null)
-        	{
-        		for (int i = 0; i < notes2.size(); i++)
-        			drawNote(g, i, 2);
-        	}
-    		if (editMode == true && editNoteIndex == -1 && clefs.size() > 1)
-    		{
-    			g.setColor(new Color(0x00, 0xFF, 0x00, 0x1F));
-    			if (selectedClef == 1)
-    				g.fillRoundRect(0, 5, firstNoteXPos - 5, 120, 10, 10);
-    			else if (selectedClef == 2)
-    				g.fillRoundRect(0, rowsDistance/2, firstNoteXPos - 5, 120, 10, 10);
-    		}
+    		for (int i = 0; i < notes.size(); i++)
+    			if (needsPainting(clip, notes.get(i), 0))
+    				drawNote(g, i, 1);
     	}
-    	else
+    	if (notes2 != null)
     	{
-    		if (singleNote2Index == -1)
-    			drawNote(g, singleNoteIndex, 1);
-    		else if (singleNoteIndex != -1 && singleNoteIndex < notes2.size())
-    			drawNote(g, singleNoteIndex, 2);
+    		for (int i = 0; i < notes2.size(); i++)
+    			if (needsPainting(clip, notes2.get(i), 0))
+    				drawNote(g, i, 2);
     	}
+		if (editMode == true && editNoteIndex == -1 && clefs.size() > 1)
+		{
+			g.setColor(new Color(0x00, 0xFF, 0x00, 0x1F));
+			if (selectedClef == 1)
+				g.fillRoundRect(0, 5, firstNoteXPos - 5, 120, 10, 10);
+			else if (selectedClef == 2)
+				g.fillRoundRect(0, rowsDistance/2, firstNoteXPos - 5, 120, 10, 10);
+		}
  	}
 }
@@ -0,0 +1,51 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+/**
+ * Estimates the fundamental frequency of an audio analysis frame.
+ *
+ * Implementations keep their work buffers between frames and must not
+ * allocate once they have seen a given frame size. An estimator is used by a
+ * single thread at a time.
+ *
+ * @author Neonunux
+ */
+public interface PitchEstimator {
+
+	/**
+	 * Estimates the fundamental frequency of a frame.
+	 *
+	 * @param frame
+	 *            the raw samples, not modified
+	 * @param windowedFrame
+	 *            the same samples multiplied by a window, not modified
+	 * @param sampleRate
+	 *            the sample rate
+	 * @return the frequency in Hz, or 0 if no pitch was found
+	 */
+	double estimate(double[] frame, double[] windowedFrame, float sampleRate);
+
+	/**
+	 * Gets the magnitude spectrum of the last frame, from DC to the Nyquist
+	 * bin, when the estimator computes one.
+	 *
+	 * @return the spectrum, reused by the next frame, or null
+	 */
+	double[] getSpectrum();
+}
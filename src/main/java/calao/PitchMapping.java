@@ -0,0 +1,113 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+/**
+ * Maps frequencies to MIDI notes in equal temperament, A4 (note 69) being
+ * 440 Hz. The nearest note is found in closed form from the logarithm of the
+ * frequency, so the cost does not depend on the range covered, which is the
+ * whole MIDI range, from note 0 (8.18 Hz) to note 127 (12543.85 Hz).
+ *
+ * @author Neonunux
+ */
+public final class PitchMapping {
+
+	/** The MIDI note of A4. */
+	public static final int A4_NOTE = 69;
+
+	/** The frequency of A4, in Hz. */
+	public static final double A4_FREQUENCY = 440.0;
+
+	/** The highest MIDI note. */
+	public static final int MAX_NOTE = 127;
+
+	/** Semitones per natural logarithm unit, 12 / ln(2). */
+	private static final double SEMITONES_PER_LOG = 12 / Math.log(2);
+
+	/** The frequency of each MIDI note. */
+	private static final double[] NOTE_FREQUENCIES = new double[MAX_NOTE + 1];
+
+	static {
+		for (int note = 0; note <= MAX_NOTE; note++) {
+			NOTE_FREQUENCIES[note] = A4_FREQUENCY
+					* Math.pow(2, (note - A4_NOTE) / 12.0);
+		}
+	}
+
+	/**
+	 * Instantiates a new pitch mapping.
+	 */
+	private PitchMapping() {
+
+	}
+
+	/**
+	 * Converts a frequency to a fractional MIDI note number, 69.5 being a
+	 * quarter tone above A4.
+	 *
+	 * @param frequency
+	 *            the frequency in Hz, greater than 0
+	 * @return the fractional MIDI note
+	 */
+	public static double toMidi(double frequency) {
+		return A4_NOTE + SEMITONES_PER_LOG * Math.log(frequency / A4_FREQUENCY);
+	}
+
+	/**
+	 * Gets the MIDI note nearest to a frequency.
+	 *
+	 * @param frequency
+	 *            the frequency in Hz
+	 * @return the MIDI note, or -1 if the frequency is out of the MIDI range
+	 */
+	public static int nearestNote(double frequency) {
+		if (!(frequency > 0)) {
+			return -1;
+		}
+		long note = Math.round(toMidi(frequency));
+		if (note < 0 || note > MAX_NOTE) {
+			return -1;
+		}
+		return (int) note;
+	}
+
+	/**
+	 * Gets the deviation of a frequency from a MIDI note.
+	 *
+	 * @param frequency
+	 *            the frequency in Hz, greater than 0
+	 * @param note
+	 *            the MIDI note
+	 * @return the deviation in cents, from -50 to 50 for the nearest note
+	 */
+	public static double cents(double frequency, int note) {
+		return 100 * SEMITONES_PER_LOG
+				* Math.log(frequency / NOTE_FREQUENCIES[note]);
+	}
+
+	/**
+	 * Gets the frequency of a MIDI note.
+	 *
+	 * @param note
+	 *            the MIDI note, from 0 to 127
+	 * @return the frequency in Hz
+	 */
+	public static double noteFrequency(int note) {
+		return NOTE_FREQUENCIES[note];
+	}
+}
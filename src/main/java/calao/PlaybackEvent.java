@@ -0,0 +1,172 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import javax.sound.midi.MetaMessage;
+
+/**
+ * A typed event of the playback and metronome sequences: game and cursor
+ * start, beats, clicks and notes to play through Fluidsynth, notes to
+ * highlight, end of the sequence.
+ *
+ * Each event is a sequencer specific meta message with a two byte payload,
+ * the event type and its argument, so that any sequencer can carry it. The
+ * Java sequencer hands the very message of the track to meta listeners, so
+ * {@link #dispatch(MetaMessage, Listener)} reads the type and argument from
+ * the fields and nothing is allocated or parsed per event.
+ *
+ * @author Neonunux
+ */
+public class PlaybackEvent extends MetaMessage {
+
+	/** The meta message type of the events, sequencer specific. */
+	public static final int META_TYPE = 0x7F;
+
+	/** The game starts, at the first note beat. */
+	public static final int GAME_ON = 1;
+
+	/** The cursor starts, one beat before the first note. */
+	public static final int CURSOR_ON = 2;
+
+	/** A metronome beat. */
+	public static final int BEAT = 3;
+
+	/** Fluidsynth metronome click on. */
+	public static final int CLICK_LOW_ON = 4;
+
+	/** Fluidsynth accented metronome click on. */
+	public static final int CLICK_HIGH_ON = 5;
+
+	/** Fluidsynth metronome click off. */
+	public static final int CLICK_OFF = 6;
+
+	/** Fluidsynth note on, the argument is the pitch. */
+	public static final int SYNTH_NOTE_ON = 7;
+
+	/** Fluidsynth note off, the argument is the pitch. */
+	public static final int SYNTH_NOTE_OFF = 8;
+
+	/** A note of the first row starts. */
+	public static final int NOTE_ON = 9;
+
+	/** A note of the first row ends. */
+	public static final int NOTE_OFF = 10;
+
+	/** A note of the second row starts. */
+	public static final int NOTE2_ON = 11;
+
+	/** A note of the second row ends. */
+	public static final int NOTE2_OFF = 12;
+
+	/** The sequence ends. */
+	public static final int END = 13;
+
+	/**
+	 * Receives the playback events, on the sequencer thread.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called for each event of the sequence.
+		 *
+		 * @param type
+		 *            the event type
+		 * @param argument
+		 *            the argument, 0 when the type has none
+		 */
+		void playbackEvent(int type, int argument);
+	}
+
+	/** The event type. */
+	private final int eventType;
+
+	/** The argument. */
+	private final int argument;
+
+	/**
+	 * Instantiates a new playback event without argument.
+	 *
+	 * @param eventType
+	 *            the event type
+	 */
+	public PlaybackEvent(int eventType) {
+		this(eventType, 0);
+	}
+
+	/**
+	 * Instantiates a new playback event.
+	 *
+	 * @param eventType
+	 *            the event type
+	 * @param argument
+	 *            the argument, from 0 to 127
+	 */
+	public PlaybackEvent(int eventType, int argument) {
+		// status, type, payload length, payload
+		super(new byte[] { (byte) META, (byte) META_TYPE, 2, (byte) eventType,
+				(byte) argument });
+		this.eventType = eventType;
+		this.argument = argument;
+	}
+
+	/**
+	 * Gets the event type.
+	 *
+	 * @return the event type
+	 */
+	public int getEventType() {
+		return eventType;
+	}
+
+	/**
+	 * Gets the argument.
+	 *
+	 * @return the argument
+	 */
+	public int getArgument() {
+		return argument;
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.sound.midi.MetaMessage#clone()
+	 */
+	public Object clone() {
+		return new PlaybackEvent(eventType, argument);
+	}
+
+	/**
+	 * Passes a meta message to a listener if it is a playback event. Messages
+	 * that went through a copy are decoded from their payload.
+	 *
+	 * @param meta
+	 *            the meta message
+	 * @param listener
+	 *            the listener
+	 */
+	public static void dispatch(MetaMessage meta, Listener listener) {
+		if (meta instanceof PlaybackEvent) {
+			PlaybackEvent event = (PlaybackEvent) meta;
+			listener.playbackEvent(event.eventType, event.argument);
+		} else if (meta.getType() == META_TYPE) {
+			byte[] data = meta.getData();
+			if (data.length == 2) {
+				listener.playbackEvent(data[0] & 0xFF, data[1] & 0xFF);
+			}
+		}
+	}
+}
@@ -0,0 +1,562 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Plays several sequences, one per role, on a single monotonic timeline.
+ *
+ * Every event time is computed from its tick and the role tempo against the
+ * same {@link System#nanoTime()} origin, so roles started together cannot
+ * drift apart and timing errors do not pile up along a sequence. A single
+ * thread sends the note messages to the synthesizer and the
+ * {@link PlaybackEvent}s to the listeners of their role.
+ *
+ * When the synthesizer has a clock, note messages are sent
+ * {@link #LOOKAHEAD_NANOS} ahead with a timestamp, and the synthesizer plays
+ * them at the right sample whatever the thread wake-up jitter. Playback
+ * events are dispatched on time; their lateness is measured.
+ *
+ * @author Neonunux
+ */
+public class PlaybackScheduler {
+
+	private static final Logger logger = LogManager
+			.getLogger(PlaybackScheduler.class.getName());
+
+	/** How early note messages are sent to a synthesizer with a clock. */
+	public static final long LOOKAHEAD_NANOS = TimeUnit.MILLISECONDS.toNanos(30);
+
+	/** The delay between {@link #start(int...)} and time zero. */
+	public static final long START_DELAY_NANOS = LOOKAHEAD_NANOS;
+
+	/** Below this wait, the thread yields instead of parking. */
+	private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+	/** The longest park when nothing is scheduled. */
+	private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/** Orders the events of a sequence by tick, keeping the track order. */
+	private static final Comparator<MidiEvent> BY_TICK = new Comparator<MidiEvent>() {
+		public int compare(MidiEvent a, MidiEvent b) {
+			return a.getTick() < b.getTick() ? -1 : (a.getTick() == b.getTick() ? 0 : 1);
+		}
+	};
+
+	/**
+	 * The messages of one kind of a role, in time order.
+	 */
+	private static class Lane {
+
+		/** The event times, in nanoseconds from the role start. */
+		long[] times = new long[0];
+
+		/** The messages. */
+		MidiMessage[] messages = new MidiMessage[0];
+
+		/** The index of the next message. */
+		int next = 0;
+
+		/**
+		 * Fills the lane.
+		 *
+		 * @param events
+		 *            the events, sorted by tick
+		 * @param nanosPerTick
+		 *            the duration of a tick
+		 */
+		void load(ArrayList<MidiEvent> events, double nanosPerTick) {
+			times = new long[events.size()];
+			messages = new MidiMessage[events.size()];
+			for (int i = 0; i < times.length; i++) {
+				MidiEvent event = events.get(i);
+				times[i] = Math.round(event.getTick() * nanosPerTick);
+				messages[i] = event.getMessage();
+			}
+			next = 0;
+		}
+
+		/**
+		 * Checks if every message has been handled.
+		 *
+		 * @return true, if done
+		 */
+		boolean isDone() {
+			return next >= messages.length;
+		}
+	}
+
+	/**
+	 * The sequence, listeners and progress of a role.
+	 */
+	private static class Role {
+
+		/** The note messages. */
+		final Lane sounds = new Lane();
+
+		/** The playback events. */
+		final Lane events = new Lane();
+
+		/** The duration of a tick of the current sequence. */
+		double nanosPerTick = 0;
+
+		/** The start time, on the {@link System#nanoTime()} timeline. */
+		long start;
+
+		/** Whether the current sequence has been started. */
+		boolean started = false;
+
+		/** The running. */
+		boolean running = false;
+
+		/** The listeners of the current sequence. */
+		PlaybackEvent.Listener[] listeners = new PlaybackEvent.Listener[0];
+
+		/** The sounding notes, one bit per channel and key. */
+		final long[] activeNotes = new long[16 * 128 / 64];
+
+		/** The latest timestamp sent since the role was started. */
+		long lastTimestamp = -1;
+
+		/** Counts the starts and stops, to drop the events of a stopped run. */
+		int run = 0;
+	}
+
+	/** The roles. */
+	private final Role[] roles;
+
+	/** The receiver of the note messages, may be null. */
+	private final Receiver receiver;
+
+	/** The device giving the receiver clock, may be null. */
+	private final MidiDevice clock;
+
+	/** The scheduler thread. */
+	private final Thread thread;
+
+	/** The receiver clock minus the timeline, in microseconds, or -1 without a clock. */
+	private long clockOffset = -1;
+
+	/** The closed. */
+	private boolean closed = false;
+
+	/** The playback events dispatched since the last start. */
+	private long dispatched = 0;
+
+	/** The summed lateness of the dispatched events. */
+	private long totalLateness = 0;
+
+	/** The worst lateness of the dispatched events. */
+	private long maxLateness = 0;
+
+	/**
+	 * Instantiates a new playback scheduler and starts its thread.
+	 *
+	 * @param roleCount
+	 *            the number of roles
+	 * @param receiver
+	 *            the receiver of the note messages, null to drop them
+	 * @param clock
+	 *            the device the receiver timestamps refer to, null to send
+	 *            note messages on time without timestamp
+	 */
+	public PlaybackScheduler(int roleCount, Receiver receiver, MidiDevice clock) {
+		this.receiver = receiver;
+		this.clock = (receiver != null) ? clock : null;
+		roles = new Role[roleCount];
+		for (int i = 0; i < roleCount; i++) {
+			roles[i] = new Role();
+		}
+		thread = new Thread(new Runnable() {
+			public void run() {
+				schedule();
+			}
+		}, "Playback scheduler");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY - 1);
+		thread.start();
+	}
+
+	/**
+	 * Gets the duration of a tick of a sequence.
+	 *
+	 * @param sequence
+	 *            the sequence
+	 * @param bpm
+	 *            the tempo, for PPQ sequences
+	 * @return the nanoseconds per tick
+	 */
+	static double nanosPerTick(Sequence sequence, float bpm) {
+		if (sequence.getDivisionType() == Sequence.PPQ) {
+			return 60e9 / (bpm * sequence.getResolution());
+		}
+		return 1e9 / (sequence.getDivisionType() * sequence.getResolution());
+	}
+
+	/**
+	 * Stops a role and gives it a new sequence and tempo. The listeners of
+	 * the previous sequence are dropped.
+	 *
+	 * @param role
+	 *            the role
+	 * @param sequence
+	 *            the sequence, complete
+	 * @param bpm
+	 *            the tempo in beats per minute
+	 */
+	public synchronized void load(int role, Sequence sequence, float bpm) {
+		checkOpen();
+		stop(role);
+		ArrayList<MidiEvent> sounds = new ArrayList<MidiEvent>();
+		ArrayList<MidiEvent> events = new ArrayList<MidiEvent>();
+		for (Track track : sequence.getTracks()) {
+			for (int i = 0; i < track.size(); i++) {
+				MidiEvent event = track.get(i);
+				MidiMessage message = event.getMessage();
+				if (message instanceof MetaMessage) {
+					if (((MetaMessage) message).getType() == PlaybackEvent.META_TYPE) {
+						events.add(event);
+					}
+				} else {
+					sounds.add(event);
+				}
+			}
+		}
+		Collections.sort(sounds, BY_TICK);
+		Collections.sort(events, BY_TICK);
+		double tick = nanosPerTick(sequence, bpm);
+		Role r = roles[role];
+		r.sounds.load(sounds, tick);
+		r.events.load(events, tick);
+		r.nanosPerTick = tick;
+		r.started = false;
+		r.listeners = new PlaybackEvent.Listener[0];
+	}
+
+	/**
+	 * Adds a listener of the playback events of the current sequence of a
+	 * role.
+	 *
+	 * @param role
+	 *            the role
+	 * @param listener
+	 *            the listener
+	 */
+	public synchronized void addListener(int role,
+			PlaybackEvent.Listener listener) {
+		PlaybackEvent.Listener[] current = roles[role].listeners;
+		PlaybackEvent.Listener[] updated = new PlaybackEvent.Listener[current.length + 1];
+		System.arraycopy(current, 0, updated, 0, current.length);
+		updated[current.length] = listener;
+		roles[role].listeners = updated;
+	}
+
+	/**
+	 * Starts roles from the beginning of their sequence, all on the same
+	 * time zero, {@link #START_DELAY_NANOS} from now.
+	 *
+	 * @param startRoles
+	 *            the roles to start
+	 * @return the time zero, on the {@link System#nanoTime()} timeline
+	 */
+	public synchronized long start(int... startRoles) {
+		checkOpen();
+		long origin = System.nanoTime() + START_DELAY_NANOS;
+		clockOffset = -1;
+		if (clock != null) {
+			long position = clock.getMicrosecondPosition();
+			if (position != -1) {
+				clockOffset = position - System.nanoTime() / 1000;
+			}
+		}
+		for (int role : startRoles) {
+			stop(role);
+			Role r = roles[role];
+			r.sounds.next = 0;
+			r.events.next = 0;
+			r.lastTimestamp = -1;
+			r.start = origin;
+			r.started = true;
+			r.running = true;
+		}
+		dispatched = 0;
+		totalLateness = 0;
+		maxLateness = 0;
+		LockSupport.unpark(thread);
+		return origin;
+	}
+
+	/**
+	 * Stops a role and releases the notes it left sounding.
+	 *
+	 * @param role
+	 *            the role
+	 */
+	public synchronized void stop(int role) {
+		Role r = roles[role];
+		r.running = false;
+		r.run++;
+		if (receiver == null) {
+			return;
+		}
+		for (int i = 0; i < r.activeNotes.length; i++) {
+			long bits = r.activeNotes[i];
+			while (bits != 0) {
+				int bit = Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				int key = i * 64 + bit;
+				try {
+					ShortMessage off = new ShortMessage();
+					off.setMessage(ShortMessage.NOTE_OFF, key / 128, key % 128, 0);
+					// after any note on already sent ahead
+					receiver.send(off, r.lastTimestamp);
+				} catch (InvalidMidiDataException e) {
+					e.printStackTrace();
+				}
+			}
+			r.activeNotes[i] = 0;
+		}
+	}
+
+	/**
+	 * Checks if a role is playing.
+	 *
+	 * @param role
+	 *            the role
+	 * @return true, if running
+	 */
+	public synchronized boolean isRunning(int role) {
+		return roles[role].running;
+	}
+
+	/**
+	 * Gets the position of a role sequence at a given time. Times before the
+	 * start give negative positions.
+	 *
+	 * @param role
+	 *            the role
+	 * @param time
+	 *            the time, on the {@link System#nanoTime()} timeline
+	 * @return the position in ticks, NaN if the sequence was not started
+	 */
+	public synchronized double getTickPosition(int role, long time) {
+		Role r = roles[role];
+		if (!r.started) {
+			return Double.NaN;
+		}
+		return (time - r.start) / r.nanosPerTick;
+	}
+
+	/**
+	 * Gets the number of playback events dispatched since the last start.
+	 *
+	 * @return the dispatched events
+	 */
+	public synchronized long getDispatchedCount() {
+		return dispatched;
+	}
+
+	/**
+	 * Gets the mean lateness of the playback events dispatched since the last
+	 * start.
+	 *
+	 * @return the mean lateness in nanoseconds
+	 */
+	public synchronized long getMeanLatenessNanos() {
+		return (dispatched == 0) ? 0 : totalLateness / dispatched;
+	}
+
+	/**
+	 * Gets the worst lateness of the playback events dispatched since the
+	 * last start.
+	 *
+	 * @return the max lateness in nanoseconds
+	 */
+	public synchronized long getMaxLatenessNanos() {
+		return maxLateness;
+	}
+
+	/**
+	 * Stops every role and the scheduler thread.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		for (int role = 0; role < roles.length; role++) {
+			stop(role);
+			roles[role].listeners = new PlaybackEvent.Listener[0];
+		}
+		closed = true;
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Checks if a role has not been stopped or started again since a run.
+	 *
+	 * @param r
+	 *            the role
+	 * @param run
+	 *            the run
+	 * @return true, if the run is still the current one
+	 */
+	private synchronized boolean isCurrentRun(Role r, int run) {
+		return r.run == run;
+	}
+
+	/**
+	 * Checks that the scheduler is not closed.
+	 */
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Playback scheduler is closed");
+		}
+	}
+
+	/**
+	 * Sends a note message, ahead with a timestamp when there is a clock.
+	 *
+	 * @param r
+	 *            the role
+	 * @param message
+	 *            the message
+	 * @param due
+	 *            the message time, on the timeline
+	 */
+	private void send(Role r, MidiMessage message, long due) {
+		if (receiver == null) {
+			return;
+		}
+		if (message instanceof ShortMessage) {
+			ShortMessage sm = (ShortMessage) message;
+			int command = sm.getCommand();
+			if (command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF) {
+				int key = sm.getChannel() * 128 + sm.getData1();
+				long bit = 1L << (key & 63);
+				if (command == ShortMessage.NOTE_ON && sm.getData2() > 0) {
+					r.activeNotes[key >> 6] |= bit;
+				} else {
+					r.activeNotes[key >> 6] &= ~bit;
+				}
+			}
+		}
+		long timestamp = -1;
+		if (clockOffset != -1) {
+			timestamp = due / 1000 + clockOffset;
+			r.lastTimestamp = Math.max(r.lastTimestamp, timestamp);
+		}
+		receiver.send(message, timestamp);
+	}
+
+	/**
+	 * The scheduler loop: sends the note messages that are within look-ahead,
+	 * dispatches the playback event that is due, if any, then waits for the
+	 * next one.
+	 */
+	private void schedule() {
+		long lookahead = (clock != null) ? LOOKAHEAD_NANOS : 0;
+		while (true) {
+			MetaMessage event = null;
+			PlaybackEvent.Listener[] listeners = null;
+			Role eventRole = null;
+			int eventRun = 0;
+			long eventDue = 0;
+			long wait = MAX_WAIT_NANOS;
+			synchronized (this) {
+				if (closed) {
+					break;
+				}
+				long now = System.nanoTime();
+				for (int i = 0; i < roles.length; i++) {
+					Role r = roles[i];
+					if (!r.running) {
+						continue;
+					}
+					Lane sounds = r.sounds;
+					while (!sounds.isDone()) {
+						long due = r.start + sounds.times[sounds.next];
+						if (due - lookahead - now > 0) {
+							wait = Math.min(wait, due - lookahead - now);
+							break;
+						}
+						send(r, sounds.messages[sounds.next], due);
+						sounds.next++;
+					}
+					Lane events = r.events;
+					if (!events.isDone()) {
+						long due = r.start + events.times[events.next];
+						if (due - now > 0) {
+							wait = Math.min(wait, due - now);
+						} else if (eventRole == null || due - eventDue < 0) {
+							eventRole = r;
+							eventDue = due;
+						}
+					}
+				}
+				if (eventRole != null) {
+					event = (MetaMessage) eventRole.events.messages[eventRole.events.next];
+					eventRole.events.next++;
+					listeners = eventRole.listeners;
+					eventRun = eventRole.run;
+				}
+				for (int i = 0; i < roles.length; i++) {
+					if (roles[i].running && roles[i].sounds.isDone()
+							&& roles[i].events.isDone()) {
+						roles[i].running = false;
+					}
+				}
+			}
+
+			if (event != null) {
+				long lateness = System.nanoTime() - eventDue;
+				// listeners run outside the lock, the role may be stopped meanwhile
+				for (int i = 0; i < listeners.length && isCurrentRun(eventRole, eventRun); i++) {
+					PlaybackEvent.dispatch(event, listeners[i]);
+				}
+				synchronized (this) {
+					dispatched++;
+					totalLateness += lateness;
+					maxLateness = Math.max(maxLateness, lateness);
+				}
+			} else if (wait > SPIN_NANOS) {
+				LockSupport.parkNanos(this, wait - SPIN_NANOS);
+			} else {
+				Thread.yield();
+			}
+		}
+		logger.debug("[PlaybackScheduler] stopped");
+	}
+}
@@ -0,0 +1,190 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Synthesizer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Long-lived playback engine: the exercise playback and the metronome, both
+ * played by one {@link PlaybackScheduler} through the same synthesizer.
+ *
+ * The scheduler is set up once, with the MIDI system, so starting a game
+ * only swaps the sequence of each role. Playback event listeners belong to
+ * the sequence they were added for and are dropped when the next sequence
+ * is loaded. Everything is released by {@link #close()}.
+ *
+ * @author Neonunux
+ */
+public class PlaybackSession {
+
+	private static final Logger logger = LogManager
+			.getLogger(PlaybackSession.class.getName());
+
+	/** The role of the exercise playback. */
+	public static final int PLAYBACK = 0;
+
+	/** The role of the metronome. */
+	public static final int METRONOME = 1;
+
+	/** The receiver of the synthesizer, null without synthesizer. */
+	private final Receiver receiver;
+
+	/** The scheduler. */
+	private final PlaybackScheduler scheduler;
+
+	/** The closed. */
+	private boolean closed = false;
+
+	/**
+	 * Opens a new playback session.
+	 *
+	 * @param synthesizer
+	 *            the open synthesizer to play the note messages through, null
+	 *            when the sequences carry playback events only
+	 * @throws MidiUnavailableException
+	 *             if the synthesizer gives no receiver
+	 */
+	public PlaybackSession(Synthesizer synthesizer)
+			throws MidiUnavailableException {
+		receiver = (synthesizer != null) ? synthesizer.getReceiver() : null;
+		scheduler = new PlaybackScheduler(2, receiver, synthesizer);
+		logger.debug("[PlaybackSession] opened, synthesizer = "
+				+ (synthesizer == null ? "none" : synthesizer.getDeviceInfo().getName()));
+	}
+
+	/**
+	 * Gets the scheduler.
+	 *
+	 * @return the scheduler
+	 */
+	public PlaybackScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Stops a role and gives it a new sequence at the given tempo. The
+	 * listeners of the previous sequence are dropped.
+	 *
+	 * @param role
+	 *            {@link #PLAYBACK} or {@link #METRONOME}
+	 * @param sequence
+	 *            the sequence, complete
+	 * @param bpm
+	 *            the tempo in beats per minute
+	 */
+	public synchronized void load(int role, Sequence sequence, float bpm) {
+		if (closed) {
+			throw new IllegalStateException("Playback session is closed");
+		}
+		scheduler.load(role, sequence, bpm);
+	}
+
+	/**
+	 * Adds a listener of the playback events of the current sequence of a
+	 * role.
+	 *
+	 * @param role
+	 *            {@link #PLAYBACK} or {@link #METRONOME}
+	 * @param listener
+	 *            the listener
+	 */
+	public void addListener(int role, PlaybackEvent.Listener listener) {
+		scheduler.addListener(role, listener);
+	}
+
+	/**
+	 * Starts roles together, on the same timeline.
+	 *
+	 * @param roles
+	 *            the roles
+	 * @return the time zero, on the {@link System#nanoTime()} timeline
+	 */
+	public synchronized long start(int... roles) {
+		if (closed) {
+			throw new IllegalStateException("Playback session is closed");
+		}
+		return scheduler.start(roles);
+	}
+
+	/**
+	 * Gets the position of a role sequence at a given time.
+	 *
+	 * @param role
+	 *            {@link #PLAYBACK} or {@link #METRONOME}
+	 * @param time
+	 *            the time, on the {@link System#nanoTime()} timeline
+	 * @return the position in ticks, NaN if the sequence was not started
+	 */
+	public double getTickPosition(int role, long time) {
+		return scheduler.getTickPosition(role, time);
+	}
+
+	/**
+	 * Stops a role. Its sequence stays loaded.
+	 *
+	 * @param role
+	 *            {@link #PLAYBACK} or {@link #METRONOME}
+	 */
+	public synchronized void stop(int role) {
+		if (!closed) {
+			scheduler.stop(role);
+		}
+	}
+
+	/**
+	 * Checks if a role is playing.
+	 *
+	 * @param role
+	 *            {@link #PLAYBACK} or {@link #METRONOME}
+	 * @return true, if running
+	 */
+	public boolean isRunning(int role) {
+		return scheduler.isRunning(role);
+	}
+
+	/**
+	 * Checks if the session is closed.
+	 *
+	 * @return true, if closed
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Stops both roles and the scheduler, and closes the receiver. The
+	 * synthesizer is left open for its owner.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		scheduler.close();
+		if (receiver != null) {
+			receiver.close();
+		}
+		logger.debug("[PlaybackSession] closed");
+	}
+}
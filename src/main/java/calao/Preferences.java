@@ -55,18 +55,26 @@ import org.apache.logging.log4j.Logger;
  *  metromome	     | metronome - 0: disabled, 1: enabled 
  *  showBeats		 | show metronome beats - 0: disabled, 1: enabled
  *  clickAccents     | metronome accents - 0: disabled, 1: enabled
+ *  audioClicks      | 1 to play the metronome clicks straight to an audio line instead of MIDI
  *  
  *  keyboardlenght   | number of piano keys. Can be 63 or 73
  *  mididevice       | index of the MIDI device to use. 0 is always "no device"
+ *  inputDeviceId    | id of the MIDI input device, see DeviceRegistry
+ *  midiDeviceCache  | MIDI devices known to be inputs or not, see DeviceRegistry
  *  sound            | playback sound enabled
  *  keyboardsound    | exercises sound enabled 
  *  instrument       | index of instrument taken from instrument list
+ *  polyphony        | maximum number of notes played at once
  *  latency          | latency between MIDI in and synthesizer playback
  *  transposition    | number of octaves used to transpose sound
  *  
  *  audiodevice      | index of the audio input device to use for capture
  *  defaultInput     | default input to capture notes. 0: MIDI, 1: Microphone
  *  audiosensitivity | audio sensitivity threshold
+ *  audioFrameSize   | number of samples of each audio analysis frame
+ *  audioHopSize     | number of samples between two audio analysis frames
+ *  pitchEstimator   | audio pitch estimator - 0: FFT peak, 1: harmonic product spectrum, 2: YIN
+ *  audioSinglePrecision | 1 to compute the audio spectrum with the single precision FFT
  *  
  *  synthDriver      | synthesizer system to be used (Java or Fluidsynth)
  *  fluidDevice		 | audio device that Fluidsynth will use to output sounds     // TODO: not used yet
@@ -0,0 +1,181 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.jpab.StreamConfiguration.SampleFormat;
+
+/**
+ * Decodes the raw sample buffers handed by PortAudio to floats between -1
+ * and 1.
+ *
+ * Samples are read with the absolute getters of the buffer, switched for the
+ * time of the call to the requested byte order, and written straight to the
+ * destination array. No view, scratch array or other object is created, so
+ * decoding allocates nothing even though PortAudio hands a new buffer object
+ * on each callback.
+ *
+ * @author Neonunux
+ */
+public class SampleDecoder {
+
+	/** The sample format. */
+	private final SampleFormat format;
+
+	/** The byte order of the samples. */
+	private final ByteOrder order;
+
+	/** The size of a sample, in bytes. */
+	private final int bytesPerSample;
+
+	/**
+	 * Instantiates a new sample decoder.
+	 *
+	 * @param format
+	 *            the sample format
+	 * @param order
+	 *            the byte order of the samples, the native one for PortAudio
+	 */
+	public SampleDecoder(SampleFormat format, ByteOrder order) {
+		this.format = format;
+		this.order = order;
+		bytesPerSample = getBytesPerSample(format);
+	}
+
+	/**
+	 * Gets the size of a sample.
+	 *
+	 * @param format
+	 *            the sample format
+	 * @return the size of a sample, in bytes
+	 */
+	public static int getBytesPerSample(SampleFormat format) {
+		if (format == SampleFormat.SIGNED_INTEGER_8
+				|| format == SampleFormat.UNSIGNED_INTEGER_8) {
+			return 1;
+		} else if (format == SampleFormat.SIGNED_INTEGER_16) {
+			return 2;
+		} else if (format == SampleFormat.SIGNED_INTEGER_24) {
+			return 3;
+		} else if (format == SampleFormat.SIGNED_INTEGER_32
+				|| format == SampleFormat.FLOAT_32) {
+			return 4;
+		}
+		throw new IllegalArgumentException("Unsupported sample format: " + format);
+	}
+
+	/**
+	 * Gets the sample format.
+	 *
+	 * @return the sample format
+	 */
+	public SampleFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Gets the number of samples held by a buffer, between its position and
+	 * its limit.
+	 *
+	 * @param input
+	 *            the input buffer
+	 * @return the number of samples
+	 */
+	public int getSampleCount(ByteBuffer input) {
+		return input.remaining() / bytesPerSample;
+	}
+
+	/**
+	 * Decodes every sample between the position and the limit of a buffer.
+	 * The position of the buffer is left unchanged.
+	 *
+	 * @param input
+	 *            the input buffer
+	 * @param dst
+	 *            the destination array, large enough for
+	 *            {@link #getSampleCount(ByteBuffer)} samples
+	 * @param off
+	 *            the offset of the first sample in dst
+	 * @return the number of samples decoded
+	 */
+	public int decode(ByteBuffer input, float[] dst, int off) {
+		int count = getSampleCount(input);
+		decode(input, 0, dst, off, count);
+		return count;
+	}
+
+	/**
+	 * Decodes part of the samples of a buffer. The position and the byte
+	 * order of the buffer are left unchanged.
+	 *
+	 * @param input
+	 *            the input buffer
+	 * @param from
+	 *            the index of the first sample to decode, counted from the
+	 *            position of the buffer
+	 * @param dst
+	 *            the destination array
+	 * @param off
+	 *            the offset of the first sample in dst
+	 * @param count
+	 *            the number of samples to decode
+	 */
+	public void decode(ByteBuffer input, int from, float[] dst, int off, int count) {
+		ByteOrder inputOrder = input.order();
+		input.order(order);
+		int pos = input.position() + from * bytesPerSample;
+
+		if (format == SampleFormat.FLOAT_32) {
+			for (int i = 0; i < count; i++, pos += 4) {
+				dst[off + i] = input.getFloat(pos);
+			}
+		} else if (format == SampleFormat.SIGNED_INTEGER_16) {
+			for (int i = 0; i < count; i++, pos += 2) {
+				dst[off + i] = input.getShort(pos) * (1f / 32768);
+			}
+		} else if (format == SampleFormat.SIGNED_INTEGER_32) {
+			for (int i = 0; i < count; i++, pos += 4) {
+				dst[off + i] = input.getInt(pos) * (1f / 2147483648f);
+			}
+		} else if (format == SampleFormat.SIGNED_INTEGER_24) {
+			// the sign comes from the most significant byte, kept signed
+			if (order == ByteOrder.LITTLE_ENDIAN) {
+				for (int i = 0; i < count; i++, pos += 3) {
+					int v = (input.get(pos) & 0xFF) | ((input.get(pos + 1) & 0xFF) << 8) | (input.get(pos + 2) << 16);
+					dst[off + i] = v * (1f / 8388608);
+				}
+			} else {
+				for (int i = 0; i < count; i++, pos += 3) {
+					int v = (input.get(pos) << 16) | ((input.get(pos + 1) & 0xFF) << 8) | (input.get(pos + 2) & 0xFF);
+					dst[off + i] = v * (1f / 8388608);
+				}
+			}
+		} else if (format == SampleFormat.UNSIGNED_INTEGER_8) {
+			for (int i = 0; i < count; i++, pos++) {
+				dst[off + i] = ((input.get(pos) & 0xFF) - 128) * (1f / 128);
+			}
+		} else {
+			for (int i = 0; i < count; i++, pos++) {
+				dst[off + i] = input.get(pos) * (1f / 128);
+			}
+		}
+		input.order(inputOrder);
+	}
+}
@@ -0,0 +1,175 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer of audio samples, written by exactly one thread (the
+ * PortAudio callback) and read by exactly one other thread (the analysis
+ * thread).
+ *
+ * Positions only grow; each side publishes its own position with an ordered
+ * write and reads the other side's position, so no lock is needed. When the
+ * buffer is full the newest samples are dropped and counted as overruns.
+ *
+ * @author Neonunux
+ */
+public class SampleRingBuffer {
+
+	/** The samples. */
+	private final float[] samples;
+
+	/** The index mask, capacity - 1. */
+	private final int mask;
+
+	/** The number of samples written so far. */
+	private final AtomicLong writePos = new AtomicLong();
+
+	/** The number of samples read so far. */
+	private final AtomicLong readPos = new AtomicLong();
+
+	/** The number of samples dropped because the buffer was full. */
+	private final AtomicLong overruns = new AtomicLong();
+
+	/**
+	 * Instantiates a new sample ring buffer.
+	 *
+	 * @param capacity
+	 *            the minimum capacity, rounded up to a power of two
+	 */
+	public SampleRingBuffer(int capacity) {
+		int size = ConcurrencyUtils.nextPow2(capacity);
+		samples = new float[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Gets the capacity.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return samples.length;
+	}
+
+	/**
+	 * Gets the number of samples ready to be read.
+	 *
+	 * @return the available samples
+	 */
+	public int available() {
+		return (int) (writePos.get() - readPos.get());
+	}
+
+	/**
+	 * Gets the number of samples dropped so far because the reader was late.
+	 *
+	 * @return the overruns
+	 */
+	public long getOverruns() {
+		return overruns.get();
+	}
+
+	/**
+	 * Writes samples. Must only be called by the producer thread.
+	 *
+	 * @param src
+	 *            the source array
+	 * @param off
+	 *            the offset of the first sample in src
+	 * @param len
+	 *            the number of samples
+	 * @return the number of samples actually written
+	 */
+	public int write(float[] src, int off, int len) {
+		long wp = writePos.get();
+		int free = samples.length - (int) (wp - readPos.get());
+		int count = Math.min(len, free);
+		if (count < len) {
+			overruns.addAndGet(len - count);
+		}
+		if (count <= 0) {
+			return 0;
+		}
+		int start = (int) wp & mask;
+		int first = Math.min(count, samples.length - start);
+		System.arraycopy(src, off, samples, start, first);
+		System.arraycopy(src, off + first, samples, 0, count - first);
+		writePos.lazySet(wp + count);
+		return count;
+	}
+
+	/**
+	 * Decodes the samples of a raw input buffer straight into the ring. Must
+	 * only be called by the producer thread.
+	 *
+	 * @param decoder
+	 *            the decoder
+	 * @param input
+	 *            the input buffer, its position is left unchanged
+	 * @return the number of samples actually written
+	 */
+	public int write(SampleDecoder decoder, ByteBuffer input) {
+		int len = decoder.getSampleCount(input);
+		long wp = writePos.get();
+		int free = samples.length - (int) (wp - readPos.get());
+		int count = Math.min(len, free);
+		if (count < len) {
+			overruns.addAndGet(len - count);
+		}
+		if (count <= 0) {
+			return 0;
+		}
+		int start = (int) wp & mask;
+		int first = Math.min(count, samples.length - start);
+		decoder.decode(input, 0, samples, start, first);
+		decoder.decode(input, first, samples, 0, count - first);
+		writePos.lazySet(wp + count);
+		return count;
+	}
+
+	/**
+	 * Reads samples. Must only be called by the consumer thread.
+	 *
+	 * @param dst
+	 *            the destination array
+	 * @param off
+	 *            the offset of the first sample in dst
+	 * @param len
+	 *            the number of samples
+	 * @return the number of samples actually read
+	 */
+	public int read(double[] dst, int off, int len) {
+		long rp = readPos.get();
+		int count = Math.min(len, (int) (writePos.get() - rp));
+		for (int i = 0; i < count; i++) {
+			dst[off + i] = samples[(int) (rp + i) & mask];
+		}
+		readPos.lazySet(rp + count);
+		return count;
+	}
+
+	/**
+	 * Drops every pending sample. Must only be called by the consumer thread.
+	 */
+	public void skipAll() {
+		readPos.lazySet(writePos.get());
+	}
+}
@@ -29,15 +29,14 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ResourceBundle;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
-import javax.sound.midi.MetaEventListener;
-import javax.sound.midi.MetaMessage;
-import javax.sound.midi.Sequencer;
 import javax.swing.ImageIcon;
 import javax.swing.JLayeredPane;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -146,25 +145,18 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 	/** The time division. */
 	private int timeDivision = 1;
 
-	// MIDI controllers
-	/** The metronome. */
-	private Sequencer metronome;
-	
-	/** The playback. */
-	private Sequencer playback;
-	
 	// Game variables
-	/** The game thread. */
-	private ScoreGameThread gameThread = null;
-	
-	/** The game started. */
-	private boolean gameStarted = false; // variable to control thread job
+	/** The duration of a step of the game loop. */
+	private static final long GAME_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+	/** The game loop, moving the cursor. */
+	private GameLoop gameLoop = null;
 	
 	/** The game type. */
 	private int gameType = -1; // type of game. See prefernces for values
 	
 	/** The start time. */
-	private long startTime; // timestamp of cursor at the beginning of a row
+	private volatile long startTime; // System.nanoTime() of cursor at the beginning of a row
 	
 	/** The current note index. */
 	private int currentNoteIndex = -1; // index of the currently playing note (first clef)
@@ -448,11 +440,11 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 	/**
 	 * Check note.
 	 *
-	 * @param cursorPos the cursor pos
+	 * @param position the playback position of the note, in note timestamp units
 	 * @param pitch the pitch
 	 * @param press the press
 	 */
-	private void checkNote(int cursorPos, int pitch, boolean press)
+	private void checkNote(double position, int pitch, boolean press)
 	{
 		int delta1 = -1, delta2 = -1;
 		if (currentNoteIndex < 0 || currentNoteIndex >= gameNotes.size())
@@ -462,22 +454,38 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 		if (gameNotes2.size() > 0 && currentNote2Index != -1)
 			delta2 = Math.abs(pitch - gameNotes2.get(currentNote2Index).pitch);
 		if (delta2 == -1 || delta1 < delta2)
-			checkAnswer(cursorPos, currentNoteIndex, gameNotes, pitch, press, false);
+			checkAnswer(position, currentNoteIndex, gameNotes, pitch, press, false);
 		else
-			checkAnswer(cursorPos, currentNote2Index, gameNotes2, pitch, press, true);
+			checkAnswer(position, currentNote2Index, gameNotes2, pitch, press, true);
+	}
+
+	/**
+	 * Gets the X position of a playback position, on the row of a note. The
+	 * position is measured from the note itself, so rows and cursor refreshes
+	 * do not matter.
+	 *
+	 * @param position the playback position, NaN for the current cursor position
+	 * @param note the note
+	 * @return the X position
+	 */
+	private int eventX(double position, Note note)
+	{
+		if (Double.isNaN(position))
+			return cursorX;
+		return note.xpos + (int)Math.round((position - note.timestamp) * staffLayer.getNotesDistance());
 	}
 
 	/**
 	 * Check answer.
 	 *
-	 * @param cursorPos the cursor pos
+	 * @param position the playback position of the note, in note timestamp units
 	 * @param noteIdx the note idx
 	 * @param n the n
 	 * @param pitch the pitch
 	 * @param press the press
 	 * @param secondClef the second clef
 	 */
-	private void checkAnswer(int cursorPos, int noteIdx, Vector<Note> n, int pitch, boolean press, boolean secondClef)
+	private void checkAnswer(double position, int noteIdx, Vector<Note> n, int pitch, boolean press, boolean secondClef)
 	{
 		if (noteIdx < 0 || noteIdx >= n.size())
 			return;
@@ -486,9 +494,7 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 		if (secondClef == true)
 			answerY += rowsDistance / 2;
 
-		// adjust X position if latency is on
-		if (latency > 0)
-			cursorPos -= ((staffLayer.getNotesDistance() * latency) / (60000 / currentSpeed));
+		int cursorPos = eventX(position, n.get(noteIdx));
 
 		if (press == true) // check key press
 		{
@@ -508,9 +514,13 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 				if (n.size() == 0 || lookupIndex >= n.size()) 
 					return; // security check
 				noteMargin = n.get(lookupIndex).xpos - (accuracy / 2);
+				int nextPos = eventX(position, n.get(lookupIndex));
 					
-				if (cursorPos > noteMargin && cursorPos < noteMargin + accuracy)
+				if (nextPos > noteMargin && nextPos < noteMargin + accuracy)
+				{
 					noteFound = true;
+					cursorPos = nextPos;
+				}
 			}
 			
 			// still not found ? Display a warning
@@ -549,6 +559,7 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 			/* at high speed, it might happen that two notes get overlapped, so look at the previous one */
 			if (idx > 0 && pitch != n.get(idx).pitch) 
 				idx--;
+			cursorPos = eventX(position, n.get(idx));
 			int releaseXpos = n.get(idx).xpos + (int)(72 * n.get(idx).duration) + (accuracy / 2);
 			logger.debug("[checkNote *release*] cursorPos: " +  cursorPos + 
 						", noteXpos: " + n.get(idx).xpos + ", releaseXpos: " + releaseXpos);
@@ -564,58 +575,80 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 	}
 
 	/**
-	 * Note event.
+	 * Note event, played now.
 	 *
 	 * @param pitch the pitch
 	 * @param velocity the velocity
 	 */
 	public void noteEvent(int pitch, int velocity)
+	{
+		noteEvent(pitch, velocity, System.nanoTime());
+	}
+
+	/**
+	 * Note event, checked against the playback position at the time the note
+	 * was played rather than when it is processed. The latency set in the
+	 * preferences is taken off that time.
+	 *
+	 * @param pitch the pitch
+	 * @param velocity the velocity
+	 * @param time the time the note was played, on the System.nanoTime() timeline
+	 */
+	public void noteEvent(int pitch, int velocity, long time)
 	{
 		if (gameType != appPrefs.SCORE_GAME_LISTEN)
 		{
 			if (velocity != 0)
 			{
 				appMidi.playNote(pitch, 90);
-				checkNote(cursorX, pitch, true);
+				checkNote(playbackPosition(time), pitch, true);
 			}
 			else
 			{
 				appMidi.stopNote(pitch, 0);
-				checkNote(cursorX, pitch, false);
+				checkNote(playbackPosition(time), pitch, false);
 			}			
 		}
 	}
 
 	/**
-	 * Handle async mid ievent.
+	 * Gets the playback position of a note played at a given time.
 	 *
-	 * @param msg the msg
+	 * @param time the time, on the System.nanoTime() timeline
+	 * @return the position in note timestamp units, NaN if the playback is not started
 	 */
-	private void handleAsyncMIDIevent(MetaMessage msg)
+	private double playbackPosition(long time)
 	{
-		byte[] metaData = msg.getData();
-        String strData = new String(metaData);
-       
-        //logger.debug("*SCOREPANEL* META message: text= " + strData);
+		return appMidi.getPlaybackPosition(time - TimeUnit.MILLISECONDS.toNanos(latency));
+	}
+
+	/**
+	 * Handle async MIDI event.
+	 *
+	 * @param type the playback event type
+	 */
+	private void handleAsyncMIDIevent(int type)
+	{
+        //logger.debug("*SCOREPANEL* playback event: type= " + type);
 
-        if ("beat".equals(strData)) 
+        if (type == PlaybackEvent.BEAT) 
         {
         	if (gameType != appPrefs.SCORE_GAME_LISTEN && sBar.metronomeCheckBox.isSelected() == true)
         		answersLayer.drawMetronome(cursorX, cursorY);
         }
-        else if ("gameOn".equals(strData))
+        else if (type == PlaybackEvent.GAME_ON)
         {
         	// this is a workaround
         	answersLayer.drawCursor(cursorX, cursorY, true);
         }
-        else if ("cursorOn".equals(strData))
+        else if (type == PlaybackEvent.CURSOR_ON)
         {
         	cursorStartX = staffLayer.getFirstNoteXPosition() - staffLayer.getNotesDistance();
         	cursorX = cursorStartX;
         	cursorY = 10;
-        	startTime = System.currentTimeMillis();
+        	startTime = System.nanoTime();
         }
-        else if ("nOn".equals(strData))
+        else if (type == PlaybackEvent.NOTE_ON)
         {
         	if (gameType == appPrefs.SCORE_GAME_LISTEN)
         	{
@@ -629,14 +662,14 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 	        	}
         	}
         }
-        else if ("nOff".equals(strData))
+        else if (type == PlaybackEvent.NOTE_OFF)
         {
         	if (gameType == appPrefs.SCORE_GAME_LISTEN)
         		notesLayer.highlightNote(currentNoteIndex, 1, false);
         	currentNoteIndex++;
         	gameBar.progress.setValue((currentNoteIndex * 100) / gameNotes.size());
         }
-        else if ("n2On".equals(strData))
+        else if (type == PlaybackEvent.NOTE2_ON)
         {
         	if (gameType == appPrefs.SCORE_GAME_LISTEN)
         	{
@@ -650,16 +683,17 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 	        	}
         	}
         }
-        else if ("n2Off".equals(strData))
+        else if (type == PlaybackEvent.NOTE2_OFF)
         {
         	if (gameType == appPrefs.SCORE_GAME_LISTEN)
         		notesLayer.highlightNote(currentNote2Index, 2, false);
         	currentNote2Index++;
         	gameBar.progress.setValue((currentNoteIndex * 100) / gameNotes.size());
         }
-        else if ("end".equals(strData))
+        else if (type == PlaybackEvent.END)
         {
-        	gameStarted = false;
+        	if (gameLoop != null)
+        		gameLoop.shutdown();
         	if (gameType == appPrefs.SCORE_GAME_LISTEN)
         		appMidi.stopPlayback();
         	appMidi.stopMetronome();
@@ -719,11 +753,11 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 		sBar.playBtn.setButtonImage(new ImageIcon(getClass().getResource("stop.png")).getImage());
 		sBar.playBtn.repaint();
 		currentSpeed = sBar.tempoSlider.getValue();
-		metronome = appMidi.createMetronome(appPrefs, currentSpeed, staffLayer.getMeasuresNumber(), timeNumerator, timeDivision);
-		metronome.addMetaEventListener(new MetaEventListener() {
-            public void meta(MetaMessage meta) 
+		appMidi.createMetronome(appPrefs, currentSpeed, staffLayer.getMeasuresNumber(), timeNumerator, timeDivision);
+		appMidi.addMetronomeListener(new PlaybackEvent.Listener() {
+            public void playbackEvent(int type, int argument) 
             {
-            	handleAsyncMIDIevent(meta);
+            	handleAsyncMIDIevent(type);
             }
 		});
 		if (gameNotes2.size() > 0)
@@ -732,22 +766,21 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 			Vector<Note> tmpSequence = new Vector<Note>(); 
 			tmpSequence.addAll(gameNotes);
 			tmpSequence.addAll(gameNotes2);
-			playback = appMidi.createPlayback(appPrefs, currentSpeed, tmpSequence, timeDivision, playOnly, timeNumerator);
+			appMidi.createPlayback(appPrefs, currentSpeed, tmpSequence, timeDivision, playOnly, timeNumerator);
 		}
 		else
-			playback = appMidi.createPlayback(appPrefs, currentSpeed, gameNotes, timeDivision, playOnly, timeNumerator);
+			appMidi.createPlayback(appPrefs, currentSpeed, gameNotes, timeDivision, playOnly, timeNumerator);
 
-		playback.addMetaEventListener(new MetaEventListener() {
-          public void meta(MetaMessage meta) 
+		appMidi.addPlaybackListener(new PlaybackEvent.Listener() {
+          public void playbackEvent(int type, int argument) 
           {
-          	handleAsyncMIDIevent(meta);
+          	handleAsyncMIDIevent(type);
           }
 		});
 		
 		currentNoteIndex = 0;
 		currentNote2Index = 0;
-		metronome.start();
-		playback.start();
+		appMidi.startPlayback(true);
 	}
 	
 	/**
@@ -770,7 +803,8 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 		gameBar.progress.setValue(0);
 		sBar.playBtn.setButtonImage(new ImageIcon(getClass().getResource("playback.png")).getImage());
 		sBar.playBtn.repaint();
-		gameStarted = false;
+		if (gameLoop != null)
+			gameLoop.shutdown();
 		gameType = appPrefs.GAME_STOPPED;
 	}
 		
@@ -787,7 +821,7 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 				return;
 			}
 			
-			if (gameThread != null && gameThread.isAlive() == true)
+			if (gameLoop != null && gameLoop.isRunning() == true)
 			{
 				/* ************** STOP CURRENT GAME ***************** */
 				stopGame();
@@ -808,13 +842,12 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 				gameBar.scoreCnt.setText("");
 				gameBar.progress.setValue(0);
 				stats.reset();
-				gameThread = new ScoreGameThread();
-				gameStarted = true;
+				gameLoop = new GameLoop("Score game", new ScoreGame(), GAME_STEP_NANOS, GameLoop.FRAME_NANOS);
 				cursorX = cursorY = 0; 
 				startTime = 0;
 				createPlayback(false);
 				stats.setGameSpeed(currentSpeed);
-				gameThread.start();
+				gameLoop.start();
 				
 			}
 		}
@@ -856,7 +889,7 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 			answersLayer.setBounds(staffHMargin, 0, w, visibleStaffHeight);
 		}
 		notesLayer.setStaffWidth(staffLayer.getStaffWidth());
-		notesLayer.setNotesPositions();
+		notesLayer.updateNotesPositions();
 		scoreScrollPanel.setBounds(0, staffVMargin - 10, getWidth(), visibleStaffHeight + 15);
 		scoreScrollPanel.validate();
 		gameBar.setBounds(0, getHeight() - gBarHeight, getWidth(), gBarHeight);		
@@ -872,76 +905,71 @@ public class ScorePanel extends JPanel implements ActionListener, KeyListener
 	}
 	
 	/**
-	 * The Class ScoreGameThread.
+	 * The score game, run by the game loop: moves the cursor along the rows
+	 * as time goes by.
 	 */
-	private class ScoreGameThread extends Thread 
+	private class ScoreGame implements GameLoop.Game
 	{
 		
 		/** The note distance. */
 		int noteDistance = staffLayer.getNotesDistance();
-		//int beatsPerRow = (staffLayer.getWidth() - staffLayer.getFirstNoteXPosition()) / noteDistance;
+
 		/** The cursor xlimit. */
 		int cursorXlimit = staffLayer.getStaffWidth();
-		//int scrollAmount = scoreScrollPanel.getVerticalScrollBar().getMaximum() - scoreScrollPanel.getVerticalScrollBar().getVisibleAmount();
-		//int totalPixels = (cursorXlimit - cursorStartX) * (staffLayer.getRowsNumber() - 1);
-		//int drawnPixels = 0 - (cursorXlimit - cursorStartX);
+
 		/** The scroll step. */
 		int scrollStep = (scoreScrollPanel.getVerticalScrollBar().getMaximum() - scoreScrollPanel.getVerticalScrollBar().getVisibleAmount()) / (staffLayer.getRowsNumber() - 3);
 
 		/**
-		 * Instantiates a new score game thread.
+		 * Gets the cursor position on the current row.
+		 *
+		 * @param time the time, on the System.nanoTime() timeline
+		 * @return the x position
 		 */
-		private ScoreGameThread()
+		private int cursorPosition(long time)
 		{
-			//logger.debug("beatsPerRow: " + beatsPerRow);
+			return cursorStartX + (int)((time - startTime) * noteDistance * timeDivision * currentSpeed / 60e9);
 		}
 
 		/* (non-Javadoc)
-		 * @see java.lang.Thread#run()
+		 * @see calao.GameLoop.Game#step(long)
 		 */
-		public void run() 
+		public void step(long stepNanos)
 		{
-			while (gameStarted) 
+			if (startTime == 0)
+				return;
+			cursorX = cursorPosition(System.nanoTime());
+			if (cursorX >= cursorXlimit)
 			{
-				try
+				answersLayer.drawCursor(cursorX, cursorY, true);
+				cursorY+=rowsDistance;
+				cursorStartX = staffLayer.getFirstNoteXPosition() - 10;
+				cursorX = cursorStartX;
+				startTime = System.nanoTime();
+				if (cursorY > 10 + rowsDistance)
 				{
-					if (startTime != 0)
-					{
-						cursorX = cursorStartX + ((int)(System.currentTimeMillis() - startTime) * (noteDistance*timeDivision))/(60000 / currentSpeed);
-						answersLayer.drawCursor(cursorX, cursorY, false);
-
-						if (cursorX >= cursorXlimit)
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run()
 						{
-							answersLayer.drawCursor(cursorX, cursorY, true);
-							cursorY+=rowsDistance;
-							cursorStartX = staffLayer.getFirstNoteXPosition() - 10;
-							cursorX = cursorStartX;
-							startTime = System.currentTimeMillis();
-							if (cursorY > 10 + rowsDistance)
-							{
-								//logger.debug("Scrollbar min: " + scoreScrollPanel.getVerticalScrollBar().getMinimum() + ", max: "
-								//		+ scoreScrollPanel.getVerticalScrollBar().getMaximum());
-								//logger.debug("Scrollbar value: " + scoreScrollPanel.getVerticalScrollBar().getValue());
-								//logger.debug("Scrollbar amount: " + scoreScrollPanel.getVerticalScrollBar().getVisibleAmount());
-								
-					        	if (scoreScrollPanel.getVerticalScrollBar().isVisible() == true)
-					        	{
-					        		//int newPos = (scrollAmount * (drawnPixels + cursorX - cursorStartX)) / totalPixels;
-					        		//logger.debug("Scrollbar amount: " + newPos);
-					        		int newPos = scoreScrollPanel.getVerticalScrollBar().getValue() + scrollStep;
-					        		scoreScrollPanel.getVerticalScrollBar().setValue(newPos);
-					        	}
-							}
-							//drawnPixels += (cursorXlimit - cursorStartX);
-							continue;
+				        	if (scoreScrollPanel.getVerticalScrollBar().isVisible() == true)
+				        	{
+				        		int newPos = scoreScrollPanel.getVerticalScrollBar().getValue() + scrollStep;
+				        		scoreScrollPanel.getVerticalScrollBar().setValue(newPos);
+				        	}
 						}
-					}
-					sleep(10);
-					
+					});
 				}
-				catch (Exception e) {  }
 			}
 		}
+
+		/* (non-Javadoc)
+		 * @see calao.GameLoop.Game#render(double)
+		 */
+		public void render(double alpha)
+		{
+			if (startTime != 0)
+				answersLayer.drawCursor(cursorX, cursorY, false);
+		}
 	}
 	
 }
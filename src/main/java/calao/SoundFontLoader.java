@@ -0,0 +1,279 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Loads a SoundFont into Fluidsynth in the background, so that large banks do
+ * not freeze the user interface.
+ *
+ * Fluidsynth gives no progress while it parses a bank, so the progress is
+ * estimated from the size of the bank and the speed of the previous load.
+ * Until it is loaded, Fluidsynth keeps playing with the banks loaded before. The
+ * program list of each bank is cached, by path, size and modification time,
+ * so a bank loaded again shows its instruments at once.
+ *
+ * @author Neonunux
+ */
+public class SoundFontLoader extends Thread {
+
+	private static final Logger logger = LogManager
+			.getLogger(SoundFontLoader.class.getName());
+
+	/**
+	 * Receives the loading events, on the loader thread.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called while the bank is loading.
+		 *
+		 * @param bank
+		 *            the bank
+		 * @param percent
+		 *            the progress, from 0 to 100
+		 */
+		void soundFontProgress(File bank, int percent);
+
+		/**
+		 * Called once the bank is loaded and ready to play.
+		 *
+		 * @param bank
+		 *            the bank
+		 * @param programs
+		 *            the program names of the bank
+		 */
+		void soundFontLoaded(File bank, List<String> programs);
+
+		/**
+		 * Called if the bank cannot be loaded.
+		 *
+		 * @param bank
+		 *            the bank
+		 * @param e
+		 *            the error
+		 */
+		void soundFontFailed(File bank, IOException e);
+	}
+
+	/** The highest progress estimated while Fluidsynth parses the bank. */
+	static final int LOAD_PERCENT = 95;
+
+	/** The interval between two progress reports, in milliseconds. */
+	private static final long PROGRESS_INTERVAL = 100;
+
+	/** The speed of the last load, in bytes per millisecond. */
+	private static volatile double loadSpeed = 20 * 1024;
+
+	/** The program lists, by bank key. */
+	private static final HashMap<String, List<String>> programCache = new HashMap<String, List<String>>();
+
+	/** The synth. */
+	private final Fluidsynth synth;
+
+	/** The bank. */
+	private final File bank;
+
+	/** The listener. */
+	private final Listener listener;
+
+	/** The cancelled. */
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Instantiates a new SoundFont loader. Call {@link #start()} to load.
+	 *
+	 * @param synth
+	 *            the synth to load the bank into
+	 * @param bank
+	 *            the bank
+	 * @param listener
+	 *            the listener
+	 */
+	public SoundFontLoader(Fluidsynth synth, File bank, Listener listener) {
+		super("SoundFont loader");
+		this.synth = synth;
+		this.bank = bank;
+		this.listener = listener;
+		setDaemon(true);
+	}
+
+	/**
+	 * Gets the cache key of a bank. A changed file gets a new key.
+	 *
+	 * @param bank
+	 *            the bank
+	 * @return the key
+	 */
+	static String cacheKey(File bank) {
+		return bank.getAbsolutePath() + "|" + bank.length() + "|"
+				+ bank.lastModified();
+	}
+
+	/**
+	 * Gets the program list of a bank, if it was loaded before.
+	 *
+	 * @param bank
+	 *            the bank
+	 * @return a copy of the program list, or null if not cached
+	 */
+	public static List<String> getCachedPrograms(File bank) {
+		synchronized (programCache) {
+			List<String> programs = programCache.get(cacheKey(bank));
+			return (programs == null) ? null : new ArrayList<String>(programs);
+		}
+	}
+
+	/**
+	 * Caches the program list of a bank.
+	 *
+	 * @param bank
+	 *            the bank
+	 * @param programs
+	 *            the programs
+	 */
+	static void cachePrograms(File bank, List<String> programs) {
+		synchronized (programCache) {
+			programCache.put(cacheKey(bank), new ArrayList<String>(programs));
+		}
+	}
+
+	/**
+	 * Gets the bank.
+	 *
+	 * @return the bank
+	 */
+	public File getBank() {
+		return bank;
+	}
+
+	/**
+	 * Stops the loading and waits for the loader thread to end. A bank being
+	 * parsed by Fluidsynth is still loaded, so the synth can be destroyed
+	 * safely afterwards.
+	 */
+	public void cancel() {
+		cancelled = true;
+		try {
+			join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Estimates the progress of a load.
+	 *
+	 * @param length
+	 *            the size of the bank, in bytes
+	 * @param elapsed
+	 *            the time since the load started, in milliseconds
+	 * @param speed
+	 *            the expected speed, in bytes per millisecond
+	 * @return the progress, from 0 to {@link #LOAD_PERCENT}
+	 */
+	static int estimatePercent(long length, long elapsed, double speed) {
+		return (int) Math.min(LOAD_PERCENT,
+				elapsed * speed * 100 / Math.max(1, length));
+	}
+
+	/**
+	 * Loads the bank into Fluidsynth, reporting the estimated progress until
+	 * it is loaded.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void load() throws IOException {
+		if (!bank.canRead()) {
+			throw new IOException("Cannot read " + bank);
+		}
+		final IOException[] error = new IOException[1];
+		Thread parser = new Thread("SoundFont parser") {
+			public void run() {
+				try {
+					synth.soundFontLoad(bank);
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			}
+		};
+		parser.setDaemon(true);
+
+		long length = bank.length();
+		long start = System.currentTimeMillis();
+		int percent = -1;
+		boolean interrupted = false;
+		parser.start();
+		// the parser always runs to the end, cancelling only stops the reports
+		while (parser.isAlive()) {
+			int p = estimatePercent(length, System.currentTimeMillis() - start,
+					loadSpeed);
+			if (p != percent && !cancelled) {
+				percent = p;
+				listener.soundFontProgress(bank, percent);
+			}
+			try {
+				parser.join(PROGRESS_INTERVAL);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (error[0] != null) {
+			throw error[0];
+		}
+		loadSpeed = length / (double) Math.max(1, System.currentTimeMillis() - start);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 */
+	public void run() {
+		long start = System.currentTimeMillis();
+		try {
+			load();
+			if (cancelled) {
+				return;
+			}
+			List<String> programs = getCachedPrograms(bank);
+			if (programs == null) {
+				programs = new ArrayList<String>(synth.getSoundfontPrograms());
+				cachePrograms(bank, programs);
+			}
+			logger.debug("[SoundFontLoader] " + bank.getName() + " loaded in "
+					+ (System.currentTimeMillis() - start) + " ms, "
+					+ programs.size() + " programs");
+			listener.soundFontProgress(bank, 100);
+			listener.soundFontLoaded(bank, programs);
+		} catch (IOException e) {
+			logger.error("Cannot load soundfont " + bank + ": " + e);
+			listener.soundFontFailed(bank, e);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the spectrum over from the analysis thread to the display, decimated
+ * to a few log-frequency bands.
+ *
+ * The analysis thread bins each new spectrum into its back buffer, then
+ * exchanges it with the ready slot; the display exchanges its front buffer
+ * with the ready slot when it holds a fresher spectrum. Neither side ever
+ * waits for the other nor sees a half-written spectrum, and the three
+ * buffers are allocated once.
+ *
+ * @author Neonunux
+ */
+public class SpectrumSnapshot {
+
+	/** The dynamic range of the levels, in dB below full scale. */
+	private static final double RANGE_DB = 60;
+
+	/**
+	 * A set of band levels.
+	 */
+	private static class Levels {
+
+		/** The level of each band, from 0 to 1. */
+		final double[] values;
+
+		/** Set by the producer, cleared once the display has taken it. */
+		boolean fresh = false;
+
+		/**
+		 * Instantiates new levels.
+		 *
+		 * @param bands
+		 *            the number of bands
+		 */
+		Levels(int bands) {
+			values = new double[bands];
+		}
+	}
+
+	/** The lowest frequency shown, in Hz. */
+	private final double minFrequency;
+
+	/** The ratio between the upper and lower frequency of every band. */
+	private final double bandRatio;
+
+	/** The levels being written, owned by the producer. */
+	private Levels back;
+
+	/** The levels last published. */
+	private final AtomicReference<Levels> ready;
+
+	/** The levels being displayed, owned by the consumer. */
+	private Levels front;
+
+	/** The first spectrum bin of each band, and the end of the last one. */
+	private int[] bandBins = new int[0];
+
+	/** The spectrum size the band bins were computed for. */
+	private int binnedLength = -1;
+
+	/** The sample rate the band bins were computed for. */
+	private float binnedSampleRate = -1;
+
+	/**
+	 * Instantiates a new spectrum snapshot.
+	 *
+	 * @param bands
+	 *            the number of bands
+	 * @param minFrequency
+	 *            the lower frequency of the first band, in Hz
+	 * @param maxFrequency
+	 *            the upper frequency of the last band, in Hz
+	 */
+	public SpectrumSnapshot(int bands, double minFrequency, double maxFrequency) {
+		if (bands < 1 || minFrequency <= 0 || maxFrequency <= minFrequency) {
+			throw new IllegalArgumentException("Invalid spectrum bands");
+		}
+		this.minFrequency = minFrequency;
+		bandRatio = Math.pow(maxFrequency / minFrequency, 1.0 / bands);
+		back = new Levels(bands);
+		ready = new AtomicReference<Levels>(new Levels(bands));
+		front = new Levels(bands);
+	}
+
+	/**
+	 * Gets the number of bands.
+	 *
+	 * @return the number of bands
+	 */
+	public int getBands() {
+		return front.values.length;
+	}
+
+	/**
+	 * Computes the first bin of each band for a spectrum size and sample
+	 * rate. Bands narrower than a bin get the bin they fall in.
+	 *
+	 * @param length
+	 *            the number of bins, fftSize / 2 + 1
+	 * @param sampleRate
+	 *            the sample rate
+	 */
+	private void computeBandBins(int length, float sampleRate) {
+		int bands = back.values.length;
+		if (bandBins.length != bands + 1) {
+			bandBins = new int[bands + 1];
+		}
+		double binWidth = sampleRate / (2.0 * (length - 1));
+		double f = minFrequency;
+		bandBins[0] = Math.min((int) Math.ceil(f / binWidth), length - 1);
+		for (int b = 1; b <= bands; b++) {
+			f *= bandRatio;
+			int bin = Math.min((int) Math.ceil(f / binWidth), length);
+			bandBins[b] = Math.max(bin, bandBins[b - 1] + 1);
+		}
+		binnedLength = length;
+		binnedSampleRate = sampleRate;
+	}
+
+	/**
+	 * Publishes a new spectrum. Must only be called by the producer thread.
+	 *
+	 * @param magnitude
+	 *            the magnitude of bins 0 to fftSize / 2, of a Hann windowed
+	 *            frame
+	 * @param sampleRate
+	 *            the sample rate
+	 */
+	public void publish(double[] magnitude, float sampleRate) {
+		int length = magnitude.length;
+		if (length < 2) {
+			return;
+		}
+		if (length != binnedLength || sampleRate != binnedSampleRate) {
+			computeBandBins(length, sampleRate);
+		}
+		// a full scale sine peaks at fftSize / 4 once Hann windowed
+		double fullScale = (length - 1) / 2.0;
+		double[] values = back.values;
+		for (int b = 0; b < values.length; b++) {
+			int end = Math.min(bandBins[b + 1], length);
+			double max = 0;
+			for (int k = bandBins[b]; k < end; k++) {
+				if (magnitude[k] > max) {
+					max = magnitude[k];
+				}
+			}
+			double level = 0;
+			if (max > 0) {
+				level = 1 + 20 * Math.log10(max / fullScale) / RANGE_DB;
+			}
+			values[b] = Math.max(0, Math.min(1, level));
+		}
+		back.fresh = true;
+		back = ready.getAndSet(back);
+	}
+
+	/**
+	 * Takes the last published levels, if they are newer than the ones
+	 * taken before. Must only be called by the consumer thread.
+	 *
+	 * @return the level of each band from 0 to 1, valid until the next call,
+	 *         or null if nothing was published since the last call
+	 */
+	public double[] poll() {
+		// only the producer puts fresh levels in the slot, so they cannot
+		// go stale before the exchange
+		if (!ready.get().fresh) {
+			return null;
+		}
+		front.fresh = false;
+		front = ready.getAndSet(front);
+		return front.values;
+	}
+}
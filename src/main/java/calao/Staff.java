@@ -21,7 +21,11 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.util.ResourceBundle;
 import java.util.Vector;
 
@@ -130,6 +134,15 @@ public class Staff extends JPanel
     
     /** The global scale. */
     private double globalScale = 1.0;
+
+    /** The pre-rendered clefs, accidentals and time signatures. */
+    private final GlyphCache glyphs;
+
+    /** The staff rendered at the current size, or null to render it again. */
+    private BufferedImage background = null;
+
+    /** The accidentals the background was rendered with. */
+    private String backgroundAccidentals = "";
     
     /**
      * Instantiates a new staff.
@@ -148,6 +161,7 @@ public class Staff extends JPanel
     	appPrefs = p;
     	accidentals = a;
     	globalScale = 1.0;
+    	glyphs = new GlyphCache(f);
 
     	if (inline == true)
     	{
@@ -166,6 +180,7 @@ public class Staff extends JPanel
     public void setRowsDistance(int dist)
     {
     	this.rowsDistance = dist;
+    	invalidateBackground();
     }
     
     /**
@@ -183,7 +198,7 @@ public class Staff extends JPanel
     	if ((clefMask & appPrefs.CLEF_C3) > 0) this.clefs.add(appPrefs.CLEF_C3);
     	if ((clefMask & appPrefs.CLEF_C4) > 0) this.clefs.add(appPrefs.CLEF_C4);
 
-    	repaint();
+    	invalidateBackground();
     }
  
     /**
@@ -194,6 +209,7 @@ public class Staff extends JPanel
     public void setAccidentals(Accidentals a)
     {
     	this.accidentals = new Accidentals(a.getType(), a.getNumber(), appPrefs);
+    	invalidateBackground();
     }
     
     /**
@@ -207,7 +223,7 @@ public class Staff extends JPanel
     	this.timeSignNumerator = num;
     	this.timeSignDenominator = denom;
     	this.timeDivision = timeSignDenominator / 4;
-    	repaint();
+    	invalidateBackground();
     }
     
     /**
@@ -239,6 +255,7 @@ public class Staff extends JPanel
     public void setMeasuresNumber(int num)
     {
     	this.forcedNumberOfMeasures = num;
+    	invalidateBackground();
     }
     
     /**
@@ -316,6 +333,42 @@ public class Staff extends JPanel
     public void setScale(double factor)
     {
     	this.globalScale = factor;
+    	glyphs.setScale(factor);
+    	invalidateBackground();
+    }
+
+    /**
+     * Drops the pre-rendered staff, so that it is rendered again on next
+     * paint. Size changes are caught on paint, everything else that changes
+     * the staff look must call this.
+     */
+    public void invalidateBackground()
+    {
+    	background = null;
+    	repaint();
+    }
+
+    /**
+     * Gets the pre-rendered staff.
+     *
+     * @return the background, null if not rendered yet
+     */
+    BufferedImage getBackgroundImage()
+    {
+    	return background;
+    }
+
+    /**
+     * Gets the accidentals the staff is drawn with. The accidentals may be
+     * shared with a note generator and changed from there.
+     *
+     * @return the accidentals type and number
+     */
+    private String getAccidentalsKey()
+    {
+    	if (accidentals == null)
+    		return "";
+    	return accidentals.getType() + accidentals.getNumber();
     }
     
     /**
@@ -360,22 +413,57 @@ public class Staff extends JPanel
         return vxPos;
     }
     
-    // Draw staff. Includes clefs, alterations, time signature
- 	/* (non-Javadoc)
+    /* (non-Javadoc)
      * @see javax.swing.JComponent#paintComponent(java.awt.Graphics)
      */
     protected void paintComponent(Graphics g) 
  	{
- 		((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
  		super.paintComponent(g);
- 		if (globalScale != 1.0)
-			((Graphics2D) g).scale(globalScale, globalScale);
- 		
+ 		int w = getWidth();
+ 		int h = getHeight();
+ 		if (w <= 0 || h <= 0)
+ 			return;
+
+ 		// one image pixel per device pixel, the graphics are scaled on HiDPI outputs
+ 		AffineTransform device = ((Graphics2D) g).getTransform();
+ 		double sx = Math.abs(device.getScaleX()) > 0 ? Math.abs(device.getScaleX()) : 1.0;
+ 		double sy = Math.abs(device.getScaleY()) > 0 ? Math.abs(device.getScaleY()) : 1.0;
+ 		int iw = (int) Math.ceil(w * sx);
+ 		int ih = (int) Math.ceil(h * sy);
+
+ 		String accidentalsKey = getAccidentalsKey();
+ 		if (background == null || background.getWidth() != iw || background.getHeight() != ih
+ 				|| accidentalsKey.equals(backgroundAccidentals) == false)
+ 		{
+ 			logger.debug("[Staff] rendering background, w = " + iw + ", h = " + ih);
+ 			GraphicsConfiguration gc = getGraphicsConfiguration();
+ 			if (gc != null)
+ 				background = gc.createCompatibleImage(iw, ih, Transparency.OPAQUE);
+ 			else
+ 				background = new BufferedImage(iw, ih, BufferedImage.TYPE_INT_RGB);
+ 			backgroundAccidentals = accidentalsKey;
+ 			Graphics2D g2d = background.createGraphics();
+ 			g2d.scale(sx, sy);
+ 			drawStaff(g2d);
+ 			g2d.dispose();
+ 		}
+ 		g.drawImage(background, 0, 0, w, h, null);
+ 	}
+
+    // Draw staff. Includes clefs, alterations, time signature
+    /**
+     * Draws the staff.
+     *
+     * @param g the graphics
+     */
+    private void drawStaff(Graphics g) 
+ 	{
+ 		((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
  		g.setColor(Color.white);
  		g.fillRect(0, 0, getWidth(), getHeight());
+ 		if (globalScale != 1.0)
+			((Graphics2D) g).scale(globalScale, globalScale);
 		g.setColor(Color.black);
-		
-		logger.debug("[Staff - paintComponent] w = " + getWidth());
 
         int yPos = scoreYpos;
         int vXPos = calculateSize();
@@ -392,28 +480,24 @@ public class Staff extends JPanel
         	// 1 - Draw clef
         	if ((clefMask & appPrefs.CLEF_G2) > 0)
         	{
-        		g.setFont(appFont.deriveFont(70f));
-        		g.drawString("G", 0, yPos + 42);
+        		glyphs.drawString(g, "G", 70f, 0, yPos + 42);
         	}
         	else if ((clefMask & appPrefs.CLEF_F4) > 0)
         	{
-        		g.setFont(appFont.deriveFont(60f));
-        		g.drawString("?", 0, yPos + 40);
+        		glyphs.drawString(g, "?", 60f, 0, yPos + 40);
         	}
         	else if ((clefMask & appPrefs.CLEF_C3) > 0)
         	{
-        		g.setFont(appFont.deriveFont(55f));
-        		g.drawString("" + (char)0xBF, 0, yPos + 43);
+        		glyphs.drawString(g, "" + (char)0xBF, 55f, 0, yPos + 43);
         	}
         	else if ((clefMask & appPrefs.CLEF_C4) > 0)
         	{
-        		g.setFont(appFont.deriveFont(55f));
-        		g.drawString("" + (char)0xBF, 0, yPos + 33);
+        		glyphs.drawString(g, "" + (char)0xBF, 55f, 0, yPos + 33);
         	}
     		
     		// 2 - Draw accidentals
         	if (accidentals != null && clefs.size() > 0) {
-				accidentals.paint(g, appFont, clefWidth, yPos, clefs.get(0));
+				accidentals.paint(g, glyphs, clefWidth, yPos, clefs.get(0));
 			}
         	
         	// 3 - Draw tonality (only on the first row)
@@ -448,8 +532,7 @@ public class Staff extends JPanel
 					t = ")";
 				}
 
-	    		g.setFont(appFont.deriveFont(58f));
-	    		g.drawString(t, clefWidth + alterationWidth, yPos+41);
+	    		glyphs.drawString(g, t, 58f, clefWidth + alterationWidth, yPos+41);
         	}
 
     		// 5 - Draw double clef elements
@@ -465,27 +548,23 @@ public class Staff extends JPanel
         		// draw second clef
             	if (clefs.get(1) == appPrefs.CLEF_G2)
             	{
-            		g.setFont(appFont.deriveFont(70f));
-            		g.drawString("G", 0, yPos + (rowsDistance / 2) + 42);
+            		glyphs.drawString(g, "G", 70f, 0, yPos + (rowsDistance / 2) + 42);
             	}
             	else if (clefs.get(1) == appPrefs.CLEF_F4)
             	{
-            		g.setFont(appFont.deriveFont(60f));
-            		g.drawString("?", 0, yPos + (rowsDistance / 2) + 40);
+            		glyphs.drawString(g, "?", 60f, 0, yPos + (rowsDistance / 2) + 40);
             	}
             	else if (clefs.get(1) == appPrefs.CLEF_C3)
             	{
-            		g.setFont(appFont.deriveFont(55f));
-            		g.drawString("" + (char)0xBF, 0, yPos + (rowsDistance / 2) + 43);
+            		glyphs.drawString(g, "" + (char)0xBF, 55f, 0, yPos + (rowsDistance / 2) + 43);
             	}
             	else if (clefs.get(1) == appPrefs.CLEF_C4)
             	{
-            		g.setFont(appFont.deriveFont(55f));
-            		g.drawString("" + (char)0xBF, 0, yPos + (rowsDistance / 2) + 33);
+            		glyphs.drawString(g, "" + (char)0xBF, 55f, 0, yPos + (rowsDistance / 2) + 33);
             	}        		
         		
         		// draw accidentals
-        		accidentals.paint(g, appFont, clefWidth, yPos + (rowsDistance / 2), clefs.get(1));
+        		accidentals.paint(g, glyphs, clefWidth, yPos + (rowsDistance / 2), clefs.get(1));
 
         		// draw tonality
             	g.setColor(Color.gray);
@@ -495,8 +574,7 @@ public class Staff extends JPanel
         		// draw time signature
         		if (inlineMode == false)
             	{
-        			g.setFont(appFont.deriveFont(58f));
-        			g.drawString(t, clefWidth + alterationWidth, yPos+ + (rowsDistance / 2) + 41);
+        			glyphs.drawString(g, t, 58f, clefWidth + alterationWidth, yPos+ + (rowsDistance / 2) + 41);
             	}
         	}
         	
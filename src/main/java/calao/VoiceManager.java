@@ -0,0 +1,242 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Keeps track of the notes sounding on each MIDI channel, so that none is
+ * left hanging and the number of notes held at once stays bounded.
+ *
+ * The active notes of a channel are a 128 bit set made of two longs. The
+ * voices are also kept in the order they started: when the polyphony limit
+ * is reached the oldest one is stolen, that is stopped to make room for the
+ * new note.
+ *
+ * Rather than talking to a synthesizer, each call appends the events to send
+ * to an array, packed as by {@link Fluidsynth#pack(int, int, int, int)}, so
+ * the same bookkeeping serves the Java synthesizer and Fluidsynth. Not thread
+ * safe, callers synchronize.
+ *
+ * @author Neonunux
+ */
+public class VoiceManager {
+
+	/** The default polyphony limit. */
+	public static final int DEFAULT_POLYPHONY = 24;
+
+	/** The number of MIDI channels. */
+	public static final int CHANNELS = 16;
+
+	/** The active notes, two longs per channel. */
+	private final long[] active = new long[CHANNELS * 2];
+
+	/** The voices, channel * 128 + pitch, oldest first. */
+	private int[] voices;
+
+	/** The number of voices. */
+	private int count = 0;
+
+	/**
+	 * Instantiates a new voice manager.
+	 *
+	 * @param polyphony
+	 *            the maximum number of notes held at once
+	 */
+	public VoiceManager(int polyphony) {
+		if (polyphony < 1) {
+			throw new IllegalArgumentException("Polyphony must be at least 1");
+		}
+		voices = new int[polyphony];
+	}
+
+	/**
+	 * Gets the polyphony limit.
+	 *
+	 * @return the polyphony
+	 */
+	public int getPolyphony() {
+		return voices.length;
+	}
+
+	/**
+	 * Gets the number of notes held.
+	 *
+	 * @return the voice count
+	 */
+	public int getVoiceCount() {
+		return count;
+	}
+
+	/**
+	 * Checks if a note is held.
+	 *
+	 * @param channel
+	 *            the channel
+	 * @param pitch
+	 *            the pitch
+	 * @return true, if active
+	 */
+	public boolean isActive(int channel, int pitch) {
+		return (active[channel * 2 + (pitch >> 6)] & (1L << (pitch & 63))) != 0;
+	}
+
+	/**
+	 * Changes the polyphony limit. When lowered, the oldest voices are
+	 * stolen.
+	 *
+	 * @param polyphony
+	 *            the polyphony
+	 * @param events
+	 *            the array receiving the note off events, room for the
+	 *            stolen voices needed
+	 * @param size
+	 *            the number of events already in the array
+	 * @return the number of events in the array
+	 */
+	public int setPolyphony(int polyphony, int[] events, int size) {
+		if (polyphony < 1) {
+			throw new IllegalArgumentException("Polyphony must be at least 1");
+		}
+		while (count > polyphony) {
+			size = stop(0, events, size);
+		}
+		int[] resized = new int[polyphony];
+		System.arraycopy(voices, 0, resized, 0, count);
+		voices = resized;
+		return size;
+	}
+
+	/**
+	 * Starts a note. A note already held is restarted, and the oldest voice
+	 * is stolen when the limit is reached.
+	 *
+	 * @param channel
+	 *            the channel
+	 * @param pitch
+	 *            the pitch
+	 * @param velocity
+	 *            the velocity
+	 * @param events
+	 *            the array receiving the events, room for two needed
+	 * @param size
+	 *            the number of events already in the array
+	 * @return the number of events in the array
+	 */
+	public int noteOn(int channel, int pitch, int velocity, int[] events,
+			int size) {
+		int voice = channel * 128 + pitch;
+		if (isActive(channel, pitch)) {
+			size = stop(indexOf(voice), events, size);
+		} else if (count == voices.length) {
+			size = stop(0, events, size);
+		}
+		voices[count++] = voice;
+		active[channel * 2 + (pitch >> 6)] |= 1L << (pitch & 63);
+		events[size++] = Fluidsynth.pack(channel, ShortMessage.NOTE_ON, pitch,
+				velocity);
+		return size;
+	}
+
+	/**
+	 * Stops a note. Nothing is sent if the note is not held, for instance
+	 * because its voice was stolen.
+	 *
+	 * @param channel
+	 *            the channel
+	 * @param pitch
+	 *            the pitch
+	 * @param events
+	 *            the array receiving the event, room for one needed
+	 * @param size
+	 *            the number of events already in the array
+	 * @return the number of events in the array
+	 */
+	public int noteOff(int channel, int pitch, int[] events, int size) {
+		if (!isActive(channel, pitch)) {
+			return size;
+		}
+		return stop(indexOf(channel * 128 + pitch), events, size);
+	}
+
+	/**
+	 * Stops every note of a channel, with a note off for each held note
+	 * followed by an all notes off controller for whatever the manager did
+	 * not start.
+	 *
+	 * @param channel
+	 *            the channel
+	 * @param events
+	 *            the array receiving the events, room for the polyphony
+	 *            plus one needed
+	 * @param size
+	 *            the number of events already in the array
+	 * @return the number of events in the array
+	 */
+	public int allNotesOff(int channel, int[] events, int size) {
+		int i = 0;
+		while (i < count) {
+			if (voices[i] / 128 == channel) {
+				size = stop(i, events, size);
+			} else {
+				i++;
+			}
+		}
+		events[size++] = Fluidsynth.pack(channel, ShortMessage.CONTROL_CHANGE,
+				123, 0);
+		return size;
+	}
+
+	/**
+	 * Finds a voice.
+	 *
+	 * @param voice
+	 *            the voice
+	 * @return the index in voices
+	 */
+	private int indexOf(int voice) {
+		for (int i = 0; i < count; i++) {
+			if (voices[i] == voice) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Stops a voice and removes it.
+	 *
+	 * @param index
+	 *            the index in voices
+	 * @param events
+	 *            the array receiving the note off event
+	 * @param size
+	 *            the number of events already in the array
+	 * @return the number of events in the array
+	 */
+	private int stop(int index, int[] events, int size) {
+		int channel = voices[index] / 128;
+		int pitch = voices[index] % 128;
+		active[channel * 2 + (pitch >> 6)] &= ~(1L << (pitch & 63));
+		count--;
+		System.arraycopy(voices, index + 1, voices, index, count - index);
+		events[size++] = Fluidsynth.pack(channel, ShortMessage.NOTE_OFF, pitch,
+				0);
+		return size;
+	}
+}
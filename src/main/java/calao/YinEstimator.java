@@ -0,0 +1,163 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+/**
+ * Pitch estimator implementing the YIN algorithm (de Cheveigné and Kawahara,
+ * 2002): the period is the first lag where the cumulative mean normalized
+ * difference function drops below a threshold.
+ *
+ * Works in the time domain on the raw frame, so it does not need a large
+ * frame for good resolution: a frame only has to hold two periods of the
+ * lowest note searched.
+ *
+ * @author Neonunux
+ */
+public class YinEstimator implements PitchEstimator {
+
+	/** The default threshold of the normalized difference. */
+	public static final double DEFAULT_THRESHOLD = 0.15;
+
+	/** The lowest frequency searched, in Hz. */
+	private final double minFrequency;
+
+	/** The highest frequency searched, in Hz. */
+	private final double maxFrequency;
+
+	/** The threshold. */
+	private final double threshold;
+
+	/** The cumulative mean normalized difference, by lag. */
+	private double[] yinBuffer = new double[0];
+
+	/** The normalized difference at the chosen lag, 1 when no pitch was found. */
+	private double aperiodicity = 1;
+
+	/**
+	 * Instantiates a new YIN estimator searching 40 to 2000 Hz.
+	 */
+	public YinEstimator() {
+		this(40, 2000, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Instantiates a new YIN estimator.
+	 *
+	 * @param minFrequency
+	 *            the lowest frequency searched
+	 * @param maxFrequency
+	 *            the highest frequency searched
+	 * @param threshold
+	 *            the threshold of the normalized difference
+	 */
+	public YinEstimator(double minFrequency, double maxFrequency,
+			double threshold) {
+		if (minFrequency <= 0 || maxFrequency <= minFrequency) {
+			throw new IllegalArgumentException("Invalid frequency range");
+		}
+		this.minFrequency = minFrequency;
+		this.maxFrequency = maxFrequency;
+		this.threshold = threshold;
+	}
+
+	/* (non-Javadoc)
+	 * @see calao.PitchEstimator#estimate(double[], double[], float)
+	 */
+	public double estimate(double[] frame, double[] windowedFrame,
+			float sampleRate) {
+		int size = frame.length;
+		int tauMax = Math.min(size / 2, (int) (sampleRate / minFrequency) + 1);
+		int tauMin = Math.max(2, (int) (sampleRate / maxFrequency));
+		aperiodicity = 1;
+		if (tauMax <= tauMin + 1) {
+			return 0;
+		}
+		if (yinBuffer.length < tauMax + 1) {
+			yinBuffer = new double[tauMax + 1];
+		}
+		double[] d = yinBuffer;
+		int width = size - tauMax;
+
+		// difference function, normalized by its cumulative mean
+		d[0] = 1;
+		double runningSum = 0;
+		for (int tau = 1; tau <= tauMax; tau++) {
+			double sum = 0;
+			for (int j = 0; j < width; j++) {
+				double delta = frame[j] - frame[j + tau];
+				sum += delta * delta;
+			}
+			runningSum += sum;
+			d[tau] = (runningSum == 0) ? 1 : sum * tau / runningSum;
+		}
+
+		// first dip below the threshold, or the deepest one
+		int best = -1;
+		for (int tau = tauMin; tau < tauMax; tau++) {
+			if (d[tau] < threshold) {
+				while (tau + 1 < tauMax && d[tau + 1] < d[tau]) {
+					tau++;
+				}
+				best = tau;
+				break;
+			}
+		}
+		if (best == -1) {
+			int min = tauMin;
+			for (int tau = tauMin + 1; tau < tauMax; tau++) {
+				if (d[tau] < d[min]) {
+					min = tau;
+				}
+			}
+			// too noisy to be a note
+			if (d[min] >= 0.5) {
+				return 0;
+			}
+			best = min;
+		}
+		aperiodicity = d[best];
+
+		// parabolic interpolation of the lag
+		double period = best;
+		double a = d[best - 1];
+		double b = d[best];
+		double c = d[best + 1];
+		double den = a - 2 * b + c;
+		if (den != 0) {
+			period += 0.5 * (a - c) / den;
+		}
+		return sampleRate / period;
+	}
+
+	/**
+	 * Gets the normalized difference at the lag of the last estimate. Close
+	 * to 0 for a clean periodic sound, 1 when no pitch was found.
+	 *
+	 * @return the aperiodicity
+	 */
+	public double getAperiodicity() {
+		return aperiodicity;
+	}
+
+	/* (non-Javadoc)
+	 * @see calao.PitchEstimator#getSpectrum()
+	 */
+	public double[] getSpectrum() {
+		return null;
+	}
+}
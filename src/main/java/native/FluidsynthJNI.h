@@ -57,6 +57,14 @@ JNIEXPORT void JNICALL Java_Fluidsynth_noteOn
 JNIEXPORT void JNICALL Java_Fluidsynth_noteOff
   (JNIEnv *, jclass, jobject, jint, jint);
 
+/*
+ * Class:     Fluidsynth
+ * Method:    sendEvents
+ * Signature: (Ljava/nio/ByteBuffer;[II)V
+ */
+JNIEXPORT void JNICALL Java_Fluidsynth_sendEvents
+  (JNIEnv *, jclass, jobject, jintArray, jint);
+
 /*
  * Class:     Fluidsynth
  * Method:    controlChange
@@ -227,6 +227,48 @@ void JNICALL Java_Fluidsynth_noteOff(JNIEnv* env, jclass jclass, jobject jcontex
 	fluid_synth_noteoff(context->synth, jchannel, jpitch);
 }
 
+#define EVENTS_CHUNK 64
+
+JNIEXPORT
+void JNICALL Java_Fluidsynth_sendEvents(JNIEnv* env, jclass jclass, jobject jcontext, jintArray jevents, jint jcount) {
+	Context* context = (Context*) env->GetDirectBufferAddress(jcontext);
+
+	// copy by chunks on the stack, fluidsynth takes locks and must not be
+	// called inside a critical array section
+	jint events[EVENTS_CHUNK];
+	for (jint start = 0; start < jcount; start += EVENTS_CHUNK) {
+		jint count = jcount - start;
+		if (count > EVENTS_CHUNK) {
+			count = EVENTS_CHUNK;
+		}
+		env->GetIntArrayRegion(jevents, start, count, events);
+
+		for (jint i = 0; i < count; i++) {
+			int status = events[i] & 0xFF;
+			int channel = status & 0x0F;
+			int data1 = (events[i] >> 8) & 0x7F;
+			int data2 = (events[i] >> 16) & 0x7F;
+			switch (status & 0xF0) {
+			case 0x80:
+				fluid_synth_noteoff(context->synth, channel, data1);
+				break;
+			case 0x90:
+				fluid_synth_noteon(context->synth, channel, data1, data2);
+				break;
+			case 0xB0:
+				fluid_synth_cc(context->synth, channel, data1, data2);
+				break;
+			case 0xC0:
+				fluid_synth_program_change(context->synth, channel, data1);
+				break;
+			case 0xE0:
+				fluid_synth_pitch_bend(context->synth, channel, (data2 * 128) + data1);
+				break;
+			}
+		}
+	}
+}
+
 JNIEXPORT
 void JNICALL Java_Fluidsynth_controlChange(JNIEnv* env, jclass jclass, jobject jcontext, jint jchannel, jint jcontroller, jint jvalue) {
 	Context* context = (Context*) env->GetDirectBufferAddress(jcontext);
@@ -0,0 +1,121 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class AudioAnalysisThreadTest {
+
+	private static float[] ramp(int from, int count) {
+		float[] samples = new float[count];
+		for (int i = 0; i < count; i++) {
+			samples[i] = from + i;
+		}
+		return samples;
+	}
+
+	@Test
+	public void testHannWindow() throws Exception {
+		double[] w = AudioAnalysisThread.hannWindow(8);
+		assertThat(w[0]).isEqualTo(0.0);
+		assertThat(Math.abs(w[4] - 1)).isLessThan(1e-12);
+		for (int i = 1; i < 8; i++) {
+			assertThat(Math.abs(w[i] - w[8 - i])).isLessThan(1e-12);
+		}
+	}
+
+	@Test
+	public void testFramesOverlapByHopSize() throws Exception {
+		SampleRingBuffer ring = new SampleRingBuffer(64);
+		final double[] lastFrame = new double[8];
+		final int[] frames = new int[1];
+		AudioAnalysisThread analysis = new AudioAnalysisThread(ring, 8, 2,
+				new AudioAnalysisThread.FrameListener() {
+					public void frameReady(double[] frame, double[] windowedFrame) {
+						System.arraycopy(frame, 0, lastFrame, 0, frame.length);
+						frames[0]++;
+					}
+				});
+
+		ring.write(ramp(0, 7), 0, 7);
+		assertThat(analysis.processFrame()).isFalse();
+		ring.write(ramp(7, 1), 0, 1);
+		assertThat(analysis.processFrame()).isTrue();
+		assertThat(lastFrame[0]).isEqualTo(0.0);
+		assertThat(lastFrame[7]).isEqualTo(7.0);
+
+		ring.write(ramp(8, 5), 0, 5);
+		assertThat(analysis.processFrame()).isTrue();
+		assertThat(analysis.processFrame()).isTrue();
+		assertThat(analysis.processFrame()).isFalse();
+		assertThat(frames[0]).isEqualTo(3);
+		assertThat(lastFrame[0]).isEqualTo(4.0);
+		assertThat(lastFrame[7]).isEqualTo(11.0);
+	}
+
+	@Test
+	public void testWindowedFrame() throws Exception {
+		SampleRingBuffer ring = new SampleRingBuffer(16);
+		final double[] window = AudioAnalysisThread.hannWindow(8);
+		final boolean[] checked = new boolean[1];
+		AudioAnalysisThread analysis = new AudioAnalysisThread(ring, 8, 8,
+				new AudioAnalysisThread.FrameListener() {
+					public void frameReady(double[] frame, double[] windowedFrame) {
+						for (int i = 0; i < frame.length; i++) {
+							assertThat(windowedFrame[i]).isEqualTo(frame[i] * window[i]);
+						}
+						checked[0] = true;
+					}
+				});
+		ring.write(ramp(1, 8), 0, 8);
+		analysis.processFrame();
+		assertThat(checked[0]).isTrue();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHopLargerThanFrameIsRejected() throws Exception {
+		new AudioAnalysisThread(new SampleRingBuffer(16), 8, 9, null);
+	}
+
+	@Test
+	public void testThreadConsumesRing() throws Exception {
+		SampleRingBuffer ring = new SampleRingBuffer(64);
+		final CountDownLatch latch = new CountDownLatch(4);
+		AudioAnalysisThread analysis = new AudioAnalysisThread(ring, 16, 4,
+				new AudioAnalysisThread.FrameListener() {
+					public void frameReady(double[] frame, double[] windowedFrame) {
+						latch.countDown();
+					}
+				});
+		analysis.start();
+		ring.write(ramp(0, 28), 0, 28);
+		analysis.wakeUp();
+		assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+		analysis.shutdown();
+		analysis.join(5000);
+		assertThat(analysis.isAlive()).isFalse();
+	}
+}
@@ -106,11 +106,6 @@ public class AudioInputControllerTest {
 		assertThat(aic.initialize()).isFalse();
 	}
 
-	@Test
-	public void testInitFrequenciesList() throws Exception {
-		return;
-	}
-
 	@Test
 	public void testGetDevicesList() throws Exception {
 		return;
@@ -121,11 +116,6 @@ public class AudioInputControllerTest {
 		return;
 	}
 
-	@Test
-	public void testFrequencyLookup() throws Exception {
-		return;
-	}
-
 	@Test
 	public void testSetSensitivity() throws Exception {
 		return;
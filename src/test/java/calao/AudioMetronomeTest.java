@@ -0,0 +1,141 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class AudioMetronomeTest {
+
+	/**
+	 * Renders frames, block by block.
+	 */
+	private static float[] render(AudioMetronome metronome, int frames) {
+		float[] out = new float[frames];
+		float[] block = new float[AudioMetronome.BLOCK_FRAMES];
+		for (int pos = 0; pos < frames; pos += block.length) {
+			Arrays.fill(block, 0);
+			metronome.mix(block, block.length, pos);
+			System.arraycopy(block, 0, out, pos, Math.min(block.length, frames - pos));
+		}
+		return out;
+	}
+
+	private static int firstSound(float[] samples, int from) {
+		for (int i = from; i < samples.length; i++) {
+			if (samples[i] != 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void testRenderClick() {
+		float[] click = AudioMetronome.renderClick(1000, 44100f);
+		assertThat(click.length).isEqualTo(1323);
+		assertThat(click[0]).isEqualTo(0f);
+		for (float sample : click) {
+			assertThat(Math.abs(sample)).isLessThanOrEqualTo(1f);
+		}
+	}
+
+	@Test
+	public void testSampleAccurateClicks() {
+		AudioMetronome metronome = new AudioMetronome();
+		metronome.clear();
+		metronome.setTempo(600, 1);
+		metronome.addClick(0, true);
+		metronome.addClick(1, false);
+		metronome.addClick(2, false);
+		metronome.start(1000000);
+		// tick 0 is 1 ms after the frame played at time 0, 44.1 frames
+		metronome.takeSchedule(0, 0, 0);
+		float[] out = render(metronome, 20000);
+		// the attack starts at 0, so the first sound is one frame later
+		assertThat(firstSound(out, 0)).isEqualTo(44 + 1);
+		assertThat(firstSound(out, 2000)).isEqualTo(44 + 4410 + 1);
+		assertThat(firstSound(out, 6000)).isEqualTo(44 + 8820 + 1);
+	}
+
+	@Test
+	public void testLateClickStartsAtWriteFrame() {
+		AudioMetronome metronome = new AudioMetronome();
+		metronome.setTempo(60, 1);
+		metronome.addClick(0, false);
+		metronome.start(0);
+		metronome.takeSchedule(0, 0, 256);
+		float[] out = render(metronome, 2048);
+		assertThat(firstSound(out, 0)).isEqualTo(257);
+	}
+
+	@Test
+	public void testStop() {
+		AudioMetronome metronome = new AudioMetronome();
+		metronome.setTempo(60, 1);
+		metronome.addClick(0, false);
+		metronome.start(0);
+		metronome.takeSchedule(0, 0, 0);
+		metronome.stop();
+		metronome.takeSchedule(0, 0, 0);
+		assertThat(firstSound(render(metronome, 2048), 0)).isEqualTo(-1);
+	}
+
+	@Test
+	public void testStopKeepsSoundingClick() {
+		AudioMetronome metronome = new AudioMetronome();
+		metronome.setTempo(60, 1);
+		metronome.addClick(0, false);
+		metronome.addClick(1, false);
+		metronome.start(0);
+		metronome.takeSchedule(0, 0, 0);
+		float[] block = new float[AudioMetronome.BLOCK_FRAMES];
+		metronome.mix(block, block.length, 0);
+
+		// stopped while the first click sounds
+		metronome.stop();
+		metronome.takeSchedule(0, 0, block.length);
+		Arrays.fill(block, 0);
+		metronome.mix(block, block.length, block.length);
+		assertThat(firstSound(block, 0)).isEqualTo(0);
+		// the second click is dropped
+		float[] rest = new float[44100 + 2048];
+		float[] part = new float[AudioMetronome.BLOCK_FRAMES];
+		for (int pos = 2048; pos < rest.length; pos += part.length) {
+			Arrays.fill(part, 0);
+			metronome.mix(part, part.length, pos);
+			System.arraycopy(part, 0, rest, pos, Math.min(part.length, rest.length - pos));
+		}
+		assertThat(firstSound(rest, 0)).isEqualTo(-1);
+	}
+
+	@Test
+	public void testNotStarted() {
+		AudioMetronome metronome = new AudioMetronome();
+		metronome.setTempo(60, 1);
+		metronome.addClick(0, false);
+		metronome.takeSchedule(0, 0, 0);
+		assertThat(firstSound(render(metronome, 2048), 0)).isEqualTo(-1);
+	}
+}
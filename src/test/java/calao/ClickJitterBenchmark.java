@@ -0,0 +1,148 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Compares the onsets of metronome clicks played through MIDI, by a
+ * javax.sound sequencer or by a {@link PlaybackScheduler}, with the clicks
+ * mixed by {@link AudioMetronome}: error of the interval between two clicks
+ * and drift from the first click to the last. Run it as a plain Java
+ * application from the test classpath.
+ *
+ * The MIDI clicks are timed when the note reaches the receiver, so the
+ * block timing of a real synthesizer would only add to their jitter. The
+ * audio clicks are timed by their first sample in the mixed stream, which
+ * the line plays at its own sample clock.
+ *
+ * @author Neonunux
+ */
+public class ClickJitterBenchmark {
+
+	private static final int BEATS = 200;
+
+	private static final float BPM = 600;
+
+	/** Records when each click note reaches the synthesizer. */
+	private static class ClickRecorder implements Receiver {
+		final long[] times = new long[BEATS];
+		final CountDownLatch done = new CountDownLatch(BEATS);
+		int count = 0;
+
+		public void send(MidiMessage message, long timeStamp) {
+			long now = System.nanoTime();
+			if (message instanceof ShortMessage
+					&& ((ShortMessage) message).getCommand() == ShortMessage.NOTE_ON
+					&& count < times.length) {
+				times[count++] = now;
+				done.countDown();
+			}
+		}
+
+		public void close() {
+		}
+	}
+
+	private static void report(String name, long[] times) {
+		double beatNanos = 60e9 / BPM;
+		double sum = 0;
+		double max = 0;
+		for (int i = 1; i < times.length; i++) {
+			double error = Math.abs(times[i] - times[i - 1] - beatNanos);
+			sum += error;
+			max = Math.max(max, error);
+		}
+		double drift = times[times.length - 1] - times[0] - (times.length - 1) * beatNanos;
+		System.out.println(String.format("%-12s %10.3f %10.3f %10.3f",
+				name, sum / 1e6 / (times.length - 1), max / 1e6, drift / 1e6));
+	}
+
+	private static void runSequencer() throws Exception {
+		Sequencer sequencer = MidiSystem.getSequencer(false);
+		ClickRecorder clicks = new ClickRecorder();
+		sequencer.open();
+		sequencer.getTransmitter().setReceiver(clicks);
+		sequencer.setSequence(PlaybackSchedulerTest.beats(PlaybackEvent.BEAT, BEATS));
+		sequencer.setTempoInBPM(BPM);
+		sequencer.start();
+		clicks.done.await(1, TimeUnit.MINUTES);
+		sequencer.close();
+		report("sequencer", clicks.times);
+	}
+
+	private static void runScheduler() throws Exception {
+		ClickRecorder clicks = new ClickRecorder();
+		PlaybackScheduler scheduler = new PlaybackScheduler(1, clicks, null);
+		scheduler.load(0, PlaybackSchedulerTest.beats(PlaybackEvent.BEAT, BEATS), BPM);
+		scheduler.start(0);
+		clicks.done.await(1, TimeUnit.MINUTES);
+		scheduler.close();
+		report("scheduler", clicks.times);
+	}
+
+	private static void runAudio() throws Exception {
+		AudioMetronome metronome = new AudioMetronome();
+		metronome.setTempo(BPM, 1);
+		for (int i = 0; i < BEATS; i++) {
+			metronome.addClick(i, i % 4 == 0);
+		}
+		metronome.start(0);
+		metronome.takeSchedule(0, 0, 0);
+
+		// mixed block by block, as the audio thread does
+		int beatFrames = Math.round(AudioMetronome.SAMPLE_RATE * 60 / BPM);
+		float[] out = new float[(BEATS + 1) * beatFrames];
+		float[] block = new float[AudioMetronome.BLOCK_FRAMES];
+		for (int pos = 0; pos < out.length; pos += block.length) {
+			Arrays.fill(block, 0);
+			metronome.mix(block, block.length, pos);
+			System.arraycopy(block, 0, out, pos, Math.min(block.length, out.length - pos));
+		}
+
+		long[] times = new long[BEATS];
+		int frame = 0;
+		for (int i = 0; i < BEATS; i++) {
+			while (out[frame] == 0) {
+				frame++;
+			}
+			times[i] = Math.round(frame * 1e9 / AudioMetronome.SAMPLE_RATE);
+			// past the click before looking for the next one
+			frame += beatFrames / 2;
+		}
+		report("audio", times);
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.out.println(String.format("%-12s %10s %10s %10s",
+				"engine", "mean ms", "max ms", "drift ms"));
+		for (int run = 0; run < 2; run++) {
+			runSequencer();
+			runScheduler();
+			runAudio();
+		}
+	}
+}
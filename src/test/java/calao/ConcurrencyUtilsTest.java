@@ -17,6 +17,13 @@ along with Calao.  If not, see <http://www.gnu.org/licenses/>.
 **********************************************/
 package calao;
 
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -128,17 +135,87 @@ public class ConcurrencyUtilsTest {
 
 	@Test
 	public void testSleep() throws Exception {
-		return;
+		long start = System.nanoTime();
+		ConcurrencyUtils.sleep(20);
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertThat(elapsedMillis).isGreaterThanOrEqualTo(19);
+		assertThat(elapsedMillis).isLessThan(1000);
 	}
 
 	@Test
 	public void testSubmit() throws Exception {
-		return;
+		Future<Thread> future = ConcurrencyUtils.submit(new Callable<Thread>() {
+			public Thread call() throws Exception {
+				return Thread.currentThread();
+			}
+		});
+		Thread worker = future.get(5, TimeUnit.SECONDS);
+		assertThat(worker.isDaemon()).isTrue();
+		assertThat(worker.getName().startsWith("Calao worker ")).isTrue();
 	}
 
 	@Test
 	public void testWaitForCompletion() throws Exception {
-		return;
+		final int[] results = new int[4];
+		Future<?>[] futures = new Future<?>[results.length];
+		for (int i = 0; i < futures.length; i++) {
+			final int idx = i;
+			futures[i] = ConcurrencyUtils.submit(new Runnable() {
+				public void run() {
+					results[idx] = idx + 1;
+				}
+			});
+		}
+		ConcurrencyUtils.waitForCompletion(futures);
+		for (int i = 0; i < results.length; i++) {
+			assertThat(results[i]).isEqualTo(i + 1);
+		}
+	}
+
+	@Test
+	public void testSetNumberOfThreadsCapped() throws Exception {
+		int threads = ConcurrencyUtils.getNumberOfThreads();
+		try {
+			ConcurrencyUtils.setNumberOfThreads(1024);
+			assertThat(ConcurrencyUtils.getNumberOfThreads()).isLessThanOrEqualTo(ConcurrencyUtils.getParallelism());
+			ConcurrencyUtils.setNumberOfThreads(1);
+			assertThat(ConcurrencyUtils.getNumberOfThreads()).isEqualTo(1);
+		} finally {
+			ConcurrencyUtils.setNumberOfThreads(threads);
+		}
+	}
+
+	@Test
+	public void testPoolMetrics() throws Exception {
+		int parallelism = ConcurrencyUtils.getParallelism();
+		assertThat(parallelism).isGreaterThanOrEqualTo(1);
+		assertThat(ConcurrencyUtils.getNumberOfThreads()).isLessThanOrEqualTo(parallelism);
+
+		// keep every worker busy, so that one more task has to wait
+		final CountDownLatch started = new CountDownLatch(parallelism);
+		final CountDownLatch release = new CountDownLatch(1);
+		Future<?>[] futures = new Future<?>[parallelism + 1];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = ConcurrencyUtils.submit(new Runnable() {
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		// the active count is an estimate
+		assertThat(ConcurrencyUtils.getActiveTaskCount()).isGreaterThan(0);
+		assertThat(ConcurrencyUtils.getActiveTaskCount()).isLessThanOrEqualTo(parallelism);
+		assertThat(ConcurrencyUtils.getQueuedTaskCount()).isEqualTo(1);
+
+		release.countDown();
+		ConcurrencyUtils.waitForCompletion(futures);
+		assertThat(ConcurrencyUtils.getQueuedTaskCount()).isEqualTo(0);
 	}
 
 }
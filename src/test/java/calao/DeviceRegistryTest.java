@@ -0,0 +1,92 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Arrays;
+
+import javax.sound.midi.MidiDevice;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class DeviceRegistryTest {
+
+	/** Device info with a public constructor. */
+	private static class Info extends MidiDevice.Info {
+		Info(String name, String vendor, String description) {
+			super(name, vendor, description, "1.0");
+		}
+	}
+
+	@Test
+	public void testDeviceIds() {
+		MidiDevice.Info[] infos = { new Info("Keys", "Acme", "USB"),
+				new Info("Pads", "Acme", "USB") };
+		assertThat(Arrays.asList(DeviceRegistry.deviceIds(infos))).isEqualTo(
+				Arrays.asList("Keys|Acme|USB", "Pads|Acme|USB"));
+	}
+
+	@Test
+	public void testDeviceIdsStable() {
+		String[] first = DeviceRegistry.deviceIds(new MidiDevice.Info[] {
+				new Info("Keys", "Acme", "USB") });
+		String[] second = DeviceRegistry.deviceIds(new MidiDevice.Info[] {
+				new Info("Pads", "Acme", "USB"), new Info("Keys", "Acme", "USB") });
+		assertThat(second[1]).isEqualTo(first[0]);
+	}
+
+	@Test
+	public void testDeviceIdsDuplicates() {
+		MidiDevice.Info[] infos = { new Info("Keys", "Acme", "USB"),
+				new Info("Pads", "Acme", "USB"), new Info("Keys", "Acme", "USB") };
+		String[] ids = DeviceRegistry.deviceIds(infos);
+		assertThat(ids[0]).isEqualTo("Keys|Acme|USB");
+		assertThat(ids[2]).isEqualTo("Keys|Acme|USB#2");
+	}
+
+	@Test
+	public void testCache() {
+		DeviceRegistry registry = new DeviceRegistry();
+		registry.loadCache("1Keys|Acme|USB\n0Synth|Acme|USB\n");
+		// known devices are not asked to their driver
+		assertThat(registry.isInput(new Info("Keys", "Acme", "USB"), "Keys|Acme|USB")).isTrue();
+		assertThat(registry.isInput(new Info("Synth", "Acme", "USB"), "Synth|Acme|USB")).isFalse();
+
+		DeviceRegistry next = new DeviceRegistry();
+		next.loadCache(registry.getCache());
+		assertThat(next.getCache()).isEqualTo(registry.getCache());
+		assertThat(next.getCache().length()).isEqualTo("1Keys|Acme|USB\n0Synth|Acme|USB\n".length());
+	}
+
+	@Test
+	public void testScan() {
+		DeviceRegistry registry = new DeviceRegistry();
+		registry.scan();
+		assertThat(registry.scan()).isFalse();
+		for (DeviceRegistry.MidiInput input : registry.getMidiInputs()) {
+			assertThat(registry.findMidiInput(input.getId())).isNotNull();
+			assertThat(registry.indexOf(input.getId())).isGreaterThanOrEqualTo(0);
+		}
+		assertThat(registry.findMidiInput("Unknown|device|")).isNull();
+		assertThat(registry.indexOf("Unknown|device|")).isEqualTo(-1);
+	}
+}
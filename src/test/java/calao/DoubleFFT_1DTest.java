@@ -17,6 +17,10 @@ along with Calao.  If not, see <http://www.gnu.org/licenses/>.
 **********************************************/
 package calao;
 
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -93,4 +97,95 @@ public class DoubleFFT_1DTest {
 		return;
 	}
 
+	/** Sizes covering the split-radix, mixed-radix and Bluestein plans, even and odd. */
+	private static final int[] REAL_SIZES = { 1, 2, 4, 16, 1024, 4096, 6, 60,
+			15, 45, 422, 211, 2 * 3 * 211 };
+
+	private static double[] randomReal(int n, long seed) {
+		Random random = new Random(seed);
+		double[] x = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = random.nextDouble() * 2 - 1;
+		}
+		return x;
+	}
+
+	private static double[] complexSpectrum(int n, double[] x) {
+		double[] c = new double[2 * n];
+		for (int i = 0; i < n; i++) {
+			c[2 * i] = x[i];
+		}
+		new DoubleFFT_1D(n).complexForward(c);
+		return c;
+	}
+
+	@Test
+	public void testRealForwardFullMatchesComplexForward() throws Exception {
+		for (int n : REAL_SIZES) {
+			double[] x = randomReal(n, n);
+			double[] expected = complexSpectrum(n, x);
+
+			double[] a = new double[2 * n];
+			System.arraycopy(x, 0, a, 0, n);
+			new DoubleFFT_1D(n).realForwardFull(a);
+
+			assertArrayEquals("n = " + n, expected, a, 1e-9 * n);
+		}
+	}
+
+	@Test
+	public void testRealForwardMatchesComplexForward() throws Exception {
+		for (int n : REAL_SIZES) {
+			double[] x = randomReal(n, 31 * n);
+			double[] expected = complexSpectrum(n, x);
+
+			double[] a = x.clone();
+			DoubleFFT_1D fft = new DoubleFFT_1D(n);
+			fft.realForward(a);
+
+			double eps = 1e-9 * n;
+			assertEquals(expected[0], a[0], eps);
+			if (n == 1) {
+				continue;
+			}
+			if (n % 2 == 0) {
+				assertEquals(expected[n], a[1], eps);
+				for (int k = 1; k < n / 2; k++) {
+					assertEquals(expected[2 * k], a[2 * k], eps);
+					assertEquals(expected[2 * k + 1], a[2 * k + 1], eps);
+				}
+			} else {
+				assertEquals(expected[n], a[1], eps);
+				for (int k = 1; k < (n + 1) / 2; k++) {
+					assertEquals(expected[2 * k], a[2 * k], eps);
+					if (k < (n - 1) / 2) {
+						assertEquals(expected[2 * k + 1], a[2 * k + 1], eps);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRealForwardWithOffset() throws Exception {
+		int n = 60;
+		double[] x = randomReal(n, 7);
+		double[] expected = x.clone();
+		new DoubleFFT_1D(n).realForward(expected);
+
+		double[] a = new double[n + 5];
+		System.arraycopy(x, 0, a, 5, n);
+		DoubleFFT_1D fft = new DoubleFFT_1D(n);
+		fft.realForward(a, 5);
+		for (int i = 0; i < n; i++) {
+			assertEquals(expected[i], a[5 + i], 1e-12);
+		}
+		// a plan can be reused
+		System.arraycopy(x, 0, a, 5, n);
+		fft.realForward(a, 5);
+		for (int i = 0; i < n; i++) {
+			assertEquals(expected[i], a[5 + i], 1e-12);
+		}
+	}
+
 }
@@ -0,0 +1,164 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class FFTPeakEstimatorTest {
+
+	private static double[] sineFrame(int size, double bin) {
+		double[] frame = new double[size];
+		for (int i = 0; i < size; i++) {
+			frame[i] = Math.sin(2 * Math.PI * bin * i / size);
+		}
+		return frame;
+	}
+
+	@Test
+	public void testProcessFindsPeak() throws Exception {
+		FFTPeakEstimator estimator = new FFTPeakEstimator();
+		double[] frame = sineFrame(4096, 64);
+		double frequency = estimator.estimate(frame, frame, 44100);
+
+		assertThat(estimator.getPeakIndex()).isEqualTo(64);
+		assertThat(Math.abs(frequency - 44100.0 * 64 / 4096)).isLessThan(1e-6);
+		assertThat(estimator.getSpectrum().length).isEqualTo(2049);
+	}
+
+	@Test
+	public void testEstimateInterpolatesBetweenBins() throws Exception {
+		FFTPeakEstimator estimator = new FFTPeakEstimator();
+		double[] frame = sineFrame(4096, 64.3);
+		double[] window = AudioAnalysisThread.hannWindow(4096);
+		double[] windowed = new double[4096];
+		for (int i = 0; i < 4096; i++) {
+			windowed[i] = frame[i] * window[i];
+		}
+		double frequency = estimator.estimate(frame, windowed, 44100);
+
+		assertThat(Math.abs(frequency - 44100.0 * 64.3 / 4096)).isLessThan(1.0);
+	}
+
+	@Test
+	public void testSinglePrecisionMatchesDouble() throws Exception {
+		double[] frame = sineFrame(4096, 64.3);
+		FFTPeakEstimator doubleEstimator = new FFTPeakEstimator();
+		FFTPeakEstimator floatEstimator = new FFTPeakEstimator(true);
+		double expected = doubleEstimator.estimate(frame, frame, 44100);
+		double frequency = floatEstimator.estimate(frame, frame, 44100);
+
+		assertThat(floatEstimator.isSinglePrecision()).isTrue();
+		assertThat(floatEstimator.getPeakIndex()).isEqualTo(doubleEstimator.getPeakIndex());
+		assertThat(Math.abs(frequency - expected)).isLessThan(0.01);
+		double[] spectrum = doubleEstimator.getSpectrum();
+		double[] floatSpectrum = floatEstimator.getSpectrum();
+		for (int k = 0; k < spectrum.length; k++) {
+			assertThat(Math.abs(floatSpectrum[k] - spectrum[k])).isLessThan(1e-6 * doubleEstimator.getPeak());
+		}
+	}
+
+	@Test
+	public void testProcessLeavesFrameUntouched() throws Exception {
+		double[] frame = sineFrame(1024, 10);
+		double[] copy = frame.clone();
+		new FFTPeakEstimator().estimate(frame, frame, 44100);
+		for (int i = 0; i < frame.length; i++) {
+			assertThat(frame[i]).isEqualTo(copy[i]);
+		}
+	}
+
+	@Test
+	public void testMagnitudeMatchesComplexPath() throws Exception {
+		double[] frame = sineFrame(4096, 100.5);
+		FFTPeakEstimator estimator = new FFTPeakEstimator();
+		estimator.estimate(frame, frame, 44100);
+
+		double[] c = new double[2 * 4096];
+		for (int i = 0; i < 4096; i++) {
+			c[2 * i] = frame[i];
+		}
+		new DoubleFFT_1D(4096).complexForward(c);
+
+		double[] magnitude = estimator.getSpectrum();
+		for (int k = 0; k <= 2048; k++) {
+			double expected = Math.sqrt(c[2 * k] * c[2 * k] + c[2 * k + 1]
+					* c[2 * k + 1]);
+			assertThat(Math.abs(magnitude[k] - expected)).isLessThan(1e-6);
+		}
+	}
+
+	@Test
+	public void testProcessReusesBuffers() throws Exception {
+		FFTPeakEstimator estimator = new FFTPeakEstimator();
+		double[] frame = sineFrame(4096, 64);
+		estimator.estimate(frame, frame, 44100);
+		double[] magnitude = estimator.getSpectrum();
+		estimator.estimate(frame, frame, 44100);
+		assertThat(estimator.getSpectrum()).isSameAs(magnitude);
+	}
+
+	@Test
+	public void testPipelineDoesNotAllocateAfterWarmUp() throws Exception {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threadBean.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		long threadId = Thread.currentThread().getId();
+
+		final FFTPeakEstimator estimator = new FFTPeakEstimator();
+		SampleRingBuffer ring = new SampleRingBuffer(16384);
+		AudioAnalysisThread analysis = new AudioAnalysisThread(ring, 4096,
+				1024, new AudioAnalysisThread.FrameListener() {
+					public void frameReady(double[] frame, double[] windowedFrame) {
+						estimator.estimate(frame, windowedFrame, 44100);
+					}
+				});
+		float[] input = new float[512];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = (float) Math.sin(2 * Math.PI * 440 * i / 44100);
+		}
+		for (int i = 0; i < 5000; i++) {
+			ring.write(input, 0, input.length);
+			while (analysis.processFrame()) {
+			}
+		}
+		threadBean.getThreadAllocatedBytes(threadId);
+
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < 1000; i++) {
+			ring.write(input, 0, input.length);
+			while (analysis.processFrame()) {
+			}
+		}
+		long after = threadBean.getThreadAllocatedBytes(threadId);
+
+		assertThat(after - before).isEqualTo(0);
+	}
+}
@@ -0,0 +1,135 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class FloatFFT_1DTest {
+
+	/** Sizes covering the split-radix, mixed-radix and Bluestein plans, even and odd. */
+	private static final int[] SIZES = { 1, 2, 4, 16, 1024, 4096, 16384, 6, 60,
+			15, 45, 3000, 422, 211, 2 * 3 * 211, 4106 };
+
+	/**
+	 * Largest error allowed, relative to the largest magnitude of the double
+	 * precision spectrum. Float keeps about 7 digits, the log2(n) passes of
+	 * the transform must not lose more than one.
+	 */
+	private static final double MAX_RELATIVE_ERROR = 1e-6;
+
+	private static double[] randomSignal(int n, long seed) {
+		Random random = new Random(seed);
+		double[] x = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = random.nextDouble() * 2 - 1;
+		}
+		return x;
+	}
+
+	private static float[] toFloat(double[] x, int size) {
+		float[] f = new float[size];
+		for (int i = 0; i < x.length; i++) {
+			f[i] = (float) x[i];
+		}
+		return f;
+	}
+
+	private static double[] toDouble(float[] x, int size) {
+		double[] d = new double[size];
+		for (int i = 0; i < x.length; i++) {
+			d[i] = x[i];
+		}
+		return d;
+	}
+
+	private static void assertClose(String message, double[] expected, float[] actual, int count) {
+		double max = 0;
+		for (int i = 0; i < count; i++) {
+			max = Math.max(max, Math.abs(expected[i]));
+		}
+		double maxError = 0;
+		for (int i = 0; i < count; i++) {
+			maxError = Math.max(maxError, Math.abs(expected[i] - actual[i]));
+		}
+		assertTrue(message + ", relative error " + maxError / max,
+				maxError <= MAX_RELATIVE_ERROR * max);
+	}
+
+	@Test
+	public void testComplexForwardMatchesDouble() throws Exception {
+		for (int n : SIZES) {
+			// the input is rounded to float first, so that only the transform error is measured
+			double[] x = toDouble(toFloat(randomSignal(2 * n, n), 2 * n), 2 * n);
+			float[] a = toFloat(x, 2 * n);
+			new DoubleFFT_1D(n).complexForward(x);
+			new FloatFFT_1D(n).complexForward(a);
+			assertClose("n = " + n, x, a, 2 * n);
+		}
+	}
+
+	@Test
+	public void testRealForwardMatchesDouble() throws Exception {
+		for (int n : SIZES) {
+			double[] x = toDouble(toFloat(randomSignal(n, 17 * n), n), n);
+			float[] a = toFloat(x, n);
+			new DoubleFFT_1D(n).realForward(x);
+			new FloatFFT_1D(n).realForward(a);
+			assertClose("n = " + n, x, a, n);
+		}
+	}
+
+	@Test
+	public void testRealForwardFullMatchesDouble() throws Exception {
+		for (int n : SIZES) {
+			double[] x = toDouble(toFloat(randomSignal(n, 31 * n), n), 2 * n);
+			float[] a = toFloat(x, 2 * n);
+			new DoubleFFT_1D(n).realForwardFull(x);
+			new FloatFFT_1D(n).realForwardFull(a);
+			assertClose("n = " + n, x, a, 2 * n);
+		}
+	}
+
+	@Test
+	public void testThreadedTransformsMatchDouble() throws Exception {
+		int threads = ConcurrencyUtils.getNumberOfThreads();
+		try {
+			ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(512);
+			ConcurrencyUtils.setThreadsBeginN_1D_FFT_4Threads(512);
+			for (int t = 2; t <= 4; t *= 2) {
+				ConcurrencyUtils.setNumberOfThreads(t);
+				for (int n : new int[] { 4096, 4106 }) {
+					double[] x = toDouble(toFloat(randomSignal(2 * n, t * n), 2 * n), 2 * n);
+					float[] a = toFloat(x, 2 * n);
+					new DoubleFFT_1D(n).complexForward(x);
+					new FloatFFT_1D(n).complexForward(a);
+					assertClose("threads = " + t + ", n = " + n, x, a, 2 * n);
+				}
+			}
+		} finally {
+			ConcurrencyUtils.setNumberOfThreads(threads);
+			ConcurrencyUtils.resetThreadsBeginN_FFT();
+		}
+	}
+}
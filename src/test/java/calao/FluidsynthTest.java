@@ -17,6 +17,10 @@ along with Calao.  If not, see <http://www.gnu.org/licenses/>.
 **********************************************/
 package calao;
 
+import static org.assertj.core.api.Assertions.*;
+
+import javax.sound.midi.ShortMessage;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -153,6 +157,17 @@ public class FluidsynthTest {
 		return;
 	}
 
+	@Test
+	public void testPack() throws Exception {
+		assertThat(Fluidsynth.pack(0, ShortMessage.NOTE_ON, 60, 90))
+				.isEqualTo(0x90 | (60 << 8) | (90 << 16));
+		assertThat(Fluidsynth.pack(9, ShortMessage.CONTROL_CHANGE, 123, 0))
+				.isEqualTo(0xB9 | (123 << 8));
+		// out of range values do not spill into the other bytes
+		assertThat(Fluidsynth.pack(16, ShortMessage.NOTE_OFF, 128, 128))
+				.isEqualTo(0x80);
+	}
+
 	@Test
 	public void testDestroy() throws Exception {
 		return;
@@ -0,0 +1,128 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class GameLoopTest {
+
+	private static final long STEP = 10;
+
+	/** Counts the steps and keeps the last alpha. */
+	private static class Counter implements GameLoop.Game {
+		int steps = 0;
+		double alpha = -1;
+		final CountDownLatch rendered = new CountDownLatch(3);
+
+		public void step(long stepNanos) {
+			steps++;
+		}
+
+		public void render(double alpha) {
+			this.alpha = alpha;
+			rendered.countDown();
+		}
+	}
+
+	@Test
+	public void testFirstFrame() {
+		Counter game = new Counter();
+		GameLoop loop = new GameLoop("test", game, STEP, 1);
+		assertThat(loop.advance(1000)).isEqualTo(0.0);
+		assertThat(game.steps).isEqualTo(0);
+	}
+
+	@Test
+	public void testFixedSteps() {
+		Counter game = new Counter();
+		GameLoop loop = new GameLoop("test", game, STEP, 1);
+		loop.advance(1000);
+		assertThat(loop.advance(1025)).isEqualTo(0.5);
+		assertThat(game.steps).isEqualTo(2);
+		// the remainder is kept for the next frame
+		assertThat(loop.advance(1030)).isEqualTo(0.0);
+		assertThat(game.steps).isEqualTo(3);
+	}
+
+	@Test
+	public void testStall() {
+		Counter game = new Counter();
+		long step = TimeUnit.MILLISECONDS.toNanos(2);
+		GameLoop loop = new GameLoop("test", game, step, 1);
+		loop.advance(0);
+		loop.advance(TimeUnit.SECONDS.toNanos(10));
+		assertThat((long) game.steps).isEqualTo(GameLoop.MAX_CATCH_UP_NANOS / step);
+	}
+
+	@Test
+	public void testLongFramesLoseNoTime() {
+		Counter game = new Counter();
+		long step = TimeUnit.MILLISECONDS.toNanos(2);
+		long frame = TimeUnit.MILLISECONDS.toNanos(25);
+		GameLoop loop = new GameLoop("test", game, step, frame);
+		loop.advance(0);
+		double alpha = 0;
+		for (int i = 1; i <= 100; i++) {
+			alpha = loop.advance(i * frame);
+		}
+		// every nanosecond elapsed is stepped or left for the next frame
+		assertThat(game.steps * step + Math.round(alpha * step)).isEqualTo(100 * frame);
+	}
+
+	@Test
+	public void testNoStepAfterShutdown() {
+		Counter game = new Counter();
+		GameLoop loop = new GameLoop("test", game, STEP, 1);
+		loop.advance(0);
+		loop.shutdown();
+		loop.advance(STEP * 5);
+		assertThat(game.steps).isEqualTo(0);
+	}
+
+	@Test
+	public void testRun() throws Exception {
+		Counter game = new Counter();
+		GameLoop loop = new GameLoop("test", game, TimeUnit.MILLISECONDS.toNanos(1),
+				TimeUnit.MILLISECONDS.toNanos(2));
+		loop.start();
+		assertThat(game.rendered.await(5, TimeUnit.SECONDS)).isTrue();
+		loop.shutdown();
+		loop.join(5000);
+		assertThat(loop.isAlive()).isFalse();
+		assertThat(game.steps).isGreaterThan(0);
+	}
+
+	@Test
+	public void testDisplayFrameNanos() {
+		long frame = GameLoop.getDisplayFrameNanos();
+		assertThat(frame).isGreaterThan(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadStep() {
+		new GameLoop("test", new Counter(), 0, 1);
+	}
+}
@@ -0,0 +1,140 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class GlyphCacheTest {
+
+	private final GlyphCache cache = new GlyphCache(new Font("Dialog", Font.PLAIN, 12));
+
+	private final BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB);
+
+	/** Counts the pixels of the image with some color, in a rectangle. */
+	private int paintedPixels(int x0, int y0, int x1, int y1) {
+		int count = 0;
+		for (int x = x0; x < x1; x++)
+			for (int y = y0; y < y1; y++)
+				if ((image.getRGB(x, y) >>> 24) != 0)
+					count++;
+		return count;
+	}
+
+	@Test
+	public void testDrawStringRendersOnce() throws Exception {
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.black);
+		cache.drawString(g, "H", 30f, 10, 40);
+		cache.drawString(g, "H", 30f, 100, 40);
+		assertThat(cache.getGlyphCount()).isEqualTo(1);
+		assertThat(cache.getPageCount()).isEqualTo(1);
+
+		cache.drawString(g, "H", 40f, 10, 40);
+		g.setColor(Color.blue);
+		cache.drawString(g, "H", 30f, 10, 40);
+		assertThat(cache.getGlyphCount()).isEqualTo(3);
+		g.dispose();
+	}
+
+	@Test
+	public void testDrawStringPosition() throws Exception {
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.black);
+		cache.drawString(g, "H", 30f, 100, 60);
+		g.dispose();
+
+		// above the baseline, right of the origin, and nowhere else
+		assertThat(paintedPixels(100, 30, 130, 61)).isGreaterThan(0);
+		assertThat(paintedPixels(0, 0, 95, 100)).isEqualTo(0);
+		assertThat(paintedPixels(0, 65, 200, 100)).isEqualTo(0);
+	}
+
+	@Test
+	public void testEmptyString() throws Exception {
+		Graphics2D g = image.createGraphics();
+		cache.drawString(g, "", 30f, 10, 40);
+		cache.drawString(g, " ", 30f, 10, 40);
+		g.dispose();
+		assertThat(paintedPixels(0, 0, 200, 100)).isEqualTo(0);
+		assertThat(cache.getPageCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testSetScaleInvalidates() throws Exception {
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.black);
+		cache.drawString(g, "H", 30f, 10, 40);
+		cache.setScale(1.0);
+		assertThat(cache.getGlyphCount()).isEqualTo(1);
+
+		cache.setScale(0.6);
+		assertThat(cache.getScale()).isEqualTo(0.6);
+		assertThat(cache.getGlyphCount()).isEqualTo(0);
+		assertThat(cache.getPageCount()).isEqualTo(0);
+
+		// drawn at the scale of the graphics, still where the text would be
+		g.scale(0.6, 0.6);
+		cache.drawString(g, "H", 30f, 200, 100);
+		g.dispose();
+		assertThat(paintedPixels(120, 40, 145, 61)).isGreaterThan(0);
+		assertThat(paintedPixels(60, 0, 115, 100)).isEqualTo(0);
+	}
+
+	@Test
+	public void testDeviceScale() throws Exception {
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.black);
+		cache.drawString(g, "H", 15f, 10, 20);
+		// a HiDPI output scales the graphics of the panel
+		g.scale(2, 2);
+		cache.drawString(g, "H", 15f, 50, 30);
+		g.dispose();
+		assertThat(cache.getGlyphCount()).isEqualTo(2);
+		assertThat(paintedPixels(100, 30, 130, 61)).isGreaterThan(0);
+		assertThat(paintedPixels(40, 0, 95, 100)).isEqualTo(0);
+	}
+
+	@Test
+	public void testRasterScale() throws Exception {
+		assertThat(GlyphCache.getRasterScale(new AffineTransform())).isEqualTo(1.0);
+		assertThat(GlyphCache.getRasterScale(AffineTransform.getScaleInstance(1.5, 1.5))).isEqualTo(1.5);
+		assertThat(GlyphCache.getRasterScale(AffineTransform.getScaleInstance(0, 0))).isEqualTo(1.0);
+	}
+
+	@Test
+	public void testPagesFill() throws Exception {
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.black);
+		for (int i = 0; i < 1000; i++)
+			cache.drawString(g, Integer.toString(i), 40f, 10, 40);
+		g.dispose();
+		assertThat(cache.getGlyphCount()).isEqualTo(1000);
+		assertThat(cache.getPageCount()).isGreaterThan(1);
+	}
+}
@@ -17,6 +17,8 @@ along with Calao.  If not, see <http://www.gnu.org/licenses/>.
 **********************************************/
 package calao;
 
+import static org.assertj.core.api.Assertions.*;
+
 import java.awt.Dimension;
 import java.awt.Font;
 import java.util.ResourceBundle;
@@ -89,6 +91,14 @@ public class InlinePanelTest {
 		return;
 	}
 
+	@Test
+	public void testGetNoteSpeed() throws Exception {
+		// 120 BPM is two beats per second
+		assertThat(InlinePanel.getNoteSpeed(120, false) * 1e9).isEqualTo(2 * InlinePanel.PIXELS_PER_BEAT);
+		assertThat(InlinePanel.getNoteSpeed(60, false) * 2).isEqualTo(InlinePanel.getNoteSpeed(120, false));
+		assertThat(InlinePanel.getNoteSpeed(120, true)).isEqualTo(-InlinePanel.getNoteSpeed(120, false) / 2);
+	}
+
 	@Test
 	public void testStopGame() throws Exception {
 		return;
@@ -0,0 +1,82 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class LatencyCalibratorTest {
+
+	private static final long ORIGIN = 1000000000L;
+
+	private static final long BEAT = TimeUnit.SECONDS.toNanos(1);
+
+	private static long ms(long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	@Test
+	public void testMedianOfTaps() throws Exception {
+		LatencyCalibrator calibrator = new LatencyCalibrator(ORIGIN, BEAT, 16);
+		long[] offsets = { 80, 95, 100, 105, 120, 400, -20, 100 };
+		for (int i = 0; i < offsets.length; i++) {
+			calibrator.addTap(ORIGIN + (LatencyCalibrator.LEAD_IN_CLICKS + i) * BEAT + ms(offsets[i]));
+		}
+		assertThat(calibrator.getTapCount()).isEqualTo(offsets.length);
+		assertThat(calibrator.getLatencyMillis()).isEqualTo(100);
+	}
+
+	@Test
+	public void testLeadInAndDoubleTapsIgnored() throws Exception {
+		LatencyCalibrator calibrator = new LatencyCalibrator(ORIGIN, BEAT, 16);
+		for (int i = 0; i < LatencyCalibrator.LEAD_IN_CLICKS; i++) {
+			calibrator.addTap(ORIGIN + i * BEAT);
+		}
+		assertThat(calibrator.getTapCount()).isEqualTo(0);
+
+		long tap = ORIGIN + LatencyCalibrator.LEAD_IN_CLICKS * BEAT + ms(50);
+		calibrator.addTap(tap);
+		calibrator.addTap(tap + ms(30));
+		calibrator.addTap(ORIGIN + 16 * BEAT);
+		assertThat(calibrator.getTapCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testTooFewTaps() throws Exception {
+		LatencyCalibrator calibrator = new LatencyCalibrator(ORIGIN, BEAT, 16);
+		for (int i = 0; i < LatencyCalibrator.MIN_TAPS - 1; i++) {
+			calibrator.addTap(ORIGIN + (LatencyCalibrator.LEAD_IN_CLICKS + i) * BEAT + ms(60));
+		}
+		assertThat(calibrator.getLatencyMillis()).isEqualTo(-1);
+	}
+
+	@Test
+	public void testEarlyTapsGiveNoLatency() throws Exception {
+		LatencyCalibrator calibrator = new LatencyCalibrator(ORIGIN, BEAT, 16);
+		for (int i = 0; i < 8; i++) {
+			calibrator.addTap(ORIGIN + (LatencyCalibrator.LEAD_IN_CLICKS + i) * BEAT - ms(40));
+		}
+		assertThat(calibrator.getLatencyMillis()).isEqualTo(0);
+	}
+}
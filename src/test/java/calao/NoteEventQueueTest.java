@@ -0,0 +1,124 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class NoteEventQueueTest {
+
+	/** Checks the events come in order, pitch i with time i * 10. */
+	private static class OrderChecker implements NoteEventQueue.Handler {
+		int expected = 0;
+
+		public void noteEvent(int pitch, int velocity, long time) {
+			assertThat(pitch).isEqualTo(expected % 128);
+			assertThat(velocity).isEqualTo(expected % 2 == 0 ? 90 : 0);
+			assertThat(time).isEqualTo(expected * 10L);
+			expected++;
+		}
+	}
+
+	private static boolean offer(NoteEventQueue queue, int i) {
+		return queue.offer(i % 128, i % 2 == 0 ? 90 : 0, i * 10L);
+	}
+
+	@Test
+	public void testCapacityIsPowerOfTwo() throws Exception {
+		assertThat(new NoteEventQueue(200).getCapacity()).isEqualTo(256);
+	}
+
+	@Test
+	public void testOfferDrainWrapsAround() throws Exception {
+		NoteEventQueue queue = new NoteEventQueue(4);
+		OrderChecker checker = new OrderChecker();
+		for (int i = 0; i < 3; i++) {
+			assertThat(offer(queue, i)).isTrue();
+		}
+		assertThat(queue.drain(checker)).isEqualTo(3);
+		for (int i = 3; i < 7; i++) {
+			assertThat(offer(queue, i)).isTrue();
+		}
+		assertThat(queue.available()).isEqualTo(4);
+		assertThat(queue.drain(checker)).isEqualTo(4);
+		assertThat(checker.expected).isEqualTo(7);
+		assertThat(queue.available()).isEqualTo(0);
+	}
+
+	@Test
+	public void testOfferDropsWhenFull() throws Exception {
+		NoteEventQueue queue = new NoteEventQueue(2);
+		assertThat(offer(queue, 0)).isTrue();
+		assertThat(offer(queue, 1)).isTrue();
+		assertThat(offer(queue, 2)).isFalse();
+		assertThat(queue.getOverruns()).isEqualTo(1L);
+		OrderChecker checker = new OrderChecker();
+		assertThat(queue.drain(checker)).isEqualTo(2);
+	}
+
+	@Test
+	public void testFailingHandlerDoesNotReplay() throws Exception {
+		NoteEventQueue queue = new NoteEventQueue(4);
+		offer(queue, 0);
+		offer(queue, 1);
+		try {
+			queue.drain(new NoteEventQueue.Handler() {
+				public void noteEvent(int pitch, int velocity, long time) {
+					throw new IllegalStateException();
+				}
+			});
+		} catch (IllegalStateException expected) {
+		}
+		OrderChecker checker = new OrderChecker();
+		checker.expected = 1;
+		assertThat(queue.drain(checker)).isEqualTo(1);
+	}
+
+	@Test
+	public void testThreadConsumesInOrder() throws Exception {
+		final NoteEventQueue queue = new NoteEventQueue(64);
+		final int total = 100000;
+		final CountDownLatch done = new CountDownLatch(1);
+		final OrderChecker checker = new OrderChecker() {
+			public void noteEvent(int pitch, int velocity, long time) {
+				super.noteEvent(pitch, velocity, time);
+				if (expected == total) {
+					done.countDown();
+				}
+			}
+		};
+		NoteEventThread consumer = new NoteEventThread(queue, checker);
+		consumer.start();
+		for (int i = 0; i < total; i++) {
+			while (!offer(queue, i)) {
+				Thread.yield();
+			}
+			consumer.wakeUp();
+		}
+		assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+		consumer.shutdown();
+		consumer.join();
+	}
+}
@@ -17,7 +17,10 @@ along with Calao.  If not, see <http://www.gnu.org/licenses/>.
 **********************************************/
 package calao;
 
+import static org.assertj.core.api.Assertions.*;
+
 import java.awt.Font;
+import java.awt.Rectangle;
 import java.util.Vector;
 
 import org.junit.Test;
@@ -172,6 +175,46 @@ public class NotesPanelTest {
 		return;
 	}
 
+	@Test
+	public void testUpdateNotesPositions() throws Exception {
+		Vector<Note> notes = new Vector<Note>();
+		notes.add(new Note(0, 1, 12, 71, 2, false, 0));
+		NotesPanel panel = new NotesPanel(null, null, notes, null, false);
+		panel.setFirstNoteXPosition(50);
+		panel.setStaffWidth(500);
+		panel.updateNotesPositions();
+		assertThat(notes.get(0).xpos).isEqualTo(50);
+
+		// nothing changed, the layout is kept
+		notes.get(0).xpos = 10;
+		panel.updateNotesPositions();
+		assertThat(notes.get(0).xpos).isEqualTo(10);
+
+		panel.setStaffWidth(600);
+		panel.updateNotesPositions();
+		assertThat(notes.get(0).xpos).isEqualTo(50);
+	}
+
+	@Test
+	public void testGetNoteBounds() throws Exception {
+		Vector<Note> notes = new Vector<Note>();
+		notes.add(new Note(0, 1, 2, 84, 2, false, 1));
+		NotesPanel panel = new NotesPanel(null, null, notes, null, false);
+		panel.setFirstNoteXPosition(50);
+		panel.setStaffWidth(500);
+		panel.setNotesPositions();
+		Note note = notes.get(0);
+		Rectangle bounds = panel.getNoteBounds(note, new Rectangle());
+
+		// the head, the sharp and the additional lines are inside
+		assertThat(bounds.contains(note.xpos, note.ypos)).isTrue();
+		assertThat(bounds.contains(note.xpos - 12, note.ypos - 41)).isTrue();
+		assertThat(bounds.contains(note.xpos - 5, note.addLinesYpos)).isTrue();
+		assertThat(bounds.contains(note.xpos + 16, note.addLinesYpos + (note.addLinesNumber - 1) * 10)).isTrue();
+		// the next note is not
+		assertThat(bounds.contains(note.xpos + 72, note.ypos)).isFalse();
+	}
+
 	@Test
 	public void testSetSingleNotePosition() throws Exception {
 		return;
@@ -0,0 +1,93 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+/**
+ * Compares the pitch estimators on synthetic pure and piano-like tones:
+ * mean and worst error in cents, and CPU time per frame. Run it as a plain
+ * Java application from the test classpath.
+ *
+ * @author Neonunux
+ */
+public class PitchEstimatorBenchmark {
+
+	private static final int WARM_UP_FRAMES = 2000;
+
+	private static final int TIMED_FRAMES = 2000;
+
+	private static void run(String name, PitchEstimator estimator,
+			String toneName, double[] harmonics, int frameSize) {
+		int notes = PitchEstimatorTest.NOTES.length;
+		double[][] frames = new double[notes][];
+		double[][] windowed = new double[notes][];
+		for (int i = 0; i < notes; i++) {
+			frames[i] = PitchEstimatorTest.tone(PitchEstimatorTest.NOTES[i],
+					harmonics, frameSize);
+			windowed[i] = PitchEstimatorTest.windowed(frames[i]);
+		}
+
+		double sumError = 0;
+		double maxError = 0;
+		for (int i = 0; i < notes; i++) {
+			double f = estimator.estimate(frames[i], windowed[i],
+					PitchEstimatorTest.SAMPLE_RATE);
+			double error = (f > 0) ? Math.abs(PitchEstimatorTest.cents(f,
+					PitchEstimatorTest.NOTES[i])) : 1200;
+			sumError += error;
+			maxError = Math.max(maxError, error);
+		}
+
+		for (int i = 0; i < WARM_UP_FRAMES; i++) {
+			estimator.estimate(frames[i % notes], windowed[i % notes],
+					PitchEstimatorTest.SAMPLE_RATE);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < TIMED_FRAMES; i++) {
+			estimator.estimate(frames[i % notes], windowed[i % notes],
+					PitchEstimatorTest.SAMPLE_RATE);
+		}
+		double microsPerFrame = (System.nanoTime() - start) / 1000.0
+				/ TIMED_FRAMES;
+
+		System.out.println(String.format("%-26s %-6s %5d %10.1f %10.1f %12.1f",
+				name, toneName, frameSize, sumError / notes, maxError,
+				microsPerFrame));
+	}
+
+	public static void main(String[] args) {
+		System.out.println(String.format("%-26s %-6s %5s %10s %10s %12s",
+				"estimator", "tone", "frame", "mean cts", "max cts", "us/frame"));
+		int[] frameSizes = { 2048, 4096 };
+		double[] pure = { 1.0 };
+		for (int frameSize : frameSizes) {
+			for (int t = 0; t < 2; t++) {
+				double[] harmonics = (t == 0) ? pure
+						: PitchEstimatorTest.PIANO_HARMONICS;
+				String toneName = (t == 0) ? "pure" : "piano";
+				run("FFT peak", new FFTPeakEstimator(), toneName, harmonics, frameSize);
+				run("FFT peak, float", new FFTPeakEstimator(true), toneName,
+						harmonics, frameSize);
+				run("Harmonic product spectrum", new HarmonicProductEstimator(),
+						toneName, harmonics, frameSize);
+				run("HPS, float", new HarmonicProductEstimator(5, true),
+						toneName, harmonics, frameSize);
+				run("YIN", new YinEstimator(), toneName, harmonics, frameSize);
+			}
+		}
+	}
+}
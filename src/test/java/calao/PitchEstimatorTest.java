@@ -0,0 +1,155 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class PitchEstimatorTest {
+
+	static final float SAMPLE_RATE = 44100;
+
+	static final int FRAME_SIZE = 4096;
+
+	/** E2, A2, G3, C4, A4, E5, C6. */
+	static final double[] NOTES = { 82.41, 110.0, 196.0, 261.63, 440.0,
+			659.26, 1046.5 };
+
+	/** Harmonic amplitudes of a piano-like tone with a weak fundamental. */
+	static final double[] PIANO_HARMONICS = { 0.3, 1.0, 0.7, 0.5, 0.35, 0.2 };
+
+	/**
+	 * Builds a tone, harmonics above Nyquist left out.
+	 */
+	static double[] tone(double frequency, double[] harmonics, int size) {
+		double[] frame = new double[size];
+		for (int h = 0; h < harmonics.length; h++) {
+			double f = frequency * (h + 1);
+			if (f >= SAMPLE_RATE / 2) {
+				break;
+			}
+			for (int i = 0; i < size; i++) {
+				frame[i] += harmonics[h] * Math.sin(2 * Math.PI * f * i / SAMPLE_RATE + h);
+			}
+		}
+		return frame;
+	}
+
+	static double[] windowed(double[] frame) {
+		double[] window = AudioAnalysisThread.hannWindow(frame.length);
+		double[] w = new double[frame.length];
+		for (int i = 0; i < frame.length; i++) {
+			w[i] = frame[i] * window[i];
+		}
+		return w;
+	}
+
+	static double cents(double frequency, double reference) {
+		return 1200 * Math.log(frequency / reference) / Math.log(2);
+	}
+
+	private static void assertTracks(PitchEstimator estimator, double[] harmonics) {
+		for (double note : NOTES) {
+			double[] frame = tone(note, harmonics, FRAME_SIZE);
+			double f = estimator.estimate(frame, windowed(frame), SAMPLE_RATE);
+			assertThat(Math.abs(cents(f, note))).isLessThan(25.0);
+		}
+	}
+
+	@Test
+	public void testAllEstimatorsTrackPureTones() throws Exception {
+		double[] pure = { 1.0 };
+		assertTracks(new FFTPeakEstimator(), pure);
+		assertTracks(new HarmonicProductEstimator(), pure);
+		assertTracks(new YinEstimator(), pure);
+	}
+
+	@Test
+	public void testFFTPeakLocksOntoHarmonic() throws Exception {
+		double[] frame = tone(196.0, PIANO_HARMONICS, FRAME_SIZE);
+		double f = new FFTPeakEstimator().estimate(frame, windowed(frame),
+				SAMPLE_RATE);
+		assertThat(Math.abs(cents(f, 2 * 196.0))).isLessThan(25.0);
+	}
+
+	@Test
+	public void testHarmonicProductTracksFundamental() throws Exception {
+		assertTracks(new HarmonicProductEstimator(), PIANO_HARMONICS);
+	}
+
+	@Test
+	public void testYinTracksFundamental() throws Exception {
+		assertTracks(new YinEstimator(), PIANO_HARMONICS);
+	}
+
+	@Test
+	public void testYinWorksOnSmallFrames() throws Exception {
+		// two periods of A2 fit in 1024 samples
+		double[] frame = tone(110.0, PIANO_HARMONICS, 1024);
+		YinEstimator yin = new YinEstimator(80, 2000, YinEstimator.DEFAULT_THRESHOLD);
+		double f = yin.estimate(frame, windowed(frame), SAMPLE_RATE);
+		assertThat(Math.abs(cents(f, 110.0))).isLessThan(10.0);
+		assertThat(yin.getAperiodicity()).isLessThan(0.15);
+	}
+
+	@Test
+	public void testSilenceHasNoPitch() throws Exception {
+		double[] silence = new double[FRAME_SIZE];
+		assertThat(new FFTPeakEstimator().estimate(silence, silence, SAMPLE_RATE)).isEqualTo(0.0);
+		assertThat(new HarmonicProductEstimator().estimate(silence, silence, SAMPLE_RATE)).isEqualTo(0.0);
+		assertThat(new YinEstimator().estimate(silence, silence, SAMPLE_RATE)).isEqualTo(0.0);
+	}
+
+	@Test
+	public void testEstimatorsDoNotAllocateAfterWarmUp() throws Exception {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threadBean.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		long threadId = Thread.currentThread().getId();
+
+		PitchEstimator[] estimators = { new FFTPeakEstimator(),
+				new HarmonicProductEstimator(), new YinEstimator() };
+		double[] frame = tone(261.63, PIANO_HARMONICS, FRAME_SIZE);
+		double[] windowed = windowed(frame);
+		for (PitchEstimator estimator : estimators) {
+			for (int i = 0; i < 200; i++) {
+				estimator.estimate(frame, windowed, SAMPLE_RATE);
+			}
+			threadBean.getThreadAllocatedBytes(threadId);
+
+			long before = threadBean.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < 50; i++) {
+				estimator.estimate(frame, windowed, SAMPLE_RATE);
+			}
+			long after = threadBean.getThreadAllocatedBytes(threadId);
+			assertThat(after - before).isEqualTo(0);
+		}
+	}
+}
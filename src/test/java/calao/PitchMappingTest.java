@@ -0,0 +1,70 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class PitchMappingTest {
+
+	@Test
+	public void testReferenceNotes() throws Exception {
+		assertThat(PitchMapping.nearestNote(440.0)).isEqualTo(69);
+		assertThat(PitchMapping.nearestNote(261.63)).isEqualTo(60);
+		assertThat(PitchMapping.nearestNote(16.35)).isEqualTo(12);
+		assertThat(PitchMapping.nearestNote(27.5)).isEqualTo(21);
+		assertThat(PitchMapping.nearestNote(4186.01)).isEqualTo(108);
+	}
+
+	@Test
+	public void testFullMidiRange() throws Exception {
+		for (int note = 0; note <= PitchMapping.MAX_NOTE; note++) {
+			double f = PitchMapping.noteFrequency(note);
+			assertThat(PitchMapping.nearestNote(f)).isEqualTo(note);
+			assertThat(Math.abs(PitchMapping.cents(f, note))).isLessThan(1e-9);
+			// just below the upper quarter tone still maps to the same note
+			double belowQuarterTone = f * Math.pow(2, 49.0 / 1200);
+			assertThat(PitchMapping.nearestNote(belowQuarterTone)).isEqualTo(note);
+			assertThat(PitchMapping.cents(belowQuarterTone, note)).isCloseTo(49.0, within(1e-6));
+		}
+		assertThat(PitchMapping.noteFrequency(0)).isCloseTo(8.1758, within(1e-4));
+		assertThat(PitchMapping.noteFrequency(127)).isCloseTo(12543.854, within(1e-3));
+	}
+
+	@Test
+	public void testRoundsToNearestNote() throws Exception {
+		// 20 cents sharp of A4 is A4, 60 cents sharp is A#4
+		assertThat(PitchMapping.nearestNote(440 * Math.pow(2, 20.0 / 1200))).isEqualTo(69);
+		assertThat(PitchMapping.nearestNote(440 * Math.pow(2, 60.0 / 1200))).isEqualTo(70);
+		assertThat(PitchMapping.cents(440 * Math.pow(2, 60.0 / 1200), 70)).isCloseTo(-40.0, within(1e-6));
+		assertThat(PitchMapping.toMidi(440 * Math.pow(2, 0.5 / 12))).isCloseTo(69.5, within(1e-9));
+	}
+
+	@Test
+	public void testOutOfRange() throws Exception {
+		assertThat(PitchMapping.nearestNote(0)).isEqualTo(-1);
+		assertThat(PitchMapping.nearestNote(-440)).isEqualTo(-1);
+		assertThat(PitchMapping.nearestNote(Double.NaN)).isEqualTo(-1);
+		assertThat(PitchMapping.nearestNote(7.5)).isEqualTo(-1);
+		assertThat(PitchMapping.nearestNote(13000)).isEqualTo(-1);
+	}
+}
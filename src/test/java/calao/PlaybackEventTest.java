@@ -0,0 +1,96 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import javax.sound.midi.MetaMessage;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class PlaybackEventTest {
+
+	/** Records the last dispatched event. */
+	private static class Recorder implements PlaybackEvent.Listener {
+		int count = 0;
+		int type = -1;
+		int argument = -1;
+
+		public void playbackEvent(int type, int argument) {
+			count++;
+			this.type = type;
+			this.argument = argument;
+		}
+	}
+
+	@Test
+	public void testEncoding() throws Exception {
+		PlaybackEvent event = new PlaybackEvent(PlaybackEvent.SYNTH_NOTE_ON, 72);
+		assertThat(event.getType()).isEqualTo(PlaybackEvent.META_TYPE);
+		assertThat(event.getEventType()).isEqualTo(PlaybackEvent.SYNTH_NOTE_ON);
+		assertThat(event.getArgument()).isEqualTo(72);
+		byte[] data = event.getData();
+		assertThat(data.length).isEqualTo(2);
+		assertThat(data[0]).isEqualTo((byte) PlaybackEvent.SYNTH_NOTE_ON);
+		assertThat(data[1]).isEqualTo((byte) 72);
+		assertThat(new PlaybackEvent(PlaybackEvent.END).getArgument()).isEqualTo(0);
+	}
+
+	@Test
+	public void testClone() throws Exception {
+		Object copy = new PlaybackEvent(PlaybackEvent.NOTE2_OFF, 5).clone();
+		assertThat(copy).isInstanceOf(PlaybackEvent.class);
+		assertThat(((PlaybackEvent) copy).getEventType()).isEqualTo(PlaybackEvent.NOTE2_OFF);
+		assertThat(((PlaybackEvent) copy).getArgument()).isEqualTo(5);
+	}
+
+	@Test
+	public void testDispatch() throws Exception {
+		Recorder recorder = new Recorder();
+		PlaybackEvent.dispatch(new PlaybackEvent(PlaybackEvent.BEAT), recorder);
+		assertThat(recorder.count).isEqualTo(1);
+		assertThat(recorder.type).isEqualTo(PlaybackEvent.BEAT);
+		assertThat(recorder.argument).isEqualTo(0);
+	}
+
+	@Test
+	public void testDispatchDecodesCopies() throws Exception {
+		Recorder recorder = new Recorder();
+		MetaMessage copy = new MetaMessage();
+		copy.setMessage(PlaybackEvent.META_TYPE, new byte[] { PlaybackEvent.SYNTH_NOTE_OFF, 127 }, 2);
+		PlaybackEvent.dispatch(copy, recorder);
+		assertThat(recorder.count).isEqualTo(1);
+		assertThat(recorder.type).isEqualTo(PlaybackEvent.SYNTH_NOTE_OFF);
+		assertThat(recorder.argument).isEqualTo(127);
+	}
+
+	@Test
+	public void testDispatchIgnoresOtherMetaMessages() throws Exception {
+		Recorder recorder = new Recorder();
+		MetaMessage text = new MetaMessage();
+		text.setMessage(0x01, "end".getBytes(), 3);
+		PlaybackEvent.dispatch(text, recorder);
+		MetaMessage endOfTrack = new MetaMessage();
+		endOfTrack.setMessage(0x2F, new byte[0], 0);
+		PlaybackEvent.dispatch(endOfTrack, recorder);
+		assertThat(recorder.count).isEqualTo(0);
+	}
+}
@@ -0,0 +1,118 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MetaEventListener;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequencer;
+
+/**
+ * Compares the timing of the playback events of a metronome and a playback
+ * started together, played by two javax.sound sequencers or by one
+ * {@link PlaybackScheduler}: lateness against the ideal beat times, skew
+ * between the two roles and drift from the first beat to the last. Run it as
+ * a plain Java application from the test classpath.
+ *
+ * @author Neonunux
+ */
+public class PlaybackJitterBenchmark {
+
+	private static final int BEATS = 200;
+
+	private static final float BPM = 600;
+
+	private static void report(String name, long origin,
+			PlaybackSchedulerTest.TimingRecorder notes,
+			PlaybackSchedulerTest.TimingRecorder clicks) {
+		double beatNanos = 60e9 / BPM;
+		long sum = 0;
+		long max = 0;
+		long maxSkew = 0;
+		for (int i = 0; i < BEATS; i++) {
+			long ideal = origin + Math.round(i * beatNanos);
+			for (long time : new long[] { notes.times[i], clicks.times[i] }) {
+				long lateness = time - ideal;
+				sum += lateness;
+				max = Math.max(max, lateness);
+			}
+			maxSkew = Math.max(maxSkew, Math.abs(notes.times[i] - clicks.times[i]));
+		}
+		long drift = (notes.times[BEATS - 1] - notes.times[0])
+				- Math.round((BEATS - 1) * beatNanos);
+		System.out.println(String.format("%-12s %10.3f %10.3f %10.3f %10.3f",
+				name, sum / 2e6 / BEATS, max / 1e6, maxSkew / 1e6, drift / 1e6));
+	}
+
+	private static void runSequencers() throws Exception {
+		Sequencer[] sequencers = { MidiSystem.getSequencer(false),
+				MidiSystem.getSequencer(false) };
+		final PlaybackSchedulerTest.TimingRecorder notes = new PlaybackSchedulerTest.TimingRecorder(BEATS);
+		final PlaybackSchedulerTest.TimingRecorder clicks = new PlaybackSchedulerTest.TimingRecorder(BEATS);
+		sequencers[0].open();
+		sequencers[0].setSequence(PlaybackSchedulerTest.beats(PlaybackEvent.NOTE_ON, BEATS));
+		sequencers[0].setTempoInBPM(BPM);
+		sequencers[0].addMetaEventListener(new MetaEventListener() {
+			public void meta(MetaMessage meta) {
+				PlaybackEvent.dispatch(meta, notes);
+			}
+		});
+		sequencers[1].open();
+		sequencers[1].setSequence(PlaybackSchedulerTest.beats(PlaybackEvent.BEAT, BEATS));
+		sequencers[1].setTempoInBPM(BPM);
+		sequencers[1].addMetaEventListener(new MetaEventListener() {
+			public void meta(MetaMessage meta) {
+				PlaybackEvent.dispatch(meta, clicks);
+			}
+		});
+		long origin = System.nanoTime();
+		sequencers[1].start();
+		sequencers[0].start();
+		notes.ended.await(1, TimeUnit.MINUTES);
+		clicks.ended.await(1, TimeUnit.MINUTES);
+		sequencers[0].close();
+		sequencers[1].close();
+		report("sequencers", origin, notes, clicks);
+	}
+
+	private static void runScheduler() throws Exception {
+		PlaybackScheduler scheduler = new PlaybackScheduler(2, null, null);
+		PlaybackSchedulerTest.TimingRecorder notes = new PlaybackSchedulerTest.TimingRecorder(BEATS);
+		PlaybackSchedulerTest.TimingRecorder clicks = new PlaybackSchedulerTest.TimingRecorder(BEATS);
+		scheduler.load(0, PlaybackSchedulerTest.beats(PlaybackEvent.NOTE_ON, BEATS), BPM);
+		scheduler.load(1, PlaybackSchedulerTest.beats(PlaybackEvent.BEAT, BEATS), BPM);
+		scheduler.addListener(0, notes);
+		scheduler.addListener(1, clicks);
+		long origin = scheduler.start(0, 1);
+		notes.ended.await(1, TimeUnit.MINUTES);
+		clicks.ended.await(1, TimeUnit.MINUTES);
+		scheduler.close();
+		report("scheduler", origin, notes, clicks);
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.out.println(String.format("%-12s %10s %10s %10s %10s",
+				"engine", "mean ms", "max ms", "skew ms", "drift ms"));
+		for (int run = 0; run < 2; run++) {
+			runSequencers();
+			runScheduler();
+		}
+	}
+}
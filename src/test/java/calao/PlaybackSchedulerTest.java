@@ -0,0 +1,248 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class PlaybackSchedulerTest {
+
+	static final int PLAYBACK = 0;
+
+	static final int METRONOME = 1;
+
+	private PlaybackScheduler scheduler;
+
+	/** Records the messages sent to the synthesizer. */
+	static class RecordingReceiver implements Receiver {
+		final List<MidiMessage> messages = new ArrayList<MidiMessage>();
+		final CountDownLatch firstMessage = new CountDownLatch(1);
+
+		public synchronized void send(MidiMessage message, long timeStamp) {
+			messages.add(message);
+			firstMessage.countDown();
+		}
+
+		synchronized List<MidiMessage> getMessages() {
+			return new ArrayList<MidiMessage>(messages);
+		}
+
+		public void close() {
+		}
+	}
+
+	/**
+	 * Records when each playback event of a role is dispatched, and counts
+	 * the END events down.
+	 */
+	static class TimingRecorder implements PlaybackEvent.Listener {
+		final long[] times;
+		final CountDownLatch ended = new CountDownLatch(1);
+		int count = 0;
+
+		TimingRecorder(int events) {
+			times = new long[events];
+		}
+
+		public void playbackEvent(int type, int argument) {
+			if (type == PlaybackEvent.END) {
+				ended.countDown();
+			} else if (count < times.length) {
+				times[count++] = System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * Builds a sequence with one playback event and one note every beat, then
+	 * END, at 1000 ticks per beat.
+	 */
+	static Sequence beats(int type, int count) throws Exception {
+		Sequence sequence = new Sequence(Sequence.PPQ, 1000);
+		Track track = sequence.createTrack();
+		for (int i = 0; i < count; i++) {
+			track.add(new MidiEvent(new PlaybackEvent(type, i), i * 1000));
+			ShortMessage on = new ShortMessage();
+			on.setMessage(ShortMessage.NOTE_ON, 9, 77, 90);
+			track.add(new MidiEvent(on, i * 1000));
+			ShortMessage off = new ShortMessage();
+			off.setMessage(ShortMessage.NOTE_OFF, 9, 77, 0);
+			track.add(new MidiEvent(off, i * 1000 + 1));
+		}
+		track.add(new MidiEvent(new PlaybackEvent(PlaybackEvent.END), count * 1000));
+		return sequence;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (scheduler != null) {
+			scheduler.close();
+		}
+	}
+
+	@Test
+	public void testNanosPerTick() throws Exception {
+		assertThat(PlaybackScheduler.nanosPerTick(new Sequence(Sequence.PPQ, 1000), 60))
+				.isCloseTo(1e6, within(1e-6));
+		assertThat(PlaybackScheduler.nanosPerTick(new Sequence(Sequence.SMPTE_25, 40), 60))
+				.isCloseTo(1e6, within(1e-6));
+	}
+
+	/**
+	 * A metronome and a playback started together on the same beats: every
+	 * event is dispatched, never before its ideal time. The timing itself is
+	 * measured by PlaybackJitterBenchmark.
+	 */
+	@Test
+	public void testEventsNeverEarly() throws Exception {
+		int beats = 40;
+		float bpm = 1200; // 50 ms per beat
+		scheduler = new PlaybackScheduler(2, null, null);
+		TimingRecorder notes = new TimingRecorder(beats);
+		TimingRecorder clicks = new TimingRecorder(beats);
+		scheduler.load(PLAYBACK, beats(PlaybackEvent.NOTE_ON, beats), bpm);
+		scheduler.load(METRONOME, beats(PlaybackEvent.BEAT, beats), bpm);
+		scheduler.addListener(PLAYBACK, notes);
+		scheduler.addListener(METRONOME, clicks);
+		long origin = scheduler.start(PLAYBACK, METRONOME);
+
+		assertThat(notes.ended.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(clicks.ended.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(notes.count).isEqualTo(beats);
+		assertThat(clicks.count).isEqualTo(beats);
+
+		double beatNanos = 60e9 / bpm;
+		for (int i = 0; i < beats; i++) {
+			long ideal = origin + Math.round(i * beatNanos);
+			assertThat(notes.times[i] - ideal >= 0).isTrue();
+			assertThat(clicks.times[i] - ideal >= 0).isTrue();
+		}
+		assertThat(scheduler.getDispatchedCount()).isEqualTo(2 * (beats + 1));
+		assertThat(scheduler.getMaxLatenessNanos()).isGreaterThanOrEqualTo(scheduler.getMeanLatenessNanos());
+	}
+
+	@Test
+	public void testNoDispatchAfterStop() throws Exception {
+		scheduler = new PlaybackScheduler(2, null, null);
+		final CountDownLatch inListener = new CountDownLatch(1);
+		final CountDownLatch stopped = new CountDownLatch(1);
+		TimingRecorder after = new TimingRecorder(4);
+		scheduler.load(METRONOME, beats(PlaybackEvent.BEAT, 4), 6000);
+		// holds the first event until the role is stopped
+		scheduler.addListener(METRONOME, new PlaybackEvent.Listener() {
+			public void playbackEvent(int type, int argument) {
+				inListener.countDown();
+				try {
+					stopped.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		scheduler.addListener(METRONOME, after);
+		scheduler.start(METRONOME);
+
+		assertThat(inListener.await(5, TimeUnit.SECONDS)).isTrue();
+		scheduler.stop(METRONOME);
+		stopped.countDown();
+		Thread.sleep(100);
+		assertThat(after.count).isEqualTo(0);
+		assertThat(after.ended.getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testNotesAreSent() throws Exception {
+		RecordingReceiver receiver = new RecordingReceiver();
+		scheduler = new PlaybackScheduler(2, receiver, null);
+		TimingRecorder clicks = new TimingRecorder(4);
+		scheduler.load(METRONOME, beats(PlaybackEvent.BEAT, 4), 6000);
+		scheduler.addListener(METRONOME, clicks);
+		scheduler.start(METRONOME);
+		assertThat(clicks.ended.await(5, TimeUnit.SECONDS)).isTrue();
+
+		List<MidiMessage> messages = receiver.getMessages();
+		assertThat(messages.size()).isEqualTo(8);
+		for (int i = 0; i < 8; i++) {
+			int command = ((ShortMessage) messages.get(i)).getCommand();
+			assertThat(command).isEqualTo(i % 2 == 0 ? ShortMessage.NOTE_ON : ShortMessage.NOTE_OFF);
+		}
+		assertThat(scheduler.isRunning(METRONOME)).isFalse();
+	}
+
+	@Test
+	public void testStopReleasesNotes() throws Exception {
+		RecordingReceiver receiver = new RecordingReceiver();
+		scheduler = new PlaybackScheduler(2, receiver, null);
+		Sequence sequence = new Sequence(Sequence.PPQ, 1000);
+		ShortMessage on = new ShortMessage();
+		on.setMessage(ShortMessage.NOTE_ON, 0, 60, 90);
+		sequence.createTrack().add(new MidiEvent(on, 0));
+		ShortMessage off = new ShortMessage();
+		off.setMessage(ShortMessage.NOTE_OFF, 0, 60, 0);
+		sequence.getTracks()[0].add(new MidiEvent(off, 100000));
+		scheduler.load(PLAYBACK, sequence, 60);
+		scheduler.start(PLAYBACK);
+		assertThat(receiver.firstMessage.await(5, TimeUnit.SECONDS)).isTrue();
+
+		scheduler.stop(PLAYBACK);
+		List<MidiMessage> messages = receiver.getMessages();
+		assertThat(messages.size()).isEqualTo(2);
+		ShortMessage released = (ShortMessage) messages.get(1);
+		assertThat(released.getCommand()).isEqualTo(ShortMessage.NOTE_OFF);
+		assertThat(released.getChannel()).isEqualTo(0);
+		assertThat(released.getData1()).isEqualTo(60);
+	}
+
+	@Test
+	public void testTickPosition() throws Exception {
+		scheduler = new PlaybackScheduler(2, null, null);
+		scheduler.load(PLAYBACK, beats(PlaybackEvent.NOTE_ON, 1000), 60);
+		assertThat(Double.isNaN(scheduler.getTickPosition(PLAYBACK, System.nanoTime()))).isTrue();
+
+		long origin = scheduler.start(PLAYBACK);
+		assertThat(scheduler.getTickPosition(PLAYBACK, origin)).isCloseTo(0.0, within(1e-9));
+		assertThat(scheduler.getTickPosition(PLAYBACK, origin + TimeUnit.MILLISECONDS.toNanos(2500)))
+				.isCloseTo(2500.0, within(1e-6));
+		assertThat(scheduler.getTickPosition(PLAYBACK, origin - TimeUnit.MILLISECONDS.toNanos(100)))
+				.isCloseTo(-100.0, within(1e-6));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStartAfterClose() throws Exception {
+		scheduler = new PlaybackScheduler(1, null, null);
+		scheduler.close();
+		scheduler.start(PLAYBACK);
+	}
+}
@@ -0,0 +1,126 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class PlaybackSessionTest {
+
+	private PlaybackSession session;
+
+	private static Sequence endingSequence(long tick) throws Exception {
+		Sequence sequence = new Sequence(Sequence.PPQ, 1000);
+		sequence.createTrack().add(new MidiEvent(new PlaybackEvent(PlaybackEvent.END), tick));
+		return sequence;
+	}
+
+	/** Counts the END events down. */
+	private static class EndLatch implements PlaybackEvent.Listener {
+		final CountDownLatch ended = new CountDownLatch(1);
+		volatile int ends = 0;
+
+		public void playbackEvent(int type, int argument) {
+			if (type == PlaybackEvent.END) {
+				ends++;
+				ended.countDown();
+			}
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		session = new PlaybackSession(null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		session.close();
+	}
+
+	@Test
+	public void testListenersFollowTheSequence() throws Exception {
+		EndLatch stale = new EndLatch();
+		session.load(PlaybackSession.PLAYBACK, endingSequence(1), 600);
+		session.addListener(PlaybackSession.PLAYBACK, stale);
+
+		EndLatch current = new EndLatch();
+		session.load(PlaybackSession.PLAYBACK, endingSequence(1), 600);
+		session.addListener(PlaybackSession.PLAYBACK, current);
+		session.start(PlaybackSession.PLAYBACK);
+
+		assertThat(current.ended.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(current.ends).isEqualTo(1);
+		assertThat(stale.ends).isEqualTo(0);
+	}
+
+	@Test
+	public void testRestart() throws Exception {
+		EndLatch first = new EndLatch();
+		session.load(PlaybackSession.METRONOME, endingSequence(1), 600);
+		session.addListener(PlaybackSession.METRONOME, first);
+		session.start(PlaybackSession.METRONOME);
+		assertThat(first.ended.await(5, TimeUnit.SECONDS)).isTrue();
+
+		// the same scheduler plays the next game
+		EndLatch second = new EndLatch();
+		session.load(PlaybackSession.METRONOME, endingSequence(1), 600);
+		session.addListener(PlaybackSession.METRONOME, second);
+		session.start(PlaybackSession.METRONOME);
+		assertThat(second.ended.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(first.ends).isEqualTo(1);
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		EndLatch listener = new EndLatch();
+		session.load(PlaybackSession.PLAYBACK, endingSequence(100000), 60);
+		session.addListener(PlaybackSession.PLAYBACK, listener);
+		session.start(PlaybackSession.PLAYBACK);
+		assertThat(session.isRunning(PlaybackSession.PLAYBACK)).isTrue();
+		session.stop(PlaybackSession.PLAYBACK);
+		assertThat(session.isRunning(PlaybackSession.PLAYBACK)).isFalse();
+		assertThat(listener.ends).isEqualTo(0);
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		session.close();
+		assertThat(session.isClosed()).isTrue();
+		// stopping a closed session is harmless
+		session.stop(PlaybackSession.PLAYBACK);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testLoadAfterClose() throws Exception {
+		session.close();
+		session.load(PlaybackSession.PLAYBACK, endingSequence(1), 60);
+	}
+}
@@ -0,0 +1,161 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.jpab.StreamConfiguration.SampleFormat;
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class SampleDecoderTest {
+
+	private static final ByteOrder[] ORDERS = { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN };
+
+	/** Expected values, within the range of every format. */
+	private static final float[] SAMPLES = { 0f, 0.5f, -0.5f, 0.25f, -1f, -0.0078125f };
+
+	private static ByteBuffer readOnly(ByteBuffer data) {
+		data.flip();
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.remaining());
+		direct.put(data);
+		direct.flip();
+		// like PortAudio.callback hands it
+		return direct.asReadOnlyBuffer();
+	}
+
+	private static void assertDecodes(SampleDecoder decoder, ByteBuffer input, float[] expected) {
+		int position = input.position();
+		ByteOrder order = input.order();
+		float[] out = new float[expected.length + 2];
+		assertThat(decoder.getSampleCount(input)).isEqualTo(expected.length);
+		assertThat(decoder.decode(input, out, 2)).isEqualTo(expected.length);
+		assertThat(input.position()).isEqualTo(position);
+		assertThat(input.order()).isEqualTo(order);
+		for (int i = 0; i < expected.length; i++) {
+			assertThat(out[2 + i]).isEqualTo(expected[i]);
+		}
+	}
+
+	@Test
+	public void testSigned8() throws Exception {
+		ByteBuffer data = ByteBuffer.allocate(SAMPLES.length);
+		for (float v : SAMPLES) {
+			data.put((byte) (v * 128));
+		}
+		assertDecodes(new SampleDecoder(SampleFormat.SIGNED_INTEGER_8, ByteOrder.nativeOrder()),
+				readOnly(data), SAMPLES);
+	}
+
+	@Test
+	public void testUnsigned8() throws Exception {
+		ByteBuffer data = ByteBuffer.allocate(SAMPLES.length);
+		for (float v : SAMPLES) {
+			data.put((byte) (v * 128 + 128));
+		}
+		assertDecodes(new SampleDecoder(SampleFormat.UNSIGNED_INTEGER_8, ByteOrder.nativeOrder()),
+				readOnly(data), SAMPLES);
+	}
+
+	@Test
+	public void testSigned16() throws Exception {
+		for (ByteOrder order : ORDERS) {
+			ByteBuffer data = ByteBuffer.allocate(2 * SAMPLES.length).order(order);
+			for (float v : SAMPLES) {
+				data.putShort((short) (v * 32768));
+			}
+			assertDecodes(new SampleDecoder(SampleFormat.SIGNED_INTEGER_16, order), readOnly(data), SAMPLES);
+		}
+	}
+
+	@Test
+	public void testSigned16FullScale() throws Exception {
+		ByteBuffer data = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		data.putShort(Short.MAX_VALUE).putShort(Short.MIN_VALUE);
+		assertDecodes(new SampleDecoder(SampleFormat.SIGNED_INTEGER_16, ByteOrder.LITTLE_ENDIAN),
+				readOnly(data), new float[] { 32767f / 32768, -1f });
+	}
+
+	@Test
+	public void testSigned24() throws Exception {
+		for (ByteOrder order : ORDERS) {
+			ByteBuffer data = ByteBuffer.allocate(3 * SAMPLES.length);
+			for (float v : SAMPLES) {
+				int s = (int) (v * 8388608);
+				if (order == ByteOrder.LITTLE_ENDIAN) {
+					data.put((byte) s).put((byte) (s >> 8)).put((byte) (s >> 16));
+				} else {
+					data.put((byte) (s >> 16)).put((byte) (s >> 8)).put((byte) s);
+				}
+			}
+			assertDecodes(new SampleDecoder(SampleFormat.SIGNED_INTEGER_24, order), readOnly(data), SAMPLES);
+		}
+	}
+
+	@Test
+	public void testSigned32() throws Exception {
+		for (ByteOrder order : ORDERS) {
+			ByteBuffer data = ByteBuffer.allocate(4 * SAMPLES.length).order(order);
+			for (float v : SAMPLES) {
+				data.putInt((int) (v * 2147483648L));
+			}
+			assertDecodes(new SampleDecoder(SampleFormat.SIGNED_INTEGER_32, order), readOnly(data), SAMPLES);
+		}
+	}
+
+	@Test
+	public void testFloat32() throws Exception {
+		for (ByteOrder order : ORDERS) {
+			ByteBuffer data = ByteBuffer.allocate(4 * SAMPLES.length).order(order);
+			for (float v : SAMPLES) {
+				data.putFloat(v);
+			}
+			assertDecodes(new SampleDecoder(SampleFormat.FLOAT_32, order), readOnly(data), SAMPLES);
+		}
+	}
+
+	@Test
+	public void testIgnoresTrailingPartialSample() throws Exception {
+		ByteBuffer data = ByteBuffer.allocate(7).order(ByteOrder.LITTLE_ENDIAN);
+		data.putShort((short) 16384).putShort((short) -16384).putShort((short) 0).put((byte) 1);
+		assertDecodes(new SampleDecoder(SampleFormat.SIGNED_INTEGER_16, ByteOrder.LITTLE_ENDIAN),
+				readOnly(data), new float[] { 0.5f, -0.5f, 0f });
+	}
+
+	@Test
+	public void testDecodePart() throws Exception {
+		ByteBuffer data = ByteBuffer.allocate(2 * SAMPLES.length).order(ByteOrder.BIG_ENDIAN);
+		for (float v : SAMPLES) {
+			data.putShort((short) (v * 32768));
+		}
+		ByteBuffer input = readOnly(data);
+		input.position(2);
+		float[] out = new float[3];
+		new SampleDecoder(SampleFormat.SIGNED_INTEGER_16, ByteOrder.BIG_ENDIAN).decode(input, 2, out, 1, 2);
+		// from the sample after the position, plus two
+		assertThat(out[0]).isEqualTo(0f);
+		assertThat(out[1]).isEqualTo(SAMPLES[3]);
+		assertThat(out[2]).isEqualTo(SAMPLES[4]);
+		assertThat(input.position()).isEqualTo(2);
+	}
+}
@@ -0,0 +1,129 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.jpab.StreamConfiguration.SampleFormat;
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class SampleRingBufferTest {
+
+	@Test
+	public void testCapacityIsPowerOfTwo() throws Exception {
+		assertThat(new SampleRingBuffer(1000).getCapacity()).isEqualTo(1024);
+		assertThat(new SampleRingBuffer(1024).getCapacity()).isEqualTo(1024);
+	}
+
+	@Test
+	public void testWriteReadWrapsAround() throws Exception {
+		SampleRingBuffer ring = new SampleRingBuffer(8);
+		float[] src = { 1, 2, 3, 4, 5, 6 };
+		double[] dst = new double[6];
+
+		assertThat(ring.write(src, 0, 6)).isEqualTo(6);
+		assertThat(ring.read(dst, 0, 4)).isEqualTo(4);
+		assertThat(ring.write(src, 0, 6)).isEqualTo(6);
+		assertThat(ring.available()).isEqualTo(8);
+
+		assertThat(ring.read(dst, 0, 6)).isEqualTo(6);
+		double[] expected = { 5, 6, 1, 2, 3, 4 };
+		for (int i = 0; i < 6; i++) {
+			assertThat(dst[i]).isEqualTo(expected[i]);
+		}
+		assertThat(ring.available()).isEqualTo(2);
+	}
+
+	@Test
+	public void testWriteDecodedWrapsAround() throws Exception {
+		SampleRingBuffer ring = new SampleRingBuffer(8);
+		SampleDecoder decoder = new SampleDecoder(SampleFormat.FLOAT_32, ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer input = ByteBuffer.allocate(4 * 6).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 1; i <= 6; i++) {
+			input.putFloat(i);
+		}
+		input.flip();
+		double[] dst = new double[6];
+
+		assertThat(ring.write(decoder, input)).isEqualTo(6);
+		assertThat(ring.read(dst, 0, 4)).isEqualTo(4);
+		assertThat(ring.write(decoder, input)).isEqualTo(6);
+		assertThat(ring.available()).isEqualTo(8);
+		assertThat(ring.write(decoder, input)).isEqualTo(0);
+		assertThat(ring.getOverruns()).isEqualTo(6);
+
+		assertThat(ring.read(dst, 0, 6)).isEqualTo(6);
+		double[] expected = { 5, 6, 1, 2, 3, 4 };
+		for (int i = 0; i < 6; i++) {
+			assertThat(dst[i]).isEqualTo(expected[i]);
+		}
+	}
+
+	@Test
+	public void testWriteDropsWhenFull() throws Exception {
+		SampleRingBuffer ring = new SampleRingBuffer(4);
+		float[] src = { 1, 2, 3, 4, 5, 6 };
+		assertThat(ring.write(src, 0, 6)).isEqualTo(4);
+		assertThat(ring.getOverruns()).isEqualTo(2);
+		assertThat(ring.write(src, 0, 1)).isEqualTo(0);
+		assertThat(ring.getOverruns()).isEqualTo(3);
+
+		ring.skipAll();
+		assertThat(ring.available()).isEqualTo(0);
+	}
+
+	@Test
+	public void testConcurrentProducerConsumerKeepsOrder() throws Exception {
+		final SampleRingBuffer ring = new SampleRingBuffer(256);
+		final int total = 200000;
+		Thread producer = new Thread() {
+			public void run() {
+				float[] chunk = new float[37];
+				int next = 0;
+				while (next < total) {
+					int len = Math.min(chunk.length, total - next);
+					for (int i = 0; i < len; i++) {
+						chunk[i] = next + i;
+					}
+					int written = 0;
+					while (written < len) {
+						written += ring.write(chunk, written, len - written);
+					}
+					next += len;
+				}
+			}
+		};
+		producer.start();
+
+		double[] dst = new double[53];
+		int expected = 0;
+		while (expected < total) {
+			int n = ring.read(dst, 0, dst.length);
+			for (int i = 0; i < n; i++) {
+				assertThat(dst[i]).isEqualTo(expected++);
+			}
+		}
+		producer.join();
+	}
+}
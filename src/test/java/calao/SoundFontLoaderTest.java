@@ -0,0 +1,102 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class SoundFontLoaderTest {
+
+	/** Records the progress events. */
+	private static class ProgressRecorder implements SoundFontLoader.Listener {
+		final List<Integer> progress = new ArrayList<Integer>();
+		IOException failure;
+
+		public void soundFontProgress(File bank, int percent) {
+			progress.add(percent);
+		}
+
+		public void soundFontLoaded(File bank, List<String> programs) {
+		}
+
+		public void soundFontFailed(File bank, IOException e) {
+			failure = e;
+		}
+	}
+
+	private File bank;
+
+	@Before
+	public void setUp() throws Exception {
+		bank = File.createTempFile("calao", ".sf2");
+		FileOutputStream out = new FileOutputStream(bank);
+		out.write(new byte[1024 * 1024]);
+		out.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		bank.delete();
+	}
+
+	@Test
+	public void testEstimatePercent() throws Exception {
+		assertThat(SoundFontLoader.estimatePercent(1000000, 0, 1000)).isEqualTo(0);
+		assertThat(SoundFontLoader.estimatePercent(1000000, 500, 1000)).isEqualTo(50);
+		// a slower load than expected stays below 100 until it ends
+		assertThat(SoundFontLoader.estimatePercent(1000000, 5000, 1000)).isEqualTo(SoundFontLoader.LOAD_PERCENT);
+		assertThat(SoundFontLoader.estimatePercent(0, 10, 1000)).isEqualTo(SoundFontLoader.LOAD_PERCENT);
+	}
+
+	@Test
+	public void testProgramCache() throws Exception {
+		assertThat(SoundFontLoader.getCachedPrograms(bank)).isNull();
+		SoundFontLoader.cachePrograms(bank, Arrays.asList("Piano", "Organ"));
+		assertThat(SoundFontLoader.getCachedPrograms(bank)).isEqualTo(Arrays.asList("Piano", "Organ"));
+
+		// a modified bank is a new cache entry
+		FileOutputStream out = new FileOutputStream(bank, true);
+		out.write(new byte[16]);
+		out.close();
+		assertThat(SoundFontLoader.getCachedPrograms(bank)).isNull();
+	}
+
+	@Test
+	public void testMissingBank() throws Exception {
+		ProgressRecorder recorder = new ProgressRecorder();
+		SoundFontLoader loader = new SoundFontLoader(null, new File(bank.getPath() + ".missing"), recorder);
+		loader.start();
+		loader.join();
+
+		assertThat(recorder.failure).isNotNull();
+		assertThat(recorder.progress.size()).isEqualTo(0);
+	}
+}
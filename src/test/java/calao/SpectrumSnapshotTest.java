@@ -0,0 +1,151 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class SpectrumSnapshotTest {
+
+	private static double[] flatSpectrum(int length, double value) {
+		double[] m = new double[length];
+		for (int k = 0; k < length; k++) {
+			m[k] = value;
+		}
+		return m;
+	}
+
+	@Test
+	public void testPollReturnsNullUntilPublished() throws Exception {
+		SpectrumSnapshot snapshot = new SpectrumSnapshot(16, 55, 1760);
+		assertThat(snapshot.poll()).isNull();
+		snapshot.publish(flatSpectrum(2049, 1), 44100);
+		assertThat(snapshot.poll()).isNotNull();
+		assertThat(snapshot.poll()).isNull();
+	}
+
+	@Test
+	public void testPollReturnsLatest() throws Exception {
+		SpectrumSnapshot snapshot = new SpectrumSnapshot(4, 55, 1760);
+		// full scale is fftSize / 4 = 1024
+		snapshot.publish(flatSpectrum(2049, 1.024), 44100);
+		snapshot.publish(flatSpectrum(2049, 1024), 44100);
+		double[] levels = snapshot.poll();
+		assertThat(levels.length).isEqualTo(4);
+		for (double level : levels) {
+			assertThat(level).isEqualTo(1.0);
+		}
+		snapshot.publish(flatSpectrum(2049, 1.024), 44100);
+		levels = snapshot.poll();
+		for (double level : levels) {
+			// 60 dB below full scale
+			assertThat(level).isCloseTo(0.0, within(1e-9));
+		}
+	}
+
+	@Test
+	public void testPeakLandsInItsBand() throws Exception {
+		SpectrumSnapshot snapshot = new SpectrumSnapshot(16, 55, 1760);
+		int size = 4096;
+		double[] magnitude = new double[size / 2 + 1];
+		// A4 is 3 octaves above A1, in band 9 as each band spans 5/16 octave
+		int bin = (int) Math.round(440.0 * size / 44100);
+		magnitude[bin] = size / 4;
+		snapshot.publish(magnitude, 44100);
+		double[] levels = snapshot.poll();
+		for (int b = 0; b < levels.length; b++) {
+			assertThat(levels[b]).isEqualTo(b == 9 ? 1.0 : 0.0);
+		}
+	}
+
+	@Test
+	public void testNarrowBandsStillGetABin() throws Exception {
+		// 43 Hz bins are wider than the low bands
+		SpectrumSnapshot snapshot = new SpectrumSnapshot(16, 55, 1760);
+		snapshot.publish(flatSpectrum(513, 256), 44100);
+		for (double level : snapshot.poll()) {
+			assertThat(level).isEqualTo(1.0);
+		}
+	}
+
+	@Test
+	public void testConsumerNeverSeesHalfWrittenLevels() throws Exception {
+		final SpectrumSnapshot snapshot = new SpectrumSnapshot(16, 55, 1760);
+		final int frames = 20000;
+		Thread producer = new Thread() {
+			public void run() {
+				double[][] spectra = new double[8][];
+				for (int i = 0; i < spectra.length; i++) {
+					spectra[i] = flatSpectrum(1025, 512 * Math.pow(10, -i / 4.0));
+				}
+				for (int i = 0; i < frames; i++) {
+					snapshot.publish(spectra[i % spectra.length], 44100);
+				}
+			}
+		};
+		producer.start();
+		int seen = 0;
+		while (producer.isAlive() || seen == 0) {
+			double[] levels = snapshot.poll();
+			if (levels == null) {
+				continue;
+			}
+			seen++;
+			for (int b = 1; b < levels.length; b++) {
+				assertThat(levels[b]).isEqualTo(levels[0]);
+			}
+		}
+		producer.join();
+		assertThat(seen).isGreaterThan(0);
+	}
+
+	@Test
+	public void testNoAllocationPerFrame() throws Exception {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threadBean.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		long threadId = Thread.currentThread().getId();
+
+		SpectrumSnapshot snapshot = new SpectrumSnapshot(16, 55, 1760);
+		double[] magnitude = flatSpectrum(2049, 100);
+		for (int i = 0; i < 5000; i++) {
+			snapshot.publish(magnitude, 44100);
+			snapshot.poll();
+		}
+		threadBean.getThreadAllocatedBytes(threadId);
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < 1000; i++) {
+			snapshot.publish(magnitude, 44100);
+			snapshot.poll();
+		}
+		long after = threadBean.getThreadAllocatedBytes(threadId);
+		assertThat(after - before).isEqualTo(0);
+	}
+}
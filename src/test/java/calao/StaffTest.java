@@ -17,8 +17,15 @@ along with Calao.  If not, see <http://www.gnu.org/licenses/>.
 **********************************************/
 package calao;
 
+import static org.assertj.core.api.Assertions.*;
+
 import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.ResourceBundle;
+import java.util.Vector;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -77,6 +84,63 @@ public class StaffTest {
 		return;
 	}
 
+	@Test
+	public void testBackgroundCache() throws Exception {
+		ResourceBundle bundle = new ResourceBundle() {
+			protected Object handleGetObject(String key) {
+				return key;
+			}
+
+			public Enumeration<String> getKeys() {
+				return Collections.enumeration(new Vector<String>());
+			}
+		};
+		Accidentals accidentals = new Accidentals("", 0, new Preferences());
+		Staff staff = new Staff(new Font("Dialog", Font.PLAIN, 12), bundle, new Preferences(), accidentals, false, true);
+		staff.setBounds(0, 0, 400, 300);
+		BufferedImage screen = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = screen.createGraphics();
+
+		staff.paintComponent(g);
+		BufferedImage background = staff.getBackgroundImage();
+		assertThat(background).isNotNull();
+		// the first staff line
+		assertThat(screen.getRGB(100, 45) & 0xFFFFFF).isEqualTo(0);
+		assertThat(screen.getRGB(100, 50) & 0xFFFFFF).isEqualTo(0xFFFFFF);
+
+		staff.paintComponent(g);
+		assertThat(staff.getBackgroundImage()).isSameAs(background);
+
+		staff.setTimeSignature(3, 4);
+		assertThat(staff.getBackgroundImage()).isNull();
+		staff.paintComponent(g);
+		background = staff.getBackgroundImage();
+		assertThat(background).isNotNull();
+
+		// accidentals changed from elsewhere
+		accidentals.setTypeAndCount("#", 2);
+		staff.paintComponent(g);
+		assertThat(staff.getBackgroundImage()).isNotSameAs(background);
+		background = staff.getBackgroundImage();
+
+		staff.setBounds(0, 0, 500, 300);
+		staff.paintComponent(g);
+		assertThat(staff.getBackgroundImage()).isNotSameAs(background);
+		assertThat(staff.getBackgroundImage().getWidth()).isEqualTo(500);
+		g.dispose();
+
+		// a HiDPI output: rendered at the device scale, drawn at the same place
+		BufferedImage hidpi = new BufferedImage(1000, 600, BufferedImage.TYPE_INT_RGB);
+		g = hidpi.createGraphics();
+		g.scale(2, 2);
+		staff.paintComponent(g);
+		g.dispose();
+		assertThat(staff.getBackgroundImage().getWidth()).isEqualTo(1000);
+		assertThat(staff.getBackgroundImage().getHeight()).isEqualTo(600);
+		assertThat(hidpi.getRGB(200, 90) & 0xFFFFFF).isEqualTo(0);
+		assertThat(hidpi.getRGB(200, 100) & 0xFFFFFF).isEqualTo(0xFFFFFF);
+	}
+
 	@Test
 	public void testSetRowsDistance() throws Exception {
 		return;
@@ -0,0 +1,123 @@
+/***********************************************
+This file is part of the Calao project (https://github.com/Neonunux/calao/wiki).
+
+Calao is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Calao is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Calao.  If not, see <http://www.gnu.org/licenses/>.
+
+**********************************************/
+package calao;
+
+import static org.assertj.core.api.Assertions.*;
+
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+/**
+* @author Neonunux
+*/
+public class VoiceManagerTest {
+
+	private final int[] events = new int[32];
+
+	@Test
+	public void testNoteOnOff() {
+		VoiceManager voices = new VoiceManager(4);
+		int count = voices.noteOn(0, 60, 90, events, 0);
+		assertThat(count).isEqualTo(1);
+		assertThat(events[0]).isEqualTo(Fluidsynth.pack(0, ShortMessage.NOTE_ON, 60, 90));
+		assertThat(voices.isActive(0, 60)).isTrue();
+		assertThat(voices.isActive(1, 60)).isFalse();
+
+		count = voices.noteOff(0, 60, events, 0);
+		assertThat(count).isEqualTo(1);
+		assertThat(events[0]).isEqualTo(Fluidsynth.pack(0, ShortMessage.NOTE_OFF, 60, 0));
+		assertThat(voices.isActive(0, 60)).isFalse();
+		assertThat(voices.getVoiceCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testNoteOffNotActive() {
+		VoiceManager voices = new VoiceManager(4);
+		assertThat(voices.noteOff(0, 60, events, 0)).isEqualTo(0);
+	}
+
+	@Test
+	public void testHighPitches() {
+		VoiceManager voices = new VoiceManager(4);
+		voices.noteOn(3, 127, 90, events, 0);
+		voices.noteOn(3, 63, 90, events, 0);
+		assertThat(voices.isActive(3, 127)).isTrue();
+		assertThat(voices.isActive(3, 63)).isTrue();
+		assertThat(voices.isActive(3, 64)).isFalse();
+	}
+
+	@Test
+	public void testRestart() {
+		VoiceManager voices = new VoiceManager(4);
+		voices.noteOn(0, 60, 90, events, 0);
+		int count = voices.noteOn(0, 60, 80, events, 0);
+		assertThat(count).isEqualTo(2);
+		assertThat(events[0]).isEqualTo(Fluidsynth.pack(0, ShortMessage.NOTE_OFF, 60, 0));
+		assertThat(events[1]).isEqualTo(Fluidsynth.pack(0, ShortMessage.NOTE_ON, 60, 80));
+		assertThat(voices.getVoiceCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testStealOldest() {
+		VoiceManager voices = new VoiceManager(2);
+		voices.noteOn(0, 60, 90, events, 0);
+		voices.noteOn(0, 62, 90, events, 0);
+		// restarting 60 makes 62 the oldest
+		voices.noteOn(0, 60, 90, events, 0);
+		int count = voices.noteOn(0, 64, 90, events, 0);
+		assertThat(count).isEqualTo(2);
+		assertThat(events[0]).isEqualTo(Fluidsynth.pack(0, ShortMessage.NOTE_OFF, 62, 0));
+		assertThat(voices.isActive(0, 62)).isFalse();
+		assertThat(voices.isActive(0, 60)).isTrue();
+		assertThat(voices.isActive(0, 64)).isTrue();
+	}
+
+	@Test
+	public void testAllNotesOff() {
+		VoiceManager voices = new VoiceManager(4);
+		int count = voices.noteOn(0, 60, 90, events, 0);
+		count = voices.noteOn(9, 76, 90, events, count);
+		count = voices.noteOn(0, 64, 90, events, count);
+		count = voices.allNotesOff(0, events, 0);
+		assertThat(count).isEqualTo(3);
+		assertThat(events[0]).isEqualTo(Fluidsynth.pack(0, ShortMessage.NOTE_OFF, 60, 0));
+		assertThat(events[1]).isEqualTo(Fluidsynth.pack(0, ShortMessage.NOTE_OFF, 64, 0));
+		assertThat(events[2]).isEqualTo(Fluidsynth.pack(0, ShortMessage.CONTROL_CHANGE, 123, 0));
+		assertThat(voices.getVoiceCount()).isEqualTo(1);
+		assertThat(voices.isActive(9, 76)).isTrue();
+	}
+
+	@Test
+	public void testSetPolyphony() {
+		VoiceManager voices = new VoiceManager(4);
+		int count = voices.noteOn(0, 60, 90, events, 0);
+		count = voices.noteOn(0, 62, 90, events, count);
+		count = voices.noteOn(0, 64, 90, events, count);
+		count = voices.setPolyphony(1, events, 0);
+		assertThat(count).isEqualTo(2);
+		assertThat(voices.getPolyphony()).isEqualTo(1);
+		assertThat(voices.isActive(0, 64)).isTrue();
+		assertThat(voices.getVoiceCount()).isEqualTo(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoPolyphony() {
+		new VoiceManager(0);
+	}
+}